@@ -41,8 +41,8 @@ public class CommandLineInterpreterTest {
 
         final String expectedConsoleOutput =
                 "usage:" + BR + "java -jar stubby4j-x.x.xx.jar [-a <arg>] [-d <arg>] [-da] [-dc] [-ds] [-h]"
-                        + BR + "       [-k <arg>] [-l <arg>] [-m] [-o] [-p <arg>] [-s <arg>] [-t <arg>]"
-                        + BR + "       [-ta] [-v] [-w <arg>]"
+                        + BR + "       [-k <arg>] [-l <arg>] [-m] [-mb <arg>] [-o] [-p <arg>] [-s <arg>]"
+                        + BR + "       [-t <arg>] [-ta] [-v] [-w <arg>]"
                         + BR + " -a,--admin <arg>                        Port for admin portal. Defaults"
                         + BR + "                                         to 8889."
                         + BR + " -d,--data <arg>                         Data file to pre-load endpoints."
@@ -68,6 +68,12 @@ public class CommandLineInterpreterTest {
                         + BR + "                                         internal self-signed certificate."
                         + BR + " -l,--location <arg>                     Hostname at which to bind stubby."
                         + BR + " -m,--mute                               Mute console output."
+                        + BR + " -mb,--max_request_body_buffer <arg>     Since v7.6.1. Max size in bytes"
+                        + BR + "                                         of an incoming request body that"
+                        + BR + "                                         is buffered in memory while being"
+                        + BR + "                                         read. A larger body is spilled to"
+                        + BR + "                                         a temporary file. Defaults to"
+                        + BR + "                                         1048576."
                         + BR + " -o,--debug                              Dumps raw HTTP request to the"
                         + BR + "                                         console (if console is not"
                         + BR + "                                         muted!)."
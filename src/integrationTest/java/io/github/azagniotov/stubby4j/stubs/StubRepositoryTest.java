@@ -28,6 +28,7 @@ import static org.junit.Assert.assertThrows;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.spy;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
@@ -78,14 +79,14 @@ public class StubRepositoryTest {
     private HttpServletRequest mockHttpServletRequest;
 
     @Spy
-    private Cache<String, StubHttpLifecycle> spyDefaultCache = Cache.stubHttpLifecycleCache(false);
+    private Cache<String, StubMatch> spyDefaultCache = Cache.stubMatchCache(false);
 
     @Spy
-    private Cache<String, StubHttpLifecycle> spyNoOpCache = Cache.stubHttpLifecycleCache(true);
+    private Cache<String, StubMatch> spyNoOpCache = Cache.stubMatchCache(true);
 
     @Spy
     private StubRepository spyStubRepository = new StubRepository(
-            CONFIG_FILE, Cache.stubHttpLifecycleCache(false), YAML_PARSE_RESULT_SET_FUTURE, new StubbyHttpTransport());
+            CONFIG_FILE, Cache.stubMatchCache(false), YAML_PARSE_RESULT_SET_FUTURE, new StubbyHttpTransport());
 
     private StubRequest.Builder requestBuilder;
 
@@ -132,11 +133,11 @@ public class StubRepositoryTest {
         stubRepository.search(mockHttpServletRequest);
 
         verify(spyDefaultCache, times(7)).get(anyString());
-        verify(spyDefaultCache, times(1)).putIfAbsent(anyString(), any(StubHttpLifecycle.class));
+        verify(spyDefaultCache, times(1)).putIfAbsent(anyString(), any(StubMatch.class));
     }
 
     @Test
-    public void shouldNoOpCacheEveryRequestWhenUsingNoOpCache() throws Exception {
+    public void shouldNotTouchCacheForAnyRequestWhenUsingNoOpCache() throws Exception {
         final StubRepository stubRepository =
                 new StubRepository(CONFIG_FILE, spyNoOpCache, YAML_PARSE_RESULT_SET_FUTURE, new StubbyHttpTransport());
 
@@ -172,8 +173,9 @@ public class StubRepositoryTest {
         stubRepository.search(mockHttpServletRequest);
         stubRepository.search(mockHttpServletRequest);
 
-        verify(spyNoOpCache, times(7)).get(anyString());
-        verify(spyNoOpCache, times(7)).putIfAbsent(anyString(), any(StubHttpLifecycle.class));
+        // Both the match and the miss caches are no-op, so the cache key is not even built
+        verify(spyNoOpCache, never()).get(anyString());
+        verify(spyNoOpCache, never()).putIfAbsent(anyString(), any(StubMatch.class));
     }
 
     @Test
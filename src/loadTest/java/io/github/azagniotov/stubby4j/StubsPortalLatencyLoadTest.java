@@ -0,0 +1,145 @@
+/*
+ * Copyright (c) 2012-2024 Alexander Zagniotov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.github.azagniotov.stubby4j;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import io.github.azagniotov.stubby4j.cli.ANSITerminal;
+import io.github.azagniotov.stubby4j.cli.CommandLineInterpreter;
+import io.github.azagniotov.stubby4j.server.JettyFactory;
+import io.github.azagniotov.stubby4j.server.StubbyManager;
+import io.github.azagniotov.stubby4j.server.StubbyManagerFactory;
+import io.github.azagniotov.stubby4j.yaml.YamlParseResultSet;
+import io.github.azagniotov.stubby4j.yaml.YamlParser;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URL;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.eclipse.jetty.client.HttpClient;
+import org.eclipse.jetty.http.HttpStatus;
+import org.eclipse.jetty.http2.client.HTTP2Client;
+import org.eclipse.jetty.http2.client.http.HttpClientTransportOverHTTP2;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class StubsPortalLatencyLoadTest {
+
+    private static final int STUBS_PORT = PortTestUtils.findAvailableTcpPort();
+    private static final int STUBS_SSL_PORT = PortTestUtils.findAvailableTcpPort();
+    private static final int ADMIN_PORT = PortTestUtils.findAvailableTcpPort();
+
+    private static final String STUBS_URL = String.format("http://localhost:%s", STUBS_PORT);
+
+    // Has to match the latency of the stub in the YAML config
+    private static final long STUBBED_LATENCY_MILLIS = 2000;
+    private static final int IN_FLIGHT_REQUESTS = 10_000;
+
+    // The stubs portal over HTTP/2 allows up to 100 concurrent streams per connection
+    private static final int CLIENT_CONNECTIONS = IN_FLIGHT_REQUESTS / 100;
+
+    private static StubbyManager stubbyManager;
+    private static HttpClient httpClient;
+
+    @BeforeClass
+    public static void beforeClass() throws Exception {
+
+        ANSITerminal.muteConsole(true);
+
+        final URL url = StubsPortalLatencyLoadTest.class.getResource("/yaml/latency_load_test.yaml");
+
+        final String[] args = new String[] {
+            "-m",
+            "-l",
+            JettyFactory.DEFAULT_HOST,
+            "-s",
+            String.valueOf(STUBS_PORT),
+            "-a",
+            String.valueOf(ADMIN_PORT),
+            "-t",
+            String.valueOf(STUBS_SSL_PORT),
+            "--enable_tls_with_alpn_and_http_2",
+        };
+
+        final CommandLineInterpreter commandLineInterpreter = new CommandLineInterpreter();
+        commandLineInterpreter.parseCommandLine(args);
+
+        final File configFile = new File(url.getFile());
+        final CompletableFuture<YamlParseResultSet> stubLoadComputation = CompletableFuture.supplyAsync(() -> {
+            try {
+                return new YamlParser().parse(configFile.getParent(), configFile);
+            } catch (IOException ioEx) {
+                throw new UncheckedIOException(ioEx);
+            }
+        });
+
+        stubbyManager = new StubbyManagerFactory()
+                .construct(configFile, commandLineInterpreter.getCommandlineParams(), stubLoadComputation);
+        stubbyManager.startJetty();
+
+        httpClient = new HttpClient(new HttpClientTransportOverHTTP2(new HTTP2Client()));
+        httpClient.setMaxConnectionsPerDestination(CLIENT_CONNECTIONS);
+        httpClient.setMaxRequestsQueuedPerDestination(IN_FLIGHT_REQUESTS);
+        httpClient.start();
+    }
+
+    @AfterClass
+    public static void afterClass() throws Exception {
+        httpClient.stop();
+        stubbyManager.stopJetty();
+    }
+
+    @Test
+    public void latencyTesting_CheckElapsedTimeOfConcurrentDelayedRequests() throws Exception {
+        final String requestUrl = String.format("%s%s", STUBS_URL, "/azagniotov/load/test/latency");
+
+        // The stubs are loaded asynchronously, make sure that the stub is served before the requests are fired
+        assertThat(httpClient.GET(requestUrl).getStatus()).isEqualTo(HttpStatus.OK_200);
+
+        final CountDownLatch completedLatch = new CountDownLatch(IN_FLIGHT_REQUESTS);
+        final AtomicInteger succeeded = new AtomicInteger();
+
+        final long start = System.currentTimeMillis();
+        for (int idx = 0; idx < IN_FLIGHT_REQUESTS; idx++) {
+            httpClient.newRequest(requestUrl).timeout(60, TimeUnit.SECONDS).send(result -> {
+                if (result.isSucceeded() && result.getResponse().getStatus() == HttpStatus.OK_200) {
+                    succeeded.incrementAndGet();
+                }
+                completedLatch.countDown();
+            });
+        }
+
+        assertThat(completedLatch.await(90, TimeUnit.SECONDS)).isTrue();
+        final long elapsed = System.currentTimeMillis() - start;
+
+        System.out.println("\n\n**************************************************************");
+        System.out.println(String.format(
+                "It took %s milliseconds to serve %s concurrent requests with %s milliseconds of latency",
+                elapsed, IN_FLIGHT_REQUESTS, STUBBED_LATENCY_MILLIS));
+        System.out.println("**************************************************************\n");
+
+        assertThat(succeeded.get()).isEqualTo(IN_FLIGHT_REQUESTS);
+        // When every delayed request held on to a server thread, the requests were served in as many rounds
+        // as there were server threads available for them, i.e.: orders of magnitude longer than the latency
+        assertThat(elapsed).isLessThan(STUBBED_LATENCY_MILLIS * 10);
+    }
+}
@@ -16,26 +16,36 @@
 
 package io.github.azagniotov.stubby4j.caching;
 
-import io.github.azagniotov.stubby4j.stubs.StubHttpLifecycle;
+import io.github.azagniotov.stubby4j.stubs.StubMatch;
 import java.util.Optional;
 import java.util.concurrent.atomic.AtomicInteger;
-import java.util.regex.Pattern;
 import org.ehcache.UserManagedCache;
 
 public interface Cache<K, V> {
 
     long CACHE_ENTRY_LIFETIME_SECONDS = 3600L; // 3600 secs => 60 minutes
 
-    static Cache<String, StubHttpLifecycle> stubHttpLifecycleCache(final boolean buildNoOpCache) {
+    static Cache<String, StubMatch> stubMatchCache(final boolean buildNoOpCache) {
         if (buildNoOpCache) {
-            return new NoOpStubHttpLifecycleCache();
+            return new NoOpStubMatchCache();
         } else {
-            return new StubHttpLifecycleCache(CACHE_ENTRY_LIFETIME_SECONDS);
+            return new StubMatchCache(CACHE_ENTRY_LIFETIME_SECONDS);
         }
     }
 
-    static Cache<Integer, Pattern> regexPatternCache() {
-        return new RegexPatternCache(CACHE_ENTRY_LIFETIME_SECONDS);
+    static Cache<String, Boolean> stubMissCache(final boolean buildNoOpCache) {
+        if (buildNoOpCache) {
+            return new NoOpStubMissCache();
+        } else {
+            return new StubMissCache(CACHE_ENTRY_LIFETIME_SECONDS);
+        }
+    }
+
+    /**
+     * @return false if this cache never holds any entries, i.e.: when the caching is disabled
+     */
+    default boolean isEnabled() {
+        return true;
     }
 
     default Optional<V> get(final K key) {
@@ -16,24 +16,28 @@
 
 package io.github.azagniotov.stubby4j.caching;
 
-import io.github.azagniotov.stubby4j.stubs.StubHttpLifecycle;
 import java.util.Optional;
 import java.util.concurrent.atomic.AtomicInteger;
 import org.ehcache.UserManagedCache;
 
-class NoOpStubHttpLifecycleCache implements Cache<String, StubHttpLifecycle> {
+class NoOpStubMissCache implements Cache<String, Boolean> {
 
     private static final AtomicInteger ATOMIC_INTEGER_ZERO = new AtomicInteger();
 
-    NoOpStubHttpLifecycleCache() {}
+    NoOpStubMissCache() {}
 
     @Override
-    public Optional<StubHttpLifecycle> get(final String key) {
+    public boolean isEnabled() {
+        return false;
+    }
+
+    @Override
+    public Optional<Boolean> get(final String key) {
         return Optional.empty();
     }
 
     @Override
-    public void putIfAbsent(final String key, final StubHttpLifecycle value) {
+    public void putIfAbsent(final String key, final Boolean value) {
         // NO-OP
     }
 
@@ -48,7 +52,7 @@ class NoOpStubHttpLifecycleCache implements Cache<String, StubHttpLifecycle> {
     }
 
     @Override
-    public UserManagedCache<String, StubHttpLifecycle> cache() {
+    public UserManagedCache<String, Boolean> cache() {
         throw new UnsupportedOperationException();
     }
 
@@ -16,23 +16,23 @@
 
 package io.github.azagniotov.stubby4j.caching;
 
+import io.github.azagniotov.stubby4j.stubs.StubMatch;
 import java.time.Duration;
 import java.util.concurrent.atomic.AtomicInteger;
-import java.util.regex.Pattern;
 import org.ehcache.UserManagedCache;
 import org.ehcache.config.builders.ExpiryPolicyBuilder;
 import org.ehcache.config.builders.ResourcePoolsBuilder;
 import org.ehcache.config.builders.UserManagedCacheBuilder;
 
-class RegexPatternCache implements Cache<Integer, Pattern> {
+class StubMatchCache implements Cache<String, StubMatch> {
 
     private final AtomicInteger cacheSize;
-    private final UserManagedCache<Integer, Pattern> localCache;
+    private final UserManagedCache<String, StubMatch> localCache;
 
-    RegexPatternCache(final long cacheEntryLifetimeSeconds) {
+    StubMatchCache(final long cacheEntryLifetimeSeconds) {
         final Duration timeToLiveExpiration = Duration.ofSeconds(cacheEntryLifetimeSeconds);
 
-        this.localCache = UserManagedCacheBuilder.newUserManagedCacheBuilder(Integer.class, Pattern.class)
+        this.localCache = UserManagedCacheBuilder.newUserManagedCacheBuilder(String.class, StubMatch.class)
                 .withResourcePools(ResourcePoolsBuilder.heap(500L))
                 .identifier(this.getClass().getSimpleName())
                 .withExpiry(ExpiryPolicyBuilder.timeToLiveExpiration(timeToLiveExpiration))
@@ -42,7 +42,7 @@ class RegexPatternCache implements Cache<Integer, Pattern> {
     }
 
     @Override
-    public UserManagedCache<Integer, Pattern> cache() {
+    public UserManagedCache<String, StubMatch> cache() {
         return localCache;
     }
 
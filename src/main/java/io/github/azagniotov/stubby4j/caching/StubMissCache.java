@@ -16,7 +16,6 @@
 
 package io.github.azagniotov.stubby4j.caching;
 
-import io.github.azagniotov.stubby4j.stubs.StubHttpLifecycle;
 import java.time.Duration;
 import java.util.concurrent.atomic.AtomicInteger;
 import org.ehcache.UserManagedCache;
@@ -24,16 +23,23 @@ import org.ehcache.config.builders.ExpiryPolicyBuilder;
 import org.ehcache.config.builders.ResourcePoolsBuilder;
 import org.ehcache.config.builders.UserManagedCacheBuilder;
 
-class StubHttpLifecycleCache implements Cache<String, StubHttpLifecycle> {
+/**
+ * Keeps the keys of the incoming requests that did not match any of the stubs, so that repeated unmatched
+ * requests (e.g.: health checks and client retries to URLs that no stub defines) skip the matching altogether.
+ * <p>
+ * The cache is bounded separately from the {@link StubMatchCache}, so that a burst of unmatched requests
+ * cannot evict the matches.
+ */
+class StubMissCache implements Cache<String, Boolean> {
 
     private final AtomicInteger cacheSize;
-    private final UserManagedCache<String, StubHttpLifecycle> localCache;
+    private final UserManagedCache<String, Boolean> localCache;
 
-    StubHttpLifecycleCache(final long cacheEntryLifetimeSeconds) {
+    StubMissCache(final long cacheEntryLifetimeSeconds) {
         final Duration timeToLiveExpiration = Duration.ofSeconds(cacheEntryLifetimeSeconds);
 
-        this.localCache = UserManagedCacheBuilder.newUserManagedCacheBuilder(String.class, StubHttpLifecycle.class)
-                .withResourcePools(ResourcePoolsBuilder.heap(500L))
+        this.localCache = UserManagedCacheBuilder.newUserManagedCacheBuilder(String.class, Boolean.class)
+                .withResourcePools(ResourcePoolsBuilder.heap(1000L))
                 .identifier(this.getClass().getSimpleName())
                 .withExpiry(ExpiryPolicyBuilder.timeToLiveExpiration(timeToLiveExpiration))
                 .build(true);
@@ -42,7 +48,7 @@ class StubHttpLifecycleCache implements Cache<String, StubHttpLifecycle> {
     }
 
     @Override
-    public UserManagedCache<String, StubHttpLifecycle> cache() {
+    public UserManagedCache<String, Boolean> cache() {
         return localCache;
     }
 
@@ -52,6 +52,7 @@ public final class CommandLineInterpreter {
     public static final String OPTION_DISABLE_SSL = "disable_ssl";
     public static final String OPTION_DISABLE_STUB_CACHING = "disable_stub_caching";
     public static final String OPTION_ENABLE_TLS_WITH_ALPN_AND_HTTP_2 = "enable_tls_with_alpn_and_http_2";
+    public static final String OPTION_MAX_REQUEST_BODY_BUFFER = "max_request_body_buffer";
     private static final String OPTION_VERSION = "version";
     private static final String OPTION_DEBUG = "debug";
     private static final CommandLineParser POSIX_PARSER = new DefaultParser();
@@ -94,6 +95,11 @@ public final class CommandLineInterpreter {
                 OPTION_DISABLE_SSL,
                 false,
                 "Disables TLS support (enabled by default) and disables the '--enable_tls_with_alpn_and_http_2' flag, if the latter was provided");
+        OPTIONS.addOption(
+                "mb",
+                OPTION_MAX_REQUEST_BODY_BUFFER,
+                true,
+                "Since v7.6.1. Max size in bytes of an incoming request body that is buffered in memory while being read. A larger body is spilled to a temporary file. Defaults to 1048576.");
         @SuppressWarnings("static-access")
         Option watch = Option.builder("w")
                 .desc(
@@ -30,6 +30,7 @@ import static java.util.Collections.unmodifiableList;
 import io.github.azagniotov.stubby4j.annotations.GeneratedCodeClassCoverageExclusion;
 import io.github.azagniotov.stubby4j.cli.CommandLineInterpreter;
 import io.github.azagniotov.stubby4j.server.JettyContext;
+import io.github.azagniotov.stubby4j.stubs.RegexPatternRegistry;
 import io.github.azagniotov.stubby4j.stubs.StubHttpLifecycle;
 import io.github.azagniotov.stubby4j.stubs.StubRepository;
 import io.github.azagniotov.stubby4j.stubs.StubResponse;
@@ -136,8 +137,9 @@ public final class StatusPageHandler extends AbstractHandler implements Abstract
         }
 
         final List<StubHttpLifecycle> stubHttpLifecycles = stubRepository.getStubs();
+        final Map<String, Long> abortedMatchStats = stubRepository.getAbortedMatchStats();
         for (final StubHttpLifecycle stubHttpLifecycle : stubHttpLifecycles) {
-            builder.append(buildStubRequestHtmlTable(stubHttpLifecycle, templateHtmlTable));
+            builder.append(buildStubRequestHtmlTable(stubHttpLifecycle, abortedMatchStats, templateHtmlTable));
             builder.append(buildStubResponseHtmlTable(stubHttpLifecycle, templateHtmlTable));
             builder.append(HTML_BR).append(HTML_BR);
         }
@@ -158,7 +160,10 @@ public final class StatusPageHandler extends AbstractHandler implements Abstract
         return String.format(templateHtmlTable, PROXY_CONFIG, proxyConfigTableBuilder.toString());
     }
 
-    private String buildStubRequestHtmlTable(final StubHttpLifecycle stubHttpLifecycle, final String templateHtmlTable)
+    private String buildStubRequestHtmlTable(
+            final StubHttpLifecycle stubHttpLifecycle,
+            final Map<String, Long> abortedMatchStats,
+            final String templateHtmlTable)
             throws Exception {
         final String resourceId = stubHttpLifecycle.getResourceId();
         final String ajaxLinkToRequestAsYaml = String.format(
@@ -169,6 +174,12 @@ public final class StatusPageHandler extends AbstractHandler implements Abstract
         final StringBuilder requestTableBuilder = buildStubHtmlTableBody(
                 resourceId, REQUEST.toString(), ReflectionUtils.getProperties(stubHttpLifecycle.getRequest()));
         requestTableBuilder.append(interpolateHtmlTableRowTemplate("RAW YAML", ajaxLinkToRequestAsYaml));
+        requestTableBuilder.append(interpolateHtmlTableRowTemplate(
+                "MATCH ORDER", stubHttpLifecycle.getRequest().describeMatchOrder()));
+        if (abortedMatchStats.containsKey(resourceId)) {
+            requestTableBuilder.append(
+                    interpolateHtmlTableRowTemplate("ABORTED MATCHES", abortedMatchStats.get(resourceId)));
+        }
 
         return String.format(templateHtmlTable, REQUEST, requestTableBuilder.toString());
     }
@@ -269,6 +280,27 @@ public final class StatusPageHandler extends AbstractHandler implements Abstract
             builder.append(interpolateHtmlTableRowTemplate("ENDPOINT HITS", TEMPLATE_AJAX_TO_STATS_HYPERLINK));
         }
 
+        final long unmatchedLookups = stubRepository.getUnmatchedLookups();
+        final long unmatchedFastPathHits = stubRepository.getUnmatchedFastPathHits();
+        final double unmatchedFastPathHitRatio =
+                unmatchedLookups == 0 ? 0.0 : (double) unmatchedFastPathHits / unmatchedLookups;
+        builder.append(interpolateHtmlTableRowTemplate(
+                "UNMATCHED FAST PATH HITS",
+                String.format(
+                        "%s of %s unmatched lookups (%.2f%%)",
+                        unmatchedFastPathHits, unmatchedLookups, unmatchedFastPathHitRatio * 100)));
+
+        final RegexPatternRegistry regexPatternRegistry = stubRepository.getRegexPatternRegistry();
+        builder.append(interpolateHtmlTableRowTemplate(
+                "REGEX PATTERNS",
+                String.format(
+                        "%s registered, %s hits, %s misses, %s evictions, %.2f ms compiling",
+                        regexPatternRegistry.size(),
+                        regexPatternRegistry.getHits(),
+                        regexPatternRegistry.getMisses(),
+                        regexPatternRegistry.getEvictions(),
+                        regexPatternRegistry.getCompileNanos() / 1_000_000.0)));
+
         return String.format(templateHtmlTable, "stubby stats", builder.toString());
     }
 
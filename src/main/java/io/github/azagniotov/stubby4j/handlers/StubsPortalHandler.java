@@ -24,19 +24,29 @@ import io.github.azagniotov.stubby4j.stubs.StubSearchResult;
 import io.github.azagniotov.stubby4j.utils.ConsoleUtils;
 import io.github.azagniotov.stubby4j.utils.HandlerUtils;
 import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import javax.servlet.AsyncContext;
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import org.eclipse.jetty.http.HttpStatus;
 import org.eclipse.jetty.server.Request;
 import org.eclipse.jetty.server.handler.AbstractHandler;
+import org.eclipse.jetty.util.thread.Scheduler;
 
 public class StubsPortalHandler extends AbstractHandler implements AbstractHandlerExtension {
 
     private final StubRepository stubRepository;
+    private final Scheduler latencyScheduler;
 
-    public StubsPortalHandler(final StubRepository stubRepository) {
+    /**
+     * @param stubRepository {@link StubRepository} to look up the stubs in
+     * @param latencyScheduler {@link Scheduler} that only resumes the suspended requests when their latency is up,
+     * the responses are written by the server threads. Its lifecycle is managed by the server, see JettyFactory
+     */
+    public StubsPortalHandler(final StubRepository stubRepository, final Scheduler latencyScheduler) {
         this.stubRepository = stubRepository;
+        this.latencyScheduler = latencyScheduler;
     }
 
     @Override
@@ -55,6 +65,42 @@ public class StubsPortalHandler extends AbstractHandler implements AbstractHandl
             final StubSearchResult stubSearchResult = stubRepository.search(request);
             final StubResponseHandlingStrategy strategyStubResponse = getStrategy(stubSearchResult.getMatch());
 
+            final long latencyMillis = strategyStubResponse.getLatencyMillis();
+            if (latencyMillis > 0 && request.isAsyncSupported()) {
+                // The request is suspended rather than put to sleep, so that it does not hold on to a server
+                // thread while its latency is simulated
+                final AsyncContext asyncContext = request.startAsync();
+                // The request is completed once it is resumed, so it must not time out before its latency is up
+                asyncContext.setTimeout(0);
+                latencyScheduler.schedule(
+                        () -> asyncContext.start(() -> {
+                            try {
+                                respond(strategyStubResponse, stubSearchResult, response);
+                            } catch (final IOException ex) {
+                                ConsoleUtils.logIncomingRequestError(request, "stubs", ex.toString());
+                            } finally {
+                                asyncContext.complete();
+                            }
+                        }),
+                        latencyMillis,
+                        TimeUnit.MILLISECONDS);
+                return;
+            } else if (latencyMillis > 0) {
+                TimeUnit.MILLISECONDS.sleep(latencyMillis);
+            }
+
+            respond(strategyStubResponse, stubSearchResult, response);
+        } catch (final Exception ex) {
+            HandlerUtils.configureErrorResponse(response, HttpStatus.INTERNAL_SERVER_ERROR_500, ex.toString());
+        }
+    }
+
+    private static void respond(
+            final StubResponseHandlingStrategy strategyStubResponse,
+            final StubSearchResult stubSearchResult,
+            final HttpServletResponse response)
+            throws IOException {
+        try {
             strategyStubResponse.handle(response, stubSearchResult.getInvariant());
             ConsoleUtils.logOutgoingResponse(stubSearchResult.getInvariant().getUrl(), response);
         } catch (final Exception ex) {
@@ -18,21 +18,22 @@ package io.github.azagniotov.stubby4j.handlers.strategy.stubs;
 
 import static io.github.azagniotov.stubby4j.utils.FileUtils.fileToBytes;
 import static io.github.azagniotov.stubby4j.utils.HandlerUtils.setResponseMainHeaders;
-import static io.github.azagniotov.stubby4j.utils.StringUtils.getBytesUtf8;
 import static io.github.azagniotov.stubby4j.utils.StringUtils.isTokenized;
-import static io.github.azagniotov.stubby4j.utils.StringUtils.replaceTokens;
-import static io.github.azagniotov.stubby4j.utils.StringUtils.replaceTokensInString;
+import static io.github.azagniotov.stubby4j.utils.StringUtils.newStringUtf8;
 
 import io.github.azagniotov.stubby4j.stubs.StubRequest;
 import io.github.azagniotov.stubby4j.stubs.StubResponse;
-import io.github.azagniotov.stubby4j.utils.StringUtils;
+import io.github.azagniotov.stubby4j.stubs.StubStaticResponse;
+import io.github.azagniotov.stubby4j.stubs.StubTemplate;
 import java.io.File;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.util.Map;
-import java.util.concurrent.TimeUnit;
+import java.util.Optional;
 import javax.servlet.http.HttpServletResponse;
 import org.eclipse.jetty.http.HttpStatus;
+import org.eclipse.jetty.server.HttpOutput;
+import org.eclipse.jetty.util.BufferUtil;
 
 public final class DefaultResponseHandlingStrategy implements StubResponseHandlingStrategy {
 
@@ -42,32 +43,62 @@ public final class DefaultResponseHandlingStrategy implements StubResponseHandli
         this.stubbedResponse = stubbedResponse;
     }
 
+    @Override
+    public long getLatencyMillis() {
+        return stubbedResponse.getLatencyDistribution().sampleMillis();
+    }
+
     @Override
     public void handle(final HttpServletResponse response, final StubRequest assertionStubRequest) throws Exception {
+        final Optional<StubStaticResponse> staticResponse = stubbedResponse.getStaticResponse();
+        if (staticResponse.isPresent()) {
+            handleStaticResponse(response, staticResponse.get());
+            return;
+        }
+
         final Map<String, String> regexGroups = assertionStubRequest.getRegexGroups();
 
         setResponseMainHeaders(response);
         setResponseStubbedHeaders(response, stubbedResponse, regexGroups);
 
-        if (StringUtils.isSet(stubbedResponse.getLatency())) {
-            final long latency = Long.parseLong(stubbedResponse.getLatency());
-            TimeUnit.MILLISECONDS.sleep(latency);
-        }
         response.setStatus(stubbedResponse.getHttpStatusCode().getCode());
 
-        final byte[] responseBody = stubbedResponse.getResponseBodyAsBytes();
         if (stubbedResponse.isFilePathContainsTemplateTokens()) {
-            final String resolvedPath = replaceTokensInString(stubbedResponse.getRawFileAbsolutePath(), regexGroups);
+            final String resolvedPath = stubbedResponse.getCompiledFilePathTemplate().render(regexGroups);
             final File resolvedFile = new File(resolvedPath);
             if (resolvedFile.exists()) {
-                writeOutputStream(response, getBytesUtf8(replaceTokens(fileToBytes(resolvedFile), regexGroups)));
+                // The resolved file is not known until the request is matched, so its template is compiled here
+                final StubTemplate fileTemplate = StubTemplate.compile(newStringUtf8(fileToBytes(resolvedFile)));
+                renderOutputStream(response, fileTemplate, regexGroups);
             } else {
                 response.setStatus(HttpStatus.NOT_FOUND_404);
             }
         } else if (stubbedResponse.isBodyContainsTemplateTokens()) {
-            writeOutputStream(response, getBytesUtf8(replaceTokens(responseBody, regexGroups)));
+            renderOutputStream(response, stubbedResponse.getCompiledBodyTemplate(), regexGroups);
+        } else {
+            writeOutputStream(response, stubbedResponse.getResponseBodyAsBytes());
+        }
+    }
+
+    private void handleStaticResponse(final HttpServletResponse response, final StubStaticResponse staticResponse)
+            throws IOException {
+        setResponseMainHeaders(response);
+        for (final Map.Entry<String, String> headerPair :
+                staticResponse.getHeaders().entrySet()) {
+            response.setHeader(headerPair.getKey(), headerPair.getValue());
+        }
+
+        response.setStatus(stubbedResponse.getHttpStatusCode().getCode());
+
+        final OutputStream outputStream = response.getOutputStream();
+        if (outputStream instanceof HttpOutput) {
+            // Sends the shared read-only body as is, without copying it into a new array first
+            ((HttpOutput) outputStream).sendContent(staticResponse.getBody());
         } else {
-            writeOutputStream(response, responseBody);
+            try (final OutputStream closeable = outputStream) {
+                BufferUtil.writeTo(staticResponse.getBody(), closeable);
+                closeable.flush();
+            }
         }
     }
 
@@ -79,12 +110,21 @@ public final class DefaultResponseHandlingStrategy implements StubResponseHandli
                 stubResponse.getHeaders().entrySet()) {
             String responseHeaderValue = headerPair.getValue();
             if (isTokenized(responseHeaderValue)) {
-                responseHeaderValue = replaceTokensInString(headerPair.getValue(), regexGroups);
+                responseHeaderValue = stubResponse.getCompiledHeaderTemplate(headerPair.getKey()).render(regexGroups);
             }
             response.setHeader(headerPair.getKey(), responseHeaderValue);
         }
     }
 
+    private void renderOutputStream(
+            final HttpServletResponse response, final StubTemplate template, final Map<String, String> regexGroups)
+            throws IOException {
+        try (final OutputStream outputStream = response.getOutputStream()) {
+            template.renderTo(outputStream, regexGroups);
+            outputStream.flush();
+        }
+    }
+
     private void writeOutputStream(final HttpServletResponse response, final byte[] responseBody) throws IOException {
         try (final OutputStream outputStream = response.getOutputStream()) {
             outputStream.write(responseBody);
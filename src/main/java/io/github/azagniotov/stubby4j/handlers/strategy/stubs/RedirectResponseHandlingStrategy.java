@@ -17,14 +17,11 @@
 package io.github.azagniotov.stubby4j.handlers.strategy.stubs;
 
 import static io.github.azagniotov.stubby4j.utils.StringUtils.isTokenized;
-import static io.github.azagniotov.stubby4j.utils.StringUtils.replaceTokensInString;
 
 import io.github.azagniotov.stubby4j.stubs.StubRequest;
 import io.github.azagniotov.stubby4j.stubs.StubResponse;
 import io.github.azagniotov.stubby4j.utils.HandlerUtils;
-import io.github.azagniotov.stubby4j.utils.StringUtils;
 import java.util.Map;
-import java.util.concurrent.TimeUnit;
 import javax.servlet.http.HttpServletResponse;
 import org.eclipse.jetty.http.HttpHeader;
 
@@ -36,19 +33,20 @@ public class RedirectResponseHandlingStrategy implements StubResponseHandlingStr
         this.foundStubResponse = foundStubResponse;
     }
 
+    @Override
+    public long getLatencyMillis() {
+        return foundStubResponse.getLatencyDistribution().sampleMillis();
+    }
+
     @Override
     public void handle(final HttpServletResponse response, final StubRequest assertionStubRequest) throws Exception {
         HandlerUtils.setResponseMainHeaders(response);
         final Map<String, String> regexGroups = assertionStubRequest.getRegexGroups();
 
-        if (StringUtils.isSet(foundStubResponse.getLatency())) {
-            final long latency = Long.parseLong(foundStubResponse.getLatency());
-            TimeUnit.MILLISECONDS.sleep(latency);
-        }
-
         final String headerLocation = foundStubResponse.getHeaders().get("location");
         if (isTokenized(headerLocation)) {
-            response.setHeader(HttpHeader.LOCATION.asString(), replaceTokensInString(headerLocation, regexGroups));
+            final String renderedLocation = foundStubResponse.getCompiledHeaderTemplate("location").render(regexGroups);
+            response.setHeader(HttpHeader.LOCATION.asString(), renderedLocation);
         } else {
             response.setHeader(HttpHeader.LOCATION.asString(), headerLocation);
         }
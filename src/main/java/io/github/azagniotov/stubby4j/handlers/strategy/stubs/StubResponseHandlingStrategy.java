@@ -21,4 +21,12 @@ import javax.servlet.http.HttpServletResponse;
 
 public interface StubResponseHandlingStrategy {
     void handle(final HttpServletResponse response, final StubRequest assertionStubRequest) throws Exception;
+
+    /**
+     * @return stubbed latency in milliseconds, which is waited out before the response is handled, i.e.: without
+     * holding on to a server thread while waiting
+     */
+    default long getLatencyMillis() {
+        return 0L;
+    }
 }
@@ -68,6 +68,8 @@ import org.eclipse.jetty.server.handler.gzip.GzipHandler;
 import org.eclipse.jetty.servlet.ServletContextHandler;
 import org.eclipse.jetty.util.resource.Resource;
 import org.eclipse.jetty.util.ssl.SslContextFactory;
+import org.eclipse.jetty.util.thread.ScheduledExecutorScheduler;
+import org.eclipse.jetty.util.thread.Scheduler;
 import org.eclipse.jetty.websocket.server.NativeWebSocketServletContainerInitializer;
 import org.eclipse.jetty.websocket.server.WebSocketUpgradeFilter;
 import org.slf4j.Logger;
@@ -112,8 +114,13 @@ public final class JettyFactory {
         server.setDumpBeforeStop(false);
         server.setStopAtShutdown(true);
 
+        // Resumes the requests that are suspended for their stubbed latency. As a bean of the server, the scheduler
+        // is started and stopped together with the server
+        final Scheduler latencyScheduler = new ScheduledExecutorScheduler("stubby4j-latency-scheduler", true);
+        server.addBean(latencyScheduler);
+
         server.setConnectors(buildConnectors(server));
-        server.setHandler(constructHandlers());
+        server.setHandler(constructHandlers(latencyScheduler));
 
         // The WebSocketServerContainerInitializer.configureContext() requires knowledge about the Server that it will
         // be run under.
@@ -121,7 +128,7 @@ public final class JettyFactory {
         // attempt to configure the context.
         // https://stackoverflow.com/a/34044984
         // https://stackoverflow.com/questions/34007087/jetty-9-add-websockets-handler-to-handler-list
-        final ContextHandlerCollection contextHandlerCollection = constructHandlers();
+        final ContextHandlerCollection contextHandlerCollection = constructHandlers(latencyScheduler);
         final ServletContextHandler servletContextHandler =
                 new ServletContextHandler(contextHandlerCollection, WS_ROOT_PATH_INFO, ServletContextHandler.SESSIONS);
         servletContextHandler.setErrorHandler(new JsonErrorHandler());
@@ -144,16 +151,22 @@ public final class JettyFactory {
         return server;
     }
 
-    private ContextHandlerCollection constructHandlers() {
+    private ContextHandlerCollection constructHandlers(final Scheduler latencyScheduler) {
 
         final JettyContext jettyContext =
                 new JettyContext(currentHost, currentStubsPort, currentStubsSslPort, currentAdminPort);
         final ContextHandlerCollection handlers = new ContextHandlerCollection();
         handlers.setHandlers(new Handler[] {
             constructHandler(STUBS_CONNECTOR_NAME, "/favicon.ico", gzipHandler(new FaviconHandler())),
-            constructHandler(STUBS_CONNECTOR_NAME, ROOT_PATH_INFO, gzipHandler(new StubsPortalHandler(stubRepository))),
+            constructHandler(
+                    STUBS_CONNECTOR_NAME,
+                    ROOT_PATH_INFO,
+                    gzipHandler(new StubsPortalHandler(stubRepository, latencyScheduler))),
             constructHandler(SSL_CONNECTOR_NAME, "/favicon.ico", gzipHandler(new FaviconHandler())),
-            constructHandler(SSL_CONNECTOR_NAME, ROOT_PATH_INFO, gzipHandler(new StubsPortalHandler(stubRepository))),
+            constructHandler(
+                    SSL_CONNECTOR_NAME,
+                    ROOT_PATH_INFO,
+                    gzipHandler(new StubsPortalHandler(stubRepository, latencyScheduler))),
             constructHandler(
                     ADMIN_CONNECTOR_NAME, "/status", gzipHandler(new StatusPageHandler(jettyContext, stubRepository))),
             constructHandler(ADMIN_CONNECTOR_NAME, "/refresh", new StubDataRefreshActionHandler(stubRepository)),
@@ -21,8 +21,9 @@ import io.github.azagniotov.stubby4j.cli.ANSITerminal;
 import io.github.azagniotov.stubby4j.cli.CommandLineInterpreter;
 import io.github.azagniotov.stubby4j.cli.EmptyLogger;
 import io.github.azagniotov.stubby4j.http.StubbyHttpTransport;
-import io.github.azagniotov.stubby4j.stubs.StubHttpLifecycle;
+import io.github.azagniotov.stubby4j.stubs.StubMatch;
 import io.github.azagniotov.stubby4j.stubs.StubRepository;
+import io.github.azagniotov.stubby4j.utils.ObjectUtils;
 import io.github.azagniotov.stubby4j.yaml.YamlParseResultSet;
 import java.io.File;
 import java.util.Map;
@@ -45,18 +46,25 @@ public class StubbyManagerFactory {
             Log.setLog(new EmptyLogger());
         }
 
-        // TODO BUG: When stubs are cached, upon finding the previously cached match by hashCode,
-        // if stubbed response has template tokens for dynamic token replacement, the tokens are
-        // not replaced with values from the incoming request because the cached stub is not going
-        // through the same matching process like upon the first match. Either fix this bug or just
-        // deprecate the stub caching all together, as it is causing more headaches than not.
-        // Also, deprecate the --disable_stub_caching command line flag if the caching has retired.
         final boolean shouldDisableStubCache =
                 commandLineArgs.containsKey(CommandLineInterpreter.OPTION_DISABLE_STUB_CACHING);
-        final Cache<String, StubHttpLifecycle> stubCache = Cache.stubHttpLifecycleCache(true);
+        final Cache<String, StubMatch> stubCache = Cache.stubMatchCache(shouldDisableStubCache);
 
-        final StubRepository stubRepository =
-                new StubRepository(configFile, stubCache, stubLoadComputation, new StubbyHttpTransport());
+        final Cache<String, Boolean> stubMissCache = Cache.stubMissCache(shouldDisableStubCache);
+
+        final String maxBufferedRequestBodyBytesValue =
+                commandLineArgs.get(CommandLineInterpreter.OPTION_MAX_REQUEST_BODY_BUFFER);
+        final int maxBufferedRequestBodyBytes = ObjectUtils.isNotNull(maxBufferedRequestBodyBytesValue)
+                ? Integer.parseInt(maxBufferedRequestBodyBytesValue)
+                : StubRepository.DEFAULT_MAX_BUFFERED_REQUEST_BODY_BYTES;
+
+        final StubRepository stubRepository = new StubRepository(
+                configFile,
+                stubCache,
+                stubMissCache,
+                stubLoadComputation,
+                new StubbyHttpTransport(),
+                maxBufferedRequestBodyBytes);
         final JettyFactory jettyFactory = new JettyFactory(commandLineArgs, stubRepository);
         final Server server = jettyFactory.construct();
 
@@ -0,0 +1,69 @@
+/*
+ * Copyright (c) 2012-2024 Alexander Zagniotov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.azagniotov.stubby4j.stubs;
+
+import java.util.regex.Pattern;
+
+/**
+ * Read-only view of a regex match subject, which gives the regex engine a limited number of character reads.
+ * <p>
+ * The {@link java.util.regex.Matcher} reads the subject one character at a time via {@link #charAt(int)}, including
+ * every time it backtracks. A pattern with catastrophic backtracking, e.g.: a repeated group like
+ * <code>(.*a){20}</code> in a stubbed JSON body, performs an exponential number of such reads, so counting them bounds
+ * the time that a single match can take. Once the budget is spent, the match is aborted with a {@link
+ * RegexMatchAbortedException}.
+ * <p>
+ * A new instance is created for every match attempt, it is not meant to be shared between threads.
+ */
+final class BudgetedCharSequence implements CharSequence {
+
+    private final String subject;
+    private final Pattern pattern;
+    private long remainingSteps;
+
+    BudgetedCharSequence(final String subject, final Pattern pattern, final long maxSteps) {
+        this.subject = subject;
+        this.pattern = pattern;
+        this.remainingSteps = maxSteps;
+    }
+
+    @Override
+    public char charAt(final int index) {
+        if (--remainingSteps < 0) {
+            throw new RegexMatchAbortedException(String.format(
+                    "Regex '%s' exceeded the matching budget on a %s characters long subject",
+                    pattern.pattern(), subject.length()));
+        }
+        return subject.charAt(index);
+    }
+
+    @Override
+    public int length() {
+        return subject.length();
+    }
+
+    // Used by the matcher to extract the captured regex groups, which does not count towards the budget
+    @Override
+    public CharSequence subSequence(final int start, final int end) {
+        return subject.subSequence(start, end);
+    }
+
+    @Override
+    public String toString() {
+        return subject;
+    }
+}
@@ -0,0 +1,29 @@
+/*
+ * Copyright (c) 2012-2024 Alexander Zagniotov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.azagniotov.stubby4j.stubs;
+
+/**
+ * Thrown when a regex match runs out of its matching budget, see {@link BudgetedCharSequence}. The stub that
+ * was being matched is skipped, as if it did not match.
+ */
+final class RegexMatchAbortedException extends RuntimeException {
+
+    RegexMatchAbortedException(final String message) {
+        // The stack trace does not tell anything that the message does not, so it is not filled in
+        super(message, null, false, false);
+    }
+}
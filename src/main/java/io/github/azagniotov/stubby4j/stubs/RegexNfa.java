@@ -0,0 +1,582 @@
+/*
+ * Copyright (c) 2012-2024 Alexander Zagniotov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.azagniotov.stubby4j.stubs;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * Nondeterministic finite automaton that is compiled out of one or more regex patterns, each of which is tagged
+ * with the ordinal of the stub that it belongs to. The automaton is walked one character at a time, while keeping
+ * track of the set of the states that it is in, so that a single pass over a subject tells which of the patterns
+ * match it, see {@link StubUrlAutomaton}.
+ * <p>
+ * Only the regex constructs that do not need to look back at what was already matched are supported: literals,
+ * character classes, groups, alternations and quantifiers. {@link #parse(String)} turns down a pattern with any
+ * other construct, e.g.: a back reference or a lookaround, which is then left to {@link java.util.regex.Pattern}.
+ * <p>
+ * The automaton never rejects a subject that the pattern matches, but it may accept a subject that the pattern
+ * does not match: anchors and word boundaries are treated as if they always match, the '.' character matches
+ * line terminators too, and lazy and possessive quantifiers are treated as greedy ones. Therefore, the automaton
+ * is only good for narrowing down the candidate stubs, which are then matched the usual way.
+ */
+final class RegexNfa {
+
+    // Upper bound on the states of a single pattern, so that a pattern with large counted repetitions, e.g.:
+    // <code>[a-z]{1,5000}</code>, is left to the java.util.regex.Pattern rather than bloating the automaton
+    private static final int MAX_PATTERN_STATES = 2_000;
+
+    private static final int MAX_CHAR = Character.MAX_VALUE;
+    private static final int[] ANY_CHAR = new int[] {0, MAX_CHAR};
+    private static final int[] DIGITS = new int[] {'0', '9'};
+    private static final int[] WORD_CHARS = new int[] {'0', '9', 'A', 'Z', '_', '_', 'a', 'z'};
+    private static final int[] WHITESPACE_CHARS = new int[] {'\t', '\r', ' ', ' '};
+
+    private static final int SPLIT = 0;
+    private static final int CHARS = 1;
+    private static final int ACCEPT = 2;
+
+    private final int[] kinds;
+    private final int[][] charRanges;
+    private final int[] outs;
+    private final int[] alternativeOuts;
+    private final int[] acceptedOrdinals;
+    private final int start;
+
+    private RegexNfa(final Builder builder, final int start) {
+        this.kinds = builder.kinds.stream().mapToInt(Integer::intValue).toArray();
+        this.charRanges = builder.charRanges.toArray(new int[0][]);
+        this.outs = builder.outs.stream().mapToInt(Integer::intValue).toArray();
+        this.alternativeOuts = builder.alternativeOuts.stream().mapToInt(Integer::intValue).toArray();
+        this.acceptedOrdinals = builder.acceptedOrdinals.stream().mapToInt(Integer::intValue).toArray();
+        this.start = start;
+    }
+
+    /**
+     * @param regex regex pattern, which is expected to be a valid {@link java.util.regex.Pattern} syntax
+     * @return syntax tree of the pattern, or {@code null} if the pattern has a construct that is not supported here
+     */
+    static Node parse(final String regex) {
+        try {
+            final Parser parser = new Parser(regex);
+            final Node node = parser.parseAlternation();
+            if (parser.pos != regex.length() || node.states > MAX_PATTERN_STATES) {
+                return null;
+            }
+            return node;
+        } catch (final UnsupportedSyntaxException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @return syntax tree of a pattern that matches either of the given ones
+     */
+    static Node either(final Node first, final Node second) {
+        return new Alternation(new Node[] {first, second});
+    }
+
+    /**
+     * @return syntax tree of a pattern that matches the given text as is
+     */
+    static Node literal(final String text) {
+        final Node[] nodes = new Node[text.length()];
+        for (int idx = 0; idx < text.length(); idx++) {
+            nodes[idx] = new CharSet(new int[] {text.charAt(idx), text.charAt(idx)});
+        }
+        return new Sequence(nodes);
+    }
+
+    /**
+     * @return states that the automaton is in before it is given any character
+     */
+    BitSet startStates() {
+        return closureOf(new int[] {start}, 1);
+    }
+
+    /**
+     * @return states that the automaton moves to from the given states upon the given character
+     */
+    BitSet step(final BitSet states, final char character) {
+        final int[] nextStates = new int[states.cardinality()];
+        int nextStatesSize = 0;
+        for (int state = states.nextSetBit(0); state >= 0; state = states.nextSetBit(state + 1)) {
+            if (kinds[state] == CHARS && contains(charRanges[state], character)) {
+                nextStates[nextStatesSize++] = outs[state];
+            }
+        }
+        return closureOf(nextStates, nextStatesSize);
+    }
+
+    /**
+     * @return sorted ordinals of the patterns that accept in the given states
+     */
+    int[] acceptedOrdinals(final BitSet states) {
+        int[] ordinals = StubOrdinals.NONE;
+        for (int state = states.nextSetBit(0); state >= 0; state = states.nextSetBit(state + 1)) {
+            if (kinds[state] == ACCEPT) {
+                ordinals = StubOrdinals.insert(ordinals, acceptedOrdinals[state]);
+            }
+        }
+        return ordinals;
+    }
+
+    // Only the states that either take a character or accept are kept in a state set, the splits are followed
+    private BitSet closureOf(final int[] seeds, final int seedsSize) {
+        final BitSet states = new BitSet(kinds.length);
+        final BitSet visitedSplits = new BitSet(kinds.length);
+        int[] pending = Arrays.copyOf(seeds, Math.max(seedsSize, 16));
+        int pendingSize = seedsSize;
+        while (pendingSize > 0) {
+            final int current = pending[--pendingSize];
+            if (kinds[current] != SPLIT) {
+                states.set(current);
+            } else if (!visitedSplits.get(current)) {
+                visitedSplits.set(current);
+                if (pendingSize + 2 > pending.length) {
+                    pending = Arrays.copyOf(pending, pending.length * 2);
+                }
+                pending[pendingSize++] = outs[current];
+                if (alternativeOuts[current] >= 0) {
+                    pending[pendingSize++] = alternativeOuts[current];
+                }
+            }
+        }
+        return states;
+    }
+
+    private static boolean contains(final int[] ranges, final char character) {
+        for (int idx = 0; idx < ranges.length; idx += 2) {
+            if (character < ranges[idx]) {
+                return false;
+            } else if (character <= ranges[idx + 1]) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Combines the syntax trees of the patterns into a single automaton
+     */
+    static final class Builder {
+
+        private final List<Integer> kinds = new ArrayList<>();
+        private final List<int[]> charRanges = new ArrayList<>();
+        private final List<Integer> outs = new ArrayList<>();
+        private final List<Integer> alternativeOuts = new ArrayList<>();
+        private final List<Integer> acceptedOrdinals = new ArrayList<>();
+        private int start = -1;
+
+        /**
+         * @param node syntax tree returned by {@link #parse(String)}
+         * @param ordinal ordinal of the stub that the pattern belongs to
+         */
+        Builder add(final Node node, final int ordinal) {
+            final int accept = addState(ACCEPT, null, -1, -1, ordinal);
+            final int patternStart = compile(node, accept);
+            start = start < 0 ? patternStart : addState(SPLIT, null, patternStart, start, -1);
+            return this;
+        }
+
+        RegexNfa build() {
+            // An automaton without any patterns starts in a state that does not take any character
+            return new RegexNfa(this, start < 0 ? addState(CHARS, new int[0], -1, -1, -1) : start);
+        }
+
+        private int compile(final Node node, final int next) {
+            if (node instanceof CharSet) {
+                return addState(CHARS, ((CharSet) node).ranges, next, -1, -1);
+            } else if (node instanceof Sequence) {
+                final Node[] nodes = ((Sequence) node).nodes;
+                int current = next;
+                for (int idx = nodes.length - 1; idx >= 0; idx--) {
+                    current = compile(nodes[idx], current);
+                }
+                return current;
+            } else if (node instanceof Alternation) {
+                final Node[] nodes = ((Alternation) node).nodes;
+                int current = compile(nodes[nodes.length - 1], next);
+                for (int idx = nodes.length - 2; idx >= 0; idx--) {
+                    current = addState(SPLIT, null, compile(nodes[idx], next), current, -1);
+                }
+                return current;
+            }
+
+            final Repetition repetition = (Repetition) node;
+            int current = next;
+            if (repetition.max < 0) {
+                final int loop = addState(SPLIT, null, -1, next, -1);
+                outs.set(loop, compile(repetition.node, loop));
+                current = loop;
+            } else {
+                for (int idx = repetition.min; idx < repetition.max; idx++) {
+                    current = addState(SPLIT, null, compile(repetition.node, current), next, -1);
+                }
+            }
+            for (int idx = 0; idx < repetition.min; idx++) {
+                current = compile(repetition.node, current);
+            }
+            return current;
+        }
+
+        private int addState(
+                final int kind, final int[] ranges, final int out, final int alternativeOut, final int ordinal) {
+            kinds.add(kind);
+            charRanges.add(ranges);
+            outs.add(out);
+            alternativeOuts.add(alternativeOut);
+            acceptedOrdinals.add(ordinal);
+            return kinds.size() - 1;
+        }
+    }
+
+    /**
+     * Syntax tree of a regex pattern, see {@link #parse(String)}
+     */
+    abstract static class Node {
+        // Number of automaton states that the node compiles into, give or take
+        final int states;
+
+        private Node(final int states) {
+            this.states = states;
+        }
+    }
+
+    private static final class CharSet extends Node {
+        private final int[] ranges;
+
+        private CharSet(final int[] ranges) {
+            super(1);
+            this.ranges = ranges;
+        }
+    }
+
+    private static final class Sequence extends Node {
+        private final Node[] nodes;
+
+        private Sequence(final Node[] nodes) {
+            super(Arrays.stream(nodes).mapToInt(node -> node.states).sum());
+            this.nodes = nodes;
+        }
+    }
+
+    private static final class Alternation extends Node {
+        private final Node[] nodes;
+
+        private Alternation(final Node[] nodes) {
+            super(Arrays.stream(nodes).mapToInt(node -> node.states + 1).sum());
+            this.nodes = nodes;
+        }
+    }
+
+    private static final class Repetition extends Node {
+        private final Node node;
+        private final int min;
+        private final int max;
+
+        private Repetition(final Node node, final int min, final int max) {
+            super((int) Math.min(Integer.MAX_VALUE, (long) (node.states + 1) * Math.max(1, Math.max(min, max))));
+            this.node = node;
+            this.min = min;
+            this.max = max;
+        }
+    }
+
+    private static final class Parser {
+        private final String regex;
+        private int pos;
+
+        private Parser(final String regex) {
+            this.regex = regex;
+            this.pos = 0;
+        }
+
+        private Node parseAlternation() {
+            final List<Node> alternatives = new ArrayList<>();
+            alternatives.add(parseSequence());
+            while (pos < regex.length() && regex.charAt(pos) == '|') {
+                pos++;
+                alternatives.add(parseSequence());
+            }
+            return alternatives.size() == 1
+                    ? alternatives.get(0)
+                    : new Alternation(alternatives.toArray(new Node[0]));
+        }
+
+        private Node parseSequence() {
+            final List<Node> nodes = new ArrayList<>();
+            while (pos < regex.length() && regex.charAt(pos) != '|' && regex.charAt(pos) != ')') {
+                final Node atom = parseAtom();
+                final Node node = parseQuantifier(atom);
+                if (node.states > MAX_PATTERN_STATES) {
+                    throw new UnsupportedSyntaxException();
+                }
+                nodes.add(node);
+            }
+            return new Sequence(nodes.toArray(new Node[0]));
+        }
+
+        private Node parseAtom() {
+            final char character = regex.charAt(pos++);
+            switch (character) {
+                case '(':
+                    if (pos < regex.length() && regex.charAt(pos) == '?') {
+                        // Only a non-capturing group is supported, out of all the special constructs
+                        if (pos + 1 >= regex.length() || regex.charAt(pos + 1) != ':') {
+                            throw new UnsupportedSyntaxException();
+                        }
+                        pos += 2;
+                    }
+                    final Node group = parseAlternation();
+                    expect(')');
+                    return group;
+                case '[':
+                    return new CharSet(parseCharClass());
+                case '.':
+                    return new CharSet(ANY_CHAR);
+                case '^':
+                case '$':
+                    return new Sequence(new Node[0]);
+                case '\\':
+                    return parseEscape();
+                case '{':
+                case '}':
+                case ']':
+                case '*':
+                case '+':
+                case '?':
+                    throw new UnsupportedSyntaxException();
+                default:
+                    return new CharSet(new int[] {character, character});
+            }
+        }
+
+        private Node parseEscape() {
+            final char escaped = next();
+            switch (escaped) {
+                case 'b':
+                case 'B':
+                case 'A':
+                case 'G':
+                case 'z':
+                case 'Z':
+                    return new Sequence(new Node[0]);
+                default:
+                    return new CharSet(escapedRanges(escaped));
+            }
+        }
+
+        private Node parseQuantifier(final Node atom) {
+            if (pos >= regex.length()) {
+                return atom;
+            }
+            final Node quantified;
+            switch (regex.charAt(pos)) {
+                case '*':
+                    pos++;
+                    quantified = new Repetition(atom, 0, -1);
+                    break;
+                case '+':
+                    pos++;
+                    quantified = new Repetition(atom, 1, -1);
+                    break;
+                case '?':
+                    pos++;
+                    quantified = new Repetition(atom, 0, 1);
+                    break;
+                case '{':
+                    pos++;
+                    final int min = parseNumber();
+                    int max = min;
+                    if (peek() == ',') {
+                        pos++;
+                        max = peek() == '}' ? -1 : parseNumber();
+                    }
+                    expect('}');
+                    quantified = new Repetition(atom, min, max);
+                    break;
+                default:
+                    return atom;
+            }
+            // Lazy and possessive quantifiers do not match anything that a greedy one does not
+            if (pos < regex.length() && (regex.charAt(pos) == '?' || regex.charAt(pos) == '+')) {
+                pos++;
+            }
+            return quantified;
+        }
+
+        private int parseNumber() {
+            final int numberStart = pos;
+            while (pos < regex.length() && Character.isDigit(regex.charAt(pos))) {
+                pos++;
+            }
+            if (pos == numberStart || pos - numberStart > 4) {
+                throw new UnsupportedSyntaxException();
+            }
+            return Integer.parseInt(regex.substring(numberStart, pos));
+        }
+
+        private int[] parseCharClass() {
+            final boolean isNegated = pos < regex.length() && regex.charAt(pos) == '^';
+            if (isNegated) {
+                pos++;
+            }
+            if (pos < regex.length() && regex.charAt(pos) == ']') {
+                throw new UnsupportedSyntaxException();
+            }
+
+            int[] ranges = new int[0];
+            while (true) {
+                final char character = next();
+                if (character == ']') {
+                    break;
+                } else if (character == '[' || (character == '&' && peek() == '&')) {
+                    // Unions and intersections of classes
+                    throw new UnsupportedSyntaxException();
+                }
+
+                final int[] lowRanges = character == '\\' ? escapedRanges(next()) : new int[] {character, character};
+                if (peek() == '-' && pos + 1 < regex.length() && regex.charAt(pos + 1) != ']') {
+                    pos++;
+                    final char highCharacter = next();
+                    final int[] highRanges = highCharacter == '\\'
+                            ? escapedRanges(next())
+                            : new int[] {highCharacter, highCharacter};
+                    if (!isSingleChar(lowRanges) || !isSingleChar(highRanges) || highCharacter == '[') {
+                        throw new UnsupportedSyntaxException();
+                    }
+                    ranges = union(ranges, new int[] {lowRanges[0], highRanges[0]});
+                } else {
+                    ranges = union(ranges, lowRanges);
+                }
+            }
+
+            return isNegated ? complement(ranges) : ranges;
+        }
+
+        private static int[] escapedRanges(final char escaped) {
+            switch (escaped) {
+                case 'd':
+                    return DIGITS;
+                case 'D':
+                    return complement(DIGITS);
+                case 'w':
+                    return WORD_CHARS;
+                case 'W':
+                    return complement(WORD_CHARS);
+                case 's':
+                    return WHITESPACE_CHARS;
+                case 'S':
+                    return complement(WHITESPACE_CHARS);
+                case 'n':
+                    return new int[] {'\n', '\n'};
+                case 't':
+                    return new int[] {'\t', '\t'};
+                case 'r':
+                    return new int[] {'\r', '\r'};
+                case 'f':
+                    return new int[] {'\f', '\f'};
+                case 'e':
+                    return new int[] {0x1B, 0x1B};
+                case 'a':
+                    return new int[] {0x07, 0x07};
+                default:
+                    // Any other escaped letter or digit has a special meaning, e.g.: a back reference
+                    if (Character.isLetterOrDigit(escaped)) {
+                        throw new UnsupportedSyntaxException();
+                    }
+                    return new int[] {escaped, escaped};
+            }
+        }
+
+        private char next() {
+            if (pos >= regex.length()) {
+                throw new UnsupportedSyntaxException();
+            }
+            return regex.charAt(pos++);
+        }
+
+        private char peek() {
+            return pos < regex.length() ? regex.charAt(pos) : 0;
+        }
+
+        private void expect(final char expected) {
+            if (next() != expected) {
+                throw new UnsupportedSyntaxException();
+            }
+        }
+    }
+
+    private static boolean isSingleChar(final int[] ranges) {
+        return ranges.length == 2 && ranges[0] == ranges[1];
+    }
+
+    /**
+     * @return sorted, non-overlapping ranges that cover both of the given ones
+     */
+    private static int[] union(final int[] left, final int[] right) {
+        final int[] combined = Arrays.copyOf(left, left.length + right.length);
+        System.arraycopy(right, 0, combined, left.length, right.length);
+
+        final Integer[] rangeStarts = new Integer[combined.length / 2];
+        for (int idx = 0; idx < rangeStarts.length; idx++) {
+            rangeStarts[idx] = idx * 2;
+        }
+        Arrays.sort(rangeStarts, (first, second) -> Integer.compare(combined[first], combined[second]));
+
+        final int[] merged = new int[combined.length];
+        int mergedSize = 0;
+        for (final int rangeStart : rangeStarts) {
+            final int low = combined[rangeStart];
+            final int high = combined[rangeStart + 1];
+            if (mergedSize > 0 && low <= merged[mergedSize - 1] + 1) {
+                merged[mergedSize - 1] = Math.max(merged[mergedSize - 1], high);
+            } else {
+                merged[mergedSize++] = low;
+                merged[mergedSize++] = high;
+            }
+        }
+        return Arrays.copyOf(merged, mergedSize);
+    }
+
+    private static int[] complement(final int[] ranges) {
+        final int[] complemented = new int[ranges.length + 2];
+        int complementedSize = 0;
+        int low = 0;
+        for (int idx = 0; idx < ranges.length; idx += 2) {
+            if (ranges[idx] > low) {
+                complemented[complementedSize++] = low;
+                complemented[complementedSize++] = ranges[idx] - 1;
+            }
+            low = ranges[idx + 1] + 1;
+        }
+        if (low <= MAX_CHAR) {
+            complemented[complementedSize++] = low;
+            complemented[complementedSize++] = MAX_CHAR;
+        }
+        return Arrays.copyOf(complemented, complementedSize);
+    }
+
+    private static final class UnsupportedSyntaxException extends RuntimeException {
+        private UnsupportedSyntaxException() {
+            super(null, null, false, false);
+        }
+    }
+}
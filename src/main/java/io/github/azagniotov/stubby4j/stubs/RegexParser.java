@@ -19,9 +19,7 @@ package io.github.azagniotov.stubby4j.stubs;
 import static io.github.azagniotov.stubby4j.utils.StringUtils.buildToken;
 
 import io.github.azagniotov.stubby4j.annotations.VisibleForTesting;
-import io.github.azagniotov.stubby4j.caching.Cache;
 import java.util.Map;
-import java.util.Optional;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.regex.PatternSyntaxException;
@@ -59,8 +57,17 @@ enum RegexParser {
     static final char[] REGEX_CHARS =
             new char[] {'$', '(', ')', '*', '+', '.', '?', '[', ']', '\\', '^', '{', '|', '}'};
 
-    @VisibleForTesting
-    static final Cache<Integer, Pattern> REGEX_PATTERN_CACHE = Cache.regexPatternCache();
+    // Character reads that a single match may take, see BudgetedCharSequence. A catastrophically backtracking match
+    // of a small subject is aborted in tens of milliseconds
+    static final long MAX_MATCH_STEPS = 10_000_000L;
+
+    // Character reads per subject character that a single match of a large subject may take, see #maxMatchSteps.
+    // A linear match reads every character a few times, e.g.: '.*"id":"(\d+)".*' reads each character about four
+    // times, as the greedy '.*' backtracks all the way to the literal
+    static final long MAX_MATCH_STEPS_PER_CHAR = 16L;
+
+    static final RegexPatternRegistry REGEX_PATTERN_REGISTRY =
+            new RegexPatternRegistry(RegexPatternRegistry.DEFAULT_MAX_SIZE);
 
     private static final boolean[] SPECIAL_CHARS;
     private static final int REGEX_CHAR_LENGTH_THRESHOLD = 2;
@@ -81,6 +88,16 @@ enum RegexParser {
         return potentialRegex(pattern, REGEX_CHAR_LENGTH_THRESHOLD);
     }
 
+    /**
+     * Tests whether a string does not contain a single regex special character, in which case matching it as
+     * a {@link Pattern} is equivalent to a plain {@link String#equals(Object)}.
+     *
+     * @param value to check for absence of regex special characters
+     */
+    static boolean isLiteral(final String value) {
+        return !potentialRegex(value, 1);
+    }
+
     private static boolean potentialRegex(final String pattern, int threshold) {
 
         char[] chars = pattern.toCharArray();
@@ -116,83 +133,140 @@ enum RegexParser {
     }
 
     void compilePatternAndCache(final String value) {
-        int currentFlags = 0;
-        for (int flag : REGEX_FLAGS) {
-            compilePatternAndCache(value, currentFlags |= flag);
+        if (potentialRegex(value)) {
+            compile(value);
         }
     }
 
-    private void compilePatternAndCache(final String value, final int flags) {
-        try {
-            if (potentialRegex(value)) {
-                final int patternHashCodeRegexFlagKey = value.hashCode() + flags;
-                final Pattern computedPattern = Pattern.compile(value, flags);
+    boolean match(
+            final String patternCandidate,
+            final String subject,
+            final String templateTokenName,
+            final Map<String, String> regexGroups) {
+        return match(compile(patternCandidate), subject, templateTokenName, StubTemplateTokens.ALL, regexGroups);
+    }
 
-                REGEX_PATTERN_CACHE.putIfAbsent(patternHashCodeRegexFlagKey, computedPattern);
+    /**
+     * Compiles the given value for the matching passes that can tell apart the outcome of a match, see
+     * {@link #REGEX_FLAGS}. The compiled patterns are meant to be held on to by the caller, e.g.: by a
+     * {@link StubMatchPlan}, instead of being looked up in the {@link #REGEX_PATTERN_REGISTRY} upon every match.
+     * <p>
+     * The {@link Pattern#DOTALL} flag only changes what the '.' character matches, therefore a value without it
+     * is compiled for the {@link Pattern#MULTILINE} pass only. So is a value that is not a valid regex, which is
+     * compiled as a {@link Pattern#LITERAL} instead.
+     *
+     * @param patternCandidate value to compile
+     * @return compiled {@link Pattern patterns}, in the order in which they should be attempted
+     */
+    Pattern[] compile(final String patternCandidate) {
+        final int passes = patternCandidate.indexOf('.') >= 0 ? REGEX_FLAGS.length : 1;
+        final Pattern[] compiledPatterns = new Pattern[passes];
+        int currentFlags = 0;
+        for (int idx = 0; idx < passes; idx++) {
+            currentFlags |= REGEX_FLAGS[idx];
+            try {
+                compiledPatterns[idx] = REGEX_PATTERN_REGISTRY.compile(patternCandidate, currentFlags);
+            } catch (final PatternSyntaxException e) {
+                // We could not compile the pattern, probably because of some unescaped
+                // characters that are special for regex, i.e.: JSON string literal. The flags
+                // do not change the syntax of a pattern, so there is no need for another pass
+                return new Pattern[] {REGEX_PATTERN_REGISTRY.compile(patternCandidate, Pattern.LITERAL)};
             }
-        } catch (final PatternSyntaxException e) {
-            // We could not compile the pattern, probably because of some unescaped
-            // characters that are special for regex, i.e.: JSON string literal
-            compilePatternAndCache(value, Pattern.LITERAL);
         }
+
+        return compiledPatterns;
     }
 
+    /**
+     * Attempts the compiled patterns one after another, until one of them matches. A subject without any line
+     * terminators is matched by the {@link Pattern#DOTALL} pattern if and only if it is matched by the
+     * {@link Pattern#MULTILINE} one (which also captures the same regex groups), so such subject is matched
+     * in a single pass.
+     * <p>
+     * Only the regex groups that are referred to by the given template tokens are put into the regex groups,
+     * the rest of them are neither extracted from the matcher, nor are their names built.
+     *
+     * @param compiledPatterns {@link Pattern patterns} returned by {@link #compile(String)}
+     * @param templateTokens {@link StubTemplateTokens} whose regex groups are captured
+     * @throws RegexMatchAbortedException if a match runs out of its budget, see {@link #maxMatchSteps(String)}
+     */
     boolean match(
-            final String patternCandidate,
+            final Pattern[] compiledPatterns,
             final String subject,
             final String templateTokenName,
+            final StubTemplateTokens templateTokens,
             final Map<String, String> regexGroups) {
-        int currentFlags = 0;
-        for (int flag : REGEX_FLAGS) {
-            if (match(patternCandidate, subject, templateTokenName, regexGroups, currentFlags |= flag)) {
+        if (match(compiledPatterns[0], subject, templateTokenName, templateTokens, regexGroups)) {
+            return true;
+        } else if (compiledPatterns.length == 1 || !containsLineTerminator(subject)) {
+            return false;
+        }
+
+        for (int idx = 1; idx < compiledPatterns.length; idx++) {
+            if (match(compiledPatterns[idx], subject, templateTokenName, templateTokens, regexGroups)) {
                 return true;
             }
         }
         return false;
     }
 
+    /**
+     * The budget grows with the subject, so that a linear match of a multi-megabyte request body is not aborted.
+     *
+     * @return number of character reads that a single match of the given subject may take
+     */
+    static long maxMatchSteps(final String subject) {
+        return Math.max(MAX_MATCH_STEPS, MAX_MATCH_STEPS_PER_CHAR * subject.length());
+    }
+
+    /**
+     * @return whether the subject has any of the characters that '.' does not match unless
+     * {@link Pattern#DOTALL} is set, see {@link Pattern line terminators}
+     */
+    private static boolean containsLineTerminator(final String subject) {
+        for (int idx = 0; idx < subject.length(); idx++) {
+            switch (subject.charAt(idx)) {
+                case '\n':
+                case '\r':
+                case '\u0085':
+                case '\u2028':
+                case '\u2029':
+                    return true;
+                default:
+                    break;
+            }
+        }
+        return false;
+    }
+
     private boolean match(
-            final String patternCandidate,
+            final Pattern compiledPattern,
             final String subject,
             final String templateTokenName,
-            final Map<String, String> regexGroups,
-            final int flags) {
-        try {
-            final Pattern computedPattern = getCachedPatternOrCacheNewCompiled(patternCandidate, flags);
-            final Matcher matcher = computedPattern.matcher(subject);
-            final boolean isMatch = matcher.matches();
-            if (isMatch) {
-                // group(0) holds the full regex matchStubByIndex
+            final StubTemplateTokens templateTokens,
+            final Map<String, String> regexGroups) {
+        final Matcher matcher =
+                compiledPattern.matcher(new BudgetedCharSequence(subject, compiledPattern, maxMatchSteps(subject)));
+        final boolean isMatch = matcher.matches();
+        if (isMatch && templateTokens.isCaptured(templateTokenName)) {
+            // group(0) holds the full regex matchStubByIndex
+            if (templateTokens.isCaptured(templateTokenName, 0)) {
                 regexGroups.put(buildToken(templateTokenName, 0), matcher.group(0));
+            }
 
-                // Matcher.groupCount() returns the number of explicitly defined capturing groups in the pattern
-                // regardless
-                // of whether the capturing groups actually participated in the matchStubByIndex. It does not include
-                // matcher.group(0)
-                final int groupCount = matcher.groupCount();
-                if (groupCount > 0) {
-                    for (int idx = 1; idx <= groupCount; idx++) {
+            // Matcher.groupCount() returns the number of explicitly defined capturing groups in the pattern
+            // regardless
+            // of whether the capturing groups actually participated in the matchStubByIndex. It does not include
+            // matcher.group(0)
+            final int groupCount = matcher.groupCount();
+            if (groupCount > 0) {
+                for (int idx = 1; idx <= groupCount; idx++) {
+                    if (templateTokens.isCaptured(templateTokenName, idx)) {
                         regexGroups.put(buildToken(templateTokenName, idx), matcher.group(idx));
                     }
                 }
             }
-            return isMatch;
-        } catch (final PatternSyntaxException e) {
-            // We could not compile the pattern, probably because of some unescaped
-            // characters that are special for regex, i.e.: JSON string literal
-            return match(patternCandidate, subject, templateTokenName, regexGroups, Pattern.LITERAL);
         }
-    }
-
-    private Pattern getCachedPatternOrCacheNewCompiled(final String patternCandidate, int flags) {
-        final int patternHashCodeRegexFlagKey = patternCandidate.hashCode() + flags;
-        final Optional<Pattern> compiledPatternOptional = REGEX_PATTERN_CACHE.get(patternHashCodeRegexFlagKey);
-
-        return compiledPatternOptional.orElseGet(() -> {
-            final Pattern computedPattern = Pattern.compile(patternCandidate, flags);
-            REGEX_PATTERN_CACHE.putIfAbsent(patternHashCodeRegexFlagKey, computedPattern);
-
-            return computedPattern;
-        });
+        return isMatch;
     }
 }
@@ -0,0 +1,172 @@
+/*
+ * Copyright (c) 2012-2024 Alexander Zagniotov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.azagniotov.stubby4j.stubs;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Bounded registry of compiled regex {@link Pattern patterns}, keyed by the pattern text along with the compile
+ * flags, so that two different patterns can never be mistaken for one another. Entries do not expire: once the
+ * registry is full, the oldest entries are evicted in the order in which they were registered.
+ * <p>
+ * The registry saves on compiling the same pattern over and over, e.g.: when many stubs share a URL regex.
+ * It is not meant to be looked up upon every match: a compiled stub holds on to its own {@link Pattern patterns}
+ * (see {@link StubMatchPlan}), therefore an evicted pattern stays in use for as long as its stub lives.
+ * <p>
+ * Lookups are lock-free. Two threads may compile the same pattern concurrently, in which case the pattern that
+ * was registered first wins, which is harmless since compiled patterns are immutable.
+ */
+public final class RegexPatternRegistry {
+
+    static final int DEFAULT_MAX_SIZE = 500;
+
+    private final int maxSize;
+    private final ConcurrentHashMap<Key, Pattern> patterns;
+    private final Queue<Key> registrationOrder;
+    private final LongAdder hits;
+    private final LongAdder misses;
+    private final LongAdder evictions;
+    private final LongAdder compileNanos;
+
+    RegexPatternRegistry(final int maxSize) {
+        this.maxSize = maxSize;
+        this.patterns = new ConcurrentHashMap<>();
+        this.registrationOrder = new ConcurrentLinkedQueue<>();
+        this.hits = new LongAdder();
+        this.misses = new LongAdder();
+        this.evictions = new LongAdder();
+        this.compileNanos = new LongAdder();
+    }
+
+    /**
+     * @param regex regex pattern to compile
+     * @param flags match flags, see {@link Pattern#compile(String, int)}
+     * @return registered {@link Pattern}, which is compiled and registered if it was not registered yet
+     * @throws PatternSyntaxException if the regex pattern syntax is invalid, such patterns are not registered
+     */
+    Pattern compile(final String regex, final int flags) {
+        final Key key = new Key(regex, flags);
+        final Pattern registered = patterns.get(key);
+        if (registered != null) {
+            hits.increment();
+            return registered;
+        }
+
+        misses.increment();
+        final long compileStart = System.nanoTime();
+        try {
+            final Pattern compiled = Pattern.compile(regex, flags);
+            final Pattern raced = patterns.putIfAbsent(key, compiled);
+            if (raced != null) {
+                return raced;
+            }
+
+            registrationOrder.offer(key);
+            evictOverflow();
+
+            return compiled;
+        } finally {
+            compileNanos.add(System.nanoTime() - compileStart);
+        }
+    }
+
+    private void evictOverflow() {
+        while (patterns.size() > maxSize) {
+            final Key eldest = registrationOrder.poll();
+            if (eldest == null) {
+                return;
+            }
+            if (patterns.remove(eldest) != null) {
+                evictions.increment();
+            }
+        }
+    }
+
+    void clear() {
+        patterns.clear();
+        registrationOrder.clear();
+    }
+
+    /**
+     * @return number of currently registered patterns
+     */
+    public int size() {
+        return patterns.size();
+    }
+
+    /**
+     * @return number of lookups that found an already registered pattern
+     */
+    public long getHits() {
+        return hits.sum();
+    }
+
+    /**
+     * @return number of lookups that had to compile the pattern, including the patterns that failed to compile
+     */
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * @return number of patterns that were evicted to keep the registry within its size bound
+     */
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    /**
+     * @return total time spent compiling patterns, in nanoseconds
+     */
+    public long getCompileNanos() {
+        return compileNanos.sum();
+    }
+
+    private static final class Key {
+        private final String regex;
+        private final int flags;
+        private final int hashCode;
+
+        private Key(final String regex, final int flags) {
+            this.regex = regex;
+            this.flags = flags;
+            this.hashCode = 31 * regex.hashCode() + flags;
+        }
+
+        @Override
+        public boolean equals(final Object that) {
+            if (this == that) {
+                return true;
+            } else if (!(that instanceof Key)) {
+                return false;
+            }
+            final Key other = (Key) that;
+
+            return flags == other.flags && regex.equals(other.regex);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+    }
+}
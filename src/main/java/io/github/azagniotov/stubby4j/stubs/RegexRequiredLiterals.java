@@ -0,0 +1,226 @@
+/*
+ * Copyright (c) 2012-2024 Alexander Zagniotov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.azagniotov.stubby4j.stubs;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Extracts the literal fragments that every subject matched by a regex {@link Pattern} must contain, e.g.: the
+ * pattern <code>^/api/v2/orders/(\d+)/items$</code> can only ever match a subject that contains both
+ * <code>/api/v2/orders/</code> and <code>/items</code>. Checking for these fragments with a plain
+ * {@link String#indexOf(String)} rejects most of the non-matching subjects before the regex engine is invoked.
+ * <p>
+ * The extraction is conservative: only the fragments outside of any group, character class or optional quantifier
+ * are extracted, and a pattern with an alternation, an inline flag or an escape sequence that is not understood
+ * here does not yield any fragments at all. Missing out on a fragment only costs a regex evaluation, while
+ * extracting a fragment that is not actually required would fail a legitimate match.
+ */
+final class RegexRequiredLiterals {
+
+    static final String[] NONE = new String[0];
+
+    // Escaped letters that stand for a character class, an anchor or a single control character, none of which
+    // consume any of the characters that follow them in the pattern
+    private static final String SIMPLE_ESCAPES = "dDwWsSbBAzZGhHvVRXntrfea";
+
+    private RegexRequiredLiterals() {}
+
+    /**
+     * @param compiledPattern compiled regex pattern, see {@link RegexParser#compile(String)}
+     * @return literal fragments that a subject must contain to match the pattern, longest first
+     */
+    static String[] of(final Pattern compiledPattern) {
+        if ((compiledPattern.flags() & Pattern.LITERAL) != 0) {
+            return compiledPattern.pattern().isEmpty() ? NONE : new String[] {compiledPattern.pattern()};
+        }
+        final List<String> literals = extract(compiledPattern.pattern());
+        if (literals == null || literals.isEmpty()) {
+            return NONE;
+        }
+        literals.sort(Comparator.comparingInt(String::length).reversed());
+
+        return literals.toArray(NONE);
+    }
+
+    /**
+     * @return literal fragments, or {@code null} if the pattern has a construct that is not understood here
+     */
+    private static List<String> extract(final String regex) {
+        if (regex.indexOf('|') >= 0 || regex.contains("(?") || regex.contains("\\Q")) {
+            return null;
+        }
+
+        final List<String> literals = new ArrayList<>();
+        final StringBuilder currentLiteral = new StringBuilder();
+        int idx = 0;
+        while (idx < regex.length()) {
+            final char character = regex.charAt(idx);
+            final int atomEnd;
+            Character literal = null;
+            if (character == '\\') {
+                if (idx + 1 >= regex.length()) {
+                    return null;
+                }
+                final char escaped = regex.charAt(idx + 1);
+                if (Character.isLetterOrDigit(escaped)) {
+                    if (SIMPLE_ESCAPES.indexOf(escaped) < 0) {
+                        return null;
+                    }
+                } else {
+                    literal = escaped;
+                }
+                atomEnd = idx + 2;
+            } else if (character == '[') {
+                atomEnd = skipCharacterClass(regex, idx);
+            } else if (character == '(') {
+                atomEnd = skipGroup(regex, idx);
+            } else if (character == '.' || character == '^' || character == '$') {
+                atomEnd = idx + 1;
+            } else if (RegexParser.isLiteral(String.valueOf(character))) {
+                literal = character;
+                atomEnd = idx + 1;
+            } else {
+                // A quantifier without anything to repeat, or an unbalanced bracket
+                return null;
+            }
+            if (atomEnd < 0) {
+                return null;
+            }
+
+            final int quantifierEnd = skipQuantifier(regex, atomEnd);
+            if (quantifierEnd < 0) {
+                return null;
+            }
+            final boolean isQuantified = quantifierEnd > atomEnd;
+            final boolean isRequired = !isQuantified || regex.charAt(atomEnd) == '+';
+            if (literal != null && isRequired) {
+                currentLiteral.append(literal.charValue());
+            }
+            if (literal == null || isQuantified) {
+                // The fragment cannot go on past an atom that is not a literal character, or that can repeat
+                flush(currentLiteral, literals);
+            }
+            idx = quantifierEnd;
+        }
+        flush(currentLiteral, literals);
+
+        return literals;
+    }
+
+    private static void flush(final StringBuilder currentLiteral, final List<String> literals) {
+        if (currentLiteral.length() > 0) {
+            literals.add(currentLiteral.toString());
+            currentLiteral.setLength(0);
+        }
+    }
+
+    /**
+     * @return index right after the quantifier (along with its lazy or possessive suffix) that starts at the given
+     * index, the given index itself if there is no quantifier there, or -1 if the quantifier is malformed
+     */
+    private static int skipQuantifier(final String regex, final int idx) {
+        if (idx >= regex.length()) {
+            return idx;
+        }
+        int quantifierEnd;
+        switch (regex.charAt(idx)) {
+            case '*':
+            case '+':
+            case '?':
+                quantifierEnd = idx + 1;
+                break;
+            case '{':
+                final int closingIdx = regex.indexOf('}', idx);
+                if (closingIdx < 0) {
+                    return -1;
+                }
+                quantifierEnd = closingIdx + 1;
+                break;
+            default:
+                return idx;
+        }
+        if (quantifierEnd < regex.length()
+                && (regex.charAt(quantifierEnd) == '?' || regex.charAt(quantifierEnd) == '+')) {
+            quantifierEnd++;
+        }
+
+        return quantifierEnd;
+    }
+
+    /**
+     * @return index right after the character class that starts at the given index, or -1 if it is not closed
+     */
+    private static int skipCharacterClass(final String regex, final int idx) {
+        int depth = 0;
+        int current = idx;
+        while (current < regex.length()) {
+            final char character = regex.charAt(current);
+            if (character == '\\') {
+                current += 2;
+                continue;
+            }
+            if (character == '[') {
+                depth++;
+                // A closing bracket right after the opening one (or after the negation) is a literal member
+                if (current + 1 < regex.length() && regex.charAt(current + 1) == '^') {
+                    current++;
+                }
+                if (current + 1 < regex.length() && regex.charAt(current + 1) == ']') {
+                    current++;
+                }
+            } else if (character == ']' && --depth == 0) {
+                return current + 1;
+            }
+            current++;
+        }
+
+        return -1;
+    }
+
+    /**
+     * @return index right after the group that starts at the given index, or -1 if it is not closed
+     */
+    private static int skipGroup(final String regex, final int idx) {
+        int depth = 0;
+        int current = idx;
+        while (current < regex.length()) {
+            final char character = regex.charAt(current);
+            if (character == '\\') {
+                current += 2;
+                continue;
+            }
+            if (character == '[') {
+                current = skipCharacterClass(regex, current);
+                if (current < 0) {
+                    return -1;
+                }
+                continue;
+            }
+            if (character == '(') {
+                depth++;
+            } else if (character == ')' && --depth == 0) {
+                return current + 1;
+            }
+            current++;
+        }
+
+        return -1;
+    }
+}
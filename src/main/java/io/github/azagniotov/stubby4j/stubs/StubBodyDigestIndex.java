@@ -0,0 +1,134 @@
+/*
+ * Copyright (c) 2012-2024 Alexander Zagniotov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.azagniotov.stubby4j.stubs;
+
+import io.github.azagniotov.stubby4j.utils.StringUtils;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable index of stubs with a literal stubbed request body (i.e.: a <code>post</code> or a <code>file</code>
+ * request body without any regex special characters), keyed on the digest of the body.
+ * <p>
+ * Unless the incoming request body is XML, which is compared for similarity rather than for equality, a literal
+ * stubbed body can only ever match an identical incoming body: it is compared with a plain
+ * {@link String#equals(Object)}, and a literal JSON payload (e.g.: a quoted string) is compared by its text too.
+ * Therefore, an incoming request body is resolved to the indexed stubs with one digest and one map lookup.
+ * <p>
+ * The digests are computed on the bodies after the line separator normalization, which {@link
+ * StubRequest#getPostBody()} applies the same way to the stubbed and the incoming request bodies.
+ */
+final class StubBodyDigestIndex {
+
+    private static final String XML_SUB_TYPE = "xml";
+
+    static final StubBodyDigestIndex EMPTY = new StubBodyDigestIndex(Collections.emptyMap(), new BitSet());
+
+    private final Map<String, int[]> ordinalsByDigest;
+    private final BitSet indexedOrdinals;
+
+    private StubBodyDigestIndex(final Map<String, int[]> ordinalsByDigest, final BitSet indexedOrdinals) {
+        this.ordinalsByDigest = ordinalsByDigest;
+        this.indexedOrdinals = indexedOrdinals;
+    }
+
+    /**
+     * @param stubs stubs, where the list position of a stub is its ordinal
+     * @return a new {@link StubBodyDigestIndex}
+     */
+    static StubBodyDigestIndex build(final List<StubHttpLifecycle> stubs) {
+        final Map<String, int[]> ordinalsByDigest = new HashMap<>();
+        final BitSet indexedOrdinals = new BitSet(stubs.size());
+        for (int ordinal = 0; ordinal < stubs.size(); ordinal++) {
+            final String digest = digestOf(stubs.get(ordinal));
+            if (digest != null) {
+                // Ordinals are added in ascending order while building, so appending keeps them sorted
+                final int[] ordinals = ordinalsByDigest.getOrDefault(digest, StubOrdinals.NONE);
+                final int[] appended = Arrays.copyOf(ordinals, ordinals.length + 1);
+                appended[ordinals.length] = ordinal;
+                ordinalsByDigest.put(digest, appended);
+                indexedOrdinals.set(ordinal);
+            }
+        }
+
+        return new StubBodyDigestIndex(Collections.unmodifiableMap(ordinalsByDigest), indexedOrdinals);
+    }
+
+    StubBodyDigestIndex withStub(final int ordinal, final StubHttpLifecycle stub) {
+        final String digest = digestOf(stub);
+        if (digest == null) {
+            return this;
+        }
+
+        final Map<String, int[]> copy = new HashMap<>(ordinalsByDigest);
+        copy.put(digest, StubOrdinals.insert(copy.getOrDefault(digest, StubOrdinals.NONE), ordinal));
+        final BitSet nextIndexedOrdinals = (BitSet) indexedOrdinals.clone();
+        nextIndexedOrdinals.set(ordinal);
+
+        return new StubBodyDigestIndex(Collections.unmodifiableMap(copy), nextIndexedOrdinals);
+    }
+
+    StubBodyDigestIndex withoutStub(final int ordinal, final StubHttpLifecycle stub) {
+        final String digest = digestOf(stub);
+        if (digest == null) {
+            return this;
+        }
+
+        final Map<String, int[]> copy = new HashMap<>(ordinalsByDigest);
+        final int[] remaining = StubOrdinals.remove(copy.getOrDefault(digest, StubOrdinals.NONE), ordinal);
+        if (remaining.length == 0) {
+            copy.remove(digest);
+        } else {
+            copy.put(digest, remaining);
+        }
+        final BitSet nextIndexedOrdinals = (BitSet) indexedOrdinals.clone();
+        nextIndexedOrdinals.clear(ordinal);
+
+        return new StubBodyDigestIndex(Collections.unmodifiableMap(copy), nextIndexedOrdinals);
+    }
+
+    /**
+     * @param candidates ordinals (in ascending order) of the stubs that are candidates for the incoming request
+     * @param incomingRequest incoming {@link StubRequest}
+     * @return given candidates, less the indexed stubs whose stubbed body differs from the incoming one
+     */
+    int[] filter(final int[] candidates, final StubRequest incomingRequest) {
+        if (ordinalsByDigest.isEmpty()
+                || XML_SUB_TYPE.equals(incomingRequest.getContentSubType())
+                || !StubOrdinals.anyIndexed(candidates, indexedOrdinals)) {
+            return candidates;
+        }
+
+        final int[] matchingOrdinals =
+                ordinalsByDigest.getOrDefault(incomingRequest.getPostBodyDigest(), StubOrdinals.NONE);
+
+        return StubOrdinals.retain(candidates, indexedOrdinals, matchingOrdinals);
+    }
+
+    private static String digestOf(final StubHttpLifecycle stub) {
+        final StubMatchPlan matchPlan = stub.getRequest().getMatchPlan();
+        if (!matchPlan.isRequestBodyStubbed() || !RegexParser.isLiteral(matchPlan.getPostBody())) {
+            return null;
+        }
+
+        return StringUtils.sha256Base16(matchPlan.getPostBody());
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright (c) 2012-2024 Alexander Zagniotov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.azagniotov.stubby4j.stubs;
+
+import static io.github.azagniotov.stubby4j.utils.StringUtils.getBytesUtf8;
+import static org.xmlunit.builder.Input.fromByteArray;
+
+import io.github.azagniotov.stubby4j.cli.ANSITerminal;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.json.JSONString;
+import org.skyscreamer.jsonassert.JSONCompare;
+import org.skyscreamer.jsonassert.JSONCompareMode;
+import org.skyscreamer.jsonassert.JSONCompareResult;
+import org.skyscreamer.jsonassert.JSONParser;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.w3c.dom.Document;
+import org.xmlunit.util.Convert;
+
+/**
+ * Parses request body payloads into trees that can be compared without parsing the payloads again, e.g.: a stubbed
+ * JSON body is parsed once when its stub is loaded, and an incoming JSON body once per incoming request.
+ * <p>
+ * A payload that cannot be parsed yields {@code null}, which tells the {@link StubMatcher} to fall back to regex
+ * matching straight away.
+ */
+final class StubBodyParser {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(StubBodyParser.class);
+    private static final char BYTE_ORDER_MARK = '\uFEFF';
+
+    private StubBodyParser() {}
+
+    /**
+     * @param json JSON payload
+     * @return {@link JSONObject}, {@link JSONArray} or {@link JSONString}, as parsed by {@link JSONParser}, or
+     * {@code null} if the payload is not a valid JSON, e.g.: when a stubbed JSON body is a regex pattern
+     */
+    static Object parseJson(final String json) {
+        try {
+            return JSONParser.parseJSON(json);
+        } catch (final JSONException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @param xml XML payload
+     * @return {@link Document} parsed by XMLUnit the same way it parses the compared sources, or {@code null}
+     * if the payload is not a well-formed XML
+     */
+    static Document parseXml(final String xml) {
+        try {
+            return Convert.toDocument(fromByteArray(getBytesUtf8(xml)).build());
+        } catch (final Exception e) {
+            // A common exception that I have seen to happen is:
+            // org.xmlunit.XMLUnitException: The markup in the document preceding the root element must be well-formed.
+
+            ANSITerminal.error(String.format("Failed to parse XML markup: %s, cause: %s", e, e.getCause()));
+            LOGGER.error("Failed to parse XML markup: {}, cause: {}", e, e.getCause());
+
+            return null;
+        }
+    }
+
+    /**
+     * Cheap check that saves on parsing (and on logging the parsing failure of) a payload that cannot possibly be
+     * an XML, e.g.: a stubbed JSON body.
+     */
+    static boolean isPotentialXml(final String payload) {
+        for (int idx = 0; idx < payload.length(); idx++) {
+            final char character = payload.charAt(idx);
+            if (character != BYTE_ORDER_MARK && !Character.isWhitespace(character)) {
+                return character == '<';
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Compares two JSON trees returned by {@link #parseJson(String)}, exactly like
+     * {@link JSONCompare#compareJSON(String, String, JSONCompareMode)} compares the payloads that it parses.
+     */
+    static boolean jsonTreesMatch(final Object stubbedJson, final Object assertingJson, final JSONCompareMode mode)
+            throws JSONException {
+        final JSONCompareResult result;
+        if (stubbedJson instanceof JSONObject && assertingJson instanceof JSONObject) {
+            result = JSONCompare.compareJSON((JSONObject) stubbedJson, (JSONObject) assertingJson, mode);
+        } else if (stubbedJson instanceof JSONArray && assertingJson instanceof JSONArray) {
+            result = JSONCompare.compareJSON((JSONArray) stubbedJson, (JSONArray) assertingJson, mode);
+        } else if (stubbedJson instanceof JSONString && assertingJson instanceof JSONString) {
+            result = JSONCompare.compareJson((JSONString) stubbedJson, (JSONString) assertingJson);
+        } else {
+            return false;
+        }
+
+        return result.passed();
+    }
+}
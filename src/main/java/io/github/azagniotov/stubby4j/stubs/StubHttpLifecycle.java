@@ -30,7 +30,7 @@ import java.util.concurrent.atomic.AtomicInteger;
 
 public class StubHttpLifecycle implements ReflectableStub {
 
-    private final AtomicInteger responseSequencedIdCounter = new AtomicInteger(0);
+    private final AtomicInteger responseSequencedIdCounter;
 
     private final String completeYAML;
     private final StubRequest request;
@@ -39,6 +39,7 @@ public class StubHttpLifecycle implements ReflectableStub {
     private final String responseAsYAML;
     private final String description;
     private final String uuid;
+    private final StubTemplateTokens templateTokens;
 
     private StubHttpLifecycle(
             final StubRequest request,
@@ -48,6 +49,7 @@ public class StubHttpLifecycle implements ReflectableStub {
             final String completeYAML,
             final String description,
             final String uuid) {
+        this.responseSequencedIdCounter = new AtomicInteger(0);
         this.request = request;
         this.response = response;
         this.requestAsYAML = requestAsYAML;
@@ -55,6 +57,23 @@ public class StubHttpLifecycle implements ReflectableStub {
         this.completeYAML = completeYAML;
         this.description = description;
         this.uuid = uuid;
+        // Looked up once, when the stub is built. The copies with another resource ID keep the tokens, since the
+        // resource ID header is a plain number. A recording response gets its recorded body only once the stub
+        // is matched, which does not change the tokens either
+        this.templateTokens = StubTemplateTokens.of(getResponses());
+    }
+
+    // The copy carries on with the sequenced responses of the original, see #withResourceId(int)
+    private StubHttpLifecycle(final StubHttpLifecycle original, final Object response) {
+        this.responseSequencedIdCounter = original.responseSequencedIdCounter;
+        this.request = original.request;
+        this.response = response;
+        this.requestAsYAML = original.requestAsYAML;
+        this.responseAsYAML = original.responseAsYAML;
+        this.completeYAML = original.completeYAML;
+        this.description = original.description;
+        this.uuid = original.uuid;
+        this.templateTokens = original.templateTokens;
     }
 
     public StubRequest getRequest() {
@@ -92,6 +111,14 @@ public class StubHttpLifecycle implements ReflectableStub {
         return asCheckedLinkedList(this.response, StubResponse.class);
     }
 
+    /**
+     * @return template tokens that the stubbed responses refer to, which tell what regex groups to capture when
+     * an incoming request is matched to this stub
+     */
+    StubTemplateTokens getTemplateTokens() {
+        return templateTokens;
+    }
+
     boolean isAuthorizationRequired() {
         return request.isSecured();
     }
@@ -115,8 +142,41 @@ public class StubHttpLifecycle implements ReflectableStub {
         return getResponses().get(0).getResourceIDHeader();
     }
 
-    void setResourceId(final int resourceId) {
-        getResponses().forEach(response -> response.addResourceIDHeader(resourceId));
+    /**
+     * @return whether all the responses of this stub carry the given resource ID
+     */
+    boolean hasResourceId(final int resourceId) {
+        final String resourceIDHeader = String.valueOf(resourceId);
+        for (final StubResponse stubResponse : getResponses()) {
+            if (!resourceIDHeader.equals(stubResponse.getResourceIDHeader())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * This stub is left as is, since it may still be matched by the threads that read the published
+     * {@link StubRepositorySnapshot}. The copy matches the same requests, as it shares the stubbed request
+     * along with its match plan.
+     *
+     * @param resourceId new resource ID, i.e.: position of the stub in the next snapshot
+     * @return copy of this stub whose responses carry the given resource ID
+     */
+    StubHttpLifecycle withResourceId(final int resourceId) {
+        return new StubHttpLifecycle(this, withResourceIDHeaders(response, resourceId));
+    }
+
+    private static Object withResourceIDHeaders(final Object response, final int resourceId) {
+        if (response instanceof StubResponse) {
+            return ((StubResponse) response).withResourceIDHeader(resourceId);
+        }
+
+        final List<StubResponse> copiedResponses = new LinkedList<>();
+        for (final StubResponse stubResponse : asCheckedLinkedList(response, StubResponse.class)) {
+            copiedResponses.add(stubResponse.withResourceIDHeader(resourceId));
+        }
+        return copiedResponses;
     }
 
     /**
@@ -192,7 +252,7 @@ public class StubHttpLifecycle implements ReflectableStub {
 
         final StubHttpLifecycle that = (StubHttpLifecycle) o;
         // The 'this' is actually the incoming asserting StubRequest, the 'that' is the stubbed one
-        return this.request.equals(that.request);
+        return this.request.matches(that.request, that.getTemplateTokens());
     }
 
     public static class Builder {
@@ -249,7 +309,7 @@ public class StubHttpLifecycle implements ReflectableStub {
         }
 
         public Builder withResourceId(final int resourceId) {
-            getResponses().forEach(response -> response.addResourceIDHeader(resourceId));
+            this.response = withResourceIDHeaders(response, resourceId);
 
             return this;
         }
@@ -280,12 +340,5 @@ public class StubHttpLifecycle implements ReflectableStub {
 
             return stubHttpLifecycle;
         }
-
-        private List<StubResponse> getResponses() {
-            if (response instanceof StubResponse) {
-                return new LinkedList<>(Collections.singletonList((StubResponse) response));
-            }
-            return asCheckedLinkedList(this.response, StubResponse.class);
-        }
     }
 }
@@ -0,0 +1,296 @@
+/*
+ * Copyright (c) 2012-2024 Alexander Zagniotov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.azagniotov.stubby4j.stubs;
+
+import static io.github.azagniotov.stubby4j.utils.StringUtils.isSet;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Immutable set of indexes over the loaded stubs, used to narrow down the stubs that have to be evaluated
+ * by the {@link StubMatcher} for a given incoming request.
+ * <p>
+ * Every indexed stub is assigned an ordinal. Ordinals preserve the order in which the stubs were defined in the
+ * YAML, but they are not the same thing as stub resource IDs: when a stub is deleted its ordinal is retired
+ * rather than having all the ordinals after it shifted, so that a deletion does not require re-indexing
+ * the whole stub list. Retired ordinals are reclaimed once they outnumber the live ones.
+ * <p>
+ * Before the URL index is looked up, the incoming route (i.e.: HTTP method and URL) is checked against a
+ * {@link StubRouteFilter}, so that requests to URLs that no stub defines, e.g.: health checks, are narrowed down to
+ * the stubs with a regex URL (if any) without walking the URL index.
+ * <p>
+ * The stubs that are left are narrowed down further: stubs with literal header or query param values are looked
+ * up by the incoming values, see {@link StubMappingValueIndex}. Only then the incoming request body is looked at,
+ * and only if any of the stubs that are left has a stubbed request body: stubs with a literal stubbed body are
+ * looked up by the body digest, see {@link StubBodyDigestIndex}, and stubs with a stubbed JSON body are looked up
+ * by the value of a discriminator field, see {@link StubJsonFieldIndex}.
+ * <p>
+ * The index also keeps track of the names of the headers that are referenced by the indexed stubs, which tells
+ * what part of the incoming request headers can affect the matching, see {@link StubMatchCacheKey}.
+ */
+final class StubIndex {
+
+    // The content type of the incoming request decides how the request body is matched
+    private static final String HEADER_CONTENT_TYPE = "content-type";
+
+    static final StubIndex EMPTY = new StubIndex(
+            new StubHttpLifecycle[] {},
+            0,
+            StubUrlIndex.EMPTY,
+            StubRouteFilter.EMPTY,
+            StubBodyDigestIndex.EMPTY,
+            StubJsonFieldIndex.EMPTY,
+            StubMappingValueIndex.empty(StubMappingValueIndex.Mapping.HEADERS),
+            StubMappingValueIndex.empty(StubMappingValueIndex.Mapping.QUERY),
+            matchedHeaderNamesOf(Collections.emptyList()));
+
+    private final StubHttpLifecycle[] stubsByOrdinal;
+    private final int retiredOrdinals;
+    private final StubUrlIndex urlIndex;
+    private final StubRouteFilter routeFilter;
+    private final StubBodyDigestIndex bodyDigestIndex;
+    private final StubJsonFieldIndex jsonFieldIndex;
+    private final StubMappingValueIndex headerValueIndex;
+    private final StubMappingValueIndex queryValueIndex;
+    private final Set<String> matchedHeaderNames;
+
+    private StubIndex(
+            final StubHttpLifecycle[] stubsByOrdinal,
+            final int retiredOrdinals,
+            final StubUrlIndex urlIndex,
+            final StubRouteFilter routeFilter,
+            final StubBodyDigestIndex bodyDigestIndex,
+            final StubJsonFieldIndex jsonFieldIndex,
+            final StubMappingValueIndex headerValueIndex,
+            final StubMappingValueIndex queryValueIndex,
+            final Set<String> matchedHeaderNames) {
+        this.stubsByOrdinal = stubsByOrdinal;
+        this.retiredOrdinals = retiredOrdinals;
+        this.urlIndex = urlIndex;
+        this.routeFilter = routeFilter;
+        this.bodyDigestIndex = bodyDigestIndex;
+        this.jsonFieldIndex = jsonFieldIndex;
+        this.headerValueIndex = headerValueIndex;
+        this.queryValueIndex = queryValueIndex;
+        this.matchedHeaderNames = matchedHeaderNames;
+    }
+
+    static StubIndex build(final List<StubHttpLifecycle> stubs) {
+        final StubHttpLifecycle[] stubsByOrdinal = stubs.toArray(new StubHttpLifecycle[0]);
+        final List<String> stubbedUrls = new ArrayList<>(stubsByOrdinal.length);
+        for (final StubHttpLifecycle stub : stubsByOrdinal) {
+            stubbedUrls.add(stubbedUrlOf(stub));
+        }
+
+        return new StubIndex(
+                stubsByOrdinal,
+                0,
+                StubUrlIndex.build(stubbedUrls),
+                StubRouteFilter.build(stubs),
+                StubBodyDigestIndex.build(stubs),
+                StubJsonFieldIndex.build(stubs),
+                StubMappingValueIndex.build(stubs, StubMappingValueIndex.Mapping.HEADERS),
+                StubMappingValueIndex.build(stubs, StubMappingValueIndex.Mapping.QUERY),
+                matchedHeaderNamesOf(stubs));
+    }
+
+    /**
+     * Re-indexes the replacement stub under the ordinal of the obsolete one, so that the replacement
+     * keeps the same position relative to the rest of the stubs.
+     */
+    StubIndex replace(final StubHttpLifecycle obsolete, final StubHttpLifecycle replacement) {
+        final int ordinal = ordinalOf(obsolete);
+        final StubHttpLifecycle[] copy = Arrays.copyOf(stubsByOrdinal, stubsByOrdinal.length);
+        copy[ordinal] = replacement;
+
+        final StubUrlIndex nextUrlIndex =
+                urlIndex.withoutUrl(ordinal, stubbedUrlOf(obsolete)).withUrl(ordinal, stubbedUrlOf(replacement));
+
+        // Header names of the obsolete stub are kept: a superset of the matched header names is still correct
+        final Set<String> nextMatchedHeaderNames = new TreeSet<>(matchedHeaderNames);
+        nextMatchedHeaderNames.addAll(replacement.getRequest().getHeaders().keySet());
+
+        return new StubIndex(
+                copy,
+                retiredOrdinals,
+                nextUrlIndex,
+                routeFilter.with(replacement),
+                bodyDigestIndex.withoutStub(ordinal, obsolete).withStub(ordinal, replacement),
+                jsonFieldIndex.withoutStub(ordinal, obsolete).withStub(ordinal, replacement),
+                headerValueIndex.withoutStub(ordinal, obsolete).withStub(ordinal, replacement),
+                queryValueIndex.withoutStub(ordinal, obsolete).withStub(ordinal, replacement),
+                Collections.unmodifiableSet(nextMatchedHeaderNames));
+    }
+
+    StubIndex remove(final StubHttpLifecycle removed) {
+        final int ordinal = ordinalOf(removed);
+        final StubHttpLifecycle[] copy = Arrays.copyOf(stubsByOrdinal, stubsByOrdinal.length);
+        copy[ordinal] = null;
+
+        final int nextRetiredOrdinals = retiredOrdinals + 1;
+        if (nextRetiredOrdinals > copy.length - nextRetiredOrdinals) {
+            return build(liveStubs(copy));
+        }
+
+        return new StubIndex(
+                copy,
+                nextRetiredOrdinals,
+                urlIndex.withoutUrl(ordinal, stubbedUrlOf(removed)),
+                routeFilter,
+                bodyDigestIndex.withoutStub(ordinal, removed),
+                jsonFieldIndex.withoutStub(ordinal, removed),
+                headerValueIndex.withoutStub(ordinal, removed),
+                queryValueIndex.withoutStub(ordinal, removed),
+                matchedHeaderNames);
+    }
+
+    /**
+     * Swaps the stubs for their copies, which differ from the stubs only by the resource ID, see
+     * {@link StubHttpLifecycle#withResourceId(int)}. Since the copies match the same requests, they keep the
+     * ordinals of the stubs and nothing is re-indexed.
+     *
+     * @param copies stubs to their copies, keyed by identity
+     */
+    StubIndex withCopies(final Map<StubHttpLifecycle, StubHttpLifecycle> copies) {
+        final StubHttpLifecycle[] copy = Arrays.copyOf(stubsByOrdinal, stubsByOrdinal.length);
+        for (int ordinal = 0; ordinal < copy.length; ordinal++) {
+            if (copy[ordinal] != null) {
+                copy[ordinal] = copies.getOrDefault(copy[ordinal], copy[ordinal]);
+            }
+        }
+
+        return new StubIndex(
+                copy,
+                retiredOrdinals,
+                urlIndex,
+                routeFilter,
+                bodyDigestIndex,
+                jsonFieldIndex,
+                headerValueIndex,
+                queryValueIndex,
+                matchedHeaderNames);
+    }
+
+    /**
+     * @param incomingRequest incoming {@link StubRequest}
+     * @return stubs that can potentially match the incoming request, in the order in which they were defined
+     */
+    List<StubHttpLifecycle> candidates(final StubRequest incomingRequest) {
+        return candidates(incomingRequest, candidateOrdinals(incomingRequest));
+    }
+
+    /**
+     * Narrows down the stubs on everything but the incoming request body, so that the body is not read at all
+     * when none of the stubs that are left has a stubbed request body, see {@link #isRequestBodyMatched(int[])}.
+     *
+     * @param incomingRequest incoming {@link StubRequest}
+     * @return ordinals (in ascending order) of the stubs that can potentially match the incoming request
+     */
+    int[] candidateOrdinals(final StubRequest incomingRequest) {
+        final String incomingUrl = incomingRequest.getUri();
+        final int[] urlOrdinals =
+                isSet(incomingUrl) && !routeFilter.mightContain(incomingRequest.getUpperCaseMethods(), incomingUrl)
+                        ? urlIndex.residual(incomingUrl)
+                        : urlIndex.candidates(incomingUrl);
+        final int[] headerOrdinals = headerValueIndex.filter(urlOrdinals, incomingRequest);
+
+        return queryValueIndex.filter(headerOrdinals, incomingRequest);
+    }
+
+    /**
+     * @param incomingRequest incoming {@link StubRequest}
+     * @param candidateOrdinals ordinals, as returned by {@link #candidateOrdinals(StubRequest)}
+     * @return stubs out of the given ones that can potentially match the incoming request body, in the order in
+     * which they were defined
+     */
+    List<StubHttpLifecycle> candidates(final StubRequest incomingRequest, final int[] candidateOrdinals) {
+        final int[] bodyOrdinals = bodyDigestIndex.filter(candidateOrdinals, incomingRequest);
+        final int[] ordinals = jsonFieldIndex.filter(bodyOrdinals, incomingRequest);
+        final List<StubHttpLifecycle> candidates = new ArrayList<>(ordinals.length);
+        for (final int ordinal : ordinals) {
+            candidates.add(stubsByOrdinal[ordinal]);
+        }
+
+        return candidates;
+    }
+
+    /**
+     * @return sorted lower-cased names of the headers that can affect the matching of an incoming request
+     */
+    Set<String> getMatchedHeaderNames() {
+        return matchedHeaderNames;
+    }
+
+    /**
+     * @param candidateOrdinals ordinals, as returned by {@link #candidateOrdinals(StubRequest)}
+     * @return whether the body of an incoming request can affect the matching of any of the given stubs
+     */
+    boolean isRequestBodyMatched(final int[] candidateOrdinals) {
+        for (final int ordinal : candidateOrdinals) {
+            if (isRequestBodyStubbed(stubsByOrdinal[ordinal])) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private int ordinalOf(final StubHttpLifecycle stub) {
+        for (final int ordinal : urlIndex.ordinalsOf(stubbedUrlOf(stub))) {
+            if (stubsByOrdinal[ordinal] == stub) {
+                return ordinal;
+            }
+        }
+
+        throw new IllegalStateException(
+                String.format("Stub with URL '%s' is not indexed, how so?", stub.getRequest().getUri()));
+    }
+
+    private static String stubbedUrlOf(final StubHttpLifecycle stub) {
+        return stub.getRequest().getUri();
+    }
+
+    private static boolean isRequestBodyStubbed(final StubHttpLifecycle stub) {
+        return stub.getRequest().getMatchPlan().isRequestBodyStubbed();
+    }
+
+    private static Set<String> matchedHeaderNamesOf(final List<StubHttpLifecycle> stubs) {
+        final Set<String> matchedHeaderNames = new TreeSet<>();
+        matchedHeaderNames.add(HEADER_CONTENT_TYPE);
+        for (final StubHttpLifecycle stub : stubs) {
+            matchedHeaderNames.addAll(stub.getRequest().getHeaders().keySet());
+        }
+
+        return Collections.unmodifiableSet(matchedHeaderNames);
+    }
+
+    private static List<StubHttpLifecycle> liveStubs(final StubHttpLifecycle[] stubsByOrdinal) {
+        final List<StubHttpLifecycle> liveStubs = new ArrayList<>(stubsByOrdinal.length);
+        for (final StubHttpLifecycle stub : stubsByOrdinal) {
+            if (stub != null) {
+                liveStubs.add(stub);
+            }
+        }
+
+        return liveStubs;
+    }
+}
@@ -0,0 +1,284 @@
+/*
+ * Copyright (c) 2012-2024 Alexander Zagniotov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.azagniotov.stubby4j.stubs;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import org.json.JSONObject;
+
+/**
+ * Immutable index of stubs with a stubbed JSON request body, keyed on the value of a single top-level JSON field,
+ * i.e.: the discriminator field. Typically, this is a field like <code>request_id</code>, whose literal value tells
+ * apart a family of stubs that otherwise have the same shape.
+ * <p>
+ * The discriminator field is detected when the index is built: out of the top-level fields that have a literal
+ * string value in the stubbed JSON bodies, the one with the most distinct values is picked. A stub whose stubbed
+ * body does not have such field, or has a regex value in it, is not indexed and stays a candidate for any
+ * incoming request.
+ * <p>
+ * An indexed stub can only match an incoming JSON body that has the same value in the discriminator field:
+ * the JSON comparison of the {@link StubMatcher} requires the field value to be identical, and the regex
+ * comparison that it falls back to requires the incoming body to begin with the same literal text
+ * (see {@link #literalTopLevelFields(String)}). Therefore, an incoming JSON body is resolved to the indexed stubs
+ * with one field lookup and one map lookup. Bodies that are not JSON, or cannot be parsed as JSON, are matched
+ * by regex against the raw stubbed body, so in that case no stub is left out.
+ */
+final class StubJsonFieldIndex {
+
+    private static final String JSON_SUB_TYPE = "json";
+
+    static final StubJsonFieldIndex EMPTY = new StubJsonFieldIndex(null, Collections.emptyMap(), new BitSet());
+
+    private final String field;
+    private final Map<String, int[]> ordinalsByValue;
+    private final BitSet indexedOrdinals;
+
+    private StubJsonFieldIndex(
+            final String field, final Map<String, int[]> ordinalsByValue, final BitSet indexedOrdinals) {
+        this.field = field;
+        this.ordinalsByValue = ordinalsByValue;
+        this.indexedOrdinals = indexedOrdinals;
+    }
+
+    /**
+     * @param stubs stubs, where the list position of a stub is its ordinal
+     * @return a new {@link StubJsonFieldIndex}
+     */
+    static StubJsonFieldIndex build(final List<StubHttpLifecycle> stubs) {
+        final List<Map<String, String>> literalFieldsByOrdinal = new ArrayList<>(stubs.size());
+        final Map<String, Set<String>> distinctValuesByField = new TreeMap<>();
+        for (final StubHttpLifecycle stub : stubs) {
+            final Map<String, String> literalFields = literalFieldsOf(stub);
+            literalFieldsByOrdinal.add(literalFields);
+            for (final Map.Entry<String, String> literalField : literalFields.entrySet()) {
+                distinctValuesByField
+                        .computeIfAbsent(literalField.getKey(), key -> new HashSet<>())
+                        .add(literalField.getValue());
+            }
+        }
+
+        // A field with a single value does not tell any stubs apart. Ties are resolved by the field name
+        String discriminator = null;
+        int discriminatorValues = 1;
+        for (final Map.Entry<String, Set<String>> entry : distinctValuesByField.entrySet()) {
+            if (entry.getValue().size() > discriminatorValues) {
+                discriminator = entry.getKey();
+                discriminatorValues = entry.getValue().size();
+            }
+        }
+        if (discriminator == null) {
+            return EMPTY;
+        }
+
+        final Map<String, int[]> ordinalsByValue = new HashMap<>();
+        final BitSet indexedOrdinals = new BitSet(stubs.size());
+        for (int ordinal = 0; ordinal < literalFieldsByOrdinal.size(); ordinal++) {
+            final String value = literalFieldsByOrdinal.get(ordinal).get(discriminator);
+            if (value != null) {
+                // Ordinals are added in ascending order while building, so appending keeps them sorted
+                final int[] ordinals = ordinalsByValue.getOrDefault(value, StubOrdinals.NONE);
+                final int[] appended = Arrays.copyOf(ordinals, ordinals.length + 1);
+                appended[ordinals.length] = ordinal;
+                ordinalsByValue.put(value, appended);
+                indexedOrdinals.set(ordinal);
+            }
+        }
+
+        return new StubJsonFieldIndex(discriminator, Collections.unmodifiableMap(ordinalsByValue), indexedOrdinals);
+    }
+
+    StubJsonFieldIndex withStub(final int ordinal, final StubHttpLifecycle stub) {
+        final String value = valueOf(stub);
+        if (value == null) {
+            return this;
+        }
+
+        final Map<String, int[]> copy = new HashMap<>(ordinalsByValue);
+        copy.put(value, StubOrdinals.insert(copy.getOrDefault(value, StubOrdinals.NONE), ordinal));
+        final BitSet nextIndexedOrdinals = (BitSet) indexedOrdinals.clone();
+        nextIndexedOrdinals.set(ordinal);
+
+        return new StubJsonFieldIndex(field, Collections.unmodifiableMap(copy), nextIndexedOrdinals);
+    }
+
+    StubJsonFieldIndex withoutStub(final int ordinal, final StubHttpLifecycle stub) {
+        final String value = valueOf(stub);
+        if (value == null) {
+            return this;
+        }
+
+        final Map<String, int[]> copy = new HashMap<>(ordinalsByValue);
+        final int[] remaining = StubOrdinals.remove(copy.getOrDefault(value, StubOrdinals.NONE), ordinal);
+        if (remaining.length == 0) {
+            copy.remove(value);
+        } else {
+            copy.put(value, remaining);
+        }
+        final BitSet nextIndexedOrdinals = (BitSet) indexedOrdinals.clone();
+        nextIndexedOrdinals.clear(ordinal);
+
+        return new StubJsonFieldIndex(field, Collections.unmodifiableMap(copy), nextIndexedOrdinals);
+    }
+
+    /**
+     * @param candidates ordinals (in ascending order) of the stubs that are candidates for the incoming request
+     * @param incomingRequest incoming {@link StubRequest}
+     * @return given candidates, less the indexed stubs whose discriminator value differs from the incoming one
+     */
+    int[] filter(final int[] candidates, final StubRequest incomingRequest) {
+        if (field == null
+                || !JSON_SUB_TYPE.equals(incomingRequest.getContentSubType())
+                || !StubOrdinals.anyIndexed(candidates, indexedOrdinals)) {
+            return candidates;
+        }
+
+        final Object incomingJson = incomingRequest.getJsonPostBody();
+        if (incomingJson == null) {
+            return candidates;
+        }
+
+        // A body that is not a JSON object, or lacks the discriminator field, cannot match any of the indexed stubs
+        final Object incomingValue = incomingJson instanceof JSONObject ? ((JSONObject) incomingJson).opt(field) : null;
+        final int[] matchingOrdinals = incomingValue instanceof String
+                ? ordinalsByValue.getOrDefault(incomingValue, StubOrdinals.NONE)
+                : StubOrdinals.NONE;
+
+        return StubOrdinals.retain(candidates, indexedOrdinals, matchingOrdinals);
+    }
+
+    /**
+     * @return name of the discriminator field, or {@code null} if the stubs do not have one
+     */
+    String getField() {
+        return field;
+    }
+
+    private String valueOf(final StubHttpLifecycle stub) {
+        return field == null ? null : literalFieldsOf(stub).get(field);
+    }
+
+    private static Map<String, String> literalFieldsOf(final StubHttpLifecycle stub) {
+        final StubMatchPlan matchPlan = stub.getRequest().getMatchPlan();
+        if (!matchPlan.isRequestBodyStubbed() || !(matchPlan.getPostBodyJson() instanceof JSONObject)) {
+            return Collections.emptyMap();
+        }
+
+        final JSONObject stubbedJson = (JSONObject) matchPlan.getPostBodyJson();
+        final Map<String, String> literalFields = literalTopLevelFields(matchPlan.getPostBody());
+        literalFields.entrySet().removeIf(entry -> !entry.getValue().equals(stubbedJson.opt(entry.getKey())));
+
+        return literalFields;
+    }
+
+    /**
+     * Finds the top-level fields with a string value in the literal beginning of the given stubbed JSON body,
+     * i.e.: before the first character that has a special meaning in the regex that the stubbed body is turned
+     * into, when the incoming body is matched by regex (curly and square brackets are escaped there, see
+     * {@link io.github.azagniotov.stubby4j.utils.StringUtils#escapeSpecialRegexCharacters(String)}).
+     * <p>
+     * An incoming body can match such regex only by beginning with the same literal text, so a well-formed
+     * incoming body necessarily has the same values in these fields. A body with an alternation (i.e.: the
+     * <code>|</code> character) anywhere in it is not considered, as the alternation could bypass
+     * the literal beginning.
+     *
+     * @param stubbedJson stubbed JSON body
+     * @return fields keyed by name, in the order in which they appear in the body
+     */
+    static Map<String, String> literalTopLevelFields(final String stubbedJson) {
+        final Map<String, String> fields = new LinkedHashMap<>();
+        if (stubbedJson.indexOf('|') >= 0) {
+            return fields;
+        }
+
+        int depth = 0;
+        String lastString = null;
+        String pendingKey = null;
+        for (int idx = 0; idx < stubbedJson.length(); idx++) {
+            final char character = stubbedJson.charAt(idx);
+            if (isRegexOperator(character)) {
+                break;
+            }
+
+            if (character == '"') {
+                final int closingIdx = stubbedJson.indexOf('"', idx + 1);
+                if (closingIdx < 0) {
+                    break;
+                }
+                final String string = stubbedJson.substring(idx + 1, closingIdx);
+                if (containsRegexOperator(string)) {
+                    break;
+                }
+                if (depth == 1 && pendingKey != null) {
+                    fields.putIfAbsent(pendingKey, string);
+                    pendingKey = null;
+                } else {
+                    lastString = string;
+                }
+                idx = closingIdx;
+            } else if (character == ':') {
+                pendingKey = depth == 1 ? lastString : null;
+                lastString = null;
+            } else if (!Character.isWhitespace(character)) {
+                if (character == '{' || character == '[') {
+                    depth++;
+                } else if (character == '}' || character == ']') {
+                    depth--;
+                }
+                lastString = null;
+                pendingKey = null;
+            }
+        }
+
+        return fields;
+    }
+
+    private static boolean containsRegexOperator(final String string) {
+        for (int idx = 0; idx < string.length(); idx++) {
+            if (isRegexOperator(string.charAt(idx))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isRegexOperator(final char character) {
+        switch (character) {
+            case '$':
+            case '(':
+            case ')':
+            case '*':
+            case '+':
+            case '.':
+            case '?':
+            case '\\':
+            case '^':
+            case '|':
+                return true;
+            default:
+                return false;
+        }
+    }
+}
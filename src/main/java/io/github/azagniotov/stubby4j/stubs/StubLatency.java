@@ -0,0 +1,273 @@
+/*
+ * Copyright (c) 2012-2024 Alexander Zagniotov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.github.azagniotov.stubby4j.stubs;
+
+import static io.github.azagniotov.stubby4j.utils.StringUtils.isNotSet;
+import static io.github.azagniotov.stubby4j.utils.StringUtils.objectToString;
+
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.SplittableRandom;
+import java.util.StringJoiner;
+import java.util.TreeMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+/**
+ * Parsed stubbed response <code>latency</code>, which is either a fixed number of milliseconds, or a distribution
+ * that the latency of every response is sampled from, so that the latency is spread the way the real service
+ * spreads it, e.g.: to exercise the client side timeouts, hedged requests or the p99 budgets.
+ * <p>
+ * A distribution is stubbed as a map of comma separated <code>key: value</code> pairs (or as a YAML map), where all
+ * the values are in milliseconds:
+ * <ul>
+ *     <li><code>distribution: uniform, min: 10, max: 50</code></li>
+ *     <li><code>distribution: normal, mean: 100, stddev: 20</code></li>
+ *     <li><code>distribution: lognormal, median: 100, sigma: 0.5</code></li>
+ *     <li><code>distribution: pareto, scale: 50, shape: 1.5</code></li>
+ *     <li><code>p50: 20, p90: 120, p99: 400</code>, i.e.: a table of percentiles, which are interpolated linearly.
+ *     Below the lowest percentile, the latency is interpolated from <code>p0</code> (zero, unless stubbed), above
+ *     the highest one it stays at the highest percentile value.</li>
+ * </ul>
+ * Any distribution accepts <code>min</code> and <code>max</code>, which bound the sampled latency, and a
+ * <code>seed</code>, which makes the sampled latencies reproducible from one run to the next: the n-th sampled
+ * latency is the same in every run. Which response gets the n-th latency depends on the order in which the
+ * requests are served though, so the latency of a given request is only reproducible when the requests are sent
+ * one after another.
+ */
+public final class StubLatency {
+
+    static final StubLatency NONE = new StubLatency(Kind.FIXED, new double[] {0}, null, 0, Long.MAX_VALUE, null);
+
+    private static final Pattern PERCENTILE = Pattern.compile("^p(\\d{1,2}(\\.\\d+)?|100)$");
+
+    private static final String DISTRIBUTION = "distribution";
+    private static final String MIN = "min";
+    private static final String MAX = "max";
+    private static final String SEED = "seed";
+
+    private enum Kind {
+        FIXED,
+        UNIFORM,
+        NORMAL,
+        LOGNORMAL,
+        PARETO,
+        PERCENTILES
+    }
+
+    private final Kind kind;
+    private final double[] params;
+    private final double[] percentiles;
+    private final long min;
+    private final long max;
+    private final Long seed;
+    private final AtomicLong seededSamples;
+
+    private StubLatency(
+            final Kind kind,
+            final double[] params,
+            final double[] percentiles,
+            final long min,
+            final long max,
+            final Long seed) {
+        this.kind = kind;
+        this.params = params;
+        this.percentiles = percentiles;
+        this.min = min;
+        this.max = max;
+        this.seed = seed;
+        this.seededSamples = new AtomicLong(0);
+    }
+
+    /**
+     * @param latency stubbed latency, see the class doc
+     * @return parsed {@link StubLatency}
+     * @throws NumberFormatException if a fixed latency, or a value of a distribution is not a number
+     * @throws IllegalArgumentException if the distribution is unknown, or its parameters are invalid
+     */
+    public static StubLatency of(final String latency) {
+        if (isNotSet(latency)) {
+            return NONE;
+        } else if (latency.indexOf(':') < 0) {
+            final long fixed = Long.parseLong(latency.trim());
+            return new StubLatency(Kind.FIXED, new double[] {fixed}, null, 0, Long.MAX_VALUE, null);
+        }
+
+        final Map<String, String> spec = new HashMap<>();
+        for (final String pair : latency.split(",")) {
+            final int separatorIdx = pair.indexOf(':');
+            if (separatorIdx < 0) {
+                throw new IllegalArgumentException(String.format("Malformed latency '%s'", latency));
+            }
+            final String key = pair.substring(0, separatorIdx).trim().toLowerCase(Locale.US);
+            spec.put(key, pair.substring(separatorIdx + 1).trim());
+        }
+
+        final long min = spec.containsKey(MIN) ? Long.parseLong(spec.remove(MIN)) : 0;
+        final long max = spec.containsKey(MAX) ? Long.parseLong(spec.remove(MAX)) : Long.MAX_VALUE;
+        final Long seed = spec.containsKey(SEED) ? Long.parseLong(spec.remove(SEED)) : null;
+        if (min < 0 || min > max) {
+            throw new IllegalArgumentException(String.format("Invalid latency bounds in '%s'", latency));
+        }
+
+        final String distribution = spec.remove(DISTRIBUTION);
+        if (distribution == null) {
+            return new StubLatency(Kind.PERCENTILES, null, percentilesOf(spec, latency), min, max, seed);
+        }
+
+        switch (distribution.toLowerCase(Locale.US)) {
+            case "uniform":
+                if (max == Long.MAX_VALUE) {
+                    throw new IllegalArgumentException(String.format("Missing 'max' in latency '%s'", latency));
+                }
+                return new StubLatency(Kind.UNIFORM, params(spec, latency), null, min, max, seed);
+            case "normal":
+                return new StubLatency(
+                        Kind.NORMAL, params(spec, latency, "mean", "stddev"), null, min, max, seed);
+            case "lognormal":
+                return new StubLatency(
+                        Kind.LOGNORMAL, params(spec, latency, "median", "sigma"), null, min, max, seed);
+            case "pareto":
+                final double[] paretoParams = params(spec, latency, "scale", "shape");
+                if (paretoParams[0] <= 0 || paretoParams[1] <= 0) {
+                    throw new IllegalArgumentException(
+                            String.format("Pareto 'scale' and 'shape' must be positive in latency '%s'", latency));
+                }
+                return new StubLatency(Kind.PARETO, paretoParams, null, min, max, seed);
+            default:
+                throw new IllegalArgumentException(
+                        String.format("Unknown latency distribution '%s' in '%s'", distribution, latency));
+        }
+    }
+
+    /**
+     * @param latency latency that was stubbed as a YAML map
+     * @return the same latency as comma separated <code>key: value</code> pairs, see {@link #of(String)}
+     */
+    public static String toSpec(final Map<?, ?> latency) {
+        final StringJoiner spec = new StringJoiner(", ");
+        for (final Map.Entry<?, ?> entry : latency.entrySet()) {
+            spec.add(String.format("%s: %s", objectToString(entry.getKey()), objectToString(entry.getValue())));
+        }
+        return spec.toString();
+    }
+
+    private static double[] params(final Map<String, String> spec, final String latency, final String... names) {
+        final double[] params = new double[names.length];
+        for (int idx = 0; idx < names.length; idx++) {
+            final String value = spec.remove(names[idx]);
+            if (value == null) {
+                throw new IllegalArgumentException(
+                        String.format("Missing '%s' in latency '%s'", names[idx], latency));
+            }
+            params[idx] = Double.parseDouble(value);
+        }
+        if (!spec.isEmpty()) {
+            throw new IllegalArgumentException(
+                    String.format("Unexpected %s in latency '%s'", spec.keySet(), latency));
+        }
+        return params;
+    }
+
+    /**
+     * @return pairs of percentile and latency, sorted by percentile, where the first pair is the zero percentile
+     */
+    private static double[] percentilesOf(final Map<String, String> spec, final String latency) {
+        final TreeMap<Double, Double> table = new TreeMap<>();
+        table.put(0.0, 0.0);
+        for (final Map.Entry<String, String> entry : spec.entrySet()) {
+            if (!PERCENTILE.matcher(entry.getKey()).matches()) {
+                throw new IllegalArgumentException(
+                        String.format("Unexpected '%s' in latency '%s'", entry.getKey(), latency));
+            }
+            table.put(Double.parseDouble(entry.getKey().substring(1)), Double.parseDouble(entry.getValue()));
+        }
+        if (table.size() == 1) {
+            throw new IllegalArgumentException(String.format("Missing percentiles in latency '%s'", latency));
+        }
+
+        final double[] percentiles = new double[table.size() * 2];
+        int idx = 0;
+        double previousLatency = 0;
+        for (final Map.Entry<Double, Double> entry : table.entrySet()) {
+            if (entry.getValue() < previousLatency && entry.getKey() > 0) {
+                throw new IllegalArgumentException(
+                        String.format("Percentiles must not decrease in latency '%s'", latency));
+            }
+            percentiles[idx++] = entry.getKey();
+            percentiles[idx++] = entry.getValue();
+            previousLatency = entry.getValue();
+        }
+        return percentiles;
+    }
+
+    /**
+     * @return latency in milliseconds, which is sampled anew upon every call unless the latency is fixed
+     */
+    public long sampleMillis() {
+        if (kind == Kind.FIXED) {
+            return (long) params[0];
+        }
+
+        final Random random = seed == null ? ThreadLocalRandom.current() : nextSeededRandom();
+        final double sample;
+        switch (kind) {
+            case UNIFORM:
+                sample = min + (max - min) * random.nextDouble();
+                break;
+            case NORMAL:
+                sample = params[0] + params[1] * random.nextGaussian();
+                break;
+            case LOGNORMAL:
+                sample = params[0] * Math.exp(params[1] * random.nextGaussian());
+                break;
+            case PARETO:
+                // The uniform variate is in (0, 1], so that the sample is never infinite
+                sample = params[0] / Math.pow(1.0 - random.nextDouble(), 1.0 / params[1]);
+                break;
+            case PERCENTILES:
+                sample = interpolate(random.nextDouble() * 100);
+                break;
+            default:
+                throw new IllegalStateException(String.format("Unexpected latency distribution %s, how so?", kind));
+        }
+
+        return Math.max(min, Math.min(max, Math.round(sample)));
+    }
+
+    // Every sample gets its own generator, which is derived from the seed and the sequence number of the sample,
+    // rather than all the samples sharing a single seeded generator that the concurrent requests would contend on
+    private Random nextSeededRandom() {
+        return new Random(new SplittableRandom(seed + seededSamples.getAndIncrement()).nextLong());
+    }
+
+    private double interpolate(final double percentile) {
+        for (int idx = 2; idx < percentiles.length; idx += 2) {
+            if (percentile <= percentiles[idx]) {
+                final double lowerPercentile = percentiles[idx - 2];
+                final double lowerLatency = percentiles[idx - 1];
+                final double fraction = (percentile - lowerPercentile) / (percentiles[idx] - lowerPercentile);
+                return lowerLatency + fraction * (percentiles[idx + 1] - lowerLatency);
+            }
+        }
+        return percentiles[percentiles.length - 1];
+    }
+}
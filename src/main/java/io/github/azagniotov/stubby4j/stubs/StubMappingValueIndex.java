@@ -0,0 +1,222 @@
+/*
+ * Copyright (c) 2012-2024 Alexander Zagniotov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.github.azagniotov.stubby4j.stubs;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable inverted index of stubs with literal header or query param values (i.e.: values without any regex
+ * special characters), keyed on the header or query param name and then on the stubbed value.
+ * <p>
+ * A literal stubbed value is compared with a plain {@link String#equals(Object)}, see {@link StubValuePredicate},
+ * so a stub can only match an incoming request that has the very same value under the same name. Therefore,
+ * for every indexed name, the candidates are narrowed down with one map lookup. A stub that does not stub the
+ * name, or has a regex value under it, is not indexed under that name and stays a candidate whatever
+ * the incoming value is. A stub that is indexed under several names has to be found under all of them.
+ * <p>
+ * This is what tells apart a family of stubs that share one URL and differ only in, e.g.: a tenant header or
+ * a version query param, which neither of the URL, the body digest or the JSON field indexes can narrow down.
+ */
+final class StubMappingValueIndex {
+
+    enum Mapping {
+        HEADERS,
+        QUERY
+    }
+
+    private final Mapping mapping;
+    private final Map<String, ValueOrdinals> ordinalsByName;
+
+    private StubMappingValueIndex(final Mapping mapping, final Map<String, ValueOrdinals> ordinalsByName) {
+        this.mapping = mapping;
+        this.ordinalsByName = ordinalsByName;
+    }
+
+    static StubMappingValueIndex empty(final Mapping mapping) {
+        return new StubMappingValueIndex(mapping, Collections.emptyMap());
+    }
+
+    /**
+     * @param stubs stubs, where the list position of a stub is its ordinal
+     * @param mapping whether the header or the query param values are indexed
+     * @return a new {@link StubMappingValueIndex}
+     */
+    static StubMappingValueIndex build(final List<StubHttpLifecycle> stubs, final Mapping mapping) {
+        final Map<String, Map<String, int[]>> ordinalsByValueByName = new HashMap<>();
+        final Map<String, BitSet> indexedOrdinalsByName = new HashMap<>();
+        for (int ordinal = 0; ordinal < stubs.size(); ordinal++) {
+            for (final Map.Entry<String, String> literal : literalsOf(stubs.get(ordinal), mapping).entrySet()) {
+                final Map<String, int[]> ordinalsByValue =
+                        ordinalsByValueByName.computeIfAbsent(literal.getKey(), name -> new HashMap<>());
+
+                // Ordinals are added in ascending order while building, so appending keeps them sorted
+                final int[] ordinals = ordinalsByValue.getOrDefault(literal.getValue(), StubOrdinals.NONE);
+                final int[] appended = Arrays.copyOf(ordinals, ordinals.length + 1);
+                appended[ordinals.length] = ordinal;
+                ordinalsByValue.put(literal.getValue(), appended);
+                indexedOrdinalsByName
+                        .computeIfAbsent(literal.getKey(), name -> new BitSet(stubs.size()))
+                        .set(ordinal);
+            }
+        }
+
+        final Map<String, ValueOrdinals> ordinalsByName = new HashMap<>();
+        for (final Map.Entry<String, Map<String, int[]>> entry : ordinalsByValueByName.entrySet()) {
+            ordinalsByName.put(
+                    entry.getKey(),
+                    new ValueOrdinals(
+                            Collections.unmodifiableMap(entry.getValue()),
+                            indexedOrdinalsByName.get(entry.getKey())));
+        }
+
+        return new StubMappingValueIndex(mapping, Collections.unmodifiableMap(ordinalsByName));
+    }
+
+    StubMappingValueIndex withStub(final int ordinal, final StubHttpLifecycle stub) {
+        final Map<String, String> literals = literalsOf(stub, mapping);
+        if (literals.isEmpty()) {
+            return this;
+        }
+
+        final Map<String, ValueOrdinals> copy = new HashMap<>(ordinalsByName);
+        for (final Map.Entry<String, String> literal : literals.entrySet()) {
+            copy.put(
+                    literal.getKey(),
+                    copy.getOrDefault(literal.getKey(), ValueOrdinals.EMPTY).with(ordinal, literal.getValue()));
+        }
+
+        return new StubMappingValueIndex(mapping, Collections.unmodifiableMap(copy));
+    }
+
+    StubMappingValueIndex withoutStub(final int ordinal, final StubHttpLifecycle stub) {
+        final Map<String, String> literals = literalsOf(stub, mapping);
+        if (literals.isEmpty()) {
+            return this;
+        }
+
+        final Map<String, ValueOrdinals> copy = new HashMap<>(ordinalsByName);
+        for (final Map.Entry<String, String> literal : literals.entrySet()) {
+            final ValueOrdinals remaining = copy.getOrDefault(literal.getKey(), ValueOrdinals.EMPTY)
+                    .without(ordinal, literal.getValue());
+            if (remaining.ordinalsByValue.isEmpty()) {
+                copy.remove(literal.getKey());
+            } else {
+                copy.put(literal.getKey(), remaining);
+            }
+        }
+
+        return new StubMappingValueIndex(mapping, Collections.unmodifiableMap(copy));
+    }
+
+    /**
+     * @param candidates ordinals (in ascending order) of the stubs that are candidates for the incoming request
+     * @param incomingRequest incoming {@link StubRequest}
+     * @return given candidates, less the indexed stubs whose literal values differ from the incoming ones
+     */
+    int[] filter(final int[] candidates, final StubRequest incomingRequest) {
+        if (ordinalsByName.isEmpty()) {
+            return candidates;
+        }
+
+        final Map<String, String> incomingMappings =
+                mapping == Mapping.HEADERS ? incomingRequest.getHeaders() : incomingRequest.getQuery();
+        int[] filtered = candidates;
+        for (final Map.Entry<String, ValueOrdinals> entry : ordinalsByName.entrySet()) {
+            final ValueOrdinals valueOrdinals = entry.getValue();
+            if (filtered.length == 0) {
+                break;
+            } else if (!StubOrdinals.anyIndexed(filtered, valueOrdinals.indexedOrdinals)) {
+                continue;
+            }
+
+            // A request without the stubbed name cannot match any of the stubs indexed under it
+            final String incomingValue = incomingMappings.get(entry.getKey());
+            final int[] matchingOrdinals = incomingValue == null
+                    ? StubOrdinals.NONE
+                    : valueOrdinals.ordinalsByValue.getOrDefault(incomingValue, StubOrdinals.NONE);
+            filtered = StubOrdinals.retain(filtered, valueOrdinals.indexedOrdinals, matchingOrdinals);
+        }
+
+        return filtered;
+    }
+
+    /**
+     * @return literal stubbed values keyed by name, the authorization headers are not included since they are not
+     * a part of the {@link StubMatchPlan}
+     */
+    private static Map<String, String> literalsOf(final StubHttpLifecycle stub, final Mapping mapping) {
+        final StubMatchPlan matchPlan = stub.getRequest().getMatchPlan();
+        final String[] names = mapping == Mapping.HEADERS ? matchPlan.getHeaderNames() : matchPlan.getQueryNames();
+        final StubValuePredicate[] predicates =
+                mapping == Mapping.HEADERS ? matchPlan.getHeaderPredicates() : matchPlan.getQueryPredicates();
+
+        Map<String, String> literals = Collections.emptyMap();
+        for (int idx = 0; idx < names.length; idx++) {
+            final String literalValue = predicates[idx].getLiteralValue();
+            if (literalValue != null) {
+                if (literals.isEmpty()) {
+                    literals = new HashMap<>();
+                }
+                literals.put(names[idx], literalValue);
+            }
+        }
+
+        return literals;
+    }
+
+    private static final class ValueOrdinals {
+
+        private static final ValueOrdinals EMPTY = new ValueOrdinals(Collections.emptyMap(), new BitSet());
+
+        private final Map<String, int[]> ordinalsByValue;
+        private final BitSet indexedOrdinals;
+
+        private ValueOrdinals(final Map<String, int[]> ordinalsByValue, final BitSet indexedOrdinals) {
+            this.ordinalsByValue = ordinalsByValue;
+            this.indexedOrdinals = indexedOrdinals;
+        }
+
+        private ValueOrdinals with(final int ordinal, final String value) {
+            final Map<String, int[]> copy = new HashMap<>(ordinalsByValue);
+            copy.put(value, StubOrdinals.insert(copy.getOrDefault(value, StubOrdinals.NONE), ordinal));
+            final BitSet nextIndexedOrdinals = (BitSet) indexedOrdinals.clone();
+            nextIndexedOrdinals.set(ordinal);
+
+            return new ValueOrdinals(Collections.unmodifiableMap(copy), nextIndexedOrdinals);
+        }
+
+        private ValueOrdinals without(final int ordinal, final String value) {
+            final Map<String, int[]> copy = new HashMap<>(ordinalsByValue);
+            final int[] remaining = StubOrdinals.remove(copy.getOrDefault(value, StubOrdinals.NONE), ordinal);
+            if (remaining.length == 0) {
+                copy.remove(value);
+            } else {
+                copy.put(value, remaining);
+            }
+            final BitSet nextIndexedOrdinals = (BitSet) indexedOrdinals.clone();
+            nextIndexedOrdinals.clear(ordinal);
+
+            return new ValueOrdinals(Collections.unmodifiableMap(copy), nextIndexedOrdinals);
+        }
+    }
+}
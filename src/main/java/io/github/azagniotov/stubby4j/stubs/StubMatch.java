@@ -0,0 +1,47 @@
+/*
+ * Copyright (c) 2012-2024 Alexander Zagniotov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.azagniotov.stubby4j.stubs;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Outcome of matching an incoming request to the loaded stubs, as it is kept in the stub match cache.
+ * <p>
+ * Along with the matched {@link StubHttpLifecycle stub}, the regex groups that were captured while matching are
+ * retained. This way, a repeated request that is served from the cache gets the same dynamic token values
+ * (e.g.: <code>&lt;% url.1 %&gt;</code>) in the stubbed response as the request that was matched originally.
+ */
+public final class StubMatch {
+
+    private final StubHttpLifecycle stub;
+    private final Map<String, String> regexGroups;
+
+    public StubMatch(final StubHttpLifecycle stub, final Map<String, String> regexGroups) {
+        this.stub = stub;
+        this.regexGroups = Collections.unmodifiableMap(new TreeMap<>(regexGroups));
+    }
+
+    public StubHttpLifecycle getStub() {
+        return stub;
+    }
+
+    public Map<String, String> getRegexGroups() {
+        return regexGroups;
+    }
+}
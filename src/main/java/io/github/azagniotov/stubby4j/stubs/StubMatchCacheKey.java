@@ -0,0 +1,94 @@
+/*
+ * Copyright (c) 2012-2024 Alexander Zagniotov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.azagniotov.stubby4j.stubs;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Builds the key under which a match of an incoming request is kept in the stub match cache.
+ * <p>
+ * The key is made of everything that the {@link StubMatcher} can look at: the HTTP method, the URL path, the query
+ * parameters, the request body and the values of the headers that are referenced by at least one of the stubs.
+ * The rest of the incoming headers (e.g.: User-Agent, Date, etc.) never take part in matching, therefore they are
+ * left out of the key, so that they do not make otherwise identical requests look different.
+ * <p>
+ * Every component is prefixed with its length, so two different requests can never produce the same key.
+ * The request body is the only exception, it is represented by its SHA-256 digest to keep the keys short.
+ * The body is left out of the key altogether when none of the stubs that can potentially match the request
+ * (see {@link StubIndex#candidateOrdinals(StubRequest)}) has a stubbed request body, so that such requests are
+ * cached without reading their body, see {@link StubRequestBody}.
+ */
+final class StubMatchCacheKey {
+
+    private static final char LENGTH_DELIMITER = ';';
+    private static final String NULL_COMPONENT = "-";
+
+    private StubMatchCacheKey() {}
+
+    /**
+     * @param snapshotVersion version of the {@link StubRepositorySnapshot} the request is matched against
+     * @param incomingRequest incoming {@link StubRequest}
+     * @param matchedHeaderNames lower-cased names of the headers that are referenced by the stubs
+     * @param isRequestBodyMatched whether any of the candidate stubs has a stubbed request body
+     * @return normalized cache key
+     */
+    static String of(
+            final long snapshotVersion,
+            final StubRequest incomingRequest,
+            final Set<String> matchedHeaderNames,
+            final boolean isRequestBodyMatched) {
+        final StringBuilder key = new StringBuilder(128);
+        appendComponent(key, String.valueOf(snapshotVersion));
+
+        final List<String> methods = incomingRequest.getUpperCaseMethods();
+        appendComponent(key, String.valueOf(methods.size()));
+        for (final String method : methods) {
+            appendComponent(key, method);
+        }
+
+        appendComponent(key, incomingRequest.getUri());
+
+        final Map<String, String> sortedQuery = new TreeMap<>(incomingRequest.getQuery());
+        appendComponent(key, String.valueOf(sortedQuery.size()));
+        for (final Map.Entry<String, String> entry : sortedQuery.entrySet()) {
+            appendComponent(key, entry.getKey());
+            appendComponent(key, entry.getValue());
+        }
+
+        final Map<String, String> incomingHeaders = incomingRequest.getHeaders();
+        for (final String headerName : matchedHeaderNames) {
+            appendComponent(key, incomingHeaders.get(headerName));
+        }
+
+        if (isRequestBodyMatched) {
+            appendComponent(key, incomingRequest.getPostBodyDigest());
+        }
+
+        return key.toString();
+    }
+
+    private static void appendComponent(final StringBuilder key, final String component) {
+        if (component == null) {
+            key.append(NULL_COMPONENT).append(LENGTH_DELIMITER);
+        } else {
+            key.append(component.length()).append(LENGTH_DELIMITER).append(component);
+        }
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright (c) 2012-2024 Alexander Zagniotov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.github.azagniotov.stubby4j.stubs;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * State of matching an incoming request to the candidate stubs, i.e.: the regex groups that are captured along
+ * the way and the {@link StubPredicateMemo}, kept apart from the {@link StubRequest} itself.
+ * <p>
+ * The candidate stubs are evaluated one after another by the thread that handles the incoming request, therefore
+ * every thread gets its own context, which is reused from one incoming request to the next instead of being
+ * allocated for each of them. The context is reset as soon as it is asked for on behalf of a different incoming
+ * request, and it should be {@link #release() released} once the matching is done, so that it does not hold on
+ * to the last request that the thread matched.
+ * <p>
+ * The regex groups that were captured by the time a stub matched (including the ones captured by the candidates
+ * that were evaluated before it) are handed over to the incoming request as an immutable copy, see
+ * {@link #capturedRegexGroups()}, since they outlive the context.
+ */
+final class StubMatchContext {
+
+    private static final ThreadLocal<StubMatchContext> CONTEXTS = ThreadLocal.withInitial(StubMatchContext::new);
+
+    private final Map<String, String> regexGroups;
+    private final StubPredicateMemo predicateMemo;
+    private final StubMatcher matcher;
+    private StubRequest incomingRequest;
+
+    private StubMatchContext() {
+        this.regexGroups = new HashMap<>();
+        this.predicateMemo = new StubPredicateMemo();
+        this.matcher = new StubMatcher(regexGroups, predicateMemo);
+        this.incomingRequest = null;
+    }
+
+    /**
+     * @param incomingRequest incoming {@link StubRequest} that is being matched
+     * @return context of the current thread, which is reset if it was used for a different incoming request
+     */
+    static StubMatchContext of(final StubRequest incomingRequest) {
+        final StubMatchContext context = CONTEXTS.get();
+        if (context.incomingRequest != incomingRequest) {
+            context.reset();
+            context.incomingRequest = incomingRequest;
+        }
+
+        return context;
+    }
+
+    /**
+     * Resets the context of the current thread, once the current thread is done matching an incoming request
+     */
+    static void release() {
+        CONTEXTS.get().reset();
+    }
+
+    StubMatcher getMatcher() {
+        return matcher;
+    }
+
+    /**
+     * @return immutable copy of the regex groups captured so far, sorted by the group name
+     */
+    Map<String, String> capturedRegexGroups() {
+        return Collections.unmodifiableMap(new TreeMap<>(regexGroups));
+    }
+
+    private void reset() {
+        regexGroups.clear();
+        predicateMemo.clear();
+        incomingRequest = null;
+    }
+}
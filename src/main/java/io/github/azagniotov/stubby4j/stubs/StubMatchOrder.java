@@ -0,0 +1,190 @@
+/*
+ * Copyright (c) 2012-2024 Alexander Zagniotov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.github.azagniotov.stubby4j.stubs;
+
+import io.github.azagniotov.stubby4j.annotations.VisibleForTesting;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Order in which the {@link StubMatcher} goes through the fields of a stubbed request, which adapts to the
+ * incoming requests that the stub is matched against.
+ * <p>
+ * For a sample of one in {@link #SAMPLING_INTERVAL} evaluations, the field that was evaluated and whether it
+ * rejected the incoming request are counted. Every {@link #REPLAN_INTERVAL} samples, the fields are re-ordered by
+ * their estimated cost divided by their rejection rate, so that a cheap field that tells the requests apart (e.g.:
+ * a literal header) is evaluated before an expensive one that rarely rejects anything (e.g.: a request body behind
+ * a broad URL regex). An incoming request has to match all the fields either way, so the order does not change the
+ * outcome of a match. Only which of the fields get logged as matched before the failing one does.
+ * <p>
+ * Sampling keeps the counters, which are shared by all the threads matching the stub, off the path of most of the
+ * evaluations. The counters are updated without locking, and the order is replaced as a whole, so a matching
+ * thread always goes through a complete order, even if it is an outdated one.
+ */
+final class StubMatchOrder {
+
+    static final int SAMPLING_INTERVAL = 16;
+    static final int REPLAN_INTERVAL = 64;
+
+    // Relative cost estimates: a regex costs way more than a string comparison, and a request body has to be
+    // read and parsed before it is compared
+    private static final int LITERAL_COST = 1;
+    private static final int REGEX_COST = 8;
+    private static final int POST_BODY_COST = 64;
+
+    enum Field {
+        URL("URL"),
+        METHOD("METHOD"),
+        POST_BODY("POST BODY"),
+        HEADERS("HEADERS"),
+        QUERY("QUERY");
+
+        private final String description;
+
+        Field(final String description) {
+            this.description = description;
+        }
+
+        @Override
+        public String toString() {
+            return description;
+        }
+    }
+
+    private final int[] costs;
+    private final AtomicLongArray evaluations;
+    private final AtomicLongArray rejections;
+    private final AtomicLong samplesSinceReplan;
+    private volatile Field[] order;
+
+    private StubMatchOrder(final Field[] defaultOrder, final int[] costs) {
+        this.costs = costs;
+        this.evaluations = new AtomicLongArray(Field.values().length);
+        this.rejections = new AtomicLongArray(Field.values().length);
+        this.samplesSinceReplan = new AtomicLong(0);
+        this.order = defaultOrder;
+    }
+
+    /**
+     * @param stubbedRequest stubbed {@link StubRequest}
+     * @param matchPlan {@link StubMatchPlan} of the stubbed request
+     * @return order of the fields that are stubbed, which starts as URL, method, request body, headers and query
+     */
+    static StubMatchOrder of(final StubRequest stubbedRequest, final StubMatchPlan matchPlan) {
+        final List<Field> defaultOrder = new ArrayList<>();
+        final int[] costs = new int[Field.values().length];
+
+        // The URL is always evaluated, even if it is not stubbed, the same way it always has been
+        defaultOrder.add(Field.URL);
+        costs[Field.URL.ordinal()] = costOf(matchPlan.getUrlPredicate());
+
+        if (!matchPlan.getMethods().isEmpty()) {
+            defaultOrder.add(Field.METHOD);
+            costs[Field.METHOD.ordinal()] = LITERAL_COST;
+        }
+        if (matchPlan.isRequestBodyStubbed()) {
+            defaultOrder.add(Field.POST_BODY);
+            costs[Field.POST_BODY.ordinal()] = POST_BODY_COST;
+        }
+        if (!stubbedRequest.getHeaders().isEmpty()) {
+            defaultOrder.add(Field.HEADERS);
+            costs[Field.HEADERS.ordinal()] = costOf(matchPlan.getHeaderPredicates());
+        }
+        if (!stubbedRequest.getQuery().isEmpty()) {
+            defaultOrder.add(Field.QUERY);
+            costs[Field.QUERY.ordinal()] = costOf(matchPlan.getQueryPredicates());
+        }
+
+        return new StubMatchOrder(defaultOrder.toArray(new Field[0]), costs);
+    }
+
+    /**
+     * @return stubbed fields in the order in which they should be evaluated. The returned array must not be modified
+     */
+    Field[] fields() {
+        return order;
+    }
+
+    /**
+     * @param field evaluated field
+     * @param isRejected whether the field rejected the incoming request
+     */
+    void record(final Field field, final boolean isRejected) {
+        if (ThreadLocalRandom.current().nextInt(SAMPLING_INTERVAL) == 0) {
+            recordSample(field, isRejected);
+        }
+    }
+
+    @VisibleForTesting
+    void recordSample(final Field field, final boolean isRejected) {
+        evaluations.incrementAndGet(field.ordinal());
+        if (isRejected) {
+            rejections.incrementAndGet(field.ordinal());
+        }
+        if (samplesSinceReplan.incrementAndGet() % REPLAN_INTERVAL == 0) {
+            replan();
+        }
+    }
+
+    @VisibleForTesting
+    void replan() {
+        final Field[] next = Arrays.copyOf(order, order.length);
+        // The sort is stable, so the fields that rank the same keep their current order
+        Arrays.sort(next, Comparator.comparingDouble(this::rank));
+        this.order = next;
+    }
+
+    // Lower is evaluated earlier. The rejection rate is smoothed, so that a field that has not been evaluated
+    // yet (e.g.: the one that always comes after a rejecting field) is assumed to reject half of the requests
+    private double rank(final Field field) {
+        final double rejectionRate =
+                (rejections.get(field.ordinal()) + 1.0) / (evaluations.get(field.ordinal()) + 2.0);
+        return costs[field.ordinal()] / rejectionRate;
+    }
+
+    private static int costOf(final StubValuePredicate... predicates) {
+        int cost = 0;
+        for (final StubValuePredicate predicate : predicates) {
+            cost += predicate.isRegex() ? REGEX_COST : LITERAL_COST;
+        }
+        return cost;
+    }
+
+    @Override
+    public String toString() {
+        final Field[] current = order;
+        final StringBuilder builder = new StringBuilder();
+        for (final Field field : current) {
+            if (builder.length() > 0) {
+                builder.append(", ");
+            }
+            builder.append(field)
+                    .append(" (rejected ")
+                    .append(rejections.get(field.ordinal()))
+                    .append(" of ")
+                    .append(evaluations.get(field.ordinal()))
+                    .append(")");
+        }
+        return builder.toString();
+    }
+}
@@ -0,0 +1,283 @@
+/*
+ * Copyright (c) 2012-2024 Alexander Zagniotov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.azagniotov.stubby4j.stubs;
+
+import static io.github.azagniotov.stubby4j.utils.StringUtils.escapeSpecialRegexCharacters;
+import static io.github.azagniotov.stubby4j.yaml.ConfigurableYAMLProperty.HEADERS;
+import static io.github.azagniotov.stubby4j.yaml.ConfigurableYAMLProperty.QUERY;
+import static io.github.azagniotov.stubby4j.yaml.ConfigurableYAMLProperty.URL;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import org.w3c.dom.Document;
+
+/**
+ * Matching plan of a stubbed request, which is compiled once when the stub is loaded.
+ * <p>
+ * Everything that {@link StubMatcher} needs from the stubbed request and that never changes between the matches
+ * is computed upfront: the upper-cased HTTP methods, the stubbed request body along with its matching strategies,
+ * and a {@link StubValuePredicate predicate} for the URL and for each of the header and query param values.
+ * This way, matching an incoming request does not copy any of the stubbed collections. The plan also carries
+ * the {@link StubMatchOrder order} of the stubbed fields, which is the only part of it that changes over time.
+ * <p>
+ * The authorization headers (e.g.: {@link StubbableAuthorizationType#BASIC}) are left out of the plan,
+ * since they are dealt with in {@link StubRepository} after the request is matched.
+ */
+final class StubMatchPlan {
+
+    // Upper bound of the idle DOMs of the stubbed XML request body that are kept around for the reuse
+    private static final int POST_BODY_XML_POOL_SIZE = 4;
+
+    private final List<String> methods;
+    private final StubValuePredicate urlPredicate;
+
+    private final boolean isRequestBodyStubbed;
+    private final String postBody;
+    private final String postBodyTokenName;
+    private final StubValuePredicate postBodyPredicate;
+    private final StubValuePredicate escapedPostBodyPredicate;
+    private final StubValuePredicate postBodyRegexPredicate;
+    private final Object postBodyJson;
+    // Null if the stubbed request body is not a well-formed XML, see #borrowPostBodyXml()
+    private final BlockingQueue<Document> postBodyXmlPool;
+
+    private final String[] headerNames;
+    private final StubValuePredicate[] headerPredicates;
+    private final String[] queryNames;
+    private final StubValuePredicate[] queryPredicates;
+
+    private final StubMatchOrder matchOrder;
+
+    private StubMatchPlan(final StubRequest stubbedRequest) {
+        this.methods = stubbedRequest.getUpperCaseMethods();
+        this.urlPredicate = StubValuePredicate.of(stubbedRequest.getUri(), URL.toString());
+
+        this.isRequestBodyStubbed = stubbedRequest.isRequestBodyStubbed();
+        if (isRequestBodyStubbed) {
+            this.postBody = stubbedRequest.getPostBody();
+            this.postBodyTokenName = stubbedRequest.getStubbedRequestBodyTokenName();
+            this.postBodyPredicate = StubValuePredicate.of(postBody, postBodyTokenName);
+            this.escapedPostBodyPredicate =
+                    StubValuePredicate.of(escapeSpecialRegexCharacters(postBody), postBodyTokenName);
+            this.postBodyRegexPredicate = StubValuePredicate.regexOnly(postBody, postBodyTokenName);
+            this.postBodyJson = StubBodyParser.parseJson(postBody);
+            final Document postBodyXml =
+                    StubBodyParser.isPotentialXml(postBody) ? StubBodyParser.parseXml(postBody) : null;
+            if (postBodyXml == null) {
+                this.postBodyXmlPool = null;
+            } else {
+                this.postBodyXmlPool = new ArrayBlockingQueue<>(POST_BODY_XML_POOL_SIZE);
+                this.postBodyXmlPool.offer(postBodyXml);
+            }
+        } else {
+            this.postBody = null;
+            this.postBodyTokenName = null;
+            this.postBodyPredicate = null;
+            this.escapedPostBodyPredicate = null;
+            this.postBodyRegexPredicate = null;
+            this.postBodyJson = null;
+            this.postBodyXmlPool = null;
+        }
+
+        final List<String> matchableHeaderNames = new ArrayList<>(stubbedRequest.getHeaders().keySet());
+        for (final StubbableAuthorizationType authorizationType : StubbableAuthorizationType.values()) {
+            matchableHeaderNames.remove(authorizationType.asYAMLProp());
+        }
+        this.headerNames = matchableHeaderNames.toArray(new String[0]);
+        this.headerPredicates = toPredicates(headerNames, stubbedRequest.getHeaders(), HEADERS.toString());
+
+        this.queryNames = stubbedRequest.getQuery().keySet().toArray(new String[0]);
+        this.queryPredicates = toPredicates(queryNames, stubbedRequest.getQuery(), QUERY.toString());
+
+        // Must come last, the order is estimated from the fields above
+        this.matchOrder = StubMatchOrder.of(stubbedRequest, this);
+    }
+
+    static StubMatchPlan compile(final StubRequest stubbedRequest) {
+        return new StubMatchPlan(stubbedRequest);
+    }
+
+    private static StubValuePredicate[] toPredicates(
+            final String[] names, final Map<String, String> stubbedMappings, final String mapName) {
+        final StubValuePredicate[] predicates = new StubValuePredicate[names.length];
+        for (int idx = 0; idx < names.length; idx++) {
+            final String templateTokenName = String.format("%s.%s", mapName, names[idx]);
+            predicates[idx] = StubValuePredicate.of(stubbedMappings.get(names[idx]), templateTokenName);
+        }
+
+        return predicates;
+    }
+
+    boolean urlMatches(
+            final String assertingUrl,
+            final Map<String, String> regexGroups,
+            final StubPredicateMemo predicateMemo,
+            final StubTemplateTokens templateTokens) {
+        return predicateMemo.test(urlPredicate, assertingUrl, regexGroups, templateTokens);
+    }
+
+    boolean methodsIntersect(final List<String> assertingMethods) {
+        if (methods.isEmpty()) {
+            return true;
+        }
+        for (final String assertingMethod : assertingMethods) {
+            if (methods.contains(assertingMethod)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    boolean headersMatch(
+            final Map<String, String> assertingHeaders,
+            final Map<String, String> regexGroups,
+            final StubPredicateMemo predicateMemo,
+            final StubTemplateTokens templateTokens) {
+        return mappingsMatch(
+                headerNames, headerPredicates, assertingHeaders, regexGroups, predicateMemo, templateTokens);
+    }
+
+    boolean queriesMatch(
+            final Map<String, String> assertingQuery,
+            final Map<String, String> regexGroups,
+            final StubPredicateMemo predicateMemo,
+            final StubTemplateTokens templateTokens) {
+        return mappingsMatch(queryNames, queryPredicates, assertingQuery, regexGroups, predicateMemo, templateTokens);
+    }
+
+    private static boolean mappingsMatch(
+            final String[] names,
+            final StubValuePredicate[] predicates,
+            final Map<String, String> assertingMappings,
+            final Map<String, String> regexGroups,
+            final StubPredicateMemo predicateMemo,
+            final StubTemplateTokens templateTokens) {
+        if (names.length == 0) {
+            return true;
+        } else if (assertingMappings.isEmpty()) {
+            return false;
+        }
+
+        for (int idx = 0; idx < names.length; idx++) {
+            if (!assertingMappings.containsKey(names[idx])) {
+                return false;
+            }
+            final String assertingValue = assertingMappings.get(names[idx]);
+            if (!predicateMemo.test(predicates[idx], assertingValue, regexGroups, templateTokens)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    List<String> getMethods() {
+        return methods;
+    }
+
+    StubValuePredicate getUrlPredicate() {
+        return urlPredicate;
+    }
+
+    String[] getHeaderNames() {
+        return headerNames;
+    }
+
+    StubValuePredicate[] getHeaderPredicates() {
+        return headerPredicates;
+    }
+
+    String[] getQueryNames() {
+        return queryNames;
+    }
+
+    StubValuePredicate[] getQueryPredicates() {
+        return queryPredicates;
+    }
+
+    /**
+     * @return order in which the {@link StubMatcher} goes through the stubbed fields, which is shared by all
+     * the matches of this stubbed request
+     */
+    StubMatchOrder getMatchOrder() {
+        return matchOrder;
+    }
+
+    boolean isRequestBodyStubbed() {
+        return isRequestBodyStubbed;
+    }
+
+    String getPostBody() {
+        return postBody;
+    }
+
+    String getPostBodyTokenName() {
+        return postBodyTokenName;
+    }
+
+    /**
+     * @return JSON tree of the stubbed request body, see {@link StubBodyParser#parseJson(String)}. The tree is only
+     * ever read, therefore it is shared by the threads that match incoming requests to this stub
+     */
+    Object getPostBodyJson() {
+        return postBodyJson;
+    }
+
+    /**
+     * A DOM is not safe to be read concurrently (e.g.: node lists are cached lazily upon traversal), so a DOM of
+     * the stubbed XML is lent to one comparison at a time, and it must be handed back through
+     * {@link #releasePostBodyXml(Document)} once the comparison is done. The DOM parsed when the plan was compiled
+     * is the first one to be lent, and the stubbed XML is parsed again only when all the idle DOMs are in use by
+     * the concurrent comparisons. The DOM is not modified by the comparison, as XMLUnit normalizes the whitespace
+     * of a copy of the compared documents.
+     *
+     * @return DOM of the stubbed request body, or {@code null} if the body is not a well-formed XML
+     */
+    Document borrowPostBodyXml() {
+        if (postBodyXmlPool == null) {
+            return null;
+        }
+        final Document idle = postBodyXmlPool.poll();
+
+        return idle != null ? idle : StubBodyParser.parseXml(postBody);
+    }
+
+    /**
+     * @param postBodyXml DOM that was lent by {@link #borrowPostBodyXml()}, which is dropped if there are enough
+     *                    idle DOMs already
+     */
+    void releasePostBodyXml(final Document postBodyXml) {
+        if (postBodyXml != null) {
+            postBodyXmlPool.offer(postBodyXml);
+        }
+    }
+
+    StubValuePredicate getPostBodyPredicate() {
+        return postBodyPredicate;
+    }
+
+    StubValuePredicate getEscapedPostBodyPredicate() {
+        return escapedPostBodyPredicate;
+    }
+
+    StubValuePredicate getPostBodyRegexPredicate() {
+        return postBodyRegexPredicate;
+    }
+}
@@ -16,31 +16,20 @@
 
 package io.github.azagniotov.stubby4j.stubs;
 
-import static io.github.azagniotov.stubby4j.utils.StringUtils.escapeSpecialRegexCharacters;
-import static io.github.azagniotov.stubby4j.utils.StringUtils.getBytesUtf8;
 import static io.github.azagniotov.stubby4j.utils.StringUtils.isNotSet;
-import static io.github.azagniotov.stubby4j.utils.StringUtils.isSet;
-import static io.github.azagniotov.stubby4j.yaml.ConfigurableYAMLProperty.HEADERS;
-import static io.github.azagniotov.stubby4j.yaml.ConfigurableYAMLProperty.QUERY;
-import static io.github.azagniotov.stubby4j.yaml.ConfigurableYAMLProperty.URL;
-import static org.xmlunit.builder.Input.fromByteArray;
 
 import io.github.azagniotov.stubby4j.annotations.VisibleForTesting;
 import io.github.azagniotov.stubby4j.cli.ANSITerminal;
 import io.github.azagniotov.stubby4j.stubs.matching.Stubby4jMatchesRegexPlaceholderHandler;
 import io.github.azagniotov.stubby4j.stubs.matching.Stubby4jXmlUnitPlaceholderDifferenceEvaluator;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 import org.json.JSONException;
-import org.skyscreamer.jsonassert.JSONCompare;
 import org.skyscreamer.jsonassert.JSONCompareMode;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.w3c.dom.Document;
 import org.xmlunit.builder.DiffBuilder;
-import org.xmlunit.builder.Input;
 import org.xmlunit.diff.ComparisonControllers;
 import org.xmlunit.diff.DefaultNodeMatcher;
 import org.xmlunit.diff.Diff;
@@ -52,7 +41,6 @@ class StubMatcher {
     private static final Logger LOGGER = LoggerFactory.getLogger(StubMatcher.class);
     private static final DefaultNodeMatcher NODE_MATCHER_BY_NAME_AND_ALL_ATTRIBUTES =
             new DefaultNodeMatcher(ElementSelectors.byNameAndAllAttributes);
-    private static final Pattern SUB_TYPE_PATTERN = Pattern.compile("/(?:.*\\+)?(\\w*);?");
 
     private static final String FAILED_TO_MATCH_ON_STUBBED = "Failed to match on stubbed";
     private static final String MATCHED_ON_STUBBED = "Matched on stubbed";
@@ -65,158 +53,137 @@ class StubMatcher {
     private static final String MSG_FIELD_QUERY = " QUERY ";
 
     private final Map<String, String> regexGroups;
+    private final StubPredicateMemo predicateMemo;
 
     StubMatcher(final Map<String, String> regexGroups) {
+        this(regexGroups, new StubPredicateMemo());
+    }
+
+    StubMatcher(final Map<String, String> regexGroups, final StubPredicateMemo predicateMemo) {
         this.regexGroups = regexGroups;
+        this.predicateMemo = predicateMemo;
     }
 
     boolean matches(final StubRequest stubbedRequest, final StubRequest assertingRequest) {
-        // Match stubbed request URI path
-        if (!urlsMatch(stubbedRequest.getUri(), assertingRequest.getUri())) {
-            final String urlMatchFailed = String.format(
-                    FAILED_TO_MATCH_ON_STUBBED + MSG_FIELD_URL + MSG_FIELDS_TEMPLATE,
-                    stubbedRequest.getUri(),
-                    assertingRequest.getUri());
-            ANSITerminal.error(urlMatchFailed);
-            LOGGER.error(urlMatchFailed);
-            return false;
-        }
-        final String urlMatchSuccess = String.format(
-                MATCHED_ON_STUBBED + MSG_FIELD_URL + MSG_FIELDS_TEMPLATE,
-                stubbedRequest.getUri(),
-                assertingRequest.getUri());
-        ANSITerminal.info(urlMatchSuccess);
-        LOGGER.info(urlMatchSuccess);
-
-        // Match stubbed request HTTP method(s)
-        if (!stubbedRequest.getMethod().isEmpty()) {
-            if (!listsIntersect(stubbedRequest.getMethod(), assertingRequest.getMethod())) {
-                final String methodMatchFailed = String.format(
-                        FAILED_TO_MATCH_ON_STUBBED + MSG_FIELD_METHOD + MSG_FIELDS_TEMPLATE,
-                        stubbedRequest.getMethod(),
-                        assertingRequest.getMethod());
-                ANSITerminal.error(methodMatchFailed);
-                LOGGER.error(methodMatchFailed);
-                return false;
-            }
-            final String methodMatchSuccess = String.format(
-                    MATCHED_ON_STUBBED + MSG_FIELD_METHOD + MSG_FIELDS_TEMPLATE,
-                    stubbedRequest.getMethod(),
-                    assertingRequest.getMethod());
-            ANSITerminal.info(methodMatchSuccess);
-            LOGGER.info(methodMatchSuccess);
-        }
+        return matches(stubbedRequest, assertingRequest, StubTemplateTokens.ALL);
+    }
 
-        // Match stubbed request body payload (POST, PUT & PATCH)
-        if (stubbedRequest.isRequestBodyStubbed()) {
-            if (!postBodiesMatch(stubbedRequest, assertingRequest)) {
-                final String bodyMatchFailed = String.format(
-                        FAILED_TO_MATCH_ON_STUBBED + MSG_FIELD_POST_BODY + MSG_FIELDS_TEMPLATE,
-                        stubbedRequest.getPostBody(),
-                        assertingRequest.getPostBody());
-                ANSITerminal.error(bodyMatchFailed);
-                LOGGER.error(bodyMatchFailed);
+    /**
+     * @param templateTokens template tokens that the stubbed responses refer to, which tell what regex groups
+     *                       to capture, see {@link StubTemplateTokens}
+     */
+    boolean matches(
+            final StubRequest stubbedRequest,
+            final StubRequest assertingRequest,
+            final StubTemplateTokens templateTokens) {
+        final StubMatchPlan matchPlan = stubbedRequest.getMatchPlan();
+        final StubMatchOrder matchOrder = matchPlan.getMatchOrder();
+
+        // All the stubbed fields have to match, the order only decides which one gets to reject the request first
+        for (final StubMatchOrder.Field field : matchOrder.fields()) {
+            final boolean isMatched = fieldMatches(field, matchPlan, stubbedRequest, assertingRequest, templateTokens);
+            matchOrder.record(field, !isMatched);
+            if (!isMatched) {
                 return false;
             }
-            final String bodyMatchSuccess = String.format(
-                    MATCHED_ON_STUBBED + MSG_FIELD_POST_BODY + MSG_FIELDS_TEMPLATE,
-                    stubbedRequest.getPostBody(),
-                    assertingRequest.getPostBody());
-            ANSITerminal.info(bodyMatchSuccess);
-            LOGGER.info(bodyMatchSuccess);
         }
 
-        // Match stubbed request headers
-        if (!stubbedRequest.getHeaders().isEmpty()) {
-            if (!headersMatch(stubbedRequest.getHeaders(), assertingRequest.getHeaders())) {
-                final String headersMatchFailed = String.format(
-                        FAILED_TO_MATCH_ON_STUBBED + MSG_FIELD_HEADERS + MSG_FIELDS_TEMPLATE,
+        return true;
+    }
+
+    private boolean fieldMatches(
+            final StubMatchOrder.Field field,
+            final StubMatchPlan matchPlan,
+            final StubRequest stubbedRequest,
+            final StubRequest assertingRequest,
+            final StubTemplateTokens templateTokens) {
+        switch (field) {
+            case URL:
+                // Match stubbed request URI path
+                return logged(
+                        matchPlan.urlMatches(assertingRequest.getUri(), regexGroups, predicateMemo, templateTokens),
+                        MSG_FIELD_URL,
+                        stubbedRequest.getUri(),
+                        assertingRequest.getUri());
+            case METHOD:
+                // Match stubbed request HTTP method(s)
+                return logged(
+                        matchPlan.methodsIntersect(assertingRequest.getUpperCaseMethods()),
+                        MSG_FIELD_METHOD,
+                        stubbedRequest.getUpperCaseMethods(),
+                        assertingRequest.getUpperCaseMethods());
+            case POST_BODY:
+                // Match stubbed request body payload (POST, PUT & PATCH)
+                return logged(
+                        postBodiesMatch(matchPlan, assertingRequest, templateTokens),
+                        MSG_FIELD_POST_BODY,
+                        matchPlan.getPostBody(),
+                        assertingRequest.getPostBody());
+            case HEADERS:
+                // Match stubbed request headers
+                return logged(
+                        matchPlan.headersMatch(
+                                assertingRequest.getHeaders(), regexGroups, predicateMemo, templateTokens),
+                        MSG_FIELD_HEADERS,
                         stubbedRequest.getHeaders(),
                         assertingRequest.getHeaders());
-                ANSITerminal.error(headersMatchFailed);
-                LOGGER.error(headersMatchFailed);
-                return false;
-            }
-            final String headersMatchSuccess = String.format(
-                    MATCHED_ON_STUBBED + MSG_FIELD_HEADERS + MSG_FIELDS_TEMPLATE,
-                    stubbedRequest.getHeaders(),
-                    assertingRequest.getHeaders());
-            ANSITerminal.info(headersMatchSuccess);
-            LOGGER.info(headersMatchSuccess);
-        }
-
-        // Match stubbed request query params
-        if (!stubbedRequest.getQuery().isEmpty()) {
-            if (!queriesMatch(stubbedRequest.getQuery(), assertingRequest.getQuery())) {
-                final String uriQueryMatchFailed = String.format(
-                        FAILED_TO_MATCH_ON_STUBBED + MSG_FIELD_QUERY + MSG_FIELDS_TEMPLATE,
+            case QUERY:
+                // Match stubbed request query params
+                return logged(
+                        matchPlan.queriesMatch(
+                                assertingRequest.getQuery(), regexGroups, predicateMemo, templateTokens),
+                        MSG_FIELD_QUERY,
                         stubbedRequest.getQuery(),
                         assertingRequest.getQuery());
-                ANSITerminal.error(uriQueryMatchFailed);
-                LOGGER.error(uriQueryMatchFailed);
-                return false;
-            }
-            final String uriQueryMatchSuccess = String.format(
-                    MATCHED_ON_STUBBED + MSG_FIELD_QUERY + MSG_FIELDS_TEMPLATE,
-                    stubbedRequest.getQuery(),
-                    assertingRequest.getQuery());
-            ANSITerminal.info(uriQueryMatchSuccess);
-            LOGGER.info(uriQueryMatchSuccess);
+            default:
+                throw new IllegalStateException(String.format("Unexpected stubbed field %s, how so?", field));
         }
-
-        return true;
     }
 
-    private boolean urlsMatch(final String stubbedUrl, final String assertingUrl) {
-        return stringsMatch(stubbedUrl, assertingUrl, URL.toString());
+    private static boolean logged(
+            final boolean isMatched, final String fieldName, final Object stubbedValue, final Object assertingValue) {
+        if (!isMatched) {
+            final String matchFailed = String.format(
+                    FAILED_TO_MATCH_ON_STUBBED + fieldName + MSG_FIELDS_TEMPLATE, stubbedValue, assertingValue);
+            ANSITerminal.error(matchFailed);
+            LOGGER.error(matchFailed);
+            return false;
+        }
+        final String matchSuccess =
+                String.format(MATCHED_ON_STUBBED + fieldName + MSG_FIELDS_TEMPLATE, stubbedValue, assertingValue);
+        ANSITerminal.info(matchSuccess);
+        LOGGER.info(matchSuccess);
+        return true;
     }
 
     @VisibleForTesting
     boolean postBodiesMatch(final StubRequest stubbedRequest, final StubRequest assertingRequest) {
-        final boolean isPostStubbed = stubbedRequest.isRequestBodyStubbed();
-        final String stubbedPostBody = stubbedRequest.getPostBody();
-        final String templateTokenName = stubbedRequest.getStubbedRequestBodyTokenName();
+        return postBodiesMatch(stubbedRequest.getMatchPlan(), assertingRequest, StubTemplateTokens.ALL);
+    }
 
-        if (isPostStubbed) {
+    private boolean postBodiesMatch(
+            final StubMatchPlan matchPlan,
+            final StubRequest assertingRequest,
+            final StubTemplateTokens templateTokens) {
+        if (matchPlan.isRequestBodyStubbed()) {
             final String assertingPostBody = assertingRequest.getPostBody();
             if (isNotSet(assertingPostBody)) {
                 return false;
             }
 
-            final String assertingContentType = assertingRequest.getHeaders().get("content-type");
-
-            if (isSet(assertingContentType)) {
-                final Matcher matcher = SUB_TYPE_PATTERN.matcher(assertingContentType);
-                if (matcher.find()) {
-                    final String subType = matcher.group(1);
-
-                    if ("json".equals(subType)) {
-                        return jsonMatch(stubbedPostBody, assertingPostBody, templateTokenName);
-                    } else if ("xml".equals(subType)) {
-                        return xmlMatch(stubbedPostBody, assertingPostBody, templateTokenName);
-                    }
-                }
+            final String subType = assertingRequest.getContentSubType();
+            if ("json".equals(subType)) {
+                return jsonMatch(matchPlan, assertingRequest, assertingPostBody, templateTokens);
+            } else if ("xml".equals(subType)) {
+                return xmlMatch(matchPlan, assertingRequest, assertingPostBody, templateTokens);
             }
 
-            return stringsMatch(stubbedPostBody, assertingPostBody, templateTokenName);
+            return matchPlan.getPostBodyPredicate().test(assertingPostBody, regexGroups, templateTokens);
         }
 
         return true;
     }
 
-    private boolean queriesMatch(final Map<String, String> stubbedQuery, final Map<String, String> assertingQuery) {
-        return mapsMatch(stubbedQuery, assertingQuery, QUERY.toString());
-    }
-
-    private boolean headersMatch(final Map<String, String> stubbedHeaders, final Map<String, String> assertingHeaders) {
-        final Map<String, String> stubbedHeadersCopy = new HashMap<>(stubbedHeaders);
-        for (final StubbableAuthorizationType authorizationType : StubbableAuthorizationType.values()) {
-            // auth header is dealt with in StubRepository after request is matched
-            stubbedHeadersCopy.remove(authorizationType.asYAMLProp());
-        }
-        return mapsMatch(stubbedHeadersCopy, assertingHeaders, HEADERS.toString());
-    }
-
     @VisibleForTesting
     boolean mapsMatch(
             final Map<String, String> stubbedMappings,
@@ -228,15 +195,12 @@ class StubMatcher {
             return false;
         }
 
-        final Map<String, String> stubbedMappingsCopy = new HashMap<>(stubbedMappings);
-        final Map<String, String> assertingMappingsCopy = new HashMap<>(assertingMappings);
-
-        for (final Map.Entry<String, String> stubbedMappingEntry : stubbedMappingsCopy.entrySet()) {
-            final boolean containsRequiredParam = assertingMappingsCopy.containsKey(stubbedMappingEntry.getKey());
+        for (final Map.Entry<String, String> stubbedMappingEntry : stubbedMappings.entrySet()) {
+            final boolean containsRequiredParam = assertingMappings.containsKey(stubbedMappingEntry.getKey());
             if (!containsRequiredParam) {
                 return false;
             } else {
-                final String assertingValue = assertingMappingsCopy.get(stubbedMappingEntry.getKey());
+                final String assertingValue = assertingMappings.get(stubbedMappingEntry.getKey());
                 final String templateTokenName = String.format("%s.%s", mapName, stubbedMappingEntry.getKey());
 
                 if (!stringsMatch(stubbedMappingEntry.getValue(), assertingValue, templateTokenName)) {
@@ -276,28 +240,58 @@ class StubMatcher {
         return false;
     }
 
-    private boolean jsonMatch(final String stubbedJson, final String assertingJson, final String templateTokenName) {
+    private boolean jsonMatch(
+            final StubMatchPlan matchPlan,
+            final StubRequest assertingRequest,
+            final String assertingJson,
+            final StubTemplateTokens templateTokens) {
+        final Object stubbedJsonTree = matchPlan.getPostBodyJson();
+        final Object assertingJsonTree = stubbedJsonTree == null ? null : assertingRequest.getJsonPostBody();
+        if (stubbedJsonTree == null || assertingJsonTree == null) {
+            // In a "happy path", this happens when stubbed JSON is a RegEx pattern
+            return matchPlan.getPostBodyPredicate().test(assertingJson, regexGroups, templateTokens);
+        }
+
         try {
-            final boolean passed = JSONCompare.compareJSON(stubbedJson, assertingJson, JSONCompareMode.NON_EXTENSIBLE)
-                    .passed();
+            final boolean passed =
+                    StubBodyParser.jsonTreesMatch(stubbedJsonTree, assertingJsonTree, JSONCompareMode.NON_EXTENSIBLE);
             if (passed) {
                 return true;
             } else {
-                final String escapedStubbedPostBody = escapeSpecialRegexCharacters(stubbedJson);
-                return stringsMatch(escapedStubbedPostBody, assertingJson, templateTokenName);
+                return matchPlan.getEscapedPostBodyPredicate().test(assertingJson, regexGroups, templateTokens);
             }
         } catch (final JSONException e) {
-            // In a "happy path", this exception happens when stubbed JSON is a RegEx pattern
-            return stringsMatch(stubbedJson, assertingJson, templateTokenName);
+            return matchPlan.getPostBodyPredicate().test(assertingJson, regexGroups, templateTokens);
         }
     }
 
-    private boolean xmlMatch(final String stubbedXml, final String assertingXml, final String templateTokenName) {
+    private boolean xmlMatch(
+            final StubMatchPlan matchPlan,
+            final StubRequest assertingRequest,
+            final String assertingXml,
+            final StubTemplateTokens templateTokens) {
+        final Document control = matchPlan.borrowPostBodyXml();
         try {
+            final Document assertion = control == null ? null : assertingRequest.getXmlPostBody();
+            if (control == null || assertion == null) {
+                // The stubbed or the incoming XML markup is not well-formed, which was reported when it was parsed
+                return matchPlan.getPostBodyRegexPredicate().test(assertingXml, regexGroups, templateTokens);
+            }
 
-            final Input.Builder control = fromByteArray(getBytesUtf8(stubbedXml));
-            final Input.Builder assertion = fromByteArray(getBytesUtf8(assertingXml));
+            return xmlDiffMatch(matchPlan, control, assertion, assertingXml, templateTokens);
+        } finally {
+            matchPlan.releasePostBodyXml(control);
+        }
+    }
 
+    private boolean xmlDiffMatch(
+            final StubMatchPlan matchPlan,
+            final Document control,
+            final Document assertion,
+            final String assertingXml,
+            final StubTemplateTokens templateTokens) {
+        final String templateTokenName = matchPlan.getPostBodyTokenName();
+        try {
             // There is a chance that the stubbed XML contains XMLUnit placeholders,
             // e.g.: ${xmlunit.matchesRegex(..)}, so let's do another comparison pass
             // using PlaceholderDifferenceEvaluator.
@@ -322,12 +316,12 @@ class StubMatcher {
             return !diff.hasDifferences();
         } catch (Exception e) {
             // A common exception that I have seen to happen is:
-            // org.xmlunit.XMLUnitException: The markup in the document preceding the root element must be well-formed.
+            // org.xmlunit.XMLUnitException: Unclosed group near index 3, when a placeholder regex is malformed
 
-            ANSITerminal.error(String.format("Failed to parse XML markup: %s, cause: %s", e, e.getCause()));
-            LOGGER.error("Failed to parse XML markup: {}, cause: {}", e, e.getCause());
+            ANSITerminal.error(String.format("Failed to compare XML markup: %s, cause: %s", e, e.getCause()));
+            LOGGER.error("Failed to compare XML markup: {}, cause: {}", e, e.getCause());
 
-            return regexMatch(stubbedXml, assertingXml, templateTokenName);
+            return matchPlan.getPostBodyRegexPredicate().test(assertingXml, regexGroups, templateTokens);
         }
     }
 }
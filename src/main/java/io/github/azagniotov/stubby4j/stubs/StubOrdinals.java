@@ -0,0 +1,130 @@
+/*
+ * Copyright (c) 2012-2024 Alexander Zagniotov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.azagniotov.stubby4j.stubs;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Operations on sorted arrays of stub ordinals, which the stub indexes use to refer to the stubs,
+ * see {@link StubIndex}. None of the operations modify the given arrays.
+ */
+final class StubOrdinals {
+
+    static final int[] NONE = new int[] {};
+
+    private StubOrdinals() {}
+
+    /**
+     * @return ordinals with the given ordinal inserted at its sorted position
+     */
+    static int[] insert(final int[] ordinals, final int ordinal) {
+        final int position = Arrays.binarySearch(ordinals, ordinal);
+        if (position >= 0) {
+            return ordinals;
+        }
+
+        final int insertionPoint = -(position + 1);
+        final int[] inserted = new int[ordinals.length + 1];
+        System.arraycopy(ordinals, 0, inserted, 0, insertionPoint);
+        inserted[insertionPoint] = ordinal;
+        System.arraycopy(ordinals, insertionPoint, inserted, insertionPoint + 1, ordinals.length - insertionPoint);
+
+        return inserted;
+    }
+
+    /**
+     * @return ordinals without the given ordinal
+     */
+    static int[] remove(final int[] ordinals, final int ordinal) {
+        final int position = Arrays.binarySearch(ordinals, ordinal);
+        if (position < 0) {
+            return ordinals;
+        }
+
+        final int[] removed = new int[ordinals.length - 1];
+        System.arraycopy(ordinals, 0, removed, 0, position);
+        System.arraycopy(ordinals, position + 1, removed, position, ordinals.length - position - 1);
+
+        return removed;
+    }
+
+    /**
+     * @return union of the given ordinals, which are expected to be disjoint
+     */
+    static int[] merge(final int[] left, final int[] right) {
+        if (left.length == 0) {
+            return right;
+        } else if (right.length == 0) {
+            return left;
+        }
+
+        final int[] merged = new int[left.length + right.length];
+        int leftIdx = 0;
+        int rightIdx = 0;
+        int mergedIdx = 0;
+        while (leftIdx < left.length && rightIdx < right.length) {
+            merged[mergedIdx++] = left[leftIdx] < right[rightIdx] ? left[leftIdx++] : right[rightIdx++];
+        }
+        while (leftIdx < left.length) {
+            merged[mergedIdx++] = left[leftIdx++];
+        }
+        while (rightIdx < right.length) {
+            merged[mergedIdx++] = right[rightIdx++];
+        }
+
+        return merged;
+    }
+
+    /**
+     * @param candidates sorted ordinals to filter
+     * @param indexed ordinals that are held by an index
+     * @param matching sorted ordinals, out of the indexed ones, that the index found for an incoming request
+     * @return candidates that are either not held by the index, or were found by it
+     */
+    static int[] retain(final int[] candidates, final BitSet indexed, final int[] matching) {
+        final int[] retained = new int[candidates.length];
+        int retainedSize = 0;
+        int matchingIdx = 0;
+        for (final int ordinal : candidates) {
+            if (!indexed.get(ordinal)) {
+                retained[retainedSize++] = ordinal;
+                continue;
+            }
+            while (matchingIdx < matching.length && matching[matchingIdx] < ordinal) {
+                matchingIdx++;
+            }
+            if (matchingIdx < matching.length && matching[matchingIdx] == ordinal) {
+                retained[retainedSize++] = ordinal;
+            }
+        }
+
+        return retainedSize == candidates.length ? candidates : Arrays.copyOf(retained, retainedSize);
+    }
+
+    /**
+     * @return true if any of the candidates is held by an index
+     */
+    static boolean anyIndexed(final int[] candidates, final BitSet indexed) {
+        for (final int ordinal : candidates) {
+            if (indexed.get(ordinal)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
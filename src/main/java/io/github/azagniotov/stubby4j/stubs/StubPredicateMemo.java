@@ -0,0 +1,135 @@
+/*
+ * Copyright (c) 2012-2024 Alexander Zagniotov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.azagniotov.stubby4j.stubs;
+
+import io.github.azagniotov.stubby4j.annotations.VisibleForTesting;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Outcomes of the regex {@link StubValuePredicate predicates} that were already tested against an incoming request,
+ * so that a predicate that is shared by many stubs, e.g.: the same URL regex or the same regex header value, is
+ * evaluated once per incoming request rather than once per candidate stub.
+ * <p>
+ * Predicates are told apart by value (see {@link StubValuePredicate#equals(Object)}), so identical predicates of
+ * different stubs share the memoized outcome. Along with the outcome, the regex groups that the predicate captured
+ * are memoized too and put back upon every reuse, therefore a memoized outcome resolves the dynamic tokens in the
+ * stubbed response the same way as an evaluated one. A match that captured only the groups that the responses of one
+ * stub refer to is not reused for a stub whose responses refer to other groups, see {@link StubTemplateTokens}.
+ * <p>
+ * A memo lives for as long as the incoming request is being matched, it is not meant to be shared between threads,
+ * see {@link StubMatchContext}.
+ */
+final class StubPredicateMemo {
+
+    private final Map<StubValuePredicate, Outcome> outcomes;
+    private int hits;
+
+    StubPredicateMemo() {
+        this.outcomes = new HashMap<>();
+        this.hits = 0;
+    }
+
+    /**
+     * @see StubValuePredicate#test(String, Map, StubTemplateTokens)
+     */
+    boolean test(
+            final StubValuePredicate predicate,
+            final String assertingValue,
+            final Map<String, String> regexGroups,
+            final StubTemplateTokens templateTokens) {
+        // A literal comparison is cheaper than the memo lookup
+        if (!predicate.isRegex()) {
+            return predicate.test(assertingValue, regexGroups, templateTokens);
+        }
+
+        final Outcome memoized = outcomes.get(predicate);
+        if (memoized != null
+                && Objects.equals(memoized.assertingValue, assertingValue)
+                && memoized.isReusableWith(templateTokens, predicate.getTemplateTokenName())) {
+            hits++;
+            return memoized.replay(regexGroups);
+        }
+
+        final Map<String, String> capturedRegexGroups = new HashMap<>();
+        final Outcome outcome;
+        try {
+            final boolean isMatch = predicate.test(assertingValue, capturedRegexGroups, templateTokens);
+            outcome = new Outcome(assertingValue, isMatch, capturedRegexGroups, templateTokens, null);
+        } catch (final RegexMatchAbortedException e) {
+            // The predicate would run out of its matching budget all over again
+            outcomes.put(
+                    predicate,
+                    new Outcome(assertingValue, false, Collections.emptyMap(), StubTemplateTokens.ALL, e));
+            throw e;
+        }
+        outcomes.put(predicate, outcome);
+
+        return outcome.replay(regexGroups);
+    }
+
+    /**
+     * Forgets the memoized outcomes, so that the memo can be reused for the next incoming request
+     */
+    void clear() {
+        outcomes.clear();
+        hits = 0;
+    }
+
+    @VisibleForTesting
+    int getHits() {
+        return hits;
+    }
+
+    private static final class Outcome {
+        private final String assertingValue;
+        private final boolean isMatch;
+        private final Map<String, String> capturedRegexGroups;
+        private final StubTemplateTokens capturedWith;
+        private final RegexMatchAbortedException abort;
+
+        private Outcome(
+                final String assertingValue,
+                final boolean isMatch,
+                final Map<String, String> capturedRegexGroups,
+                final StubTemplateTokens capturedWith,
+                final RegexMatchAbortedException abort) {
+            this.assertingValue = assertingValue;
+            this.isMatch = isMatch;
+            this.capturedRegexGroups = capturedRegexGroups;
+            this.capturedWith = capturedWith;
+            this.abort = abort;
+        }
+
+        /**
+         * A match that captured fewer regex groups than the given template tokens refer to has to be re-evaluated
+         */
+        private boolean isReusableWith(final StubTemplateTokens templateTokens, final String templateTokenName) {
+            return !isMatch || abort != null || capturedWith.covers(templateTokens, templateTokenName);
+        }
+
+        private boolean replay(final Map<String, String> regexGroups) {
+            if (abort != null) {
+                throw abort;
+            }
+            regexGroups.putAll(capturedRegexGroups);
+            return isMatch;
+        }
+    }
+}
@@ -19,15 +19,16 @@ package io.github.azagniotov.stubby4j.stubs;
 import static io.github.azagniotov.stubby4j.common.Common.HEADER_X_STUBBY_PROXY_CONFIG;
 import static io.github.azagniotov.stubby4j.common.Common.HEADER_X_STUBBY_PROXY_REQUEST;
 import static io.github.azagniotov.stubby4j.common.Common.HEADER_X_STUBBY_PROXY_RESPONSE;
+import static io.github.azagniotov.stubby4j.common.Common.POSTING_METHODS;
 import static io.github.azagniotov.stubby4j.stubs.StubResponse.notFoundResponse;
 import static io.github.azagniotov.stubby4j.stubs.StubResponse.unauthorizedResponse;
 import static io.github.azagniotov.stubby4j.utils.CollectionUtils.constructParamMap;
 import static io.github.azagniotov.stubby4j.utils.ConsoleUtils.logAssertingRequest;
-import static io.github.azagniotov.stubby4j.utils.HandlerUtils.extractPostRequestBody;
 import static io.github.azagniotov.stubby4j.utils.ObjectUtils.isNotNull;
 import static io.github.azagniotov.stubby4j.utils.ReflectionUtils.injectObjectFields;
 import static io.github.azagniotov.stubby4j.utils.StringUtils.isSet;
 import static io.github.azagniotov.stubby4j.utils.StringUtils.toLower;
+import static io.github.azagniotov.stubby4j.utils.StringUtils.toUpper;
 import static io.github.azagniotov.stubby4j.yaml.ConfigurableYAMLProperty.BODY;
 import static java.util.Collections.list;
 import static org.eclipse.jetty.http.HttpStatus.getCode;
@@ -45,10 +46,10 @@ import io.github.azagniotov.stubby4j.yaml.YamlParseResultSet;
 import io.github.azagniotov.stubby4j.yaml.YamlParser;
 import java.io.File;
 import java.io.IOException;
-import java.util.ArrayList;
 import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
@@ -67,33 +68,74 @@ import org.slf4j.LoggerFactory;
 public class StubRepository {
     private static final Logger LOGGER = LoggerFactory.getLogger(StubRepository.class);
 
-    private final File configFile;
+    public static final int DEFAULT_MAX_BUFFERED_REQUEST_BODY_BYTES = 1024 * 1024;
 
-    private final List<StubHttpLifecycle> stubs;
-    private final Cache<String, StubHttpLifecycle> stubMatchesCache;
+    private final File configFile;
 
+    private final Cache<String, StubMatch> stubMatchesCache;
+    private final Cache<String, Boolean> stubMissesCache;
+    private final boolean isMatchCaching;
     private final ConcurrentHashMap<String, AtomicLong> resourceStats;
-    private final ConcurrentHashMap<String, StubHttpLifecycle> uuidToStub;
-    private final ConcurrentHashMap<String, StubProxyConfig> proxyConfigs;
-    private final ConcurrentHashMap<String, StubWebSocketConfig> webSocketConfigs;
+
+    // Stubs that were skipped because matching them ran out of the regex matching budget, see RegexParser
+    private final ConcurrentHashMap<String, AtomicLong> abortedMatchStats;
+
+    // Uncached lookups that found no stub vs. the ones of them that were answered without running the matching
+    private final AtomicLong unmatchedLookups;
+    private final AtomicLong unmatchedFastPathHits;
+
+    // Readers (i.e.: matching threads) never lock, they just read whatever snapshot is currently published.
+    // Writers are serialized via 'synchronized' and publish a brand-new snapshot upon completion of a change
+    private volatile StubRepositorySnapshot snapshot;
 
     private final CompletableFuture<YamlParseResultSet> stubLoadComputation;
     private final StubbyHttpTransport stubbyHttpTransport;
 
+    // Incoming request bodies larger than that are spilled to a temporary file while being read
+    private final int maxBufferedRequestBodyBytes;
+
+    public StubRepository(
+            final File configFile,
+            final Cache<String, StubMatch> stubMatchesCache,
+            final CompletableFuture<YamlParseResultSet> stubLoadComputation,
+            final StubbyHttpTransport stubbyHttpTransport) {
+        this(configFile, stubMatchesCache, Cache.stubMissCache(true), stubLoadComputation, stubbyHttpTransport);
+    }
+
     public StubRepository(
             final File configFile,
-            final Cache<String, StubHttpLifecycle> stubMatchesCache,
+            final Cache<String, StubMatch> stubMatchesCache,
+            final Cache<String, Boolean> stubMissesCache,
             final CompletableFuture<YamlParseResultSet> stubLoadComputation,
             final StubbyHttpTransport stubbyHttpTransport) {
-        this.stubs = new ArrayList<>();
-        this.uuidToStub = new ConcurrentHashMap<>();
-        this.proxyConfigs = new ConcurrentHashMap<>();
-        this.webSocketConfigs = new ConcurrentHashMap<>();
+        this(
+                configFile,
+                stubMatchesCache,
+                stubMissesCache,
+                stubLoadComputation,
+                stubbyHttpTransport,
+                DEFAULT_MAX_BUFFERED_REQUEST_BODY_BYTES);
+    }
+
+    public StubRepository(
+            final File configFile,
+            final Cache<String, StubMatch> stubMatchesCache,
+            final Cache<String, Boolean> stubMissesCache,
+            final CompletableFuture<YamlParseResultSet> stubLoadComputation,
+            final StubbyHttpTransport stubbyHttpTransport,
+            final int maxBufferedRequestBodyBytes) {
+        this.snapshot = StubRepositorySnapshot.EMPTY;
         this.configFile = configFile;
         this.stubLoadComputation = stubLoadComputation;
         this.stubbyHttpTransport = stubbyHttpTransport;
         this.resourceStats = new ConcurrentHashMap<>();
+        this.abortedMatchStats = new ConcurrentHashMap<>();
         this.stubMatchesCache = stubMatchesCache;
+        this.stubMissesCache = stubMissesCache;
+        this.isMatchCaching = stubMatchesCache.isEnabled() || stubMissesCache.isEnabled();
+        this.unmatchedLookups = new AtomicLong(0);
+        this.unmatchedFastPathHits = new AtomicLong(0);
+        this.maxBufferedRequestBodyBytes = maxBufferedRequestBodyBytes;
     }
 
     private static void logMatch(final String typeDescription, long elapsed, StubHttpLifecycle matched) {
@@ -121,24 +163,30 @@ public class StubRepository {
         final StubRequest assertionStubRequest = this.toStubRequest(incomingRequest);
         logAssertingRequest(assertionStubRequest);
 
-        final StubResponse match = findMatch(new StubHttpLifecycle.Builder()
-                .withRequest(assertionStubRequest)
-                .build());
+        final StubResponse match = findMatch(
+                snapshot,
+                new StubHttpLifecycle.Builder()
+                        .withRequest(assertionStubRequest)
+                        .build());
 
         return new StubSearchResult(assertionStubRequest, match);
     }
 
     /**
      * That's where the raw {@link HttpServletRequest request} is converted to a {@link StubHttpLifecycle},
-     * which will be matched to the in-memory stubs
+     * which will be matched to the in-memory stubs.
+     * <p>
+     * The request body is not read here: it is read upon the first access, i.e.: only when the body is actually
+     * needed, see {@link StubRequestBody}.
      *
      * @param request raw {@link HttpServletRequest request}
      */
     public StubRequest toStubRequest(final HttpServletRequest request) throws IOException {
         final StubRequest.Builder builder = new StubRequest.Builder();
-        builder.withUrl(request.getPathInfo())
-                .withPost(extractPostRequestBody(request, "stubs"))
-                .withMethod(request.getMethod());
+        builder.withUrl(request.getPathInfo()).withMethod(request.getMethod());
+        if (POSTING_METHODS.contains(toUpper(request.getMethod()))) {
+            builder.withLazyPost(new StubRequestBody(request, maxBufferedRequestBodyBytes));
+        }
 
         final Enumeration<String> headerNamesEnumeration = request.getHeaderNames();
         final List<String> headerNames =
@@ -152,12 +200,13 @@ public class StubRepository {
         return builder.withQuery(constructParamMap(request.getQueryString())).build();
     }
 
-    private StubResponse findMatch(final StubHttpLifecycle incomingHttpLifecycle) {
+    private StubResponse findMatch(
+            final StubRepositorySnapshot currentSnapshot, final StubHttpLifecycle incomingHttpLifecycle) {
 
-        final Optional<StubHttpLifecycle> matchedStubOptional = matchStub(incomingHttpLifecycle);
+        final Optional<StubHttpLifecycle> matchedStubOptional = matchStub(currentSnapshot, incomingHttpLifecycle);
         if (!matchedStubOptional.isPresent()) {
-            if (!proxyConfigs.isEmpty()) {
-                return proxyRequest(incomingHttpLifecycle);
+            if (!currentSnapshot.getProxyConfigs().isEmpty()) {
+                return proxyRequest(currentSnapshot, incomingHttpLifecycle);
             } else {
                 return notFoundResponse();
             }
@@ -165,8 +214,7 @@ public class StubRepository {
 
         final StubHttpLifecycle matchedStub = matchedStubOptional.get();
         final String resourceId = matchedStub.getResourceId();
-        resourceStats.putIfAbsent(resourceId, new AtomicLong(0));
-        resourceStats.get(resourceId).incrementAndGet();
+        resourceStats.computeIfAbsent(resourceId, key -> new AtomicLong(0)).incrementAndGet();
 
         final StubResponse matchedStubResponse = matchedStub.getResponse(true);
         if (matchedStub.isAuthorizationRequired() && matchedStub.isIncomingRequestUnauthorized(incomingHttpLifecycle)) {
@@ -190,16 +238,27 @@ public class StubRepository {
      * That's the point where the incoming {@link StubHttpLifecycle} that was created from the incoming
      * raw {@link HttpServletRequest request} is matched to the in-memory stubs.
      * <p>
-     * First, the local cache holding previously matched stubs is checked to see if there is a match for the incoming
-     * {@link StubHttpLifecycle#hashCode()}. If the incoming {@link StubHttpLifecycle} hashCode found in the cache,
-     * then the cached match and the incoming {@link StubHttpLifecycle} are compared to each other to determine a
-     * complete equality for sanity check based on the {@link StubRequest#equals(Object)}.
+     * First, the local cache holding previously matched stubs is checked to see if an identical request was
+     * already matched. The cache key is built from every part of the incoming request that can affect the
+     * matching, see {@link StubMatchCacheKey}. The cached {@link StubMatch} also holds the regex groups that were
+     * captured upon the first match, which are restored into the incoming {@link StubRequest}, so that the
+     * dynamic tokens in the stubbed response are replaced exactly as if the request went through the matching.
+     * <p>
+     * If there was no cached match, the incoming {@link StubHttpLifecycle request} is compared to every
+     * {@link StubHttpLifecycle element} in the list of loaded stubs using their natural order (i.e.: the order in
+     * which the stubs were defined in the YAML). Stubs with a literal URL that differs from the incoming URL are
+     * skipped without comparison, see {@link StubIndex}.
      * <p>
-     * If a complete equality with the cached {@link StubHttpLifecycle match} was not achieved, the incoming
-     * {@link StubHttpLifecycle request} is compared to every {@link StubHttpLifecycle element} in the list of loaded
-     * stubs using their natural order (i.e.: the order in which the stubs were defined in the YAML).
+     * Unmatched requests take a fast path: when the {@link StubIndex} has no candidates at all for the incoming
+     * request, or when an identical request did not match earlier, the comparison is skipped entirely. The
+     * previously unmatched requests are kept in their own bounded cache, scoped to the snapshot version.
      * <p>
+     * Matching does not take any locks: it runs against the given immutable {@link StubRepositorySnapshot},
+     * therefore concurrent requests do not block each other, nor are they blocked by the admin API updating stubs.
+     * The cache key is scoped to the snapshot version, so a match found against an older snapshot never leaks into
+     * the requests matched against a newer one.
      *
+     * @param currentSnapshot {@link StubRepositorySnapshot} that was published when the request came in
      * @param incomingStub {@link StubHttpLifecycle}
      * @return an {@link Optional} describing {@link StubHttpLifecycle} match, or an empty {@link Optional} if there was no match.
      * @see #toStubRequest(HttpServletRequest)
@@ -207,34 +266,87 @@ public class StubRepository {
      * @see StubRequest#equals(Object)
      * @see StubMatcher#matches(StubRequest, StubRequest)
      */
-    private synchronized Optional<StubHttpLifecycle> matchStub(final StubHttpLifecycle incomingStub) {
+    private Optional<StubHttpLifecycle> matchStub(
+            final StubRepositorySnapshot currentSnapshot, final StubHttpLifecycle incomingStub) {
 
         final long initialStart = System.currentTimeMillis();
 
-        final String incomingRequestHashCode = String.valueOf(incomingStub.hashCode());
-        final Optional<StubHttpLifecycle> cachedMatchCandidateOptional = stubMatchesCache.get(incomingRequestHashCode);
-
-        // TODO BUG: When stubs are cached, upon finding the previously cached match by hashCode,
-        // if stubbed response has template tokens for dynamic token replacement, the tokens are
-        // not replaced with values from the incoming request because the cached stub is not going
-        // through the same matching process like upon the first match. Either fix this bug or just
-        // deprecate the stub caching all together, as it is causing more headaches than not.
-        // Also, deprecate the --disable_stub_caching command line flag if the caching has retired.
-        return cachedMatchCandidateOptional
-                .map(cachedMatchCandidate -> {
-                    ANSITerminal.loaded(
-                            String.format("Local cache contains a match for hashCode [%s]", incomingRequestHashCode));
-                    LOGGER.debug("Local cache contains a match for hashCode [{}].", incomingRequestHashCode);
+        final StubRequest incomingRequest = incomingStub.getRequest();
+        final StubIndex index = currentSnapshot.getIndex();
+        // The candidates are narrowed down without reading the request body, which is read (and keyed on)
+        // only if any of the candidates has a stubbed request body
+        final int[] candidateOrdinals = index.candidateOrdinals(incomingRequest);
+        if (!isMatchCaching) {
+            // Both caches are no-op (i.e.: --disable_stub_caching), so there is no point in building the key
+            return matchUncached(currentSnapshot, incomingStub, candidateOrdinals, Optional.empty(), initialStart);
+        }
+
+        final String cacheKey = StubMatchCacheKey.of(
+                currentSnapshot.getVersion(),
+                incomingRequest,
+                index.getMatchedHeaderNames(),
+                index.isRequestBodyMatched(candidateOrdinals));
+        final Optional<StubMatch> cachedMatchOptional = stubMatchesCache.get(cacheKey);
+
+        return cachedMatchOptional
+                .map(cachedMatch -> {
+                    ANSITerminal.loaded(String.format("Local cache contains a match for [%s]", incomingStub.getUrl()));
+                    LOGGER.debug("Local cache contains a match for [{}].", incomingStub.getUrl());
+
+                    incomingRequest.restoreRegexGroups(cachedMatch.getRegexGroups());
 
                     final long elapsed = System.currentTimeMillis() - initialStart;
-                    logMatch("stubbed match in cache (i.e.: repeated request)", elapsed, cachedMatchCandidate);
+                    logMatch("stubbed match in cache (i.e.: repeated request)", elapsed, cachedMatch.getStub());
 
-                    return Optional.of(cachedMatchCandidate);
+                    return Optional.of(cachedMatch.getStub());
                 })
-                .orElseGet(() -> matchAll(incomingStub, initialStart));
+                .orElseGet(() ->
+                        matchUncached(
+                                currentSnapshot, incomingStub, candidateOrdinals, Optional.of(cacheKey), initialStart));
+    }
+
+    private Optional<StubHttpLifecycle> matchUncached(
+            final StubRepositorySnapshot currentSnapshot,
+            final StubHttpLifecycle incomingStub,
+            final int[] candidateOrdinals,
+            final Optional<String> cacheKey,
+            final long initialStart) {
+        if (candidateOrdinals.length == 0 || cacheKey.flatMap(stubMissesCache::get).isPresent()) {
+            return skipMatching(incomingStub);
+        }
+
+        // Only the stubs whose route can potentially match are evaluated, in the order in which they were defined
+        final List<StubHttpLifecycle> candidates =
+                currentSnapshot.getIndex().candidates(incomingStub.getRequest(), candidateOrdinals);
+        if (candidates.isEmpty()) {
+            return skipMatching(incomingStub);
+        }
+
+        final Optional<StubHttpLifecycle> matchedStubOptional;
+        try {
+            matchedStubOptional = matchAll(candidates, incomingStub, cacheKey, initialStart);
+        } finally {
+            StubMatchContext.release();
+        }
+        if (!matchedStubOptional.isPresent()) {
+            unmatchedLookups.incrementAndGet();
+            cacheKey.ifPresent(key -> stubMissesCache.putIfAbsent(key, Boolean.TRUE));
+        }
+
+        return matchedStubOptional;
     }
 
-    private StubResponse proxyRequest(final StubHttpLifecycle incomingHttpLifecycle) {
+    private Optional<StubHttpLifecycle> skipMatching(final StubHttpLifecycle incomingStub) {
+        unmatchedLookups.incrementAndGet();
+        unmatchedFastPathHits.incrementAndGet();
+        LOGGER.debug("No stub can match [{}], skipped the matching.", incomingStub.getUrl());
+
+        return Optional.empty();
+    }
+
+    private StubResponse proxyRequest(
+            final StubRepositorySnapshot currentSnapshot, final StubHttpLifecycle incomingHttpLifecycle) {
+        final Map<String, StubProxyConfig> proxyConfigs = currentSnapshot.getProxyConfigs();
 
         // The catch-all will always be there if we have proxy configs, otherwise the YAML loading throws
         final StubProxyConfig catchAllProxyConfig = proxyConfigs.get(StubProxyConfig.Builder.DEFAULT_UUID);
@@ -261,12 +373,13 @@ public class StubRepository {
         proxyResponseFlatHeaders.put(HEADER_X_STUBBY_PROXY_RESPONSE, proxyRoundTripUuid);
 
         try {
-            incomingRequest.getHeaders().put(HEADER_X_STUBBY_PROXY_REQUEST, proxyRoundTripUuid);
+            final Map<String, String> proxiedRequestHeaders = new LinkedHashMap<>();
+            proxiedRequestHeaders.put(HEADER_X_STUBBY_PROXY_REQUEST, proxyRoundTripUuid);
 
-            handleIfAdditiveProxyStrategy(incomingRequest, proxyConfig);
+            handleIfAdditiveProxyStrategy(proxiedRequestHeaders, proxyConfig);
 
-            final StubbyResponse stubbyResponse =
-                    stubbyHttpTransport.httpRequestFromStub(incomingRequest, proxyEndpoint);
+            final StubbyResponse stubbyResponse = stubbyHttpTransport.httpRequestFromStub(
+                    incomingRequest.withAddedHeaders(proxiedRequestHeaders), proxyEndpoint);
             for (Map.Entry<String, List<String>> entry :
                     stubbyResponse.headers().entrySet()) {
                 final String headerName = ObjectUtils.isNull(entry.getKey()) ? "null" : entry.getKey();
@@ -295,12 +408,13 @@ public class StubRepository {
         }
     }
 
-    private void handleIfAdditiveProxyStrategy(final StubRequest incomingRequest, final StubProxyConfig proxyConfig) {
+    private void handleIfAdditiveProxyStrategy(
+            final Map<String, String> proxiedRequestHeaders, final StubProxyConfig proxyConfig) {
         if (proxyConfig.isAdditiveStrategy()) {
             if (proxyConfig.hasHeaders()) {
                 for (final Map.Entry<String, String> headerEntry :
                         proxyConfig.getHeaders().entrySet()) {
-                    incomingRequest.getHeaders().put(headerEntry.getKey(), headerEntry.getValue());
+                    proxiedRequestHeaders.put(headerEntry.getKey(), headerEntry.getValue());
                 }
             }
         }
@@ -319,17 +433,20 @@ public class StubRepository {
         }
     }
 
-    private Optional<StubHttpLifecycle> matchAll(final StubHttpLifecycle incomingStub, final long initialStart) {
-        for (final StubHttpLifecycle stubbed : stubs) {
-            if (incomingStub.equals(stubbed)) {
+    private Optional<StubHttpLifecycle> matchAll(
+            final List<StubHttpLifecycle> candidates,
+            final StubHttpLifecycle incomingStub,
+            final Optional<String> cacheKey,
+            final long initialStart) {
+        for (final StubHttpLifecycle stubbed : candidates) {
+            if (matchesWithinBudget(incomingStub, stubbed)) {
                 final long elapsed = System.currentTimeMillis() - initialStart;
                 logMatch("stubbed match", elapsed, stubbed);
 
-                final String incomingRequestHashCode = String.valueOf(incomingStub.hashCode());
-                // ANSITerminal.status(String.format("Caching the found match for hashCode [%s]",
-                // incomingRequestHashCode));
-                // LOGGER.debug("Caching the found match for hashCode [{}].", incomingRequestHashCode);
-                stubMatchesCache.putIfAbsent(incomingRequestHashCode, stubbed);
+                // The regex groups include the ones captured by the candidates that were evaluated before
+                // the match, which is what an identical request matched against the same snapshot gets
+                cacheKey.ifPresent(key -> stubMatchesCache.putIfAbsent(
+                        key, new StubMatch(stubbed, incomingStub.getRequest().getRegexGroups())));
 
                 return Optional.of(stubbed);
             }
@@ -338,38 +455,52 @@ public class StubRepository {
         return Optional.empty();
     }
 
-    public synchronized Optional<StubHttpLifecycle> matchStubByIndex(final int index) {
-        if (!canMatchStubByIndex(index)) {
+    private boolean matchesWithinBudget(final StubHttpLifecycle incomingStub, final StubHttpLifecycle stubbed) {
+        try {
+            return incomingStub.equals(stubbed);
+        } catch (final RegexMatchAbortedException e) {
+            abortedMatchStats.computeIfAbsent(stubbed.getResourceId(), key -> new AtomicLong(0)).incrementAndGet();
+
+            final String warning = String.format(
+                    "Match aborted, skipped stub with resource ID [%s]: %s", stubbed.getResourceId(), e.getMessage());
+            ANSITerminal.warn(warning);
+            LOGGER.warn(warning);
+
+            return false;
+        }
+    }
+
+    public Optional<StubHttpLifecycle> matchStubByIndex(final int index) {
+        final List<StubHttpLifecycle> stubs = snapshot.getStubs();
+        if (stubs.size() - 1 < index) {
             return Optional.empty();
         }
         return Optional.of(stubs.get(index));
     }
 
-    public synchronized StubProxyConfig matchProxyConfigByName(final String proxyConfigUniqueName) {
-        return proxyConfigs.get(proxyConfigUniqueName);
+    public StubProxyConfig matchProxyConfigByName(final String proxyConfigUniqueName) {
+        return snapshot.getProxyConfigs().get(proxyConfigUniqueName);
     }
 
-    public synchronized StubWebSocketConfig matchWebSocketConfigByUrl(final String webSocketConfigUniqueUrl) {
-        return webSocketConfigs.get(webSocketConfigUniqueUrl);
+    public StubWebSocketConfig matchWebSocketConfigByUrl(final String webSocketConfigUniqueUrl) {
+        return snapshot.getWebSocketConfigs().get(webSocketConfigUniqueUrl);
     }
 
     synchronized boolean resetStubsCache(final YamlParseResultSet yamlParseResultSet) {
-        this.stubMatchesCache.clear();
-        this.stubs.clear();
-        this.uuidToStub.clear();
-        this.proxyConfigs.clear();
-        this.webSocketConfigs.clear();
+        final StubRepositorySnapshot.Builder nextSnapshot = snapshot.toBuilder().clear();
 
-        final boolean addedStubs = this.stubs.addAll(yamlParseResultSet.getStubs());
+        final boolean addedStubs = nextSnapshot.stubs().addAll(yamlParseResultSet.getStubs());
         if (addedStubs) {
-            this.stubMatchesCache.clear();
-            updateResourceIDHeaders();
-            this.uuidToStub.putAll(yamlParseResultSet.getUuidToStubs());
+            nextSnapshot.uuidToStub().putAll(yamlParseResultSet.getUuidToStubs());
+            nextSnapshot.renumberStubs();
         }
+        nextSnapshot.rebuildIndex();
+
+        loadProxyConfigsWithOptionalThrow(nextSnapshot, yamlParseResultSet);
 
-        loadProxyConfigsWithOptionalThrow(yamlParseResultSet);
+        nextSnapshot.webSocketConfigs().putAll(yamlParseResultSet.getWebSocketConfigs());
 
-        this.webSocketConfigs.putAll(yamlParseResultSet.getWebSocketConfigs());
+        publish(nextSnapshot);
 
         return addedStubs;
     }
@@ -413,11 +544,33 @@ public class StubRepository {
 
     // Just a shallow copy that protects collection from modification, the points themselves are not copied
     public List<StubHttpLifecycle> getStubs() {
-        return new LinkedList<>(stubs);
+        return new LinkedList<>(snapshot.getStubs());
     }
 
     public Map<String, StubProxyConfig> getProxyConfigs() {
-        return new HashMap<>(proxyConfigs);
+        return new HashMap<>(snapshot.getProxyConfigs());
+    }
+
+    /**
+     * @return number of requests that were not served from the stub match cache and did not match any stub, either
+     * on the fast path for unmatched requests or after running the matching
+     */
+    public long getUnmatchedLookups() {
+        return unmatchedLookups.get();
+    }
+
+    /**
+     * @return number of requests that were found to be unmatched on the fast path, without running the matching
+     */
+    public long getUnmatchedFastPathHits() {
+        return unmatchedFastPathHits.get();
+    }
+
+    /**
+     * @return registry of the compiled regex patterns, which is shared by all the loaded stubs
+     */
+    public RegexPatternRegistry getRegexPatternRegistry() {
+        return RegexParser.REGEX_PATTERN_REGISTRY;
     }
 
     // Just a shallow copy that protects collection from modification, the points themselves are not copied
@@ -425,6 +578,17 @@ public class StubRepository {
         return new ConcurrentHashMap<>(resourceStats);
     }
 
+    /**
+     * @return number of aborted matches keyed by the resource ID of the stub, whose stubbed regex ran out of the
+     * matching budget upon being matched, see {@link RegexMatchAbortedException}
+     */
+    public Map<String, Long> getAbortedMatchStats() {
+        final Map<String, Long> copy = new HashMap<>();
+        abortedMatchStats.forEach((resourceId, aborted) -> copy.put(resourceId, aborted.get()));
+
+        return copy;
+    }
+
     public String getResourceStatsAsCsv() {
         final String csvNoHeader = resourceStats
                 .toString()
@@ -434,18 +598,18 @@ public class StubRepository {
         return String.format("resourceId,hits%s%s", FileUtils.BR, csvNoHeader);
     }
 
-    public synchronized String getOnlyStubRequestUrl() {
-        return stubs.get(0).getUrl();
+    public String getOnlyStubRequestUrl() {
+        return snapshot.getStubs().get(0).getUrl();
     }
 
     public File getYamlConfig() {
         return configFile;
     }
 
-    public synchronized Map<File, Long> getExternalFiles() {
+    public Map<File, Long> getExternalFiles() {
         final Set<String> escrow = new HashSet<>();
         final Map<File, Long> externalFiles = new HashMap<>();
-        for (final StubHttpLifecycle stub : stubs) {
+        for (final StubHttpLifecycle stub : snapshot.getStubs()) {
             cacheExternalFile(escrow, externalFiles, stub.getRequest().getRawFile());
 
             final List<StubResponse> responses = stub.getResponses();
@@ -472,7 +636,9 @@ public class StubRepository {
         }
     }
 
-    public synchronized String dumpCompleteYamlConfig() {
+    public String dumpCompleteYamlConfig() {
+        final StubRepositorySnapshot currentSnapshot = snapshot;
+        final Map<String, StubProxyConfig> proxyConfigs = currentSnapshot.getProxyConfigs();
         final StringBuilder builder = new StringBuilder();
 
         if (!proxyConfigs.isEmpty()) {
@@ -484,35 +650,35 @@ public class StubRepository {
             builder.append(FileUtils.BR);
         }
 
-        for (final StubHttpLifecycle stub : stubs) {
+        for (final StubHttpLifecycle stub : currentSnapshot.getStubs()) {
             builder.append(stub.getCompleteYaml()).append(FileUtils.BR).append(FileUtils.BR);
         }
 
         return builder.toString();
     }
 
-    public synchronized String getStubYamlByIndex(final int index) {
-        return stubs.get(index).getCompleteYaml();
+    public String getStubYamlByIndex(final int index) {
+        return snapshot.getStubs().get(index).getCompleteYaml();
     }
 
-    public synchronized String getStubYamlByUuid(final String uuid) {
-        return uuidToStub.get(uuid).getCompleteYaml();
+    public String getStubYamlByUuid(final String uuid) {
+        return snapshot.getUuidToStub().get(uuid).getCompleteYaml();
     }
 
-    public synchronized String getProxyConfigYamlByUuid(final String uuid) {
-        return proxyConfigs.get(uuid).getProxyConfigAsYAML();
+    public String getProxyConfigYamlByUuid(final String uuid) {
+        return snapshot.getProxyConfigs().get(uuid).getProxyConfigAsYAML();
     }
 
-    public synchronized boolean canMatchStubByIndex(final int index) {
-        return stubs.size() - 1 >= index;
+    public boolean canMatchStubByIndex(final int index) {
+        return snapshot.getStubs().size() - 1 >= index;
     }
 
-    public synchronized boolean canMatchStubByUuid(final String uuid) {
-        return uuidToStub.containsKey(uuid);
+    public boolean canMatchStubByUuid(final String uuid) {
+        return snapshot.getUuidToStub().containsKey(uuid);
     }
 
-    public synchronized boolean canMatchProxyConfigByUuid(final String uuid) {
-        return proxyConfigs.containsKey(uuid);
+    public boolean canMatchProxyConfigByUuid(final String uuid) {
+        return snapshot.getProxyConfigs().containsKey(uuid);
     }
 
     synchronized void updateProxyConfigByUuid(final String uuid, final StubProxyConfig newStubProxyConfig) {
@@ -523,51 +689,47 @@ public class StubRepository {
             throw new IllegalArgumentException(message);
         }
 
-        if (uuid.equals(StubProxyConfig.Builder.DEFAULT_UUID)) {
-            proxyConfigs.remove(StubProxyConfig.Builder.DEFAULT_UUID);
-            proxyConfigs.put(StubProxyConfig.Builder.DEFAULT_UUID, newStubProxyConfig);
-        } else {
-            proxyConfigs.remove(uuid);
-            proxyConfigs.put(uuid, newStubProxyConfig);
-        }
+        final StubRepositorySnapshot.Builder nextSnapshot = snapshot.toBuilder();
+        nextSnapshot.proxyConfigs().remove(uuid);
+        nextSnapshot.proxyConfigs().put(uuid, newStubProxyConfig);
+
+        publish(nextSnapshot);
     }
 
     synchronized void updateStubByIndex(final int index, final StubHttpLifecycle newStub) {
-        final StubHttpLifecycle deletedStub = deleteStubByIndex(index);
-        stubs.add(index, newStub);
-        updateResourceIDHeaders();
-
-        this.stubMatchesCache.clear();
-
-        if (StringUtils.isSet(deletedStub.getUUID())) {
-            uuidToStub.remove(deletedStub.getUUID());
-        }
+        final StubRepositorySnapshot.Builder nextSnapshot = snapshot.toBuilder();
+        final StubHttpLifecycle deletedStub = removeStub(nextSnapshot, index);
+        nextSnapshot.stubs().add(index, newStub);
+        nextSnapshot.reindexStub(deletedStub, newStub);
 
         if (StringUtils.isSet(newStub.getUUID())) {
-            uuidToStub.put(newStub.getUUID(), newStub);
+            nextSnapshot.uuidToStub().put(newStub.getUUID(), newStub);
         }
+        nextSnapshot.renumberStubs();
+
+        publish(nextSnapshot);
     }
 
     synchronized void updateStubByUuid(final String uuid, final StubHttpLifecycle newStub) {
-        final StubHttpLifecycle obsolete = uuidToStub.get(uuid);
+        final StubHttpLifecycle obsolete = snapshot.getUuidToStub().get(uuid);
         final int resourceId = Integer.parseInt(obsolete.getResourceId());
 
         updateStubByIndex(resourceId, newStub);
     }
 
     public synchronized StubHttpLifecycle deleteStubByIndex(final int index) {
-        final StubHttpLifecycle removedStub = stubs.remove(index);
-        updateResourceIDHeaders();
+        final StubRepositorySnapshot.Builder nextSnapshot = snapshot.toBuilder();
+        final StubHttpLifecycle removedStub = removeStub(nextSnapshot, index);
+        nextSnapshot.unindexStub(removedStub);
+        nextSnapshot.renumberStubs();
 
-        if (StringUtils.isSet(removedStub.getUUID())) {
-            uuidToStub.remove(removedStub.getUUID());
-        }
+        publish(nextSnapshot);
 
         return removedStub;
     }
 
     public synchronized StubHttpLifecycle deleteStubByUuid(final String uuid) {
-        final StubHttpLifecycle toBeRemoved = uuidToStub.get(uuid);
+        final StubHttpLifecycle toBeRemoved = snapshot.getUuidToStub().get(uuid);
         final int resourceId = Integer.parseInt(toBeRemoved.getResourceId());
 
         return deleteStubByIndex(resourceId);
@@ -577,38 +739,66 @@ public class StubRepository {
         if (uuid.equals(StubProxyConfig.Builder.DEFAULT_UUID)) {
             throw new IllegalArgumentException("You cannot delete 'default' (i.e.: catch-all) proxy config via API");
         }
-        return proxyConfigs.remove(uuid);
+        final StubRepositorySnapshot.Builder nextSnapshot = snapshot.toBuilder();
+        final StubProxyConfig removedProxyConfig = nextSnapshot.proxyConfigs().remove(uuid);
+
+        publish(nextSnapshot);
+
+        return removedProxyConfig;
     }
 
     public synchronized void clear() {
-        this.stubMatchesCache.clear();
-        this.stubs.clear();
-        this.uuidToStub.clear();
-        this.proxyConfigs.clear();
-        this.webSocketConfigs.clear();
+        publish(snapshot.toBuilder().clear());
+    }
+
+    private StubHttpLifecycle removeStub(final StubRepositorySnapshot.Builder nextSnapshot, final int index) {
+        final StubHttpLifecycle removedStub = nextSnapshot.stubs().remove(index);
+
+        if (StringUtils.isSet(removedStub.getUUID())) {
+            nextSnapshot.uuidToStub().remove(removedStub.getUUID());
+        }
+
+        return removedStub;
     }
 
-    private void updateResourceIDHeaders() {
-        for (int index = 0; index < stubs.size(); index++) {
-            stubs.get(index).setResourceId(index);
+    /**
+     * Makes the given snapshot visible to the matching threads. Must be invoked while holding the monitor
+     * of this repository, so that concurrent writers do not publish over each other's changes.
+     *
+     * @param nextSnapshot {@link StubRepositorySnapshot.Builder} holding the changes to publish
+     */
+    private void publish(final StubRepositorySnapshot.Builder nextSnapshot) {
+        final StubRepositorySnapshot next = nextSnapshot.build();
+        // The stubs loaded from YAML come with their match plans already, the ones that
+        // were built otherwise get them here, so that the first requests do not pay for it
+        for (final StubHttpLifecycle stub : next.getStubs()) {
+            stub.getRequest().compileMatchPlan();
         }
+        this.snapshot = next;
+        this.stubMatchesCache.clear();
+        this.stubMissesCache.clear();
     }
 
-    public void retrieveLoadedStubs() {
+    public synchronized void retrieveLoadedStubs() {
         try {
             final YamlParseResultSet yamlParseResultSet = stubLoadComputation.get();
-            this.stubs.addAll(yamlParseResultSet.getStubs());
-            this.uuidToStub.putAll(yamlParseResultSet.getUuidToStubs());
+            final StubRepositorySnapshot.Builder nextSnapshot = snapshot.toBuilder();
+            nextSnapshot.stubs().addAll(yamlParseResultSet.getStubs());
+            nextSnapshot.uuidToStub().putAll(yamlParseResultSet.getUuidToStubs());
+            nextSnapshot.rebuildIndex();
+
+            loadProxyConfigsWithOptionalThrow(nextSnapshot, yamlParseResultSet);
 
-            loadProxyConfigsWithOptionalThrow(yamlParseResultSet);
+            nextSnapshot.webSocketConfigs().putAll(yamlParseResultSet.getWebSocketConfigs());
 
-            this.webSocketConfigs.putAll(yamlParseResultSet.getWebSocketConfigs());
+            publish(nextSnapshot);
         } catch (InterruptedException | ExecutionException e) {
             e.printStackTrace();
         }
     }
 
-    private void loadProxyConfigsWithOptionalThrow(final YamlParseResultSet yamlParseResultSet) {
+    private void loadProxyConfigsWithOptionalThrow(
+            final StubRepositorySnapshot.Builder nextSnapshot, final YamlParseResultSet yamlParseResultSet) {
         final Map<String, StubProxyConfig> loadedProxyConfigs = yamlParseResultSet.getProxyConfigs();
 
         if (!loadedProxyConfigs.isEmpty() && !loadedProxyConfigs.containsKey(StubProxyConfig.Builder.DEFAULT_UUID)) {
@@ -616,6 +806,6 @@ public class StubRepository {
                     "YAML config contains proxy configs, but the 'default' proxy config is not configured, how so?");
         }
 
-        this.proxyConfigs.putAll(loadedProxyConfigs);
+        nextSnapshot.proxyConfigs().putAll(loadedProxyConfigs);
     }
 }
@@ -0,0 +1,190 @@
+/*
+ * Copyright (c) 2012-2024 Alexander Zagniotov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.azagniotov.stubby4j.stubs;
+
+import io.github.azagniotov.stubby4j.stubs.proxy.StubProxyConfig;
+import io.github.azagniotov.stubby4j.stubs.websocket.StubWebSocketConfig;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An immutable, versioned view of everything the {@link StubRepository} holds at a point in time.
+ * <p>
+ * Matching threads read the currently published snapshot without taking any locks, while the admin
+ * API and the YAML refresh build a new snapshot off to the side and publish it in one volatile write.
+ * A request that started matching against an older snapshot completes against that snapshot.
+ */
+final class StubRepositorySnapshot {
+
+    static final StubRepositorySnapshot EMPTY = new StubRepositorySnapshot(
+            0L,
+            new ArrayList<>(),
+            new HashMap<>(),
+            new LinkedHashMap<>(),
+            new LinkedHashMap<>(),
+            StubIndex.EMPTY);
+
+    private final long version;
+    private final List<StubHttpLifecycle> stubs;
+    private final Map<String, StubHttpLifecycle> uuidToStub;
+    private final Map<String, StubProxyConfig> proxyConfigs;
+    private final Map<String, StubWebSocketConfig> webSocketConfigs;
+    private final StubIndex index;
+
+    private StubRepositorySnapshot(
+            final long version,
+            final List<StubHttpLifecycle> stubs,
+            final Map<String, StubHttpLifecycle> uuidToStub,
+            final Map<String, StubProxyConfig> proxyConfigs,
+            final Map<String, StubWebSocketConfig> webSocketConfigs,
+            final StubIndex index) {
+        this.version = version;
+        this.stubs = Collections.unmodifiableList(stubs);
+        this.uuidToStub = Collections.unmodifiableMap(uuidToStub);
+        this.proxyConfigs = Collections.unmodifiableMap(proxyConfigs);
+        this.webSocketConfigs = Collections.unmodifiableMap(webSocketConfigs);
+        this.index = index;
+    }
+
+    long getVersion() {
+        return version;
+    }
+
+    List<StubHttpLifecycle> getStubs() {
+        return stubs;
+    }
+
+    Map<String, StubHttpLifecycle> getUuidToStub() {
+        return uuidToStub;
+    }
+
+    Map<String, StubProxyConfig> getProxyConfigs() {
+        return proxyConfigs;
+    }
+
+    Map<String, StubWebSocketConfig> getWebSocketConfigs() {
+        return webSocketConfigs;
+    }
+
+    StubIndex getIndex() {
+        return index;
+    }
+
+    /**
+     * Starts a new snapshot from a copy of this one. The copies handed out by the returned {@link Builder}
+     * are private to the writer until {@link Builder#build()} is invoked, so they can be freely mutated.
+     *
+     * @return {@link Builder} seeded with the contents of this snapshot and the next version number
+     */
+    Builder toBuilder() {
+        return new Builder(this);
+    }
+
+    static final class Builder {
+
+        private final long version;
+        private final List<StubHttpLifecycle> stubs;
+        private final Map<String, StubHttpLifecycle> uuidToStub;
+        private final Map<String, StubProxyConfig> proxyConfigs;
+        private final Map<String, StubWebSocketConfig> webSocketConfigs;
+        private StubIndex index;
+
+        private Builder(final StubRepositorySnapshot current) {
+            this.version = current.version + 1;
+            this.stubs = new ArrayList<>(current.stubs);
+            this.uuidToStub = new HashMap<>(current.uuidToStub);
+            this.proxyConfigs = new LinkedHashMap<>(current.proxyConfigs);
+            this.webSocketConfigs = new LinkedHashMap<>(current.webSocketConfigs);
+            this.index = current.index;
+        }
+
+        List<StubHttpLifecycle> stubs() {
+            return stubs;
+        }
+
+        Map<String, StubHttpLifecycle> uuidToStub() {
+            return uuidToStub;
+        }
+
+        Map<String, StubProxyConfig> proxyConfigs() {
+            return proxyConfigs;
+        }
+
+        Map<String, StubWebSocketConfig> webSocketConfigs() {
+            return webSocketConfigs;
+        }
+
+        /**
+         * Indexes the stubs from scratch, should be used when most of the stubs have changed.
+         */
+        void rebuildIndex() {
+            this.index = StubIndex.build(stubs);
+        }
+
+        void reindexStub(final StubHttpLifecycle obsolete, final StubHttpLifecycle replacement) {
+            this.index = index.replace(obsolete, replacement);
+        }
+
+        void unindexStub(final StubHttpLifecycle removed) {
+            this.index = index.remove(removed);
+        }
+
+        /**
+         * Assigns every stub its position as the resource ID. A stub whose resource ID changes is replaced
+         * by a copy with the new resource ID, because the stub itself is still shared with the published snapshot.
+         */
+        void renumberStubs() {
+            final Map<StubHttpLifecycle, StubHttpLifecycle> copies = new IdentityHashMap<>();
+            for (int resourceId = 0; resourceId < stubs.size(); resourceId++) {
+                final StubHttpLifecycle stub = stubs.get(resourceId);
+                if (stub.hasResourceId(resourceId)) {
+                    continue;
+                }
+
+                final StubHttpLifecycle copy = stub.withResourceId(resourceId);
+                stubs.set(resourceId, copy);
+                copies.put(stub, copy);
+                if (uuidToStub.get(stub.getUUID()) == stub) {
+                    uuidToStub.put(stub.getUUID(), copy);
+                }
+            }
+
+            if (!copies.isEmpty()) {
+                this.index = index.withCopies(copies);
+            }
+        }
+
+        Builder clear() {
+            this.stubs.clear();
+            this.uuidToStub.clear();
+            this.proxyConfigs.clear();
+            this.webSocketConfigs.clear();
+            this.index = StubIndex.EMPTY;
+
+            return this;
+        }
+
+        StubRepositorySnapshot build() {
+            return new StubRepositorySnapshot(version, stubs, uuidToStub, proxyConfigs, webSocketConfigs, index);
+        }
+    }
+}
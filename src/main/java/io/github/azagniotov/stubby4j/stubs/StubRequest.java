@@ -32,7 +32,7 @@ import static io.github.azagniotov.stubby4j.yaml.ConfigurableYAMLProperty.POST;
 import static io.github.azagniotov.stubby4j.yaml.ConfigurableYAMLProperty.QUERY;
 import static io.github.azagniotov.stubby4j.yaml.ConfigurableYAMLProperty.URL;
 import static java.lang.String.valueOf;
-import static java.util.stream.Collectors.toCollection;
+import static java.util.stream.Collectors.toList;
 
 import io.github.azagniotov.stubby4j.annotations.VisibleForTesting;
 import io.github.azagniotov.stubby4j.common.Common;
@@ -45,45 +45,72 @@ import io.github.azagniotov.stubby4j.yaml.ConfigurableYAMLProperty;
 import java.io.File;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
 import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 import org.eclipse.jetty.http.HttpMethod;
+import org.w3c.dom.Document;
 
 public class StubRequest implements ReflectableStub {
 
     static final String HTTP_HEADER_AUTHORIZATION = "authorization";
+    private static final Pattern SUB_TYPE_PATTERN = Pattern.compile("/(?:.*\\+)?(\\w*);?");
 
     private final String url;
     private final String post;
+    private final StubRequestBody lazyPost;
     private final File file;
     private final byte[] fileBytes;
     private final List<String> method;
+    private final List<String> upperCaseMethods;
     private final Map<String, String> headers;
     private final Map<String, String> query;
-    private final Map<String, String> regexGroups;
+    private Map<String, String> regexGroups;
+    private volatile StubMatchPlan matchPlan;
+    private String contentSubType;
+    private String postBodyDigest;
+    private Object jsonPostBody;
+    private boolean isJsonPostBodyParsed;
+    private Document xmlPostBody;
+    private boolean isXmlPostBodyParsed;
 
     private StubRequest(
             final String url,
             final String post,
+            final StubRequestBody lazyPost,
             final File file,
             final List<String> method,
             final Map<String, String> headers,
             final Map<String, String> query) {
         this.url = url;
         this.post = post;
+        this.lazyPost = lazyPost;
         this.file = file;
         this.fileBytes = ObjectUtils.isNull(file) ? new byte[] {} : getFileBytes();
         this.method = method;
-        this.headers = headers;
-        this.query = query;
-        this.regexGroups = new TreeMap<>();
+        this.upperCaseMethods = Collections.unmodifiableList(
+                method.stream().map(StringUtils::toUpper).collect(toList()));
+        this.headers = Collections.unmodifiableMap(toLowerCaseKeys(headers));
+        this.query = Collections.unmodifiableMap(query);
+        this.regexGroups = Collections.emptyMap();
     }
 
     public final ArrayList<String> getMethod() {
-        return method.stream().map(StringUtils::toUpper).collect(toCollection(ArrayList::new));
+        return new ArrayList<>(upperCaseMethods);
+    }
+
+    /**
+     * Unlike {@link #getMethod()}, does not make a copy of the HTTP methods, which are upper-cased once
+     * upon construction.
+     *
+     * @return unmodifiable {@link List} of upper-cased HTTP methods
+     */
+    List<String> getUpperCaseMethods() {
+        return upperCaseMethods;
     }
 
     public String getUri() {
@@ -115,28 +142,43 @@ public class StubRequest implements ReflectableStub {
 
     public String getPostBody() {
         if (fileBytes.length == 0) {
-            return FileUtils.enforceSystemLineSeparator(post);
+            return FileUtils.enforceSystemLineSeparator(getPost());
         }
         final String utf8FileContent = newStringUtf8(fileBytes);
         return FileUtils.enforceSystemLineSeparator(utf8FileContent);
     }
 
-    // Used by reflection when populating stubby admin page with stubbed information
+    /**
+     * Used by reflection when populating stubby admin page with stubbed information. The body of an incoming
+     * request is read upon the first invocation, see {@link StubRequestBody}.
+     */
     public String getPost() {
-        return post;
+        return lazyPost == null ? post : lazyPost.get();
     }
 
+    /**
+     * Header names are lower-cased once upon construction, rather than on every invocation of this getter.
+     * This way a stubbed request that is shared between concurrently matching threads is never written to.
+     *
+     * @return unmodifiable {@link Map} of headers keyed by lower-cased header name
+     * @see #withAddedHeaders(Map)
+     */
     public final Map<String, String> getHeaders() {
-        final Map<String, String> headersCopy = new LinkedHashMap<>(headers);
-        final Set<Map.Entry<String, String>> entrySet = headersCopy.entrySet();
-        this.headers.clear();
-        for (final Map.Entry<String, String> entry : entrySet) {
-            this.headers.put(toLower(entry.getKey()), entry.getValue());
+        return headers;
+    }
+
+    private static Map<String, String> toLowerCaseKeys(final Map<String, String> headers) {
+        final Map<String, String> lowerCasedHeaders = new LinkedHashMap<>();
+        for (final Map.Entry<String, String> entry : headers.entrySet()) {
+            lowerCasedHeaders.put(toLower(entry.getKey()), entry.getValue());
         }
 
-        return headers;
+        return lowerCasedHeaders;
     }
 
+    /**
+     * @return unmodifiable {@link Map} of query params
+     */
     public Map<String, String> getQuery() {
         return query;
     }
@@ -150,6 +192,30 @@ public class StubRequest implements ReflectableStub {
         return new TreeMap<>(regexGroups);
     }
 
+    /**
+     * Puts back the regex groups that were captured when an identical request was matched, so that a match
+     * served from the stub match cache resolves the dynamic tokens in the stubbed response the same way.
+     *
+     * @param capturedRegexGroups {@link StubMatch#getRegexGroups() regex groups} of the cached match
+     */
+    void restoreRegexGroups(final Map<String, String> capturedRegexGroups) {
+        this.regexGroups = capturedRegexGroups;
+    }
+
+    /**
+     * Since the headers of a request cannot be modified, a request that has to be sent with additional headers,
+     * e.g.: a proxied request, is sent as a copy.
+     *
+     * @param addedHeaders headers to add, which replace the existing headers with the same lower-cased name
+     * @return copy of this request with the given headers added
+     */
+    StubRequest withAddedHeaders(final Map<String, String> addedHeaders) {
+        final Map<String, String> copy = new LinkedHashMap<>(headers);
+        copy.putAll(toLowerCaseKeys(addedHeaders));
+
+        return new StubRequest(url, post, lazyPost, file, method, copy, query);
+    }
+
     public File getRawFile() {
         return file;
     }
@@ -193,10 +259,33 @@ public class StubRequest implements ReflectableStub {
 
     @VisibleForTesting
     boolean isRequestBodyStubbed() {
-        return isSet(this.getPostBody())
-                && (getMethod().contains(HttpMethod.POST.asString())
-                        || getMethod().contains(HttpMethod.PUT.asString())
-                        || getMethod().contains(HttpMethodExtended.PATCH.asString()));
+        return (upperCaseMethods.contains(HttpMethod.POST.asString())
+                        || upperCaseMethods.contains(HttpMethod.PUT.asString())
+                        || upperCaseMethods.contains(HttpMethodExtended.PATCH.asString()))
+                && isSet(this.getPostBody());
+    }
+
+    /**
+     * The sub-type of the incoming request body content type (e.g.: <code>json</code> for
+     * <code>application/vnd.api+json; charset=UTF-8</code>), which decides how the body is matched
+     * to the stubbed one. Worked out once per incoming request, rather than once for every stub that is evaluated.
+     *
+     * @return content sub-type, or an empty string when the request does not have a parseable content type
+     */
+    String getContentSubType() {
+        if (contentSubType == null) {
+            String subType = "";
+            final String contentType = getHeaders().get("content-type");
+            if (isSet(contentType)) {
+                final Matcher matcher = SUB_TYPE_PATTERN.matcher(contentType);
+                if (matcher.find()) {
+                    subType = matcher.group(1);
+                }
+            }
+            contentSubType = subType;
+        }
+
+        return contentSubType;
     }
 
     @VisibleForTesting
@@ -220,17 +309,107 @@ public class StubRequest implements ReflectableStub {
         this.getHeaders().values().forEach(RegexParser.INSTANCE::compilePatternAndCache);
     }
 
+    /**
+     * Digest of the request body, after the same line separator normalization that {@link #getPostBody()} applies.
+     * Computed once, as it is used by both the stub match cache key and the {@link StubBodyDigestIndex}.
+     *
+     * @return base16 encoded SHA-256 digest of the request body
+     */
+    String getPostBodyDigest() {
+        if (postBodyDigest == null) {
+            postBodyDigest = StringUtils.sha256Base16(getPostBody());
+        }
+        return postBodyDigest;
+    }
+
+    /**
+     * The body of the incoming request parsed as JSON, once for all the stubs that the request is matched to.
+     *
+     * @return see {@link StubBodyParser#parseJson(String)}
+     */
+    Object getJsonPostBody() {
+        if (!isJsonPostBodyParsed) {
+            jsonPostBody = StubBodyParser.parseJson(getPostBody());
+            isJsonPostBodyParsed = true;
+        }
+        return jsonPostBody;
+    }
+
+    /**
+     * The body of the incoming request parsed as XML, once for all the stubs that the request is matched to.
+     * The XML comparison does not modify the parsed DOM, which makes it reusable.
+     *
+     * @return see {@link StubBodyParser#parseXml(String)}
+     */
+    Document getXmlPostBody() {
+        if (!isXmlPostBodyParsed) {
+            xmlPostBody = StubBodyParser.parseXml(getPostBody());
+            isXmlPostBodyParsed = true;
+        }
+        return xmlPostBody;
+    }
+
+    /**
+     * Compiles the {@link StubMatchPlan} of this stubbed request, unless it is compiled already. Invoked when the
+     * stubs are loaded, and for every stub when the stubs are published, see {@link StubRepository}. The plan is
+     * not compiled when a request is built, as the incoming requests are built the same way and never need one.
+     */
+    public void compileMatchPlan() {
+        getMatchPlan();
+    }
+
+    StubMatchPlan getMatchPlan() {
+        StubMatchPlan compiled = matchPlan;
+        if (compiled == null) {
+            // Only a stubbed request that is matched without having been published (e.g.: via equals()) gets here.
+            // The plan is still compiled just once, as it keeps the statistics of the match order
+            synchronized (this) {
+                compiled = matchPlan;
+                if (compiled == null) {
+                    compiled = StubMatchPlan.compile(this);
+                    matchPlan = compiled;
+                }
+            }
+        }
+        return compiled;
+    }
+
+    /**
+     * @return stubbed fields in the order in which they are currently matched, along with how many times each
+     * of them rejected an incoming request, see {@link StubMatchOrder}
+     */
+    public String describeMatchOrder() {
+        return getMatchPlan().getMatchOrder().toString();
+    }
+
     @Override
     public boolean equals(final Object that) {
         // The 'this' is actually the incoming asserting StubRequest, the 'that' is the stubbed one
         if (this == that) {
             return true;
         } else if (that instanceof StubRequest) {
-            final StubRequest stubbedRequest = (StubRequest) that;
+            return matches((StubRequest) that, StubTemplateTokens.ALL);
+        }
 
-            if (new StubMatcher(regexGroups).matches(stubbedRequest, this)) {
-                return true;
-            }
+        return false;
+    }
+
+    /**
+     * @param stubbedRequest stubbed {@link StubRequest} to match this incoming request against
+     * @param templateTokens template tokens that the stubbed responses refer to, only the regex groups of which
+     *                       are captured upon a successful match
+     * @return whether this incoming request matches the given stubbed request
+     */
+    boolean matches(final StubRequest stubbedRequest, final StubTemplateTokens templateTokens) {
+        if (this == stubbedRequest) {
+            return true;
+        }
+
+        // The incoming request is matched against the candidate stubs one after another by the same thread
+        final StubMatchContext matchContext = StubMatchContext.of(this);
+        if (matchContext.getMatcher().matches(stubbedRequest, this, templateTokens)) {
+            this.regexGroups = matchContext.capturedRegexGroups();
+            return true;
         }
 
         return false;
@@ -240,6 +419,7 @@ public class StubRequest implements ReflectableStub {
     public int hashCode() {
         int result = (isNotNull(url) ? url.hashCode() : 0);
         result = 31 * result + method.hashCode();
+        // The body of an incoming request is left out, so that hashing the request does not read the body
         result = 31 * result + (isNotNull(post) ? post.hashCode() : 0);
         result = 31 * result + (isNotNull(fileBytes) && fileBytes.length != 0 ? Arrays.hashCode(fileBytes) : 0);
         result = 31 * result + headers.hashCode();
@@ -255,8 +435,8 @@ public class StubRequest implements ReflectableStub {
         sb.append("{url=").append(url);
         sb.append(", method=").append(method);
 
-        if (!ObjectUtils.isNull(post)) {
-            sb.append(", post=").append(post);
+        if (!ObjectUtils.isNull(getPost())) {
+            sb.append(", post=").append(getPost());
         }
         sb.append(", query=").append(query);
         sb.append(", headers=").append(getHeaders());
@@ -270,6 +450,7 @@ public class StubRequest implements ReflectableStub {
         private String url;
         private List<String> method;
         private String post;
+        private StubRequestBody lazyPost;
         private File file;
         private Map<String, String> headers;
         private Map<String, String> query;
@@ -279,6 +460,7 @@ public class StubRequest implements ReflectableStub {
             this.url = null;
             this.method = new ArrayList<>();
             this.post = null;
+            this.lazyPost = null;
             this.file = null;
             this.headers = new LinkedHashMap<>();
             this.query = new LinkedHashMap<>();
@@ -389,6 +571,15 @@ public class StubRequest implements ReflectableStub {
             return this;
         }
 
+        /**
+         * Used for the incoming requests only, whose body is read when (and if) the body is needed for the matching.
+         */
+        Builder withLazyPost(final StubRequestBody lazyPost) {
+            this.lazyPost = lazyPost;
+
+            return this;
+        }
+
         public Builder withFile(final File file) {
             this.file = file;
 
@@ -421,11 +612,12 @@ public class StubRequest implements ReflectableStub {
             this.headers = asCheckedLinkedHashMap(getStaged(Map.class, HEADERS, headers), String.class, String.class);
             this.query = asCheckedLinkedHashMap(getStaged(Map.class, QUERY, query), String.class, String.class);
 
-            final StubRequest stubRequest = new StubRequest(url, post, file, method, headers, query);
+            final StubRequest stubRequest = new StubRequest(url, post, lazyPost, file, method, headers, query);
 
             this.url = null;
             this.method = new ArrayList<>();
             this.post = null;
+            this.lazyPost = null;
             this.file = null;
             this.headers = new LinkedHashMap<>();
             this.query = new LinkedHashMap<>();
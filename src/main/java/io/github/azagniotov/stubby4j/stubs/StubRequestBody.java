@@ -0,0 +1,138 @@
+/*
+ * Copyright (c) 2012-2024 Alexander Zagniotov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.azagniotov.stubby4j.stubs;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import io.github.azagniotov.stubby4j.utils.ConsoleUtils;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import javax.servlet.http.HttpServletRequest;
+
+/**
+ * Body of an incoming request, which is read from the request input stream only when it is asked for, e.g.: when
+ * one of the candidate stubs has a stubbed request body, when the request is proxied or when the body is echoed
+ * back in the 404 response. This way, an upload to a stub that does not look at the request body is matched
+ * without the body ever being read or decoded.
+ * <p>
+ * The raw body is buffered in memory up to the configured number of bytes. A larger body is spilled to a temporary
+ * file as it is read and then decoded straight from that file, so the raw bytes of a large upload are not held in
+ * memory alongside the decoded text. The temporary file is deleted as soon as the body is decoded.
+ * <p>
+ * The body is read at most once, the decoded text is kept for as long as the incoming {@link StubRequest} lives.
+ */
+final class StubRequestBody {
+
+    private static final int CHUNK_SIZE = 8192;
+    private static final String SOURCE = "stubs";
+
+    private final HttpServletRequest request;
+    private final int maxBufferedBytes;
+    private String body;
+    private boolean isRead;
+
+    StubRequestBody(final HttpServletRequest request, final int maxBufferedBytes) {
+        this.request = request;
+        this.maxBufferedBytes = maxBufferedBytes;
+    }
+
+    /**
+     * @return request body, the same way it used to be extracted by
+     * {@link io.github.azagniotov.stubby4j.utils.HandlerUtils#extractPostRequestBody(HttpServletRequest, String)},
+     * or {@code null} if the request does not have a body or the body could not be read
+     */
+    String get() {
+        if (!isRead) {
+            body = read();
+            isRead = true;
+        }
+        return body;
+    }
+
+    private String read() {
+        try {
+            final InputStream inputStream = request.getInputStream();
+            if (inputStream == null) {
+                return null;
+            }
+
+            final String content = decode(inputStream);
+            if (content.isEmpty()) {
+                return null;
+            }
+
+            return content.trim().replace("\\/", "/"); // https://code.google.com/p/snakeyaml/issues/detail?id=93
+        } catch (final Exception ex) {
+            final String err = String.format("Error when extracting POST body: %s, returning null..", ex.toString());
+            ConsoleUtils.logIncomingRequestError(request, SOURCE, err);
+            return null;
+        }
+    }
+
+    private String decode(final InputStream inputStream) throws IOException {
+        final int contentLength = request.getContentLength();
+        final ByteArrayOutputStream buffered = new ByteArrayOutputStream(
+                contentLength > 0 && contentLength <= maxBufferedBytes ? contentLength : CHUNK_SIZE);
+
+        final byte[] chunk = new byte[CHUNK_SIZE];
+        int read;
+        while ((read = inputStream.read(chunk)) != -1) {
+            if (buffered.size() + read > maxBufferedBytes) {
+                return spillAndDecode(buffered, chunk, read, inputStream);
+            }
+            buffered.write(chunk, 0, read);
+        }
+
+        return buffered.toString(UTF_8.name());
+    }
+
+    private static String spillAndDecode(
+            final ByteArrayOutputStream buffered, final byte[] chunk, final int read, final InputStream inputStream)
+            throws IOException {
+        final Path spillFile = Files.createTempFile("stubby4j-request-body-", ".tmp");
+        try {
+            try (final OutputStream outputStream = Files.newOutputStream(spillFile)) {
+                buffered.writeTo(outputStream);
+                outputStream.write(chunk, 0, read);
+
+                int nextRead;
+                while ((nextRead = inputStream.read(chunk)) != -1) {
+                    outputStream.write(chunk, 0, nextRead);
+                }
+            }
+
+            final StringBuilder content = new StringBuilder((int) Math.min(Files.size(spillFile), Integer.MAX_VALUE));
+            try (final Reader reader = new InputStreamReader(Files.newInputStream(spillFile), UTF_8)) {
+                final char[] chars = new char[CHUNK_SIZE];
+                int charsRead;
+                while ((charsRead = reader.read(chars)) != -1) {
+                    content.append(chars, 0, charsRead);
+                }
+            }
+
+            return content.toString();
+        } finally {
+            Files.deleteIfExists(spillFile);
+        }
+    }
+}
@@ -18,6 +18,7 @@ package io.github.azagniotov.stubby4j.stubs;
 
 import static io.github.azagniotov.generics.TypeSafeConverter.asCheckedLinkedHashMap;
 import static io.github.azagniotov.stubby4j.utils.FileUtils.fileToBytes;
+import static io.github.azagniotov.stubby4j.utils.FileUtils.isCharacterFile;
 import static io.github.azagniotov.stubby4j.utils.FileUtils.isFilePathContainTemplateTokens;
 import static io.github.azagniotov.stubby4j.utils.ObjectUtils.isNull;
 import static io.github.azagniotov.stubby4j.yaml.ConfigurableYAMLProperty.BODY;
@@ -30,12 +31,13 @@ import static org.eclipse.jetty.http.HttpStatus.getCode;
 
 import io.github.azagniotov.stubby4j.annotations.VisibleForTesting;
 import io.github.azagniotov.stubby4j.common.Common;
-import io.github.azagniotov.stubby4j.utils.FileUtils;
 import io.github.azagniotov.stubby4j.utils.StringUtils;
 import io.github.azagniotov.stubby4j.yaml.ConfigurableYAMLProperty;
 import java.io.File;
 import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
 import org.eclipse.jetty.http.HttpStatus.Code;
 
 public class StubResponse implements ReflectableStub {
@@ -46,6 +48,13 @@ public class StubResponse implements ReflectableStub {
     private final byte[] fileBytes;
     private final String latency;
     private final Map<String, String> headers;
+    private final StubTemplate filePathTemplate;
+    private final String fileTemplate;
+    private final Map<String, StubTemplate> compiledHeaderTemplates;
+    private final StubLatency latencyDistribution;
+    // Null if this stubbed response has to be handled upon every response, see StubStaticResponse
+    private volatile StubStaticResponse staticResponse;
+    private final StubTemplate compiledBodyTemplate;
 
     private StubResponse(
             final Code httpStatusCode,
@@ -58,7 +67,32 @@ public class StubResponse implements ReflectableStub {
         this.file = file;
         this.fileBytes = isNull(file) ? new byte[] {} : getFileBytes();
         this.latency = latency;
+        // Parsed when the stub is loaded, so that a malformed latency fails the loading rather than the responses
+        this.latencyDistribution = StubLatency.of(latency);
         this.headers = isNull(headers) ? new LinkedHashMap<>() : headers;
+        this.filePathTemplate = !isNull(file) && isFilePathContainTemplateTokens(file)
+                ? StubTemplate.compile(file.getAbsolutePath())
+                : null;
+        this.fileTemplate = isTemplateFile() ? StringUtils.newStringUtf8(fileBytes) : null;
+        this.compiledHeaderTemplates = new ConcurrentHashMap<>();
+        this.compiledBodyTemplate = isBodyContainsTemplateTokens() ? StubTemplate.compile(getBodyTemplate()) : null;
+        this.staticResponse = StubStaticResponse.of(this);
+    }
+
+    // Shares everything that is computed out of the stubbed fields with the original, except for the headers
+    private StubResponse(final StubResponse original, final Map<String, String> headers) {
+        this.httpStatusCode = original.httpStatusCode;
+        this.body = original.body;
+        this.file = original.file;
+        this.fileBytes = original.fileBytes;
+        this.latency = original.latency;
+        this.latencyDistribution = original.latencyDistribution;
+        this.headers = headers;
+        this.filePathTemplate = original.filePathTemplate;
+        this.fileTemplate = original.fileTemplate;
+        this.compiledHeaderTemplates = new ConcurrentHashMap<>();
+        this.compiledBodyTemplate = original.compiledBodyTemplate;
+        this.staticResponse = StubStaticResponse.of(this);
     }
 
     public static StubResponse okResponse() {
@@ -94,6 +128,21 @@ public class StubResponse implements ReflectableStub {
         return latency;
     }
 
+    /**
+     * @return stubbed latency, which is parsed when this stubbed response is built rather than upon every response
+     */
+    public StubLatency getLatencyDistribution() {
+        return latencyDistribution;
+    }
+
+    /**
+     * @return wire-ready form of this stubbed response, which is computed when the response is built, or
+     * {@link Optional#empty()} if this stubbed response has template tokens, see {@link StubStaticResponse}
+     */
+    public Optional<StubStaticResponse> getStaticResponse() {
+        return Optional.ofNullable(staticResponse);
+    }
+
     /**
      * Used by reflection when populating stubby admin page with stubbed information
      */
@@ -117,27 +166,67 @@ public class StubResponse implements ReflectableStub {
         return fileBytes;
     }
 
+    /**
+     * @return body template, i.e.: the loaded file content if the response has one, otherwise the stubbed body
+     */
+    public String getBodyTemplate() {
+        if (fileBytes.length == 0) {
+            return getBody();
+        }
+        return isNull(fileTemplate) ? StringUtils.newStringUtf8(fileBytes) : fileTemplate;
+    }
+
     public boolean isBodyContainsTemplateTokens() {
-        final boolean isFileTemplate = fileBytes.length != 0 && isTemplateFile();
-        return isFileTemplate || StringUtils.isTokenized(getBody());
+        return !isNull(fileTemplate) || StringUtils.isTokenized(getBody());
     }
 
     public boolean isFilePathContainsTemplateTokens() {
-        try {
-            // This checks if the 'file' key that was stubbed(!) is tokenized, i.e.:
-            // file: ../html/<% url.1 %>.html
-            return isFilePathContainTemplateTokens(file);
-        } catch (Exception e) {
-            return false;
+        // This checks if the 'file' key that was stubbed(!) is tokenized, i.e.:
+        // file: ../html/<% url.1 %>.html
+        return !isNull(filePathTemplate);
+    }
+
+    /**
+     * @return compiled template of the stubbed file path, or {@code null} if the file path is not tokenized
+     */
+    public StubTemplate getCompiledFilePathTemplate() {
+        return filePathTemplate;
+    }
+
+    /**
+     * @return compiled body template, see {@link #getBodyTemplate()}, which is compiled when this stubbed response
+     * is built
+     */
+    public StubTemplate getCompiledBodyTemplate() {
+        final String bodyTemplate = getBodyTemplate();
+        if (!isNull(compiledBodyTemplate) && compiledBodyTemplate.isCompiledFrom(bodyTemplate)) {
+            return compiledBodyTemplate;
         }
+        // The body has changed since, i.e.: a recording response has recorded its body, which is rare enough
+        // to compile it upon every response
+        return StubTemplate.compile(bodyTemplate);
     }
 
-    private boolean isTemplateFile() {
-        try {
-            return FileUtils.isTemplateFile(file);
-        } catch (Exception e) {
-            return false;
+    /**
+     * @param headerName name of a stubbed response header that has a value
+     * @return compiled template of the stubbed header value
+     */
+    public StubTemplate getCompiledHeaderTemplate(final String headerName) {
+        final String headerValue = getHeaders().get(headerName);
+        StubTemplate compiled = compiledHeaderTemplates.get(headerName);
+        if (isNull(compiled) || !compiled.isCompiledFrom(headerValue)) {
+            compiled = StubTemplate.compile(headerValue);
+            compiledHeaderTemplates.put(headerName, compiled);
         }
+        return compiled;
+    }
+
+    private boolean isTemplateFile() {
+        // The loaded file content is scanned once, rather than the file is read again upon every response.
+        // A changed file is picked up when the stubs are reloaded, e.g.: by the external files scanner
+        return fileBytes.length != 0
+                && isCharacterFile(file)
+                && StringUtils.isTokenized(StringUtils.newStringUtf8(fileBytes));
     }
 
     private byte[] getFileBytes() {
@@ -152,8 +241,17 @@ public class StubResponse implements ReflectableStub {
         return getHeaders().containsKey("location");
     }
 
-    void addResourceIDHeader(final int resourceIndex) {
-        getHeaders().put(Common.HEADER_X_STUBBY_RESOURCE_ID, String.valueOf(resourceIndex));
+    /**
+     * This stubbed response is left as is, since it may be rendered by the matching threads at the same time.
+     *
+     * @param resourceIndex resource ID of the stub that the copy belongs to
+     * @return copy of this stubbed response with the resource ID header set to the given resource ID
+     */
+    StubResponse withResourceIDHeader(final int resourceIndex) {
+        final Map<String, String> copiedHeaders = new LinkedHashMap<>(getHeaders());
+        copiedHeaders.put(Common.HEADER_X_STUBBY_RESOURCE_ID, String.valueOf(resourceIndex));
+
+        return new StubResponse(this, copiedHeaders);
     }
 
     String getResourceIDHeader() {
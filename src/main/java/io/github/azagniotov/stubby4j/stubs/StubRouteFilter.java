@@ -0,0 +1,139 @@
+/*
+ * Copyright (c) 2012-2024 Alexander Zagniotov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.azagniotov.stubby4j.stubs;
+
+import static io.github.azagniotov.stubby4j.utils.StringUtils.toUpper;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Immutable Bloom filter over the (HTTP method, literal URL) routes of the stubs, see {@link StubUrlIndex#isLiteral}.
+ * <p>
+ * When the filter says that an incoming route was never stubbed, none of the stubs with a literal URL can match
+ * the incoming request, so they do not even have to be looked up. The filter can return false positives, but
+ * never false negatives, therefore a positive answer only means that the stubs have to be evaluated as usual.
+ * <p>
+ * A stub without any HTTP method matches any incoming method, so its URL is added under a wildcard method.
+ * Routes can be added to the filter, but not removed from it: the route of a deleted stub leaves a false positive
+ * behind, which is harmless and goes away the next time the filter is built from scratch.
+ */
+final class StubRouteFilter {
+
+    private static final int BITS_PER_ROUTE = 10;
+    private static final int HASH_FUNCTIONS = 3;
+    private static final int MIN_BITS = Long.SIZE;
+    private static final String ANY_METHOD = "*";
+
+    static final StubRouteFilter EMPTY = new StubRouteFilter(new long[MIN_BITS / Long.SIZE]);
+
+    private final long[] bits;
+
+    private StubRouteFilter(final long[] bits) {
+        this.bits = bits;
+    }
+
+    static StubRouteFilter build(final List<StubHttpLifecycle> stubs) {
+        final int numberOfBits = Math.max(MIN_BITS, stubs.size() * BITS_PER_ROUTE);
+        final long[] bits = new long[(numberOfBits + Long.SIZE - 1) / Long.SIZE];
+        for (final StubHttpLifecycle stub : stubs) {
+            addRoutes(bits, stub.getRequest());
+        }
+
+        return new StubRouteFilter(bits);
+    }
+
+    StubRouteFilter with(final StubHttpLifecycle stub) {
+        final long[] copy = Arrays.copyOf(bits, bits.length);
+        addRoutes(copy, stub.getRequest());
+
+        return new StubRouteFilter(copy);
+    }
+
+    /**
+     * @param incomingMethods HTTP method(s) of the incoming request
+     * @param incomingUrl URL path of the incoming request
+     * @return false if there is definitely no stub with the given literal URL and a matching HTTP method
+     */
+    boolean mightContain(final List<String> incomingMethods, final String incomingUrl) {
+        if (contains(bits, route(ANY_METHOD, incomingUrl))) {
+            return true;
+        }
+        for (final String incomingMethod : incomingMethods) {
+            if (contains(bits, route(incomingMethod, incomingUrl))) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private static void addRoutes(final long[] bits, final StubRequest stubbedRequest) {
+        final String stubbedUrl = stubbedRequest.getUri();
+        if (!StubUrlIndex.isLiteral(stubbedUrl)) {
+            return;
+        }
+
+        final List<String> stubbedMethods = stubbedRequest.getMethod();
+        if (stubbedMethods.isEmpty()) {
+            add(bits, route(ANY_METHOD, stubbedUrl));
+        }
+        for (final String stubbedMethod : stubbedMethods) {
+            add(bits, route(stubbedMethod, stubbedUrl));
+        }
+    }
+
+    private static String route(final String method, final String url) {
+        return toUpper(method) + " " + url;
+    }
+
+    private static void add(final long[] bits, final String route) {
+        final int numberOfBits = bits.length * Long.SIZE;
+        final int hash = route.hashCode();
+        final int secondHash = mix(hash);
+        for (int idx = 0; idx < HASH_FUNCTIONS; idx++) {
+            final int bit = Math.floorMod(hash + idx * secondHash, numberOfBits);
+            bits[bit / Long.SIZE] |= 1L << (bit % Long.SIZE);
+        }
+    }
+
+    private static boolean contains(final long[] bits, final String route) {
+        final int numberOfBits = bits.length * Long.SIZE;
+        final int hash = route.hashCode();
+        final int secondHash = mix(hash);
+        for (int idx = 0; idx < HASH_FUNCTIONS; idx++) {
+            final int bit = Math.floorMod(hash + idx * secondHash, numberOfBits);
+            if ((bits[bit / Long.SIZE] & (1L << (bit % Long.SIZE))) == 0) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    // Derives a second, independent hash from the first one (the finalization step of MurmurHash3)
+    private static int mix(final int hash) {
+        int mixed = hash;
+        mixed ^= mixed >>> 16;
+        mixed *= 0x85ebca6b;
+        mixed ^= mixed >>> 13;
+        mixed *= 0xc2b2ae35;
+        mixed ^= mixed >>> 16;
+
+        return mixed | 1;
+    }
+}
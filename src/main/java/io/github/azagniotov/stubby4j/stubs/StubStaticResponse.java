@@ -0,0 +1,83 @@
+/*
+ * Copyright (c) 2012-2024 Alexander Zagniotov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.github.azagniotov.stubby4j.stubs;
+
+import static io.github.azagniotov.stubby4j.utils.StringUtils.isTokenized;
+
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Wire-ready form of a stubbed response that does not have any template tokens in its headers, body or file path,
+ * i.e.: the response is the same for any incoming request that matches the stub. Therefore, its headers and body
+ * are computed once when the stub is loaded, rather than upon every response.
+ * <p>
+ * The body is held in a read-only {@link ByteBuffer}, which is shared by all the responses. Each response gets its
+ * own view of the buffer (see {@link #getBody()}), so that the responses do not step on each other's position.
+ */
+public final class StubStaticResponse {
+
+    private final Map<String, String> headers;
+    private final ByteBuffer body;
+
+    private StubStaticResponse(final Map<String, String> headers, final ByteBuffer body) {
+        this.headers = headers;
+        this.body = body;
+    }
+
+    /**
+     * @param stubResponse stubbed response
+     * @return a new {@link StubStaticResponse}, or {@code null} if the stubbed response has template tokens or
+     * records its body, in which case it has to be handled upon every response
+     */
+    static StubStaticResponse of(final StubResponse stubResponse) {
+        // The body of a recording response is replaced with the recorded body, once it is recorded
+        if (stubResponse.isRecordingRequired()
+                || stubResponse.isFilePathContainsTemplateTokens()
+                || stubResponse.isBodyContainsTemplateTokens()) {
+            return null;
+        }
+
+        final Map<String, String> headers = new LinkedHashMap<>(stubResponse.getHeaders());
+        for (final String headerValue : headers.values()) {
+            if (isTokenized(headerValue)) {
+                return null;
+            }
+        }
+
+        final ByteBuffer body = ByteBuffer.wrap(stubResponse.getResponseBodyAsBytes()).asReadOnlyBuffer();
+
+        return new StubStaticResponse(Collections.unmodifiableMap(headers), body);
+    }
+
+    /**
+     * @return stubbed response headers, which are not modifiable
+     */
+    public Map<String, String> getHeaders() {
+        return headers;
+    }
+
+    /**
+     * @return a new read-only view of the response body, positioned at the beginning of the body
+     */
+    public ByteBuffer getBody() {
+        return body.duplicate();
+    }
+}
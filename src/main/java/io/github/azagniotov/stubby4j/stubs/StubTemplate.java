@@ -0,0 +1,144 @@
+/*
+ * Copyright (c) 2012-2024 Alexander Zagniotov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.github.azagniotov.stubby4j.stubs;
+
+import static io.github.azagniotov.stubby4j.utils.StringUtils.getBytesUtf8;
+
+import io.github.azagniotov.stubby4j.utils.StringUtils;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Template (i.e.: a response body, a header value or a file path) with template tokens in it, e.g.:
+ * <code>&lt;% url.1 %&gt;</code>, which is parsed once into a list of segments: literal text and token references.
+ * Rendering the template with the regex groups of a matched request is a single pass over the segments, rather
+ * than a regex replacement of the whole template per captured regex group.
+ * <p>
+ * A token whose value is not among the given regex groups is rendered as it appears in the template. A token
+ * value is rendered as is, i.e.: without any regex replacement syntax (e.g.: <code>$1</code>) being interpreted.
+ * <p>
+ * Instances are immutable, so a compiled template can be rendered by many threads at the same time.
+ */
+public final class StubTemplate {
+
+    static final Pattern TEMPLATE_TOKEN = Pattern.compile("<%\\s*([^\\s%]+)\\s*%>");
+
+    private final String source;
+    // There is always one more literal than there are tokens: literal, token, literal, ..., token, literal
+    private final String[] literals;
+    private final byte[][] literalBytes;
+    private final String[] tokenNames;
+    private final String[] rawTokens;
+
+    private StubTemplate(
+            final String source,
+            final List<String> literals,
+            final List<String> tokenNames,
+            final List<String> rawTokens) {
+        this.source = source;
+        this.literals = literals.toArray(new String[0]);
+        this.literalBytes = new byte[this.literals.length][];
+        for (int idx = 0; idx < this.literals.length; idx++) {
+            this.literalBytes[idx] = getBytesUtf8(this.literals[idx]);
+        }
+        this.tokenNames = tokenNames.toArray(new String[0]);
+        this.rawTokens = rawTokens.toArray(new String[0]);
+    }
+
+    /**
+     * @param template template text
+     * @return a new {@link StubTemplate}
+     */
+    public static StubTemplate compile(final String template) {
+        final List<String> literals = new ArrayList<>();
+        final List<String> tokenNames = new ArrayList<>();
+        final List<String> rawTokens = new ArrayList<>();
+
+        int literalStart = 0;
+        if (StringUtils.isTokenized(template)) {
+            final Matcher matcher = TEMPLATE_TOKEN.matcher(template);
+            while (matcher.find()) {
+                literals.add(template.substring(literalStart, matcher.start()));
+                tokenNames.add(matcher.group(1));
+                rawTokens.add(matcher.group());
+                literalStart = matcher.end();
+            }
+        }
+        literals.add(template.substring(literalStart));
+
+        return new StubTemplate(template, literals, tokenNames, rawTokens);
+    }
+
+    /**
+     * @param template template text
+     * @return whether this template was compiled from the given template text, i.e.: from the very same string
+     */
+    boolean isCompiledFrom(final String template) {
+        return source == template;
+    }
+
+    /**
+     * @return whether this template has any template tokens in it
+     */
+    public boolean isTokenized() {
+        return tokenNames.length > 0;
+    }
+
+    /**
+     * @param tokensAndValues regex groups of the matched request, keyed by the template token name
+     * @return rendered template
+     */
+    public String render(final Map<String, String> tokensAndValues) {
+        if (!isTokenized()) {
+            return source;
+        }
+
+        final StringBuilder rendered = new StringBuilder(source.length());
+        for (int idx = 0; idx < tokenNames.length; idx++) {
+            rendered.append(literals[idx]);
+            final String value = tokensAndValues.get(tokenNames[idx]);
+            rendered.append(value == null ? rawTokens[idx] : value);
+        }
+        rendered.append(literals[tokenNames.length]);
+
+        return rendered.toString();
+    }
+
+    /**
+     * Renders the template in UTF-8 straight to the given output stream, without rendering the whole template
+     * into memory first.
+     *
+     * @param outputStream output stream to render the template to, which is not closed
+     * @param tokensAndValues regex groups of the matched request, keyed by the template token name
+     * @throws IOException if writing to the output stream fails
+     */
+    public void renderTo(final OutputStream outputStream, final Map<String, String> tokensAndValues)
+            throws IOException {
+        for (int idx = 0; idx < tokenNames.length; idx++) {
+            outputStream.write(literalBytes[idx]);
+            final String value = tokensAndValues.get(tokenNames[idx]);
+            outputStream.write(getBytesUtf8(value == null ? rawTokens[idx] : value));
+        }
+        outputStream.write(literalBytes[tokenNames.length]);
+    }
+}
@@ -0,0 +1,137 @@
+/*
+ * Copyright (c) 2012-2024 Alexander Zagniotov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.github.azagniotov.stubby4j.stubs;
+
+import static io.github.azagniotov.stubby4j.utils.StringUtils.isTokenized;
+
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+
+/**
+ * Template tokens (e.g.: <code>&lt;% url.1 %&gt;</code>) that the stubbed responses of a stub refer to, which tell
+ * what regex groups have to be captured when an incoming request is matched to the stub. A stub whose responses
+ * do not refer to any tokens is matched without extracting any of the regex groups, or building their names.
+ * <p>
+ * The tokens are looked up in the response headers (including the <code>location</code> header of a redirect),
+ * in the response body and in the template file. A stubbed file path with template tokens in it resolves to a file
+ * that is not known until the request is matched, so all the regex groups are captured for such stub. So they are
+ * for a token that does not follow the <code>&lt;name&gt;.&lt;group index&gt;</code> format.
+ */
+final class StubTemplateTokens {
+
+    static final StubTemplateTokens ALL = new StubTemplateTokens(null);
+
+    // Group indexes keyed by the template token name (e.g.: 'url' or 'headers.content-type'), all groups if null
+    private final Map<String, BitSet> groupsByName;
+
+    private StubTemplateTokens(final Map<String, BitSet> groupsByName) {
+        this.groupsByName = groupsByName;
+    }
+
+    /**
+     * @param stubResponses stubbed responses, all of which can be served for a matched request
+     * @return {@link StubTemplateTokens} that the given responses refer to
+     */
+    static StubTemplateTokens of(final List<StubResponse> stubResponses) {
+        final Map<String, BitSet> groupsByName = new HashMap<>();
+        for (final StubResponse stubResponse : stubResponses) {
+            if (stubResponse.isFilePathContainsTemplateTokens()) {
+                return ALL;
+            }
+
+            for (final String headerValue : stubResponse.getHeaders().values()) {
+                if (headerValue != null && !collect(headerValue, groupsByName)) {
+                    return ALL;
+                }
+            }
+
+            if (stubResponse.isBodyContainsTemplateTokens()
+                    && !collect(stubResponse.getBodyTemplate(), groupsByName)) {
+                return ALL;
+            }
+        }
+
+        return new StubTemplateTokens(groupsByName.isEmpty() ? Collections.emptyMap() : groupsByName);
+    }
+
+    /**
+     * @return false if the template has a token that does not follow the expected format
+     */
+    private static boolean collect(final String template, final Map<String, BitSet> groupsByName) {
+        if (!isTokenized(template)) {
+            return true;
+        }
+
+        final Matcher matcher = StubTemplate.TEMPLATE_TOKEN.matcher(template);
+        while (matcher.find()) {
+            final String token = matcher.group(1);
+            final int separatorIdx = token.lastIndexOf('.');
+            if (separatorIdx <= 0 || separatorIdx == token.length() - 1) {
+                return false;
+            }
+
+            final int groupIdx;
+            try {
+                groupIdx = Integer.parseInt(token.substring(separatorIdx + 1));
+            } catch (final NumberFormatException e) {
+                return false;
+            }
+            if (groupIdx < 0) {
+                return false;
+            }
+            groupsByName
+                    .computeIfAbsent(token.substring(0, separatorIdx), name -> new BitSet())
+                    .set(groupIdx);
+        }
+
+        return true;
+    }
+
+    /**
+     * @param templateTokenName template token name of a stubbed value, see {@link StubValuePredicate}
+     * @return whether any of the regex groups of the given stubbed value have to be captured
+     */
+    boolean isCaptured(final String templateTokenName) {
+        return groupsByName == null || groupsByName.containsKey(templateTokenName);
+    }
+
+    /**
+     * @param templateTokenName template token name of a stubbed value, see {@link StubValuePredicate}
+     * @param groupIdx index of a regex group, where 0 is the full match
+     * @return whether the given regex group of the given stubbed value has to be captured
+     */
+    boolean isCaptured(final String templateTokenName, final int groupIdx) {
+        if (groupsByName == null) {
+            return true;
+        }
+        final BitSet groups = groupsByName.get(templateTokenName);
+
+        return groups != null && groups.get(groupIdx);
+    }
+
+    /**
+     * @return whether a stubbed value captured with these tokens has the groups captured with the given ones
+     */
+    boolean covers(final StubTemplateTokens other, final String templateTokenName) {
+        return this == other || groupsByName == null || !other.isCaptured(templateTokenName);
+    }
+}
@@ -0,0 +1,192 @@
+/*
+ * Copyright (c) 2012-2024 Alexander Zagniotov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.azagniotov.stubby4j.stubs;
+
+import static io.github.azagniotov.stubby4j.utils.StringUtils.isSet;
+
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+/**
+ * Immutable automaton that combines the regex URLs of the stubs, so that a single pass over an incoming URL tells
+ * which of the stubs with a regex URL can potentially match it, instead of evaluating their patterns one by one.
+ * <p>
+ * The patterns are combined into a {@link RegexNfa}, which is turned into a deterministic automaton lazily:
+ * a deterministic state (i.e.: a set of the NFA states) is created the first time an incoming URL leads to it,
+ * and its transitions are cached as they are taken. The number of cached states is bounded, past that bound
+ * the states are still computed but not cached. Stubs whose URL pattern the {@link RegexNfa} does not support,
+ * e.g.: a pattern with a back reference, are not indexed by the automaton and stay candidates for any
+ * incoming URL.
+ * <p>
+ * A URL pattern is indexed along with its own text, as a stubbed URL is matched by an incoming URL that equals to
+ * it even if it is not matched by its pattern, see {@link StubValuePredicate}.
+ */
+final class StubUrlAutomaton {
+
+    private static final int MAX_CACHED_STATES = 10_000;
+    private static final int CACHED_TRANSITIONS = 128;
+
+    static final StubUrlAutomaton EMPTY = new StubUrlAutomaton(Collections.emptyMap());
+
+    private final Map<Integer, RegexNfa.Node> nodesByOrdinal;
+    private final BitSet indexedOrdinals;
+    private final RegexNfa nfa;
+    private final ConcurrentHashMap<BitSet, State> cachedStates;
+    private final State start;
+
+    private StubUrlAutomaton(final Map<Integer, RegexNfa.Node> nodesByOrdinal) {
+        this.nodesByOrdinal = nodesByOrdinal;
+        this.indexedOrdinals = new BitSet();
+
+        final RegexNfa.Builder builder = new RegexNfa.Builder();
+        for (final Map.Entry<Integer, RegexNfa.Node> entry : nodesByOrdinal.entrySet()) {
+            builder.add(entry.getValue(), entry.getKey());
+            indexedOrdinals.set(entry.getKey());
+        }
+        this.nfa = builder.build();
+        this.cachedStates = new ConcurrentHashMap<>();
+        this.start = stateOf(nfa.startStates());
+    }
+
+    /**
+     * @param stubbedUrls stubbed URLs, where the list position of a URL is the ordinal of its stub. Literal URLs
+     * (see {@link StubUrlIndex#isLiteral(String)}) are left out, as they are indexed by the {@link StubUrlIndex}
+     * @return a new {@link StubUrlAutomaton}
+     */
+    static StubUrlAutomaton build(final List<String> stubbedUrls) {
+        final Map<Integer, RegexNfa.Node> nodesByOrdinal = new TreeMap<>();
+        for (int ordinal = 0; ordinal < stubbedUrls.size(); ordinal++) {
+            final RegexNfa.Node node = nodeOf(stubbedUrls.get(ordinal));
+            if (node != null) {
+                nodesByOrdinal.put(ordinal, node);
+            }
+        }
+
+        return nodesByOrdinal.isEmpty() ? EMPTY : new StubUrlAutomaton(Collections.unmodifiableMap(nodesByOrdinal));
+    }
+
+    StubUrlAutomaton withUrl(final int ordinal, final String stubbedUrl) {
+        final RegexNfa.Node node = nodeOf(stubbedUrl);
+        if (node == null) {
+            return this;
+        }
+
+        final Map<Integer, RegexNfa.Node> copy = new TreeMap<>(nodesByOrdinal);
+        copy.put(ordinal, node);
+        return new StubUrlAutomaton(Collections.unmodifiableMap(copy));
+    }
+
+    StubUrlAutomaton withoutUrl(final int ordinal) {
+        if (!nodesByOrdinal.containsKey(ordinal)) {
+            return this;
+        }
+
+        final Map<Integer, RegexNfa.Node> copy = new TreeMap<>(nodesByOrdinal);
+        copy.remove(ordinal);
+        return copy.isEmpty() ? EMPTY : new StubUrlAutomaton(Collections.unmodifiableMap(copy));
+    }
+
+    /**
+     * @param candidates ordinals (in ascending order) of the stubs that are candidates for the incoming URL
+     * @param incomingUrl URL path of the incoming request
+     * @return given candidates, less the indexed stubs whose URL pattern cannot match the incoming URL
+     */
+    int[] filter(final int[] candidates, final String incomingUrl) {
+        if (nodesByOrdinal.isEmpty() || !StubOrdinals.anyIndexed(candidates, indexedOrdinals)) {
+            return candidates;
+        }
+
+        State current = start;
+        for (int idx = 0; idx < incomingUrl.length() && current.isAlive(); idx++) {
+            final char character = incomingUrl.charAt(idx);
+            if (Character.isSurrogate(character)) {
+                // A java.util.regex.Pattern matches a supplementary character as a whole, e.g.: with a single '.'
+                return candidates;
+            }
+            current = next(current, character);
+        }
+
+        return StubOrdinals.retain(candidates, indexedOrdinals, current.acceptedOrdinals);
+    }
+
+    private State next(final State current, final char character) {
+        if (character < CACHED_TRANSITIONS) {
+            final State cached = current.transitions[character];
+            if (cached != null) {
+                return cached;
+            }
+        }
+
+        final State next = stateOf(nfa.step(current.nfaStates, character));
+        if (character < CACHED_TRANSITIONS) {
+            // A racing thread may compute the same transition, which is harmless since the states are immutable
+            current.transitions[character] = next;
+        }
+        return next;
+    }
+
+    private State stateOf(final BitSet nfaStates) {
+        final State cached = cachedStates.get(nfaStates);
+        if (cached != null) {
+            return cached;
+        }
+
+        final State state = new State(nfaStates, nfa.acceptedOrdinals(nfaStates));
+        if (cachedStates.size() >= MAX_CACHED_STATES) {
+            return state;
+        }
+        final State raced = cachedStates.putIfAbsent(nfaStates, state);
+        return raced == null ? state : raced;
+    }
+
+    private static RegexNfa.Node nodeOf(final String stubbedUrl) {
+        // A stub without a URL matches any incoming URL, so there is nothing to narrow it down on
+        if (!isSet(stubbedUrl) || StubUrlIndex.isLiteral(stubbedUrl)) {
+            return null;
+        }
+        // A URL that is not a valid regex is matched as a literal, see RegexParser#compile(String)
+        final Pattern[] compiledPatterns = RegexParser.INSTANCE.compile(stubbedUrl);
+        if ((compiledPatterns[0].flags() & Pattern.LITERAL) != 0) {
+            return RegexNfa.literal(stubbedUrl);
+        }
+
+        final RegexNfa.Node node = RegexNfa.parse(stubbedUrl);
+        return node == null ? null : RegexNfa.either(node, RegexNfa.literal(stubbedUrl));
+    }
+
+    private static final class State {
+        private final BitSet nfaStates;
+        private final int[] acceptedOrdinals;
+        private final State[] transitions;
+
+        private State(final BitSet nfaStates, final int[] acceptedOrdinals) {
+            this.nfaStates = nfaStates;
+            this.acceptedOrdinals = acceptedOrdinals;
+            this.transitions = new State[CACHED_TRANSITIONS];
+        }
+
+        // A state without any NFA states is a dead end, it does not accept no matter what characters follow
+        private boolean isAlive() {
+            return !nfaStates.isEmpty();
+        }
+    }
+}
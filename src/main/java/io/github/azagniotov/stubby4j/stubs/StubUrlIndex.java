@@ -0,0 +1,225 @@
+/*
+ * Copyright (c) 2012-2024 Alexander Zagniotov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.azagniotov.stubby4j.stubs;
+
+import static io.github.azagniotov.stubby4j.utils.StringUtils.isSet;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable index of stubbed URLs, which narrows down the stubs that an incoming request URL can possibly match.
+ * <p>
+ * Stubs with a literal URL (i.e.: a URL without any regex special characters, which can only ever match an
+ * identical incoming URL) are kept in a trie keyed on the URL path segments. Stubs with a regex URL, or without
+ * a URL at all, end up in a residual bucket, because they can potentially match any incoming URL. The residual
+ * stubs with a regex URL are narrowed down further by a {@link StubUrlAutomaton}, which tells in a single pass
+ * over the incoming URL which of their patterns can match it.
+ * <p>
+ * Stubs are referred to by their ordinal, i.e.: the position in which they were indexed, so the candidates for an
+ * incoming URL are returned in ascending order of ordinals, which preserves the YAML definition order.
+ * <p>
+ * Changes are applied by copying only the trie nodes along the path of the affected URL, so an updated index can
+ * be published to the matching threads while the previous one is still being read.
+ */
+final class StubUrlIndex {
+
+    private static final String PATH_SEPARATOR = "/";
+
+    static final StubUrlIndex EMPTY = new StubUrlIndex(Node.EMPTY, StubOrdinals.NONE, StubUrlAutomaton.EMPTY);
+
+    private final Node root;
+    private final int[] residual;
+    private final StubUrlAutomaton residualAutomaton;
+
+    private StubUrlIndex(final Node root, final int[] residual, final StubUrlAutomaton residualAutomaton) {
+        this.root = root;
+        this.residual = residual;
+        this.residualAutomaton = residualAutomaton;
+    }
+
+    /**
+     * @param stubbedUrls stubbed URLs, where the list position of a URL is the ordinal of its stub
+     * @return a new {@link StubUrlIndex}
+     */
+    static StubUrlIndex build(final List<String> stubbedUrls) {
+        final MutableNode root = new MutableNode();
+        final int[] residual = new int[stubbedUrls.size()];
+        int residualSize = 0;
+
+        for (int ordinal = 0; ordinal < stubbedUrls.size(); ordinal++) {
+            final String stubbedUrl = stubbedUrls.get(ordinal);
+            if (isLiteral(stubbedUrl)) {
+                MutableNode current = root;
+                for (final String segment : toSegments(stubbedUrl)) {
+                    current = current.children.computeIfAbsent(segment, key -> new MutableNode());
+                }
+                current.add(ordinal);
+            } else {
+                residual[residualSize++] = ordinal;
+            }
+        }
+
+        return new StubUrlIndex(
+                root.freeze(), Arrays.copyOf(residual, residualSize), StubUrlAutomaton.build(stubbedUrls));
+    }
+
+    /**
+     * The URL of a stub is considered literal when it can only ever be matched by an identical incoming URL.
+     * A stub without a URL matches any incoming URL.
+     */
+    static boolean isLiteral(final String stubbedUrl) {
+        return isSet(stubbedUrl) && RegexParser.isLiteral(stubbedUrl);
+    }
+
+    StubUrlIndex withUrl(final int ordinal, final String stubbedUrl) {
+        if (isLiteral(stubbedUrl)) {
+            return new StubUrlIndex(root.with(toSegments(stubbedUrl), 0, ordinal), residual, residualAutomaton);
+        }
+        return new StubUrlIndex(
+                root, StubOrdinals.insert(residual, ordinal), residualAutomaton.withUrl(ordinal, stubbedUrl));
+    }
+
+    StubUrlIndex withoutUrl(final int ordinal, final String stubbedUrl) {
+        if (isLiteral(stubbedUrl)) {
+            return new StubUrlIndex(root.without(toSegments(stubbedUrl), 0, ordinal), residual, residualAutomaton);
+        }
+        return new StubUrlIndex(root, StubOrdinals.remove(residual, ordinal), residualAutomaton.withoutUrl(ordinal));
+    }
+
+    /**
+     * @param stubbedUrl stubbed URL
+     * @return ordinals of all the stubs that were indexed under the same bucket as the given stubbed URL
+     */
+    int[] ordinalsOf(final String stubbedUrl) {
+        if (isLiteral(stubbedUrl)) {
+            return root.find(toSegments(stubbedUrl));
+        }
+        return residual;
+    }
+
+    /**
+     * @param incomingUrl URL path of the incoming request
+     * @return ordinals (in ascending order) of the stubs whose URL can potentially match the incoming URL
+     */
+    int[] candidates(final String incomingUrl) {
+        if (!isSet(incomingUrl)) {
+            return residual;
+        }
+
+        return StubOrdinals.merge(root.find(toSegments(incomingUrl)), residual(incomingUrl));
+    }
+
+    /**
+     * @param incomingUrl URL path of the incoming request
+     * @return ordinals (in ascending order) of the stubs with a regex URL that can potentially match the incoming
+     * URL, along with the stubs without a URL
+     */
+    int[] residual(final String incomingUrl) {
+        if (!isSet(incomingUrl)) {
+            return residual;
+        }
+
+        return residualAutomaton.filter(residual, incomingUrl);
+    }
+
+    private static String[] toSegments(final String url) {
+        return url.split(PATH_SEPARATOR, -1);
+    }
+
+    private static final class Node {
+
+        private static final Node EMPTY = new Node(Collections.emptyMap(), StubOrdinals.NONE);
+
+        private final Map<String, Node> children;
+        private final int[] ordinals;
+
+        private Node(final Map<String, Node> children, final int[] ordinals) {
+            this.children = children;
+            this.ordinals = ordinals;
+        }
+
+        private int[] find(final String[] segments) {
+            Node current = this;
+            for (final String segment : segments) {
+                current = current.children.get(segment);
+                if (current == null) {
+                    return StubOrdinals.NONE;
+                }
+            }
+            return current.ordinals;
+        }
+
+        private Node with(final String[] segments, final int depth, final int ordinal) {
+            if (depth == segments.length) {
+                return new Node(children, StubOrdinals.insert(ordinals, ordinal));
+            }
+
+            final Node child = children.getOrDefault(segments[depth], EMPTY);
+            return withChild(segments[depth], child.with(segments, depth + 1, ordinal));
+        }
+
+        private Node without(final String[] segments, final int depth, final int ordinal) {
+            if (depth == segments.length) {
+                return new Node(children, StubOrdinals.remove(ordinals, ordinal));
+            }
+
+            final Node child = children.get(segments[depth]);
+            if (child == null) {
+                return this;
+            }
+            return withChild(segments[depth], child.without(segments, depth + 1, ordinal));
+        }
+
+        private Node withChild(final String segment, final Node child) {
+            final Map<String, Node> copy = new HashMap<>(children);
+            if (child.children.isEmpty() && child.ordinals.length == 0) {
+                copy.remove(segment);
+            } else {
+                copy.put(segment, child);
+            }
+            return new Node(Collections.unmodifiableMap(copy), ordinals);
+        }
+    }
+
+    private static final class MutableNode {
+
+        private final Map<String, MutableNode> children = new HashMap<>();
+        private int[] ordinals = StubOrdinals.NONE;
+
+        private void add(final int ordinal) {
+            // Ordinals are added in ascending order while building, so appending keeps them sorted
+            ordinals = Arrays.copyOf(ordinals, ordinals.length + 1);
+            ordinals[ordinals.length - 1] = ordinal;
+        }
+
+        private Node freeze() {
+            if (children.isEmpty()) {
+                return new Node(Collections.emptyMap(), ordinals);
+            }
+
+            final Map<String, Node> frozenChildren = new HashMap<>(children.size());
+            for (final Map.Entry<String, MutableNode> entry : children.entrySet()) {
+                frozenChildren.put(entry.getKey(), entry.getValue().freeze());
+            }
+            return new Node(Collections.unmodifiableMap(frozenChildren), ordinals);
+        }
+    }
+}
@@ -0,0 +1,169 @@
+/*
+ * Copyright (c) 2012-2024 Alexander Zagniotov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.azagniotov.stubby4j.stubs;
+
+import static io.github.azagniotov.stubby4j.utils.StringUtils.buildToken;
+import static io.github.azagniotov.stubby4j.utils.StringUtils.isNotSet;
+
+import java.util.Map;
+import java.util.Objects;
+import java.util.regex.Pattern;
+
+/**
+ * Immutable, precompiled predicate over a single stubbed value (e.g.: URL, a header or a query param value),
+ * which is tested against the corresponding value of an incoming request.
+ * <p>
+ * A stubbed value without any regex special characters is tested with a plain {@link String#equals(Object)}, which
+ * is what the regex matching boils down to for such value. Otherwise, the value is compiled into {@link Pattern
+ * patterns} once, see {@link RegexParser#compile(String)}, instead of being looked up upon every match.
+ * Either way, the regex groups are recorded under the template token name of the value, exactly like the
+ * {@link RegexParser} does when matching, though only the groups that the stubbed responses refer to
+ * (see {@link StubTemplateTokens}).
+ * <p>
+ * Before a compiled value is evaluated, the incoming value is checked for the literal fragments that any match
+ * must contain (see {@link RegexRequiredLiterals}), so that an incoming value that is missing any of them is
+ * rejected without invoking the regex engine.
+ */
+final class StubValuePredicate {
+
+    private final String stubbedValue;
+    private final String templateTokenName;
+    private final boolean isStubbedValueSet;
+    private final boolean isFallbackToEquals;
+    private final Pattern[] compiledPatterns;
+    private final String[] requiredLiterals;
+    private final int hashCode;
+
+    private StubValuePredicate(
+            final String stubbedValue, final String templateTokenName, final boolean isFallbackToEquals) {
+        this.stubbedValue = stubbedValue;
+        this.templateTokenName = templateTokenName;
+        this.isStubbedValueSet = !isNotSet(stubbedValue);
+        this.isFallbackToEquals = isFallbackToEquals;
+        this.compiledPatterns = isStubbedValueSet && !RegexParser.isLiteral(stubbedValue)
+                ? RegexParser.INSTANCE.compile(stubbedValue)
+                : null;
+        this.requiredLiterals =
+                compiledPatterns == null ? RegexRequiredLiterals.NONE : RegexRequiredLiterals.of(compiledPatterns[0]);
+        this.hashCode = Objects.hash(stubbedValue, templateTokenName, isFallbackToEquals);
+    }
+
+    /**
+     * Predicate that is satisfied when the incoming value either matches the stubbed value as a regex, or equals
+     * to it. A value that was not stubbed is satisfied by any incoming value.
+     *
+     * @see StubMatcher#stringsMatch(String, String, String)
+     */
+    static StubValuePredicate of(final String stubbedValue, final String templateTokenName) {
+        return new StubValuePredicate(stubbedValue, templateTokenName, true);
+    }
+
+    /**
+     * Predicate that is satisfied only when the incoming value matches the stubbed value as a regex
+     */
+    static StubValuePredicate regexOnly(final String stubbedValue, final String templateTokenName) {
+        return new StubValuePredicate(stubbedValue, templateTokenName, false);
+    }
+
+    boolean test(final String assertingValue, final Map<String, String> regexGroups) {
+        return test(assertingValue, regexGroups, StubTemplateTokens.ALL);
+    }
+
+    /**
+     * @param templateTokens template tokens that tell what regex groups to record
+     */
+    boolean test(
+            final String assertingValue,
+            final Map<String, String> regexGroups,
+            final StubTemplateTokens templateTokens) {
+        if (isFallbackToEquals) {
+            if (!isStubbedValueSet) {
+                return true;
+            } else if (isNotSet(assertingValue)) {
+                return false;
+            }
+        }
+
+        if (compiledPatterns == null) {
+            if (stubbedValue.equals(assertingValue)) {
+                if (templateTokens.isCaptured(templateTokenName, 0)) {
+                    regexGroups.put(buildToken(templateTokenName, 0), assertingValue);
+                }
+                return true;
+            }
+            return false;
+        }
+
+        if (assertingValue != null && !containsRequiredLiterals(assertingValue)) {
+            return isFallbackToEquals && stubbedValue.equals(assertingValue);
+        }
+
+        return RegexParser.INSTANCE.match(
+                        compiledPatterns, assertingValue, templateTokenName, templateTokens, regexGroups)
+                || (isFallbackToEquals && stubbedValue.equals(assertingValue));
+    }
+
+    /**
+     * @return stubbed value if it is tested with a plain {@link String#equals(Object)}, otherwise {@code null}
+     */
+    String getLiteralValue() {
+        return isStubbedValueSet && compiledPatterns == null && isFallbackToEquals ? stubbedValue : null;
+    }
+
+    String getTemplateTokenName() {
+        return templateTokenName;
+    }
+
+    /**
+     * @return whether the stubbed value is tested as a regex, see {@link StubPredicateMemo}
+     */
+    boolean isRegex() {
+        return compiledPatterns != null;
+    }
+
+    private boolean containsRequiredLiterals(final String assertingValue) {
+        for (final String requiredLiteral : requiredLiterals) {
+            if (assertingValue.indexOf(requiredLiteral) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Two predicates are equal when they are satisfied by the same incoming values and record the regex groups
+     * under the same template token name, even if they belong to different stubs
+     */
+    @Override
+    public boolean equals(final Object that) {
+        if (this == that) {
+            return true;
+        } else if (!(that instanceof StubValuePredicate)) {
+            return false;
+        }
+        final StubValuePredicate other = (StubValuePredicate) that;
+
+        return isFallbackToEquals == other.isFallbackToEquals
+                && Objects.equals(stubbedValue, other.stubbedValue)
+                && Objects.equals(templateTokenName, other.templateTokenName);
+    }
+
+    @Override
+    public int hashCode() {
+        return hashCode;
+    }
+}
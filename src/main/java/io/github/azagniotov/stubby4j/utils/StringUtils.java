@@ -21,6 +21,8 @@ import java.io.InputStream;
 import java.nio.charset.Charset;
 import java.nio.charset.CharsetEncoder;
 import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.Arrays;
 import java.util.Base64;
 import java.util.HashSet;
@@ -194,6 +196,18 @@ public final class StringUtils {
         return sb.toString();
     }
 
+    /**
+     * @param value to digest, as UTF-8 bytes
+     * @return base16 encoded SHA-256 digest of the given value
+     */
+    public static String sha256Base16(final String value) {
+        try {
+            return encodeBase16(MessageDigest.getInstance("SHA-256").digest(getBytesUtf8(value)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not supported by this JVM, how so?", e);
+        }
+    }
+
     public static int calculateStringLength(final String post) {
         if (StringUtils.isSet(post)) {
             return StringUtils.getBytesUtf8(post).length;
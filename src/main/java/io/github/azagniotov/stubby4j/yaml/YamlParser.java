@@ -35,6 +35,7 @@ import static io.github.azagniotov.stubby4j.yaml.ConfigurableYAMLProperty.CLIENT
 import static io.github.azagniotov.stubby4j.yaml.ConfigurableYAMLProperty.DESCRIPTION;
 import static io.github.azagniotov.stubby4j.yaml.ConfigurableYAMLProperty.FILE;
 import static io.github.azagniotov.stubby4j.yaml.ConfigurableYAMLProperty.HTTPLIFECYCLE;
+import static io.github.azagniotov.stubby4j.yaml.ConfigurableYAMLProperty.LATENCY;
 import static io.github.azagniotov.stubby4j.yaml.ConfigurableYAMLProperty.MESSAGE_TYPE;
 import static io.github.azagniotov.stubby4j.yaml.ConfigurableYAMLProperty.METHOD;
 import static io.github.azagniotov.stubby4j.yaml.ConfigurableYAMLProperty.ON_MESSAGE;
@@ -56,6 +57,7 @@ import io.github.azagniotov.stubby4j.cli.ANSITerminal;
 import io.github.azagniotov.stubby4j.stubs.AbstractBuilder;
 import io.github.azagniotov.stubby4j.stubs.ReflectableStub;
 import io.github.azagniotov.stubby4j.stubs.StubHttpLifecycle;
+import io.github.azagniotov.stubby4j.stubs.StubLatency;
 import io.github.azagniotov.stubby4j.stubs.StubRequest;
 import io.github.azagniotov.stubby4j.stubs.StubResponse;
 import io.github.azagniotov.stubby4j.stubs.proxy.StubProxyConfig;
@@ -413,7 +415,7 @@ public class YamlParser {
         final StubRequest.Builder requestStubBuilder =
                 buildReflectableStub(requestProperties, new StubRequest.Builder());
         final StubRequest stubRequest = requestStubBuilder.build();
-        stubRequest.compileRegexPatternsAndCache();
+        stubRequest.compileMatchPlan();
         stubBuilder.withRequest(stubRequest);
     }
 
@@ -438,6 +440,13 @@ public class YamlParser {
                 continue;
             }
 
+            if (LATENCY.isA(stageableFieldName) && rawFieldNameValue instanceof Map) {
+                // A latency distribution is staged the same way as when it is stubbed as a string
+                final String latency = StubLatency.toSpec((Map<?, ?>) rawFieldNameValue);
+                stubTypeBuilder.stage(fromString(stageableFieldName), of(latency));
+                continue;
+            }
+
             if (rawFieldNameValue instanceof Map) {
                 final Map<String, String> rawHeaders =
                         asCheckedLinkedHashMap(rawFieldNameValue, String.class, String.class);
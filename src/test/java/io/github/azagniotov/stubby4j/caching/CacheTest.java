@@ -19,6 +19,8 @@ package io.github.azagniotov.stubby4j.caching;
 import static com.google.common.truth.Truth.assertThat;
 
 import io.github.azagniotov.stubby4j.stubs.StubHttpLifecycle;
+import io.github.azagniotov.stubby4j.stubs.StubMatch;
+import java.util.HashMap;
 import java.util.Optional;
 import org.junit.Test;
 
@@ -26,30 +28,44 @@ public class CacheTest {
 
     @Test
     public void shouldBuildNoOpCache() throws Exception {
-        final Cache<String, StubHttpLifecycle> cache = Cache.stubHttpLifecycleCache(true);
+        final Cache<String, StubMatch> cache = Cache.stubMatchCache(true);
 
-        assertThat(cache).isInstanceOf(NoOpStubHttpLifecycleCache.class);
+        assertThat(cache).isInstanceOf(NoOpStubMatchCache.class);
     }
 
     @Test
     public void shouldBuildDefaultCache() throws Exception {
-        final Cache<String, StubHttpLifecycle> cache = Cache.stubHttpLifecycleCache(false);
+        final Cache<String, StubMatch> cache = Cache.stubMatchCache(false);
 
-        assertThat(cache).isInstanceOf(StubHttpLifecycleCache.class);
+        assertThat(cache).isInstanceOf(StubMatchCache.class);
+    }
+
+    @Test
+    public void shouldBuildNoOpMissCache() throws Exception {
+        final Cache<String, Boolean> cache = Cache.stubMissCache(true);
+
+        assertThat(cache).isInstanceOf(NoOpStubMissCache.class);
+    }
+
+    @Test
+    public void shouldBuildDefaultMissCache() throws Exception {
+        final Cache<String, Boolean> cache = Cache.stubMissCache(false);
+
+        assertThat(cache).isInstanceOf(StubMissCache.class);
     }
 
     @Test
     public void shouldClearCacheByKey() throws Exception {
 
-        final Cache<String, StubHttpLifecycle> cache = Cache.stubHttpLifecycleCache(false);
+        final Cache<String, StubMatch> cache = Cache.stubMatchCache(false);
 
-        final StubHttpLifecycle stubHttpLifeCycle = new StubHttpLifecycle.Builder().build();
+        final StubMatch stubMatch = new StubMatch(new StubHttpLifecycle.Builder().build(), new HashMap<>());
         final String targetKey = "/some/url";
 
-        cache.putIfAbsent(targetKey, stubHttpLifeCycle);
+        cache.putIfAbsent(targetKey, stubMatch);
         assertThat(cache.size().get()).isEqualTo(1);
 
-        assertThat(cache.get(targetKey)).isEqualTo(Optional.of(stubHttpLifeCycle));
+        assertThat(cache.get(targetKey)).isEqualTo(Optional.of(stubMatch));
 
         assertThat(cache.clearByKey(targetKey)).isTrue();
         assertThat(cache.size().get()).isEqualTo(0);
@@ -59,18 +75,18 @@ public class CacheTest {
     @Test
     public void shouldNotClearCacheByKey() throws Exception {
 
-        final Cache<String, StubHttpLifecycle> cache = Cache.stubHttpLifecycleCache(false);
+        final Cache<String, StubMatch> cache = Cache.stubMatchCache(false);
 
-        final StubHttpLifecycle stubHttpLifeCycle = new StubHttpLifecycle.Builder().build();
+        final StubMatch stubMatch = new StubMatch(new StubHttpLifecycle.Builder().build(), new HashMap<>());
         final String targetHashCodeKey = "-124354548";
 
-        cache.putIfAbsent(targetHashCodeKey, stubHttpLifeCycle);
+        cache.putIfAbsent(targetHashCodeKey, stubMatch);
         assertThat(cache.size().get()).isEqualTo(1);
 
-        assertThat(cache.get(targetHashCodeKey)).isEqualTo(Optional.of(stubHttpLifeCycle));
+        assertThat(cache.get(targetHashCodeKey)).isEqualTo(Optional.of(stubMatch));
 
         assertThat(cache.clearByKey("99999")).isFalse();
         assertThat(cache.size().get()).isEqualTo(1);
-        assertThat(cache.get(targetHashCodeKey)).isEqualTo(Optional.of(stubHttpLifeCycle));
+        assertThat(cache.get(targetHashCodeKey)).isEqualTo(Optional.of(stubMatch));
     }
 }
@@ -20,20 +20,22 @@ import static com.google.common.truth.Truth.assertThat;
 import static org.junit.Assert.assertThrows;
 
 import io.github.azagniotov.stubby4j.stubs.StubHttpLifecycle;
+import io.github.azagniotov.stubby4j.stubs.StubMatch;
+import java.util.HashMap;
 import java.util.Optional;
 import org.junit.Test;
 
-public class NoOpStubHttpLifecycleCacheTest {
+public class NoOpStubMatchCacheTest {
 
     @Test
     public void putIfAbsentAndGet() {
-        final Cache<String, StubHttpLifecycle> cache = Cache.stubHttpLifecycleCache(true);
+        final Cache<String, StubMatch> cache = Cache.stubMatchCache(true);
         assertThat(cache.size().get()).isEqualTo(0);
 
-        final StubHttpLifecycle stubHttpLifeCycle = new StubHttpLifecycle.Builder().build();
+        final StubMatch stubMatch = new StubMatch(new StubHttpLifecycle.Builder().build(), new HashMap<>());
         final String targetKey = "/some/url";
 
-        cache.putIfAbsent(targetKey, stubHttpLifeCycle);
+        cache.putIfAbsent(targetKey, stubMatch);
 
         assertThat(cache.size().get()).isEqualTo(0);
         assertThat(cache.get(targetKey)).isEqualTo(Optional.empty());
@@ -42,13 +44,13 @@ public class NoOpStubHttpLifecycleCacheTest {
     @Test
     public void clearByKey() {
 
-        final Cache<String, StubHttpLifecycle> cache = Cache.stubHttpLifecycleCache(true);
+        final Cache<String, StubMatch> cache = Cache.stubMatchCache(true);
 
-        final StubHttpLifecycle stubHttpLifeCycle = new StubHttpLifecycle.Builder().build();
+        final StubMatch stubMatch = new StubMatch(new StubHttpLifecycle.Builder().build(), new HashMap<>());
         final String targetKey = "/some/url";
 
         assertThat(cache.clearByKey(targetKey)).isTrue();
-        cache.putIfAbsent(targetKey, stubHttpLifeCycle);
+        cache.putIfAbsent(targetKey, stubMatch);
 
         assertThat(cache.get(targetKey)).isEqualTo(Optional.empty());
         assertThat(cache.clearByKey(targetKey)).isTrue();
@@ -56,7 +58,7 @@ public class NoOpStubHttpLifecycleCacheTest {
 
     @Test
     public void cache() {
-        final Cache<String, StubHttpLifecycle> cache = Cache.stubHttpLifecycleCache(true);
+        final Cache<String, StubMatch> cache = Cache.stubMatchCache(true);
         assertThrows(UnsupportedOperationException.class, cache::cache);
     }
 }
@@ -23,6 +23,7 @@ import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import io.github.azagniotov.stubby4j.cli.ANSITerminal;
+import io.github.azagniotov.stubby4j.stubs.StubLatency;
 import io.github.azagniotov.stubby4j.stubs.StubRepository;
 import io.github.azagniotov.stubby4j.stubs.StubRequest;
 import io.github.azagniotov.stubby4j.stubs.StubResponse;
@@ -31,6 +32,8 @@ import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.PrintWriter;
+import java.util.concurrent.TimeUnit;
+import javax.servlet.AsyncContext;
 import javax.servlet.ReadListener;
 import javax.servlet.ServletInputStream;
 import javax.servlet.ServletOutputStream;
@@ -41,9 +44,11 @@ import org.eclipse.jetty.http.HttpMethod;
 import org.eclipse.jetty.http.HttpStatus;
 import org.eclipse.jetty.http.HttpStatus.Code;
 import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.util.thread.Scheduler;
 import org.junit.BeforeClass;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.junit.MockitoJUnitRunner;
 
@@ -87,6 +92,12 @@ public class StubsPortalHandlerTest {
     @Mock
     private Request mockBaseRequest;
 
+    @Mock
+    private AsyncContext mockAsyncContext;
+
+    @Mock
+    private Scheduler mockLatencyScheduler;
+
     @BeforeClass
     public static void beforeClass() throws Exception {
         ANSITerminal.muteConsole(true);
@@ -96,7 +107,7 @@ public class StubsPortalHandlerTest {
     public void shouldDetermineRequestAsHandledWhenBaseRequestHandled() throws Exception {
         when(mockBaseRequest.isHandled()).thenReturn(true);
 
-        final StubsPortalHandler stubsPortalHandler = new StubsPortalHandler(mockStubRepository);
+        final StubsPortalHandler stubsPortalHandler = new StubsPortalHandler(mockStubRepository, mockLatencyScheduler);
         stubsPortalHandler.handle("/path/1", mockBaseRequest, mockHttpServletRequest, mockHttpServletResponse);
 
         verify(mockBaseRequest, never()).setHandled(eq(true));
@@ -108,7 +119,7 @@ public class StubsPortalHandlerTest {
         when(mockBaseRequest.isHandled()).thenReturn(false);
         when(mockHttpServletResponse.isCommitted()).thenReturn(true);
 
-        final StubsPortalHandler stubsPortalHandler = new StubsPortalHandler(mockStubRepository);
+        final StubsPortalHandler stubsPortalHandler = new StubsPortalHandler(mockStubRepository, mockLatencyScheduler);
         stubsPortalHandler.handle("/path/1", mockBaseRequest, mockHttpServletRequest, mockHttpServletResponse);
 
         verify(mockBaseRequest, never()).setHandled(eq(true));
@@ -271,7 +282,7 @@ public class StubsPortalHandlerTest {
 
         when(mockHttpServletRequest.getMethod()).thenReturn(HttpMethod.GET.asString());
         when(mockHttpServletRequest.getPathInfo()).thenReturn(requestPathInfo);
-        when(mockStubResponse.getLatency()).thenReturn("50");
+        when(mockStubResponse.getLatencyDistribution()).thenReturn(StubLatency.of("50"));
         when(mockStubResponse.getHttpStatusCode()).thenReturn(Code.OK);
         when(mockStubResponse.getResponseBodyAsBytes()).thenReturn(new byte[] {});
         when(mockHttpServletResponse.getOutputStream()).thenReturn(SERVLET_OUTPUT_STREAM);
@@ -282,13 +293,44 @@ public class StubsPortalHandlerTest {
         verify(mockHttpServletResponse).setStatus(HttpStatus.OK_200);
     }
 
+    @Test
+    public void verifyBehaviourDuringHandleGetRequestWithLatency_WhenRequestIsSuspended() throws Exception {
+
+        final String requestPathInfo = "/path/1";
+
+        when(mockHttpServletRequest.getMethod()).thenReturn(HttpMethod.GET.asString());
+        when(mockHttpServletRequest.getPathInfo()).thenReturn(requestPathInfo);
+        when(mockHttpServletRequest.isAsyncSupported()).thenReturn(true);
+        when(mockHttpServletRequest.startAsync()).thenReturn(mockAsyncContext);
+        when(mockStubResponse.getLatencyDistribution()).thenReturn(StubLatency.of("50"));
+        when(mockStubResponse.getHttpStatusCode()).thenReturn(Code.OK);
+        when(mockStubResponse.getResponseBodyAsBytes()).thenReturn(new byte[] {});
+        when(mockHttpServletResponse.getOutputStream()).thenReturn(SERVLET_OUTPUT_STREAM);
+
+        setUpStubSearchMockExpectations(requestPathInfo);
+
+        verify(mockAsyncContext).setTimeout(0);
+        verify(mockHttpServletResponse, never()).setStatus(HttpStatus.OK_200);
+
+        final ArgumentCaptor<Runnable> scheduled = ArgumentCaptor.forClass(Runnable.class);
+        verify(mockLatencyScheduler).schedule(scheduled.capture(), eq(50L), eq(TimeUnit.MILLISECONDS));
+        scheduled.getValue().run();
+
+        final ArgumentCaptor<Runnable> resumption = ArgumentCaptor.forClass(Runnable.class);
+        verify(mockAsyncContext).start(resumption.capture());
+        resumption.getValue().run();
+
+        verify(mockHttpServletResponse).setStatus(HttpStatus.OK_200);
+        verify(mockAsyncContext).complete();
+    }
+
     @Test
     public void verifyBehaviourDuringHandleGetRequestWithInvalidLatency() throws Exception {
         final String method = HttpMethod.GET.asString();
         final String requestPathInfo = "/path/1";
 
         when(mockHttpServletRequest.getMethod()).thenReturn(method);
-        when(mockStubResponse.getLatency()).thenReturn("43rl4knt3l");
+        when(mockStubResponse.getLatencyDistribution()).thenAnswer(invocation -> StubLatency.of("43rl4knt3l"));
         when(mockStubResponse.getHttpStatusCode()).thenReturn(Code.OK);
 
         setUpStubSearchMockExpectations(requestPathInfo);
@@ -306,7 +348,7 @@ public class StubsPortalHandlerTest {
         when(mockStubSearchResult.getInvariant()).thenReturn(assertionStubRequest);
         when(mockStubSearchResult.getMatch()).thenReturn(mockStubResponse);
 
-        final StubsPortalHandler stubsPortalHandler = new StubsPortalHandler(mockStubRepository);
+        final StubsPortalHandler stubsPortalHandler = new StubsPortalHandler(mockStubRepository, mockLatencyScheduler);
         stubsPortalHandler.handle(requestPathInfo, mockBaseRequest, mockHttpServletRequest, mockHttpServletResponse);
     }
 
@@ -18,13 +18,21 @@ package io.github.azagniotov.stubby4j.handlers.strategy;
 
 import static com.google.common.truth.Truth.assertThat;
 import static io.github.azagniotov.stubby4j.utils.StringUtils.getBytesUtf8;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import io.github.azagniotov.stubby4j.handlers.strategy.stubs.DefaultResponseHandlingStrategy;
+import io.github.azagniotov.stubby4j.handlers.strategy.stubs.StubResponseHandlingStrategy;
+import io.github.azagniotov.stubby4j.handlers.strategy.stubs.StubsResponseHandlingStrategyFactory;
+import io.github.azagniotov.stubby4j.stubs.StubLatency;
 import io.github.azagniotov.stubby4j.stubs.StubRequest;
 import io.github.azagniotov.stubby4j.stubs.StubResponse;
+import io.github.azagniotov.stubby4j.stubs.StubTemplate;
 import io.github.azagniotov.stubby4j.utils.HandlerUtils;
+import io.github.azagniotov.stubby4j.utils.StringUtils;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.util.HashMap;
 import java.util.TreeMap;
@@ -92,9 +100,10 @@ public class DefaultResponseHandlingStrategyTest {
     public void shouldVerifyBehaviourWhenHandlingDefaultResponseWithLatency() throws Exception {
         when(mockStubResponse.getHttpStatusCode()).thenReturn(Code.OK);
         when(mockStubResponse.getResponseBodyAsBytes()).thenReturn(EMPTY_BYTES);
-        when(mockStubResponse.getLatency()).thenReturn("100");
+        when(mockStubResponse.getLatencyDistribution()).thenReturn(StubLatency.of("100"));
         when(mockHttpServletResponse.getOutputStream()).thenReturn(SERVLET_OUTPUT_STREAM);
 
+        assertThat(defaultResponseHandlingStrategy.getLatencyMillis()).isEqualTo(100L);
         defaultResponseHandlingStrategy.handle(mockHttpServletResponse, mockAssertionRequest);
 
         verify(mockHttpServletResponse).setStatus(HttpStatus.OK_200);
@@ -102,17 +111,19 @@ public class DefaultResponseHandlingStrategyTest {
     }
 
     @Test
-    public void shouldCheckLatencyDelayWhenHandlingDefaultResponseWithLatency() throws Exception {
+    public void shouldNotWaitOutLatencyWhenHandlingDefaultResponseWithLatency() throws Exception {
         when(mockStubResponse.getHttpStatusCode()).thenReturn(Code.OK);
         when(mockStubResponse.getResponseBodyAsBytes()).thenReturn(getBytesUtf8(SOME_RESULTS_MESSAGE));
-        when(mockStubResponse.getLatency()).thenReturn("100");
+        when(mockStubResponse.getLatencyDistribution()).thenReturn(StubLatency.of("10000"));
         when(mockHttpServletResponse.getOutputStream()).thenReturn(SERVLET_OUTPUT_STREAM);
 
+        // The latency is waited out by the stubs portal handler, before the response is handled
+        final long latencyMillis = defaultResponseHandlingStrategy.getLatencyMillis();
         long before = System.currentTimeMillis();
         defaultResponseHandlingStrategy.handle(mockHttpServletResponse, mockAssertionRequest);
         long after = System.currentTimeMillis();
 
-        assertThat(after - before).isAtLeast(100L);
+        assertThat(after - before).isLessThan(latencyMillis);
 
         verifyMainHeaders(mockHttpServletResponse);
     }
@@ -135,6 +146,8 @@ public class DefaultResponseHandlingStrategyTest {
                 put("Location", headerValuePrefix + "<%post.1%>");
             }
         });
+        when(mockStubResponse.getCompiledHeaderTemplate("Location"))
+                .thenReturn(StubTemplate.compile(headerValuePrefix + "<%post.1%>"));
         when(mockStubResponse.getResponseBodyAsBytes()).thenReturn(getBytesUtf8(SOME_RESULTS_MESSAGE));
 
         defaultResponseHandlingStrategy.handle(mockHttpServletResponse, mockAssertionRequest);
@@ -143,6 +156,44 @@ public class DefaultResponseHandlingStrategyTest {
         verifyMainHeaders(mockHttpServletResponse);
     }
 
+    @Test
+    public void shouldWritePrecomputedResponseWhenHandlingResponseWithoutTemplateTokens() throws Exception {
+        final StubResponse stubResponse = new StubResponse.Builder()
+                .withHttpStatusCode(Code.CREATED)
+                .withBody(SOME_RESULTS_MESSAGE)
+                .withHeaders(new HashMap<String, String>() {
+                    {
+                        put("X-Custom-Header", "custom-value");
+                    }
+                })
+                .build();
+        final ByteArrayOutputStream written = new ByteArrayOutputStream();
+        when(mockHttpServletResponse.getOutputStream()).thenReturn(new ServletOutputStream() {
+
+            @Override
+            public void write(final int i) throws IOException {
+                written.write(i);
+            }
+
+            @Override
+            public boolean isReady() {
+                return true;
+            }
+
+            @Override
+            public void setWriteListener(final WriteListener writeListener) {}
+        });
+
+        final StubResponseHandlingStrategy strategy = StubsResponseHandlingStrategyFactory.getStrategy(stubResponse);
+        strategy.handle(mockHttpServletResponse, mockAssertionRequest);
+        strategy.handle(mockHttpServletResponse, mockAssertionRequest);
+
+        verify(mockHttpServletResponse, times(2)).setStatus(HttpStatus.CREATED_201);
+        verify(mockHttpServletResponse, times(2)).setHeader("X-Custom-Header", "custom-value");
+        assertThat(written.toString(StringUtils.UTF_8)).isEqualTo(SOME_RESULTS_MESSAGE + SOME_RESULTS_MESSAGE);
+        verify(mockAssertionRequest, never()).getRegexGroups();
+    }
+
     private void verifyMainHeaders(final HttpServletResponse mockHttpServletResponse) throws Exception {
         verify(mockHttpServletResponse)
                 .setHeader(HttpHeader.SERVER.asString(), HandlerUtils.constructHeaderServerName());
@@ -16,12 +16,15 @@
 
 package io.github.azagniotov.stubby4j.handlers.strategy;
 
+import static com.google.common.truth.Truth.assertThat;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import io.github.azagniotov.stubby4j.handlers.strategy.stubs.RedirectResponseHandlingStrategy;
+import io.github.azagniotov.stubby4j.stubs.StubLatency;
 import io.github.azagniotov.stubby4j.stubs.StubRequest;
 import io.github.azagniotov.stubby4j.stubs.StubResponse;
+import io.github.azagniotov.stubby4j.stubs.StubTemplate;
 import io.github.azagniotov.stubby4j.utils.HandlerUtils;
 import java.io.PrintWriter;
 import java.util.HashMap;
@@ -97,8 +100,9 @@ public class RedirectResponseHandlingStrategyTest {
     @Test
     public void shouldVerifyBehaviourWhenHandlingRedirectResponseWithLatency() throws Exception {
         when(mockStubResponse.getHttpStatusCode()).thenReturn(Code.MOVED_PERMANENTLY);
-        when(mockStubResponse.getLatency()).thenReturn("100");
+        when(mockStubResponse.getLatencyDistribution()).thenReturn(StubLatency.of("100"));
 
+        assertThat(redirectResponseHandlingStrategy.getLatencyMillis()).isEqualTo(100L);
         redirectResponseHandlingStrategy.handle(mockHttpServletResponse, mockAssertionRequest);
 
         verify(mockHttpServletResponse).setStatus(HttpStatus.MOVED_PERMANENTLY_301);
@@ -126,6 +130,8 @@ public class RedirectResponseHandlingStrategyTest {
                 put("location", tokenizedLocationHeaderValue);
             }
         });
+        when(mockStubResponse.getCompiledHeaderTemplate("location"))
+                .thenReturn(StubTemplate.compile(tokenizedLocationHeaderValue));
 
         redirectResponseHandlingStrategy.handle(mockHttpServletResponse, mockAssertionRequest);
 
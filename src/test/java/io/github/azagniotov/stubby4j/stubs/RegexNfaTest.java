@@ -0,0 +1,208 @@
+/*
+ * Copyright (c) 2012-2024 Alexander Zagniotov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.github.azagniotov.stubby4j.stubs;
+
+import static com.google.common.truth.Truth.assertThat;
+import static com.google.common.truth.Truth.assertWithMessage;
+
+import java.util.BitSet;
+import java.util.regex.Pattern;
+import org.junit.Test;
+
+public class RegexNfaTest {
+
+    @Test
+    public void shouldMatchSameAsPattern_WhenCharClassIsNegatedOrHasEscapedRanges() throws Exception {
+        assertSameAsPattern("[^a-c]+", "xyz", "abc", "xay", "", "\n", "\u00e9");
+        assertSameAsPattern("[\\-\\.a-c]+", "a-.", "-", "b.c", "d", "/");
+        assertSameAsPattern("[\\.-\\/]", ".", "/", "-", "0");
+        assertSameAsPattern("[^\\d\\s]+", "abc", "a1", "a b", "_", "\t");
+        assertSameAsPattern("[\\^\\]]", "^", "]", "\\", "a");
+        assertSameAsPattern("[a-]", "a", "-", "b");
+        assertSameAsPattern("[-a]", "a", "-", "b");
+        assertSameAsPattern("[^\\-]", "-", "a", "\n");
+        assertSameAsPattern("[\\W\\d]+", "1-2", "a", "_", " ");
+    }
+
+    @Test
+    public void shouldMatchSameAsPattern_WhenPredefinedCharClassesAreUsed() throws Exception {
+        final String[] subjects = {
+            " \t\n\u000b\f\r", "abc_09", "ABZ", "\u00e9", "-+", "\u0661", "\u00a0", "\u001b", ""
+        };
+        assertSameAsPattern("\\s+", subjects);
+        assertSameAsPattern("\\S+", subjects);
+        assertSameAsPattern("\\w+", subjects);
+        assertSameAsPattern("\\W+", subjects);
+        assertSameAsPattern("\\d+", subjects);
+        assertSameAsPattern("\\D+", subjects);
+        assertSameAsPattern("[\\s\\d]+", subjects);
+        assertSameAsPattern("[^\\w]+", subjects);
+        assertSameAsPattern("\\t\\n\\r\\f\\e\\a", "\t\n\r\f\u001b\u0007", "\t\n\r\f");
+    }
+
+    @Test
+    public void shouldMatchSameAsPattern_WhenQuantifiersAreCountedOrLazy() throws Exception {
+        final String[] subjects = {"", "a", "aa", "aaa", "aaaa", "aaaaa", "aab", "ab"};
+        assertSameAsPattern("a{3}", subjects);
+        assertSameAsPattern("a{2,4}", subjects);
+        assertSameAsPattern("a{2,}", subjects);
+        assertSameAsPattern("a{0}", subjects);
+        assertSameAsPattern("a{2,4}?", subjects);
+        assertSameAsPattern("a+?b", subjects);
+        assertSameAsPattern("a*?", subjects);
+        assertSameAsPattern("a??b", subjects);
+        assertSameAsPattern("(?:ab){1,2}c", "abc", "ababc", "abababc", "c", "abab");
+        assertSameAsPattern("(?:a|bc){2}d?", "aa", "abc", "bcbcd", "abcd", "a", "bcbcbc");
+    }
+
+    @Test
+    public void shouldNeverRejectWhatPatternMatches_WhenQuantifiersArePossessive() throws Exception {
+        final String[] subjects = {"", "a", "aa", "aaa", "aab", "b", "ab"};
+        assertNeverRejectsPatternMatch("a*+b", subjects);
+        assertNeverRejectsPatternMatch("a++a", subjects);
+        assertNeverRejectsPatternMatch("a{1,2}+a", subjects);
+
+        // A possessive quantifier is treated as a greedy one, so the automaton accepts what the pattern gives up on
+        assertThat(Pattern.matches("a*+a", "aa")).isFalse();
+        assertThat(nfaMatches("a*+a", "aa")).isTrue();
+    }
+
+    @Test
+    public void shouldNeverRejectWhatPatternMatches_WhenAnchorsAreInTheMiddleOfPattern() throws Exception {
+        final String[] subjects = {"ab", "a\nb", "b", "ac", "bc", "a", ""};
+        assertNeverRejectsPatternMatch("a^b", subjects);
+        assertNeverRejectsPatternMatch("a$b", subjects);
+        assertNeverRejectsPatternMatch("a$\\nb", subjects);
+        assertNeverRejectsPatternMatch("(?:^a|b)c", subjects);
+        assertNeverRejectsPatternMatch("a\\Gb", subjects);
+        assertSameAsPattern("^ab$", subjects);
+        assertSameAsPattern("\\Aab\\z", subjects);
+
+        // Anchors are treated as if they always match
+        assertThat(Pattern.matches("a^b", "ab")).isFalse();
+        assertThat(nfaMatches("a^b", "ab")).isTrue();
+    }
+
+    @Test
+    public void shouldNeverRejectWhatPatternMatches_WhenPatternHasWordBoundaries() throws Exception {
+        final String[] subjects = {"foo", "foo bar", "foobar", " foo", "bar foo"};
+        assertNeverRejectsPatternMatch("\\bfoo\\b", subjects);
+        assertNeverRejectsPatternMatch("foo\\b.*", subjects);
+        assertNeverRejectsPatternMatch(".*\\Bfoo", subjects);
+
+        assertThat(Pattern.matches("foo\\b.*", "foobar")).isFalse();
+        assertThat(nfaMatches("foo\\b.*", "foobar")).isTrue();
+    }
+
+    @Test
+    public void shouldMatchSubjectsWithLineTerminators() throws Exception {
+        final String[] subjects = {"a\nb", "a\r\nb", "a\u0085b", "a\u2028b", "ab", "a\n"};
+        assertSameAsPattern("a[^x]+", subjects);
+        assertSameAsPattern("a\\s+b", subjects);
+        assertSameAsPattern("a\\r?\\nb?", subjects);
+        assertSameAsPattern("a$", subjects);
+        assertNeverRejectsPatternMatch("a.+", subjects);
+        assertNeverRejectsPatternMatch("a.b", subjects);
+        assertNeverRejectsPatternMatch("a(?:.|\\n|\\r)+", subjects);
+
+        // The '.' character matches line terminators too
+        assertThat(Pattern.matches("a.b", "a\nb")).isFalse();
+        assertThat(nfaMatches("a.b", "a\nb")).isTrue();
+    }
+
+    @Test
+    public void shouldNotParsePattern_WhenItHasUnsupportedConstructs() throws Exception {
+        assertThat(RegexNfa.parse("(a)\\1")).isNull();
+        assertThat(RegexNfa.parse("(?i)abc")).isNull();
+        assertThat(RegexNfa.parse("\\Qa.b\\E")).isNull();
+        assertThat(RegexNfa.parse("\\p{Alpha}+")).isNull();
+        assertThat(RegexNfa.parse("[a-z&&[^b]]")).isNull();
+        assertThat(RegexNfa.parse("[a-c[x-z]]")).isNull();
+        assertThat(RegexNfa.parse("(?=a)a")).isNull();
+        assertThat(RegexNfa.parse("(?<name>a)")).isNull();
+        assertThat(RegexNfa.parse("\\x41")).isNull();
+        assertThat(RegexNfa.parse("[a-\\d]")).isNull();
+    }
+
+    @Test
+    public void shouldNotParsePattern_WhenItHasMoreStatesThanAllowed() throws Exception {
+        assertThat(RegexNfa.parse("a{1000}")).isNotNull();
+        assertThat(nfaMatches("a{1000}", repeat('a', 1000))).isTrue();
+        assertThat(nfaMatches("a{1000}", repeat('a', 999))).isFalse();
+
+        assertThat(RegexNfa.parse("a{1001}")).isNull();
+        assertThat(RegexNfa.parse("[a-z]{1,5000}")).isNull();
+        assertThat(RegexNfa.parse("(?:ab){700}")).isNull();
+        assertThat(RegexNfa.parse("a{10000}")).isNull();
+    }
+
+    @Test
+    public void shouldTellWhichPatternsMatch_WhenAutomatonHasSeveralPatterns() throws Exception {
+        final RegexNfa nfa = new RegexNfa.Builder()
+                .add(RegexNfa.parse("^/invoice/\\d+$"), 2)
+                .add(RegexNfa.parse("^/invoice/.*$"), 0)
+                .add(RegexNfa.literal("/invoice/abc"), 5)
+                .build();
+
+        assertThat(acceptedOrdinals(nfa, "/invoice/123")).asList().containsExactly(0, 2).inOrder();
+        assertThat(acceptedOrdinals(nfa, "/invoice/abc")).asList().containsExactly(0, 5).inOrder();
+        assertThat(acceptedOrdinals(nfa, "/receipt/123")).isEmpty();
+        assertThat(acceptedOrdinals(new RegexNfa.Builder().build(), "")).isEmpty();
+    }
+
+    private static void assertSameAsPattern(final String regex, final String... subjects) {
+        for (final String subject : subjects) {
+            assertWithMessage("'%s' matching '%s'", regex, subject)
+                    .that(nfaMatches(regex, subject))
+                    .isEqualTo(Pattern.matches(regex, subject));
+        }
+    }
+
+    private static void assertNeverRejectsPatternMatch(final String regex, final String... subjects) {
+        for (final String subject : subjects) {
+            if (Pattern.matches(regex, subject)) {
+                assertWithMessage("'%s' matching '%s'", regex, subject)
+                        .that(nfaMatches(regex, subject))
+                        .isTrue();
+            }
+        }
+    }
+
+    private static boolean nfaMatches(final String regex, final String subject) {
+        final RegexNfa.Node node = RegexNfa.parse(regex);
+        assertWithMessage("'%s' is expected to be supported", regex).that(node).isNotNull();
+
+        return acceptedOrdinals(new RegexNfa.Builder().add(node, 0).build(), subject).length > 0;
+    }
+
+    private static int[] acceptedOrdinals(final RegexNfa nfa, final String subject) {
+        BitSet states = nfa.startStates();
+        for (int idx = 0; idx < subject.length(); idx++) {
+            states = nfa.step(states, subject.charAt(idx));
+        }
+        return nfa.acceptedOrdinals(states);
+    }
+
+    private static String repeat(final char character, final int times) {
+        final StringBuilder builder = new StringBuilder(times);
+        for (int idx = 0; idx < times; idx++) {
+            builder.append(character);
+        }
+        return builder.toString();
+    }
+}
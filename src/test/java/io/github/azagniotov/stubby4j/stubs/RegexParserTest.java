@@ -19,7 +19,9 @@ package io.github.azagniotov.stubby4j.stubs;
 import static com.google.common.truth.Truth.assertThat;
 import static io.github.azagniotov.stubby4j.stubs.RegexParser.REGEX_CHARS;
 import static io.github.azagniotov.stubby4j.utils.FileUtils.BR;
+import static org.junit.Assert.assertThrows;
 
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 import org.junit.Test;
@@ -121,4 +123,81 @@ public class RegexParserTest {
                                 + "such as life-extension company Calico, innovative technology developer Google X, high-speed Internet"
                                 + BR + "provider Fiber and Google's smart home project Nest.");
     }
+
+    @Test
+    public void shouldCompileSinglePattern_WhenDotAllCannotChangeMatchOutcome() throws Exception {
+        assertThat(RegexParser.INSTANCE.compile("^/invoice/\\d+$")).hasLength(1);
+        assertThat(RegexParser.INSTANCE.compile("{\"key\": \"(.*)\"}")).hasLength(1);
+        assertThat(RegexParser.INSTANCE.compile("^/invoice/.*$")).hasLength(2);
+    }
+
+    @Test
+    public void shouldCaptureSameRegexGroups_WhenSubjectHasNoLineTerminators() throws Exception {
+        final Map<String, String> regexGroups = new HashMap<>();
+        final boolean match = RegexParser.INSTANCE.match(
+                RegexParser.INSTANCE.compile("(.*)\\s(.*)"), "a b c", "token", StubTemplateTokens.ALL, regexGroups);
+
+        assertThat(match).isTrue();
+        assertThat(regexGroups).containsExactly("token.0", "a b c", "token.1", "a b", "token.2", "c");
+    }
+
+    @Test
+    public void shouldPreferMultilineRegexGroups_WhenSubjectHasLineTerminators() throws Exception {
+        final Map<String, String> regexGroups = new HashMap<>();
+        final boolean match = RegexParser.INSTANCE.match(
+                RegexParser.INSTANCE.compile("(.*)\\s(.*)"),
+                "a\nb c",
+                "token",
+                StubTemplateTokens.ALL,
+                regexGroups);
+
+        // With DOTALL the first group would have been greedy across the line break, i.e.: "a\nb"
+        assertThat(match).isTrue();
+        assertThat(regexGroups).containsExactly("token.0", "a\nb c", "token.1", "a", "token.2", "b c");
+    }
+
+    @Test
+    public void shouldAbortMatch_WhenCatastrophicBacktrackingExceedsMatchingBudget() throws Exception {
+        final String subject = String.join("", Collections.nCopies(40, "a")) + "!";
+
+        final RegexMatchAbortedException exception = assertThrows(
+                RegexMatchAbortedException.class,
+                () -> RegexParser.INSTANCE.match(
+                        RegexParser.INSTANCE.compile("^(.*a){20}$"),
+                        subject,
+                        "token",
+                        StubTemplateTokens.ALL,
+                        new HashMap<>()));
+
+        assertThat(exception.getMessage()).contains("exceeded the matching budget on a 41 characters long subject");
+    }
+
+    @Test
+    public void shouldMatchWithinMatchingBudget_WhenSubjectIsLarge() throws Exception {
+        final String subject = String.join("", Collections.nCopies(100_000, "a"));
+
+        final boolean match = RegexParser.INSTANCE.match(
+                RegexParser.INSTANCE.compile("^a+$"), subject, "token", StubTemplateTokens.ALL, new HashMap<>());
+
+        assertThat(match).isTrue();
+    }
+
+    @Test
+    public void shouldMatchWithinMatchingBudget_WhenGreedyPatternBacktracksThroughMultiMegabyteSubject()
+            throws Exception {
+        final String padding = String.join("", Collections.nCopies(5 * 1024 * 1024, "x"));
+        final String subject = "{\"id\":\"12345\",\"payload\":\"" + padding + "\"}";
+        final Map<String, String> regexGroups = new HashMap<>();
+
+        // The greedy '.*' backtracks through the whole subject, which takes more than MAX_MATCH_STEPS reads
+        final boolean match = RegexParser.INSTANCE.match(
+                RegexParser.INSTANCE.compile(".*\"id\":\"(\\d+)\".*"),
+                subject,
+                "token",
+                StubTemplateTokens.ALL,
+                regexGroups);
+
+        assertThat(match).isTrue();
+        assertThat(regexGroups).containsEntry("token.1", "12345");
+    }
 }
@@ -0,0 +1,88 @@
+/*
+ * Copyright (c) 2012-2024 Alexander Zagniotov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.azagniotov.stubby4j.stubs;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.assertThrows;
+
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+import org.junit.Test;
+
+public class RegexPatternRegistryTest {
+
+    @Test
+    public void shouldNotMistakePatternsWithSameHashCode() throws Exception {
+        final RegexPatternRegistry registry = new RegexPatternRegistry(10);
+
+        // "Aa" and "BB" have the same String.hashCode()
+        assertThat("Aa".hashCode()).isEqualTo("BB".hashCode());
+
+        final Pattern first = registry.compile("Aa", Pattern.MULTILINE);
+        final Pattern second = registry.compile("BB", Pattern.MULTILINE);
+
+        assertThat(first.pattern()).isEqualTo("Aa");
+        assertThat(second.pattern()).isEqualTo("BB");
+        assertThat(registry.size()).isEqualTo(2);
+    }
+
+    @Test
+    public void shouldTellApartSamePatternWithDifferentFlags() throws Exception {
+        final RegexPatternRegistry registry = new RegexPatternRegistry(10);
+
+        final Pattern multiline = registry.compile("^/invoice/.*$", Pattern.MULTILINE);
+        final Pattern dotAll = registry.compile("^/invoice/.*$", Pattern.MULTILINE | Pattern.DOTALL);
+
+        assertThat(multiline.flags()).isEqualTo(Pattern.MULTILINE);
+        assertThat(dotAll.flags()).isEqualTo(Pattern.MULTILINE | Pattern.DOTALL);
+    }
+
+    @Test
+    public void shouldCountHitsAndMisses() throws Exception {
+        final RegexPatternRegistry registry = new RegexPatternRegistry(10);
+
+        final Pattern compiled = registry.compile("^/invoice/(\\d+)$", Pattern.MULTILINE);
+        final Pattern registered = registry.compile("^/invoice/(\\d+)$", Pattern.MULTILINE);
+
+        assertThat(registered).isSameInstanceAs(compiled);
+        assertThat(registry.getHits()).isEqualTo(1);
+        assertThat(registry.getMisses()).isEqualTo(1);
+        assertThat(registry.getCompileNanos()).isGreaterThan(0L);
+    }
+
+    @Test
+    public void shouldEvictEldestPatterns_WhenMaxSizeExceeded() throws Exception {
+        final RegexPatternRegistry registry = new RegexPatternRegistry(2);
+
+        final Pattern eldest = registry.compile("^/one$", Pattern.MULTILINE);
+        registry.compile("^/two$", Pattern.MULTILINE);
+        registry.compile("^/three$", Pattern.MULTILINE);
+
+        assertThat(registry.size()).isEqualTo(2);
+        assertThat(registry.getEvictions()).isEqualTo(1);
+        assertThat(registry.compile("^/one$", Pattern.MULTILINE)).isNotSameInstanceAs(eldest);
+    }
+
+    @Test
+    public void shouldNotRegisterInvalidPatterns() throws Exception {
+        final RegexPatternRegistry registry = new RegexPatternRegistry(10);
+
+        assertThrows(PatternSyntaxException.class, () -> registry.compile("{\"key\": \"(.*)\"}", Pattern.MULTILINE));
+        assertThat(registry.size()).isEqualTo(0);
+        assertThat(registry.getMisses()).isEqualTo(1);
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright (c) 2012-2024 Alexander Zagniotov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.azagniotov.stubby4j.stubs;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.util.HashMap;
+import java.util.regex.Pattern;
+import org.junit.Test;
+
+public class RegexRequiredLiteralsTest {
+
+    @Test
+    public void shouldExtractLiteralFragmentsOutsideOfGroups_LongestFirst() throws Exception {
+        assertThat(requiredLiteralsOf("^/api/v2/orders/(\\d+)/items$"))
+                .asList()
+                .containsExactly("/api/v2/orders/", "/items")
+                .inOrder();
+        assertThat(requiredLiteralsOf("^/invoice/[a-z]+\\.json$"))
+                .asList()
+                .containsExactly("/invoice/", ".json")
+                .inOrder();
+    }
+
+    @Test
+    public void shouldLeaveOutOptionalCharacters() throws Exception {
+        assertThat(requiredLiteralsOf("^/colou?r/a{2}b$")).asList().containsExactly("/colo", "r/", "b");
+        assertThat(requiredLiteralsOf("^/items+/all$")).asList().containsExactly("/items", "/all");
+        assertThat(requiredLiteralsOf("^/x(ab)*yz$")).asList().containsExactly("/x", "yz");
+    }
+
+    @Test
+    public void shouldNotExtractAnything_WhenPatternHasConstructsThatCanBypassLiterals() throws Exception {
+        assertThat(requiredLiteralsOf("^/invoice|/receipt$")).isEmpty();
+        assertThat(requiredLiteralsOf("(?i)^/invoice$")).isEmpty();
+        assertThat(requiredLiteralsOf("^/invoice/\\x41$")).isEmpty();
+        assertThat(requiredLiteralsOf("^/invoice/(\\d+)/\\1$")).isEmpty();
+        assertThat(requiredLiteralsOf(".*")).isEmpty();
+    }
+
+    @Test
+    public void shouldRequireWholeValue_WhenValueIsNotValidRegex() throws Exception {
+        final String invalidRegex = "{\"name\": \"[stubby4j\"}";
+
+        assertThat(requiredLiteralsOf(invalidRegex)).asList().containsExactly(invalidRegex);
+    }
+
+    @Test
+    public void shouldRejectIncomingValueWithoutRequiredLiterals_AndStillFallBackToEquals() throws Exception {
+        final StubValuePredicate predicate = StubValuePredicate.of("^/api/v2/orders/(\\d+)/items$", "url");
+
+        assertThat(predicate.test("/api/v2/orders/123/items", new HashMap<>())).isTrue();
+        assertThat(predicate.test("/api/v2/orders/123/item", new HashMap<>())).isFalse();
+
+        // The escaped dot is required as a plain dot, which the stubbed value itself does not contain
+        final StubValuePredicate escapedPredicate = StubValuePredicate.of("^/invoice\\.json$", "url");
+        assertThat(escapedPredicate.test("/invoice.json", new HashMap<>())).isTrue();
+        assertThat(escapedPredicate.test("^/invoice\\.json$", new HashMap<>())).isTrue();
+    }
+
+    private static String[] requiredLiteralsOf(final String regex) {
+        final Pattern[] compiledPatterns = RegexParser.INSTANCE.compile(regex);
+        return RegexRequiredLiterals.of(compiledPatterns[0]);
+    }
+}
@@ -0,0 +1,336 @@
+/*
+ * Copyright (c) 2012-2024 Alexander Zagniotov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.azagniotov.stubby4j.stubs;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import org.junit.Test;
+
+public class StubIndexTest {
+
+    @Test
+    public void shouldReturnLiteralAndRegexUrlCandidatesInDefinitionOrder() throws Exception {
+        final StubHttpLifecycle regexUrl = buildStub("regexUrl", "^/resource/item/\\d+$");
+        final StubHttpLifecycle literalUrl = buildStub("literalUrl", "/resource/item/1");
+        final StubHttpLifecycle otherLiteralUrl = buildStub("otherLiteralUrl", "/resource/item/2");
+        final StubHttpLifecycle noUrl = buildStub("noUrl", null);
+
+        final StubIndex stubIndex = StubIndex.build(Arrays.asList(regexUrl, literalUrl, otherLiteralUrl, noUrl));
+
+        assertThat(descriptionsOf(stubIndex.candidates(buildRequest("/resource/item/1"))))
+                .containsExactly("regexUrl", "literalUrl", "noUrl")
+                .inOrder();
+        assertThat(descriptionsOf(stubIndex.candidates(buildRequest("/resource/item/2"))))
+                .containsExactly("regexUrl", "otherLiteralUrl", "noUrl")
+                .inOrder();
+        assertThat(descriptionsOf(stubIndex.candidates(buildRequest("/resource/item"))))
+                .containsExactly("noUrl");
+    }
+
+    @Test
+    public void shouldNarrowDownRegexUrlCandidatesInSinglePass() throws Exception {
+        final StubHttpLifecycle itemsUrl = buildStub("itemsUrl", "^/orders/(\\d+)/items$");
+        final StubHttpLifecycle anyOrderUrl = buildStub("anyOrderUrl", "^/orders/[^/]+(/.*)?$");
+        final StubHttpLifecycle invoiceUrl = buildStub("invoiceUrl", "^/invoice/\\w{3}-\\d{1,4}$");
+        final StubHttpLifecycle backReferenceUrl = buildStub("backReferenceUrl", "^/(\\w+)/\\1$");
+
+        final StubIndex stubIndex =
+                StubIndex.build(Arrays.asList(itemsUrl, anyOrderUrl, invoiceUrl, backReferenceUrl));
+
+        // The URL with a back reference is not supported by the automaton, so it stays a candidate for any URL
+        assertThat(descriptionsOf(stubIndex.candidates(buildRequest("/orders/123/items"))))
+                .containsExactly("itemsUrl", "anyOrderUrl", "backReferenceUrl")
+                .inOrder();
+        assertThat(descriptionsOf(stubIndex.candidates(buildRequest("/orders/abc"))))
+                .containsExactly("anyOrderUrl", "backReferenceUrl")
+                .inOrder();
+        assertThat(descriptionsOf(stubIndex.candidates(buildRequest("/invoice/abc-1234"))))
+                .containsExactly("invoiceUrl", "backReferenceUrl")
+                .inOrder();
+        assertThat(descriptionsOf(stubIndex.candidates(buildRequest("/invoice/abc-12345"))))
+                .containsExactly("backReferenceUrl");
+
+        // An incoming URL that equals to the stubbed regex URL matches it too
+        assertThat(descriptionsOf(stubIndex.candidates(buildRequest("^/orders/(\\d+)/items$"))))
+                .containsExactly("itemsUrl", "backReferenceUrl")
+                .inOrder();
+    }
+
+    @Test
+    public void shouldNarrowDownRegexUrlCandidates_WhenStubsReplacedOrRemoved() throws Exception {
+        final StubHttpLifecycle first = buildStub("first", "^/resource/item/\\d+$");
+        final StubHttpLifecycle second = buildStub("second", "^/resource/.*$");
+
+        final StubIndex stubIndex = StubIndex.build(Arrays.asList(first, second));
+
+        final StubHttpLifecycle replacement = buildStub("replacement", "^/resource/item/[a-z]+$");
+        final StubIndex updatedStubIndex = stubIndex.replace(first, replacement);
+
+        assertThat(descriptionsOf(updatedStubIndex.candidates(buildRequest("/resource/item/1"))))
+                .containsExactly("second");
+        assertThat(descriptionsOf(updatedStubIndex.candidates(buildRequest("/resource/item/abc"))))
+                .containsExactly("replacement", "second")
+                .inOrder();
+
+        assertThat(descriptionsOf(updatedStubIndex.remove(second).candidates(buildRequest("/resource/item/1"))))
+                .isEmpty();
+    }
+
+    @Test
+    public void shouldNotTreatUrlWithSingleRegexCharacterAsLiteral() throws Exception {
+        final StubHttpLifecycle singleDotUrl = buildStub("singleDotUrl", "/resource/item.json");
+
+        final StubHttpLifecycle literalUrl = buildStub("literalUrl", "/resource/item");
+
+        final StubIndex stubIndex = StubIndex.build(Arrays.asList(literalUrl, singleDotUrl));
+
+        assertThat(descriptionsOf(stubIndex.candidates(buildRequest("/resource/itemXjson"))))
+                .containsExactly("singleDotUrl");
+    }
+
+    @Test
+    public void shouldDistinguishUrlsWithTrailingSlash() throws Exception {
+        final StubHttpLifecycle withTrailingSlash = buildStub("withTrailingSlash", "/resource/item/");
+        final StubHttpLifecycle withoutTrailingSlash = buildStub("withoutTrailingSlash", "/resource/item");
+
+        final StubIndex stubIndex = StubIndex.build(Arrays.asList(withTrailingSlash, withoutTrailingSlash));
+
+        assertThat(descriptionsOf(stubIndex.candidates(buildRequest("/resource/item/"))))
+                .containsExactly("withTrailingSlash");
+        assertThat(descriptionsOf(stubIndex.candidates(buildRequest("/resource/item"))))
+                .containsExactly("withoutTrailingSlash");
+    }
+
+    @Test
+    public void shouldKeepDefinitionOrderWhenStubReplaced() throws Exception {
+        final StubHttpLifecycle first = buildStub("first", "/resource/item/1");
+        final StubHttpLifecycle second = buildStub("second", "^/resource/.*$");
+        final StubHttpLifecycle third = buildStub("third", "/resource/item/2");
+
+        final StubIndex stubIndex = StubIndex.build(Arrays.asList(first, second, third));
+
+        final StubHttpLifecycle replacement = buildStub("replacement", "/resource/item/2");
+        final StubIndex updatedStubIndex = stubIndex.replace(first, replacement);
+
+        assertThat(descriptionsOf(updatedStubIndex.candidates(buildRequest("/resource/item/1"))))
+                .containsExactly("second");
+        assertThat(descriptionsOf(updatedStubIndex.candidates(buildRequest("/resource/item/2"))))
+                .containsExactly("replacement", "second", "third")
+                .inOrder();
+
+        // The index that was published before the update stays intact
+        assertThat(descriptionsOf(stubIndex.candidates(buildRequest("/resource/item/1"))))
+                .containsExactly("first", "second")
+                .inOrder();
+    }
+
+    @Test
+    public void shouldNotReturnRemovedStubs() throws Exception {
+        final StubHttpLifecycle first = buildStub("first", "/resource/item/1");
+        final StubHttpLifecycle second = buildStub("second", "/resource/item/1");
+        final StubHttpLifecycle third = buildStub("third", "^/resource/.*$");
+        final StubHttpLifecycle fourth = buildStub("fourth", "/resource/item/1");
+
+        StubIndex stubIndex = StubIndex.build(Arrays.asList(first, second, third, fourth));
+        stubIndex = stubIndex.remove(second);
+
+        assertThat(descriptionsOf(stubIndex.candidates(buildRequest("/resource/item/1"))))
+                .containsExactly("first", "third", "fourth")
+                .inOrder();
+
+        stubIndex = stubIndex.remove(third).remove(first);
+
+        final List<StubHttpLifecycle> candidates = stubIndex.candidates(buildRequest("/resource/item/1"));
+        assertThat(descriptionsOf(candidates)).containsExactly("fourth");
+    }
+
+    @Test
+    public void shouldNotReturnLiteralUrlCandidates_WhenRouteWasNeverStubbed() throws Exception {
+        final StubHttpLifecycle getLiteralUrl = buildStub("getLiteralUrl", "/resource/item/1");
+        final StubHttpLifecycle regexUrl = buildStub("regexUrl", "^/resource/item/\\d+$");
+        final StubHttpLifecycle anyMethodLiteralUrl = new StubHttpLifecycle.Builder()
+                .withDescription("anyMethodLiteralUrl")
+                .withRequest(new StubRequest.Builder().withUrl("/resource/item/2").build())
+                .withResponse(StubResponse.okResponse())
+                .build();
+
+        final StubIndex stubIndex = StubIndex.build(Arrays.asList(getLiteralUrl, regexUrl, anyMethodLiteralUrl));
+
+        final StubRequest postRequest = new StubRequest.Builder().withUrl("/resource/item/1").withMethodPost().build();
+        assertThat(descriptionsOf(stubIndex.candidates(postRequest))).containsExactly("regexUrl");
+
+        final StubRequest otherPostRequest =
+                new StubRequest.Builder().withUrl("/resource/item/2").withMethodPost().build();
+        assertThat(descriptionsOf(stubIndex.candidates(otherPostRequest)))
+                .containsExactly("regexUrl", "anyMethodLiteralUrl")
+                .inOrder();
+
+        assertThat(descriptionsOf(stubIndex.candidates(buildRequest("/resource/item/1"))))
+                .containsExactly("getLiteralUrl", "regexUrl")
+                .inOrder();
+    }
+
+    @Test
+    public void shouldNarrowDownJsonBodyCandidatesOnDiscriminatorField() throws Exception {
+        final StubHttpLifecycle first = buildPostStub("first", "{\"request_id\":\"abc_1\", \"payload\":\"(.*)\"}");
+        final StubHttpLifecycle second = buildPostStub("second", "{\"request_id\":\"abc_2\", \"payload\":\"(.*)\"}");
+        final StubHttpLifecycle regexValue = buildPostStub("regexValue", "{\"request_id\":\"abc_.*\"}");
+        final StubHttpLifecycle noBody = buildStub("noBody", "/resource/item");
+
+        final StubIndex stubIndex = StubIndex.build(Arrays.asList(first, second, regexValue, noBody));
+
+        final StubRequest incomingRequest = buildJsonRequest("{\"request_id\":\"abc_2\", \"payload\":\"x\"}");
+        assertThat(descriptionsOf(stubIndex.candidates(incomingRequest)))
+                .containsExactly("second", "regexValue", "noBody")
+                .inOrder();
+        assertThat(descriptionsOf(stubIndex.candidates(buildJsonRequest("{\"payload\":\"x\"}"))))
+                .containsExactly("regexValue", "noBody")
+                .inOrder();
+
+        // A body that cannot be parsed as JSON is matched by regex, so none of the stubs can be left out
+        assertThat(descriptionsOf(stubIndex.candidates(buildJsonRequest("{\"request_id\":"))))
+                .containsExactly("first", "second", "regexValue", "noBody")
+                .inOrder();
+    }
+
+    @Test
+    public void shouldOnlyTreatFieldsInLiteralBeginningOfJsonBodyAsDiscriminators() throws Exception {
+        final String nestedJson = "{\"id\":\"1\", \"nested\":{\"id\":\"2\"}, \"name\":\"x\"}";
+        assertThat(StubJsonFieldIndex.literalTopLevelFields(nestedJson)).containsExactly("id", "1", "name", "x");
+        assertThat(StubJsonFieldIndex.literalTopLevelFields("{\"id\":\"1\", \"payload\":\"(.*)\", \"name\":\"x\"}"))
+                .containsExactly("id", "1");
+        assertThat(StubJsonFieldIndex.literalTopLevelFields("{\"id\":\"1\", \"status\":\"paid|void\"}")).isEmpty();
+    }
+
+    @Test
+    public void shouldNarrowDownLiteralBodyCandidatesOnBodyDigest() throws Exception {
+        final StubHttpLifecycle first = buildPostStub("first", "name=alice");
+        final StubHttpLifecycle second = buildPostStub("second", "name=bob\r\n");
+        final StubHttpLifecycle regexBody = buildPostStub("regexBody", "name=.*");
+        final StubHttpLifecycle noBody = buildStub("noBody", "/resource/item");
+
+        final StubIndex stubIndex = StubIndex.build(Arrays.asList(first, second, regexBody, noBody));
+
+        final StubRequest incomingRequest = new StubRequest.Builder()
+                .withUrl("/resource/item")
+                .withMethodPost()
+                .withPost("name=bob\n")
+                .build();
+        assertThat(descriptionsOf(stubIndex.candidates(incomingRequest)))
+                .containsExactly("second", "regexBody", "noBody")
+                .inOrder();
+
+        // XML is compared for similarity, so a literal stubbed body can match a different incoming body
+        final StubRequest xmlRequest = new StubRequest.Builder()
+                .withUrl("/resource/item")
+                .withMethodPost()
+                .withPost("<name>bob</name>")
+                .withApplicationXmlContentType()
+                .build();
+        assertThat(descriptionsOf(stubIndex.candidates(xmlRequest)))
+                .containsExactly("first", "second", "regexBody", "noBody")
+                .inOrder();
+    }
+
+    @Test
+    public void shouldNarrowDownCandidatesOnLiteralHeaderAndQueryValues() throws Exception {
+        final StubHttpLifecycle acmeV1 = buildMappingStub("acmeV1", "acme", "1");
+        final StubHttpLifecycle acmeV2 = buildMappingStub("acmeV2", "acme", "2");
+        final StubHttpLifecycle globexV1 = buildMappingStub("globexV1", "globex", "1");
+        final StubHttpLifecycle anyTenantV2 = buildMappingStub("anyTenantV2", "(acme|globex)", "2");
+        final StubHttpLifecycle noMappings = buildStub("noMappings", "/resource/item");
+
+        final StubIndex stubIndex =
+                StubIndex.build(Arrays.asList(acmeV1, acmeV2, globexV1, anyTenantV2, noMappings));
+
+        assertThat(descriptionsOf(stubIndex.candidates(buildMappingRequest("acme", "2"))))
+                .containsExactly("acmeV2", "anyTenantV2", "noMappings")
+                .inOrder();
+        assertThat(descriptionsOf(stubIndex.candidates(buildMappingRequest("globex", "1"))))
+                .containsExactly("globexV1", "noMappings")
+                .inOrder();
+        assertThat(descriptionsOf(stubIndex.candidates(buildRequest("/resource/item"))))
+                .containsExactly("noMappings");
+
+        final StubHttpLifecycle initechV1 = buildMappingStub("initechV1", "initech", "1");
+        final StubIndex replacedIndex = stubIndex.replace(acmeV1, initechV1).remove(globexV1);
+        assertThat(descriptionsOf(replacedIndex.candidates(buildMappingRequest("initech", "1"))))
+                .containsExactly("initechV1", "noMappings")
+                .inOrder();
+        assertThat(descriptionsOf(replacedIndex.candidates(buildMappingRequest("acme", "1"))))
+                .containsExactly("noMappings");
+    }
+
+    // StubHttpLifecycle#equals performs request matching, so the assertions compare stub descriptions instead
+    private static List<String> descriptionsOf(final List<StubHttpLifecycle> stubs) {
+        return stubs.stream().map(StubHttpLifecycle::getDescription).collect(Collectors.toList());
+    }
+
+    private static StubHttpLifecycle buildStub(final String description, final String url) {
+        return new StubHttpLifecycle.Builder()
+                .withDescription(description)
+                .withRequest(buildRequest(url))
+                .withResponse(StubResponse.okResponse())
+                .build();
+    }
+
+    private static StubHttpLifecycle buildPostStub(final String description, final String post) {
+        return new StubHttpLifecycle.Builder()
+                .withDescription(description)
+                .withRequest(new StubRequest.Builder()
+                        .withUrl("/resource/item")
+                        .withMethodPost()
+                        .withPost(post)
+                        .build())
+                .withResponse(StubResponse.okResponse())
+                .build();
+    }
+
+    private static StubHttpLifecycle buildMappingStub(
+            final String description, final String tenant, final String version) {
+        return new StubHttpLifecycle.Builder()
+                .withDescription(description)
+                .withRequest(buildMappingRequest(tenant, version))
+                .withResponse(StubResponse.okResponse())
+                .build();
+    }
+
+    private static StubRequest buildMappingRequest(final String tenant, final String version) {
+        return new StubRequest.Builder()
+                .withUrl("/resource/item")
+                .withMethodGet()
+                .withHeader("x-tenant-id", tenant)
+                .withQuery("version", version)
+                .build();
+    }
+
+    private static StubRequest buildJsonRequest(final String post) {
+        return new StubRequest.Builder()
+                .withUrl("/resource/item")
+                .withMethodPost()
+                .withPost(post)
+                .withApplicationJsonContentType()
+                .build();
+    }
+
+    private static StubRequest buildRequest(final String url) {
+        return new StubRequest.Builder().withUrl(url).withMethodGet().build();
+    }
+}
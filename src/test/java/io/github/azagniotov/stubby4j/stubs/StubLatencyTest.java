@@ -0,0 +1,125 @@
+/*
+ * Copyright (c) 2012-2024 Alexander Zagniotov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.github.azagniotov.stubby4j.stubs;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.assertThrows;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.junit.Test;
+
+public class StubLatencyTest {
+
+    @Test
+    public void shouldSampleFixedLatency_WhenLatencyIsNumber() throws Exception {
+        assertThat(StubLatency.of("250").sampleMillis()).isEqualTo(250L);
+        assertThat(StubLatency.of(null).sampleMillis()).isEqualTo(0L);
+        assertThrows(NumberFormatException.class, () -> StubLatency.of("43rl4knt3l"));
+    }
+
+    @Test
+    public void shouldSampleSameLatencies_WhenDistributionIsSeeded() throws Exception {
+        final String latency = "distribution: lognormal, median: 100, sigma: 0.5, max: 1000, seed: 42";
+        final StubLatency first = StubLatency.of(latency);
+        final StubLatency second = StubLatency.of(latency);
+
+        for (int idx = 0; idx < 100; idx++) {
+            final long sample = first.sampleMillis();
+            assertThat(sample).isEqualTo(second.sampleMillis());
+            assertThat(sample).isAtMost(1000L);
+        }
+    }
+
+    @Test
+    public void shouldSampleSameLatencies_WhenSeededDistributionIsSampledConcurrently() throws Exception {
+        final String latency = "p50: 20, p90: 120, p99: 400, seed: 42";
+        final StubLatency sequential = StubLatency.of(latency);
+        final StubLatency concurrent = StubLatency.of(latency);
+
+        final List<Long> expected = new ArrayList<>();
+        for (int idx = 0; idx < 400; idx++) {
+            expected.add(sequential.sampleMillis());
+        }
+
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            final List<Future<Long>> futures = new ArrayList<>();
+            for (int idx = 0; idx < 400; idx++) {
+                futures.add(executor.submit(concurrent::sampleMillis));
+            }
+            final List<Long> actual = new ArrayList<>();
+            for (final Future<Long> future : futures) {
+                actual.add(future.get());
+            }
+
+            // The concurrent requests may get the samples in a different order, but they get the same samples
+            Collections.sort(expected);
+            Collections.sort(actual);
+            assertThat(actual).isEqualTo(expected);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void shouldSampleWithinBounds_WhenDistributionIsUniform() throws Exception {
+        final StubLatency stubLatency = StubLatency.of("distribution: uniform, min: 10, max: 50");
+
+        for (int idx = 0; idx < 100; idx++) {
+            final long sample = stubLatency.sampleMillis();
+            assertThat(sample).isAtLeast(10L);
+            assertThat(sample).isAtMost(50L);
+        }
+    }
+
+    @Test
+    public void shouldInterpolatePercentiles_WhenLatencyIsPercentileTable() throws Exception {
+        assertThat(StubLatency.of("p0: 30, p100: 30").sampleMillis()).isEqualTo(30L);
+
+        final StubLatency stubLatency = StubLatency.of("p50: 20, p99: 400");
+        for (int idx = 0; idx < 100; idx++) {
+            assertThat(stubLatency.sampleMillis()).isAtMost(400L);
+        }
+    }
+
+    @Test
+    public void shouldRejectLatency_WhenDistributionIsNotValid() throws Exception {
+        assertThrows(IllegalArgumentException.class, () -> StubLatency.of("distribution: gamma, shape: 2"));
+        assertThrows(IllegalArgumentException.class, () -> StubLatency.of("distribution: normal, mean: 100"));
+        assertThrows(IllegalArgumentException.class, () -> StubLatency.of("distribution: uniform, min: 10"));
+        assertThrows(IllegalArgumentException.class, () -> StubLatency.of("p50: 200, p99: 100"));
+        assertThrows(IllegalArgumentException.class, () -> StubLatency.of("p50: 20, q99: 400"));
+    }
+
+    @Test
+    public void shouldConvertYamlMapToLatency() throws Exception {
+        final Map<String, Object> latency = new LinkedHashMap<>();
+        latency.put("p50", 20);
+        latency.put("p99", 400);
+        latency.put("seed", 7);
+
+        assertThat(StubLatency.toSpec(latency)).isEqualTo("p50: 20, p99: 400, seed: 7");
+    }
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright (c) 2012-2024 Alexander Zagniotov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.github.azagniotov.stubby4j.stubs;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.assertThrows;
+
+import java.util.Collections;
+import org.junit.Test;
+
+public class StubMatchContextTest {
+
+    @Test
+    public void shouldNotLeakRegexGroups_WhenThreadMatchesAnotherIncomingRequest() throws Exception {
+        final StubRequest regexStubbedRequest = new StubRequest.Builder().withUrl("^/invoice/(\\d+)$").build();
+        final StubRequest literalStubbedRequest = new StubRequest.Builder().withUrl("/invoice/456").build();
+        final StubRequest firstRequest = new StubRequest.Builder().withUrl("/invoice/123").build();
+        final StubRequest secondRequest = new StubRequest.Builder().withUrl("/invoice/456").build();
+
+        assertThat(firstRequest.equals(regexStubbedRequest)).isTrue();
+        assertThat(secondRequest.equals(literalStubbedRequest)).isTrue();
+
+        assertThat(firstRequest.getRegexGroups()).containsExactly("url.0", "/invoice/123", "url.1", "123");
+        assertThat(secondRequest.getRegexGroups()).containsExactly("url.0", "/invoice/456");
+    }
+
+    @Test
+    public void shouldKeepCapturedRegexGroups_WhenContextIsReleased() throws Exception {
+        final StubRequest stubbedRequest = new StubRequest.Builder().withUrl("^/invoice/(\\d+)$").build();
+        final StubRequest incomingRequest = new StubRequest.Builder().withUrl("/invoice/123").build();
+
+        assertThat(incomingRequest.equals(stubbedRequest)).isTrue();
+        StubMatchContext.release();
+
+        assertThat(incomingRequest.getRegexGroups()).containsExactly("url.0", "/invoice/123", "url.1", "123");
+    }
+
+    @Test
+    public void shouldNotModifyRequestHeaders_WhenHeadersAreAdded() throws Exception {
+        final StubRequest incomingRequest = new StubRequest.Builder()
+                .withUrl("/invoice/123")
+                .withHeader("X-Tenant", "acme")
+                .build();
+
+        final StubRequest proxiedRequest =
+                incomingRequest.withAddedHeaders(Collections.singletonMap("X-Proxied", "true"));
+
+        assertThat(proxiedRequest.getHeaders()).containsExactly("x-tenant", "acme", "x-proxied", "true");
+        assertThat(incomingRequest.getHeaders()).containsExactly("x-tenant", "acme");
+        assertThrows(
+                UnsupportedOperationException.class, () -> incomingRequest.getHeaders().put("x-proxied", "true"));
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright (c) 2012-2024 Alexander Zagniotov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.github.azagniotov.stubby4j.stubs;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.util.HashMap;
+import org.junit.Test;
+
+public class StubMatchOrderTest {
+
+    @Test
+    public void fields_ShouldStartInDefaultOrder_WithStubbedFieldsOnly() throws Exception {
+        final StubRequest fullyStubbed = new StubRequest.Builder()
+                .withUrl("/invoice")
+                .withMethodPost()
+                .withPost("{\"id\": 123}")
+                .withHeader("X-Tenant", "acme")
+                .withQuery("status", "paid")
+                .build();
+        final StubRequest urlOnly = new StubRequest.Builder().withUrl("/invoice").build();
+
+        assertThat(fullyStubbed.getMatchPlan().getMatchOrder().fields()).asList()
+                .containsExactly(
+                        StubMatchOrder.Field.URL,
+                        StubMatchOrder.Field.METHOD,
+                        StubMatchOrder.Field.POST_BODY,
+                        StubMatchOrder.Field.HEADERS,
+                        StubMatchOrder.Field.QUERY)
+                .inOrder();
+        assertThat(urlOnly.getMatchPlan().getMatchOrder().fields()).asList().containsExactly(StubMatchOrder.Field.URL);
+    }
+
+    @Test
+    public void replan_ShouldEvaluateCheapAndSelectiveFieldsFirst() throws Exception {
+        final StubRequest stubbedRequest = new StubRequest.Builder()
+                .withUrl("^/invoice/.*$")
+                .withPost("{\"id\": 123}")
+                .withHeader("X-Tenant", "acme")
+                .build();
+        final StubMatchOrder matchOrder = stubbedRequest.getMatchPlan().getMatchOrder();
+
+        for (int idx = 0; idx < 100; idx++) {
+            matchOrder.recordSample(StubMatchOrder.Field.URL, false);
+            matchOrder.recordSample(StubMatchOrder.Field.POST_BODY, false);
+            matchOrder.recordSample(StubMatchOrder.Field.HEADERS, true);
+        }
+        matchOrder.replan();
+
+        assertThat(matchOrder.fields())
+                .asList()
+                .containsExactly(
+                        StubMatchOrder.Field.HEADERS, StubMatchOrder.Field.URL, StubMatchOrder.Field.POST_BODY)
+                .inOrder();
+    }
+
+    @Test
+    public void matches_ShouldReorderFields_WhenHeaderRejectsIncomingRequests() throws Exception {
+        final StubRequest stubbedRequest = new StubRequest.Builder()
+                .withUrl("/invoice")
+                .withHeader("X-Tenant", "acme")
+                .build();
+        final StubRequest incomingRequest = new StubRequest.Builder()
+                .withUrl("/invoice")
+                .withHeader("X-Tenant", "globex")
+                .build();
+
+        // Enough matches for a few re-plans, given that only a sample of the evaluations is recorded
+        for (int idx = 0; idx < StubMatchOrder.REPLAN_INTERVAL * StubMatchOrder.SAMPLING_INTERVAL * 4; idx++) {
+            assertThat(new StubMatcher(new HashMap<>()).matches(stubbedRequest, incomingRequest)).isFalse();
+        }
+
+        assertThat(stubbedRequest.getMatchPlan().getMatchOrder().fields())
+                .asList()
+                .containsExactly(StubMatchOrder.Field.HEADERS, StubMatchOrder.Field.URL)
+                .inOrder();
+        assertThat(stubbedRequest.describeMatchOrder()).startsWith("HEADERS (rejected ");
+    }
+}
@@ -0,0 +1,198 @@
+/*
+ * Copyright (c) 2012-2024 Alexander Zagniotov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.azagniotov.stubby4j.stubs;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import org.junit.Before;
+import org.junit.Test;
+
+public class StubMatchPlanTest {
+
+    private Map<String, String> regexGroups;
+
+    @Before
+    public void setUp() throws Exception {
+        regexGroups = new HashMap<>();
+    }
+
+    @Test
+    public void urlMatches_ShouldRecordFullMatchToken_WhenStubbedUrlIsLiteral() throws Exception {
+        final StubRequest stubbedRequest = new StubRequest.Builder().withUrl("/invoice/123").build();
+        final StubMatchPlan matchPlan = StubMatchPlan.compile(stubbedRequest);
+
+        assertThat(matchPlan.urlMatches(
+                        "/invoice/123", regexGroups, new StubPredicateMemo(), StubTemplateTokens.ALL))
+                .isTrue();
+        assertThat(regexGroups).containsExactly("url.0", "/invoice/123");
+        assertThat(matchPlan.urlMatches(
+                        "/invoice/1234", new HashMap<>(), new StubPredicateMemo(), StubTemplateTokens.ALL))
+                .isFalse();
+    }
+
+    @Test
+    public void urlMatches_ShouldRecordCapturedGroups_WhenStubbedUrlIsRegex() throws Exception {
+        final StubRequest stubbedRequest = new StubRequest.Builder().withUrl("^/invoice/(\\d+)$").build();
+        final StubMatchPlan matchPlan = StubMatchPlan.compile(stubbedRequest);
+
+        assertThat(matchPlan.urlMatches(
+                        "/invoice/123", regexGroups, new StubPredicateMemo(), StubTemplateTokens.ALL))
+                .isTrue();
+        assertThat(regexGroups).containsExactly("url.0", "/invoice/123", "url.1", "123");
+    }
+
+    @Test
+    public void urlMatches_ShouldReuseMemoizedOutcome_WhenStubsShareUrlRegex() throws Exception {
+        final StubMatchPlan firstPlan = StubMatchPlan.compile(
+                new StubRequest.Builder().withUrl("^/invoice/(\\d+)$").build());
+        final StubMatchPlan secondPlan = StubMatchPlan.compile(
+                new StubRequest.Builder().withUrl("^/invoice/(\\d+)$").build());
+        final StubPredicateMemo predicateMemo = new StubPredicateMemo();
+
+        assertThat(firstPlan.urlMatches(
+                        "/invoice/123", new HashMap<>(), predicateMemo, StubTemplateTokens.ALL))
+                .isTrue();
+        assertThat(secondPlan.urlMatches("/invoice/123", regexGroups, predicateMemo, StubTemplateTokens.ALL)).isTrue();
+
+        assertThat(predicateMemo.getHits()).isEqualTo(1);
+        assertThat(regexGroups).containsExactly("url.0", "/invoice/123", "url.1", "123");
+    }
+
+    @Test
+    public void urlMatches_ShouldReevaluateMemoizedMatch_WhenStubRefersToRegexGroupsThatWereNotCaptured()
+            throws Exception {
+        final StubMatchPlan firstPlan = StubMatchPlan.compile(
+                new StubRequest.Builder().withUrl("^/invoice/(\\d+)$").build());
+        final StubMatchPlan secondPlan = StubMatchPlan.compile(
+                new StubRequest.Builder().withUrl("^/invoice/(\\d+)$").build());
+        final StubTemplateTokens noTemplateTokens =
+                StubTemplateTokens.of(Arrays.asList(new StubResponse.Builder().build()));
+        final StubPredicateMemo predicateMemo = new StubPredicateMemo();
+
+        final Map<String, String> firstRegexGroups = new HashMap<>();
+        assertThat(firstPlan.urlMatches("/invoice/123", firstRegexGroups, predicateMemo, noTemplateTokens))
+                .isTrue();
+        assertThat(firstRegexGroups).isEmpty();
+
+        assertThat(secondPlan.urlMatches("/invoice/123", regexGroups, predicateMemo, StubTemplateTokens.ALL))
+                .isTrue();
+        assertThat(predicateMemo.getHits()).isEqualTo(0);
+        assertThat(regexGroups).containsExactly("url.0", "/invoice/123", "url.1", "123");
+    }
+
+    @Test
+    public void headersMatch_ShouldReuseMemoizedOutcome_WhenStubsShareHeaderRegex() throws Exception {
+        final StubMatchPlan firstPlan = StubMatchPlan.compile(new StubRequest.Builder()
+                .withUrl("/invoice")
+                .withHeader("Content-Type", "application/(json|xml)")
+                .build());
+        final StubMatchPlan secondPlan = StubMatchPlan.compile(new StubRequest.Builder()
+                .withUrl("/receipt")
+                .withHeader("Content-Type", "application/(json|xml)")
+                .withHeader("X-Tenant", "acme")
+                .build());
+        final StubPredicateMemo predicateMemo = new StubPredicateMemo();
+
+        final Map<String, String> assertingHeaders = new HashMap<>();
+        assertingHeaders.put("content-type", "text/plain");
+
+        assertThat(firstPlan.headersMatch(
+                        assertingHeaders, regexGroups, predicateMemo, StubTemplateTokens.ALL))
+                .isFalse();
+        assertThat(secondPlan.headersMatch(
+                        assertingHeaders, regexGroups, predicateMemo, StubTemplateTokens.ALL))
+                .isFalse();
+        assertThat(predicateMemo.getHits()).isEqualTo(1);
+
+        // The memoized outcome is only reused for the same incoming value
+        assertingHeaders.put("content-type", "application/json");
+        assertThat(firstPlan.headersMatch(
+                        assertingHeaders, regexGroups, predicateMemo, StubTemplateTokens.ALL))
+                .isTrue();
+        assertThat(predicateMemo.getHits()).isEqualTo(1);
+    }
+
+    @Test
+    public void methodsIntersect_ShouldMatchUpperCasedMethods() throws Exception {
+        final StubRequest stubbedRequest = new StubRequest.Builder()
+                .withUrl("/invoice")
+                .withMethod("get")
+                .withMethod("head")
+                .build();
+        final StubMatchPlan matchPlan = StubMatchPlan.compile(stubbedRequest);
+
+        assertThat(matchPlan.getMethods()).containsExactly("GET", "HEAD");
+        assertThat(matchPlan.methodsIntersect(Arrays.asList("POST", "HEAD"))).isTrue();
+        assertThat(matchPlan.methodsIntersect(Arrays.asList("POST", "PUT"))).isFalse();
+    }
+
+    @Test
+    public void headersMatch_ShouldIgnoreStubbedAuthorizationHeaders() throws Exception {
+        final StubRequest stubbedRequest = new StubRequest.Builder()
+                .withUrl("/invoice")
+                .withYAMLHeaderAuthorizationBasic("Ym9iOnNlY3JldA==")
+                .withHeader("X-Tenant", "acme")
+                .build();
+        final StubMatchPlan matchPlan = StubMatchPlan.compile(stubbedRequest);
+
+        final Map<String, String> assertingHeaders = new HashMap<>();
+        assertingHeaders.put("x-tenant", "acme");
+
+        assertThat(matchPlan.headersMatch(
+                        assertingHeaders, regexGroups, new StubPredicateMemo(), StubTemplateTokens.ALL))
+                .isTrue();
+        assertThat(regexGroups).containsExactly("headers.x-tenant.0", "acme");
+    }
+
+    @Test
+    public void queriesMatch_ShouldReturnFalse_WhenStubbedQueryParamIsMissing() throws Exception {
+        final StubRequest stubbedRequest = new StubRequest.Builder()
+                .withUrl("/invoice")
+                .withQuery("status", "active")
+                .withQuery("type", "[a-z]+")
+                .build();
+        final StubMatchPlan matchPlan = StubMatchPlan.compile(stubbedRequest);
+
+        final Map<String, String> assertingQuery = new HashMap<>();
+        assertingQuery.put("status", "active");
+
+        assertThat(matchPlan.queriesMatch(
+                        assertingQuery, regexGroups, new StubPredicateMemo(), StubTemplateTokens.ALL))
+                .isFalse();
+
+        assertingQuery.put("type", "paid");
+        assertThat(matchPlan.queriesMatch(
+                        assertingQuery, regexGroups, new StubPredicateMemo(), StubTemplateTokens.ALL))
+                .isTrue();
+    }
+
+    @Test
+    public void shouldNotCompileRequestBody_WhenRequestBodyIsNotStubbed() throws Exception {
+        final StubRequest stubbedRequest = new StubRequest.Builder()
+                .withUrl("/invoice")
+                .withMethodGet()
+                .withPost("{\"id\": 123}")
+                .build();
+        final StubMatchPlan matchPlan = StubMatchPlan.compile(stubbedRequest);
+
+        assertThat(matchPlan.isRequestBodyStubbed()).isFalse();
+        assertThat(matchPlan.getPostBodyPredicate()).isNull();
+    }
+}
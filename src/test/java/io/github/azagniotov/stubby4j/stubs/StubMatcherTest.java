@@ -789,4 +789,45 @@ public class StubMatcherTest {
 
         assertThat(isBodiesMatch).isFalse();
     }
+
+    @Test
+    public void postBodiesMatch_ShouldParseAssertingJsonOnce_WhenMatchedToMultipleStubs() {
+        final StubRequest stubbedRequest = new StubRequest.Builder()
+                .withMethod(HttpMethod.POST.asString())
+                .withPost("{\"name\": \"wibble\"}")
+                .build();
+        final StubRequest anotherStubbedRequest = new StubRequest.Builder()
+                .withMethod(HttpMethod.POST.asString())
+                .withPost("{\"name\": \"wobble\"}")
+                .build();
+        final StubRequest assertingRequest = new StubRequest.Builder()
+                .withMethod(HttpMethod.POST.asString())
+                .withPost("{\"name\": \"wobble\"}")
+                .withApplicationJsonContentType()
+                .build();
+
+        assertThat(stubMatcher.postBodiesMatch(stubbedRequest, assertingRequest)).isFalse();
+        final Object parsedAssertingJson = assertingRequest.getJsonPostBody();
+        assertThat(stubMatcher.postBodiesMatch(anotherStubbedRequest, assertingRequest)).isTrue();
+
+        assertThat(assertingRequest.getJsonPostBody()).isSameInstanceAs(parsedAssertingJson);
+    }
+
+    @Test
+    public void postBodiesMatch_ShouldFallBackToRegex_WhenAssertingXmlIsNotWellFormed() {
+        final StubRequest stubbedRequest = new StubRequest.Builder()
+                .withMethod(HttpMethod.POST.asString())
+                .withPost("<idList>.*</idList>")
+                .build();
+        final StubRequest assertingRequest = new StubRequest.Builder()
+                .withMethod(HttpMethod.POST.asString())
+                .withPost("<idList><id>123</idList>")
+                .withApplicationXmlContentType()
+                .build();
+
+        final boolean isBodiesMatch = stubMatcher.postBodiesMatch(stubbedRequest, assertingRequest);
+
+        assertThat(isBodiesMatch).isTrue();
+        assertThat(assertingRequest.getXmlPostBody()).isNull();
+    }
 }
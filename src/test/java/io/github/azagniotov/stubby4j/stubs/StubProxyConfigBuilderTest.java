@@ -41,7 +41,7 @@ public class StubProxyConfigBuilderTest {
 
     @After
     public void cleanup() throws Exception {
-        RegexParser.REGEX_PATTERN_CACHE.clear();
+        RegexParser.REGEX_PATTERN_REGISTRY.clear();
     }
 
     @Test
@@ -24,6 +24,7 @@ import static org.junit.Assert.assertThrows;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.spy;
@@ -48,6 +49,9 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.regex.Pattern;
 import javax.servlet.http.HttpServletRequest;
 import org.eclipse.jetty.http.HttpStatus;
@@ -109,7 +113,7 @@ public class StubRepositoryTest {
 
         final StubRepository stubRepository = new StubRepository(
                 CONFIG_FILE,
-                Cache.stubHttpLifecycleCache(false),
+                Cache.stubMatchCache(false),
                 YAML_PARSE_RESULT_SET_FUTURE,
                 mockStubbyHttpTransport);
 
@@ -237,6 +241,194 @@ public class StubRepositoryTest {
         assertThat(spyStubRepository.canMatchStubByUuid(STUB_UUID_ONE)).isFalse();
     }
 
+    @Test
+    public void shouldMatchAgainstPublishedStubs_WhileStubsAreConcurrentlyUpdated() throws Exception {
+        final String url = "/resource/item/1";
+        spyStubRepository.resetStubsCache(parseYaml(url, STUB_UUID_ONE));
+
+        doAnswer(invocation -> new StubRequest.Builder()
+                        .withUrl(url)
+                        .withMethodGet()
+                        .withHeader("content-type", Common.HEADER_APPLICATION_JSON)
+                        .build())
+                .when(spyStubRepository)
+                .toStubRequest(any(HttpServletRequest.class));
+
+        final ExecutorService executorService = Executors.newFixedThreadPool(4);
+        final List<Future<Integer>> futures = new LinkedList<>();
+        for (int idx = 0; idx < 200; idx++) {
+            futures.add(executorService.submit(() -> spyStubRepository
+                    .search(mockHttpServletRequest)
+                    .getMatch()
+                    .getHttpStatusCode()
+                    .getCode()));
+        }
+
+        for (int idx = 0; idx < 50; idx++) {
+            final YamlParseResultSet yamlParseResultSet = parseYaml(url, STUB_UUID_ONE);
+            spyStubRepository.updateStubByIndex(0, yamlParseResultSet.getStubs().get(0));
+        }
+
+        for (final Future<Integer> future : futures) {
+            assertThat(future.get()).isEqualTo(HttpStatus.OK_200);
+        }
+        executorService.shutdown();
+
+        assertThat(spyStubRepository.getStubs().size()).isEqualTo(1);
+        assertThat(spyStubRepository.canMatchStubByUuid(STUB_UUID_ONE)).isTrue();
+    }
+
+    @Test
+    public void shouldRestoreCapturedRegexGroups_WhenMatchIsServedFromCache() throws Exception {
+        final Cache<String, StubMatch> stubMatchCache = Cache.stubMatchCache(false);
+        final StubRepository stubRepository = spy(
+                new StubRepository(CONFIG_FILE, stubMatchCache, YAML_PARSE_RESULT_SET_FUTURE, mockStubbyHttpTransport));
+        final StubResponse stubResponse = new StubResponse.Builder().withBody("item <% url.1 %>").build();
+        stubRepository.resetStubsCache(parseYaml("^/resource/item/(\\d+)$", stubResponse, STUB_UUID_ONE));
+
+        doReturn(
+                        buildIncomingRequest("/resource/item/1", "curl/8.1"),
+                        buildIncomingRequest("/resource/item/1", "Mozilla/5.0"),
+                        buildIncomingRequest("/resource/item/2", "curl/8.1"))
+                .when(stubRepository)
+                .toStubRequest(any(HttpServletRequest.class));
+
+        final StubSearchResult firstSearchResult = stubRepository.search(mockHttpServletRequest);
+        assertThat(firstSearchResult.getInvariant().getRegexGroups()).containsEntry("url.1", "1");
+        assertThat(stubMatchCache.size().get()).isEqualTo(1);
+
+        // Identical request, apart from the header that is not stubbed, is served from the cache
+        final StubSearchResult cachedSearchResult = stubRepository.search(mockHttpServletRequest);
+        assertThat(cachedSearchResult.getMatch().getHttpStatusCode()).isEqualTo(HttpStatus.Code.OK);
+        assertThat(cachedSearchResult.getInvariant().getRegexGroups())
+                .isEqualTo(firstSearchResult.getInvariant().getRegexGroups());
+        assertThat(stubMatchCache.size().get()).isEqualTo(1);
+
+        final StubSearchResult otherSearchResult = stubRepository.search(mockHttpServletRequest);
+        assertThat(otherSearchResult.getInvariant().getRegexGroups()).containsEntry("url.1", "2");
+        assertThat(stubMatchCache.size().get()).isEqualTo(2);
+    }
+
+    @Test
+    public void shouldNotCaptureRegexGroups_WhenStubbedResponseDoesNotReferToThem() throws Exception {
+        final StubRepository stubRepository = spy(new StubRepository(
+                CONFIG_FILE, Cache.stubMatchCache(false), YAML_PARSE_RESULT_SET_FUTURE, mockStubbyHttpTransport));
+        stubRepository.resetStubsCache(parseYaml("^/resource/item/(\\d+)$", STUB_UUID_ONE));
+
+        doReturn(buildIncomingRequest("/resource/item/1", "curl/8.1"))
+                .when(stubRepository)
+                .toStubRequest(any(HttpServletRequest.class));
+
+        final StubSearchResult searchResult = stubRepository.search(mockHttpServletRequest);
+        assertThat(searchResult.getMatch().getHttpStatusCode()).isEqualTo(HttpStatus.Code.OK);
+        assertThat(searchResult.getInvariant().getRegexGroups()).isEmpty();
+    }
+
+    @Test
+    public void shouldMatchEveryRequest_WhenStubCachingIsDisabled() throws Exception {
+        final StubRepository stubRepository = spy(new StubRepository(
+                CONFIG_FILE,
+                Cache.stubMatchCache(true),
+                Cache.stubMissCache(true),
+                YAML_PARSE_RESULT_SET_FUTURE,
+                mockStubbyHttpTransport));
+        final StubResponse stubResponse = new StubResponse.Builder().withBody("item <% url.1 %>").build();
+        stubRepository.resetStubsCache(parseYaml("^/resource/item/(\\d+)$", stubResponse, STUB_UUID_ONE));
+
+        doReturn(
+                        buildIncomingRequest("/resource/item/1", "curl/8.1"),
+                        buildIncomingRequest("/resource/item/1", "curl/8.1"),
+                        buildIncomingRequest("/resource/item/abc", "curl/8.1"))
+                .when(stubRepository)
+                .toStubRequest(any(HttpServletRequest.class));
+
+        assertThat(stubRepository.search(mockHttpServletRequest).getInvariant().getRegexGroups())
+                .containsEntry("url.1", "1");
+        assertThat(stubRepository.search(mockHttpServletRequest).getInvariant().getRegexGroups())
+                .containsEntry("url.1", "1");
+        assertThat(stubRepository.search(mockHttpServletRequest).getMatch().getHttpStatusCode())
+                .isEqualTo(HttpStatus.Code.NOT_FOUND);
+        assertThat(stubRepository.getUnmatchedFastPathHits()).isEqualTo(0);
+    }
+
+    @Test
+    public void shouldSkipMatching_WhenRequestIsKnownToBeUnmatched() throws Exception {
+        final Cache<String, Boolean> stubMissCache = Cache.stubMissCache(false);
+        final StubRepository stubRepository = spy(new StubRepository(
+                CONFIG_FILE,
+                Cache.stubMatchCache(false),
+                stubMissCache,
+                YAML_PARSE_RESULT_SET_FUTURE,
+                mockStubbyHttpTransport));
+        stubRepository.resetStubsCache(parseYaml("^/resource/item/(\\d+)$", STUB_UUID_ONE));
+
+        doReturn(
+                        buildIncomingRequest("/resource/item/abc", "curl/8.1"),
+                        buildIncomingRequest("/resource/item/abc", "curl/8.1"))
+                .when(stubRepository)
+                .toStubRequest(any(HttpServletRequest.class));
+
+        final StubSearchResult firstSearchResult = stubRepository.search(mockHttpServletRequest);
+        assertThat(firstSearchResult.getMatch().getHttpStatusCode()).isEqualTo(HttpStatus.Code.NOT_FOUND);
+        assertThat(stubMissCache.size().get()).isEqualTo(1);
+        assertThat(stubRepository.getUnmatchedLookups()).isEqualTo(1);
+        assertThat(stubRepository.getUnmatchedFastPathHits()).isEqualTo(0);
+
+        final StubSearchResult repeatedSearchResult = stubRepository.search(mockHttpServletRequest);
+        assertThat(repeatedSearchResult.getMatch().getHttpStatusCode()).isEqualTo(HttpStatus.Code.NOT_FOUND);
+        assertThat(stubRepository.getUnmatchedLookups()).isEqualTo(2);
+        assertThat(stubRepository.getUnmatchedFastPathHits()).isEqualTo(1);
+
+        // Publishing new stubs invalidates the previously unmatched requests
+        stubRepository.resetStubsCache(parseYaml("/resource/item/abc", STUB_UUID_ONE));
+        assertThat(stubMissCache.size().get()).isEqualTo(0);
+
+        doReturn(buildIncomingRequest("/resource/item/abc", "curl/8.1"), buildIncomingRequest("/health", "curl/8.1"))
+                .when(stubRepository)
+                .toStubRequest(any(HttpServletRequest.class));
+
+        final StubSearchResult matchedSearchResult = stubRepository.search(mockHttpServletRequest);
+        assertThat(matchedSearchResult.getMatch().getHttpStatusCode()).isEqualTo(HttpStatus.Code.OK);
+        // A matched request is not an unmatched lookup
+        assertThat(stubRepository.getUnmatchedLookups()).isEqualTo(2);
+
+        // None of the stubs defines the URL, so the request is known to be unmatched without a cached miss
+        final StubSearchResult healthCheckSearchResult = stubRepository.search(mockHttpServletRequest);
+        assertThat(healthCheckSearchResult.getMatch().getHttpStatusCode()).isEqualTo(HttpStatus.Code.NOT_FOUND);
+        assertThat(stubRepository.getUnmatchedLookups()).isEqualTo(3);
+        assertThat(stubRepository.getUnmatchedFastPathHits()).isEqualTo(2);
+        assertThat(stubMissCache.size().get()).isEqualTo(0);
+    }
+
+    @Test
+    public void shouldNotReadRequestBody_WhenNoneOfCandidateStubsHasStubbedBody() throws Exception {
+        final StubHttpLifecycle uploadStub = new StubHttpLifecycle.Builder()
+                .withRequest(requestBuilder.withUrl("/upload").withMethodPost().build())
+                .withResponse(StubResponse.okResponse())
+                .build();
+        final StubHttpLifecycle invoiceStub = new StubHttpLifecycle.Builder()
+                .withRequest(requestBuilder
+                        .withUrl("/invoice")
+                        .withMethodPost()
+                        .withPost("{\"id\": 1}")
+                        .build())
+                .withResponse(StubResponse.okResponse())
+                .build();
+        spyStubRepository.resetStubsCache(
+                new YamlParseResultSet(new LinkedList<>(Arrays.asList(uploadStub, invoiceStub)), new HashMap<>()));
+
+        when(mockHttpServletRequest.getPathInfo()).thenReturn("/upload");
+        when(mockHttpServletRequest.getMethod()).thenReturn("POST");
+
+        final StubSearchResult searchResult = spyStubRepository.search(mockHttpServletRequest);
+        assertThat(searchResult.getMatch().getHttpStatusCode()).isEqualTo(HttpStatus.Code.OK);
+
+        final StubSearchResult repeatedSearchResult = spyStubRepository.search(mockHttpServletRequest);
+        assertThat(repeatedSearchResult.getMatch().getHttpStatusCode()).isEqualTo(HttpStatus.Code.OK);
+
+        verify(mockHttpServletRequest, never()).getInputStream();
+    }
+
     @Test
     public void shouldDeleteOriginalHttpCycleList_WhenStubsDontExist() throws Exception {
         spyStubRepository.clear();
@@ -328,6 +520,43 @@ public class StubRepositoryTest {
         assertThat(spyStubRepository.canMatchStubByUuid(STUB_UUID_THREE)).isFalse();
     }
 
+    @Test
+    public void shouldNotRenumberPublishedStubs_WhenStubIsDeleted() throws Exception {
+        final YamlParseResultSet yamlParseResultSetOne = parseYaml("/resource/item/1", STUB_UUID_ONE);
+        final YamlParseResultSet yamlParseResultSetTwo = parseYaml("/resource/item/2", STUB_UUID_TWO);
+
+        spyStubRepository.resetStubsCache(new YamlParseResultSet(
+                new LinkedList<StubHttpLifecycle>() {
+                    {
+                        addAll(yamlParseResultSetOne.getStubs());
+                        addAll(yamlParseResultSetTwo.getStubs());
+                    }
+                },
+                new HashMap<String, StubHttpLifecycle>() {
+                    {
+                        putAll(yamlParseResultSetOne.getUuidToStubs());
+                        putAll(yamlParseResultSetTwo.getUuidToStubs());
+                    }
+                }));
+
+        final StubHttpLifecycle publishedStub = spyStubRepository.getStubs().get(1);
+        assertThat(publishedStub.getResourceId()).isEqualTo("1");
+
+        spyStubRepository.deleteStubByIndex(0);
+
+        // The matching threads that still read the previous snapshot keep on seeing the previous resource ID
+        assertThat(publishedStub.getResourceId()).isEqualTo("1");
+        assertThat(publishedStub.getResponse(false).getStaticResponse().get().getHeaders())
+                .containsEntry(Common.HEADER_X_STUBBY_RESOURCE_ID, "1");
+
+        final StubHttpLifecycle renumberedStub = spyStubRepository.getStubs().get(0);
+        assertThat(renumberedStub.getRequest().getUri()).isEqualTo("/resource/item/2");
+        assertThat(renumberedStub.getResourceId()).isEqualTo("0");
+        assertThat(renumberedStub.getResponse(false).getStaticResponse().get().getHeaders())
+                .containsEntry(Common.HEADER_X_STUBBY_RESOURCE_ID, "0");
+        assertThat(spyStubRepository.deleteStubByUuid(STUB_UUID_TWO)).isSameInstanceAs(renumberedStub);
+    }
+
     @Test
     public void shouldUpdateProxyConfigsByUuid() throws Exception {
         final StubHttpLifecycle httpLifecycle = new StubHttpLifecycle.Builder()
@@ -1711,6 +1940,15 @@ public class StubRepositoryTest {
         assertThat(assertingRequest).isNotEqualTo(expectedRequest);
     }
 
+    private static StubRequest buildIncomingRequest(final String url, final String userAgent) {
+        return new StubRequest.Builder()
+                .withUrl(url)
+                .withMethodGet()
+                .withHeader("content-type", Common.HEADER_APPLICATION_JSON)
+                .withHeader("user-agent", userAgent)
+                .build();
+    }
+
     private YamlParseResultSet parseYaml(final String url, final String uuid) throws Exception {
         return parseYaml(url, StubResponse.okResponse(), uuid);
     }
@@ -0,0 +1,114 @@
+/*
+ * Copyright (c) 2012-2024 Alexander Zagniotov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.azagniotov.stubby4j.stubs;
+
+import static com.google.common.truth.Truth.assertThat;
+import static io.github.azagniotov.stubby4j.utils.StringUtils.getBytesUtf8;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import io.github.azagniotov.stubby4j.caching.Cache;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import javax.servlet.ReadListener;
+import javax.servlet.ServletInputStream;
+import javax.servlet.http.HttpServletRequest;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+@RunWith(MockitoJUnitRunner.class)
+public class StubRequestBodyTest {
+
+    @Mock
+    private HttpServletRequest mockHttpServletRequest;
+
+    @Test
+    public void shouldNotReadRequestInputStream_UntilBodyIsAskedFor() throws Exception {
+        when(mockHttpServletRequest.getInputStream()).thenReturn(servletInputStreamOf("{\"name\": \"stubby4j\"}"));
+
+        final StubRequestBody stubRequestBody = new StubRequestBody(mockHttpServletRequest, 1024);
+        verify(mockHttpServletRequest, never()).getInputStream();
+
+        assertThat(stubRequestBody.get()).isEqualTo("{\"name\": \"stubby4j\"}");
+        assertThat(stubRequestBody.get()).isEqualTo("{\"name\": \"stubby4j\"}");
+        verify(mockHttpServletRequest, times(1)).getInputStream();
+    }
+
+    @Test
+    public void shouldDecodeRequestBody_WhenBodyIsSpilledToTemporaryFile() throws Exception {
+        final String body = "  {\"path\": \"\\/invoice\\/123\", \"name\": \"\u039E stubby4j\"}  ";
+        when(mockHttpServletRequest.getInputStream()).thenReturn(servletInputStreamOf(body));
+
+        final StubRequestBody stubRequestBody = new StubRequestBody(mockHttpServletRequest, 8);
+
+        assertThat(stubRequestBody.get()).isEqualTo("{\"path\": \"/invoice/123\", \"name\": \"\u039E stubby4j\"}");
+    }
+
+    @Test
+    public void shouldReturnNull_WhenRequestBodyIsEmpty() throws Exception {
+        when(mockHttpServletRequest.getInputStream()).thenReturn(servletInputStreamOf(""));
+
+        final StubRequestBody stubRequestBody = new StubRequestBody(mockHttpServletRequest, 1024);
+
+        assertThat(stubRequestBody.get()).isNull();
+    }
+
+    @Test
+    public void shouldNotReadRequestBody_WhenIncomingRequestIsMatchedToStubWithoutStubbedBody() throws Exception {
+        when(mockHttpServletRequest.getPathInfo()).thenReturn("/invoice/123");
+        when(mockHttpServletRequest.getMethod()).thenReturn("POST");
+
+        final StubRepository stubRepository = new StubRepository(null, Cache.stubMatchCache(true), null, null);
+        final StubRequest incomingRequest = stubRepository.toStubRequest(mockHttpServletRequest);
+        final StubRequest stubbedRequest = new StubRequest.Builder()
+                .withUrl("/invoice/123")
+                .withMethodPost()
+                .build();
+
+        assertThat(new StubMatcher(new HashMap<>()).matches(stubbedRequest, incomingRequest)).isTrue();
+        verify(mockHttpServletRequest, never()).getInputStream();
+    }
+
+    private static ServletInputStream servletInputStreamOf(final String body) {
+        final InputStream inputStream = new ByteArrayInputStream(getBytesUtf8(body));
+        return new ServletInputStream() {
+            @Override
+            public int read() throws IOException {
+                return inputStream.read();
+            }
+
+            @Override
+            public boolean isFinished() {
+                return false;
+            }
+
+            @Override
+            public boolean isReady() {
+                return false;
+            }
+
+            @Override
+            public void setReadListener(final ReadListener readListener) {}
+        };
+    }
+}
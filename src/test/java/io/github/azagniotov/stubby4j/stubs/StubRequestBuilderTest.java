@@ -46,7 +46,7 @@ public class StubRequestBuilderTest {
 
     @After
     public void cleanup() throws Exception {
-        RegexParser.REGEX_PATTERN_CACHE.clear();
+        RegexParser.REGEX_PATTERN_REGISTRY.clear();
     }
 
     @Test
@@ -1362,7 +1362,7 @@ public class StubRequestBuilderTest {
                 .build();
         stubRequest.compileRegexPatternsAndCache();
 
-        assertThat(RegexParser.REGEX_PATTERN_CACHE.size().get()).isEqualTo(3);
+        assertThat(RegexParser.REGEX_PATTERN_REGISTRY.size()).isEqualTo(3);
     }
 
     @Test
@@ -19,9 +19,15 @@ package io.github.azagniotov.stubby4j.stubs;
 import static com.google.common.truth.Truth.assertThat;
 import static io.github.azagniotov.stubby4j.utils.FileUtils.tempFileFromString;
 import static io.github.azagniotov.stubby4j.yaml.ConfigurableYAMLProperty.BODY;
+import static io.github.azagniotov.stubby4j.yaml.ConfigurableYAMLProperty.LATENCY;
+import static org.junit.Assert.assertThrows;
 
+import io.github.azagniotov.stubby4j.common.Common;
 import io.github.azagniotov.stubby4j.utils.StringUtils;
 import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.HashMap;
 import java.util.Optional;
 import org.eclipse.jetty.http.HttpStatus.Code;
 import org.junit.Before;
@@ -210,4 +216,106 @@ public class StubResponseBuilderTest {
 
         assertThat(stubResponse.isBodyContainsTemplateTokens()).isFalse();
     }
+
+    @Test
+    public void shouldNotReadRawFileAgain_WhenCheckingForTemplateTokens() throws Exception {
+
+        final File templateFile = tempFileFromString("file content with a <% token %>");
+        final StubResponse stubResponse =
+                builder.withHttpStatusCode(Code.OK).withFile(templateFile).build();
+
+        Files.write(templateFile.toPath(), StringUtils.getBytesUtf8("changed file content"));
+
+        assertThat(stubResponse.isBodyContainsTemplateTokens()).isTrue();
+        assertThat(stubResponse.getBodyTemplate()).isEqualTo("file content with a <% token %>");
+    }
+
+    @Test
+    public void shouldFindFilePathTokenized_WhenStubbedFilePathContainsTemplateTokens() throws Exception {
+
+        final StubResponse stubResponse = builder.withHttpStatusCode(Code.OK)
+                .withFile(new File("../html/<% url.1 %>.html"))
+                .build();
+
+        assertThat(stubResponse.isFilePathContainsTemplateTokens()).isTrue();
+        assertThat(stubResponse.isBodyContainsTemplateTokens()).isFalse();
+    }
+
+    @Test
+    public void shouldHaveStaticResponse_WhenResponseDoesNotHaveTemplateTokens() throws Exception {
+
+        final StubResponse stubResponse = builder.withHttpStatusCode(Code.OK)
+                .withBody("some body")
+                .withHeaders(new HashMap<String, String>() {
+                    {
+                        put("content-type", "text/plain");
+                    }
+                })
+                .build();
+
+        final StubStaticResponse staticResponse = stubResponse.getStaticResponse().get();
+        assertThat(staticResponse.getHeaders()).containsExactly("content-type", "text/plain");
+        assertThat(StandardCharsets.UTF_8.decode(staticResponse.getBody()).toString()).isEqualTo("some body");
+        // Every response gets its own view of the body
+        assertThat(StandardCharsets.UTF_8.decode(staticResponse.getBody()).toString()).isEqualTo("some body");
+        assertThat(staticResponse.getBody().isReadOnly()).isTrue();
+    }
+
+    @Test
+    public void shouldParseLatency_WhenResponseIsBuilt() throws Exception {
+
+        builder.stage(LATENCY, Optional.of("distribution: uniform, min: 10, max: 50"));
+        final StubResponse stubResponse = builder.build();
+        final long latencyMillis = stubResponse.getLatencyDistribution().sampleMillis();
+        assertThat(latencyMillis).isAtLeast(10L);
+        assertThat(latencyMillis).isAtMost(50L);
+
+        builder.stage(LATENCY, Optional.of("distribution: gamma, shape: 2"));
+        assertThrows(IllegalArgumentException.class, () -> builder.build());
+    }
+
+    @Test
+    public void shouldNotHaveStaticResponse_WhenResponseHasTemplateTokens() throws Exception {
+
+        final StubResponse tokenizedBody = builder.withHttpStatusCode(Code.OK)
+                .withBody("some body with a <% token %>")
+                .build();
+        assertThat(tokenizedBody.getStaticResponse().isPresent()).isFalse();
+
+        final StubResponse tokenizedHeader = builder.withHttpStatusCode(Code.OK)
+                .withBody("some body")
+                .withHeaders(new HashMap<String, String>() {
+                    {
+                        put("location", "/path/<% url.1 %>");
+                    }
+                })
+                .build();
+        assertThat(tokenizedHeader.getStaticResponse().isPresent()).isFalse();
+
+        final StubResponse templateFile = builder.withHttpStatusCode(Code.OK)
+                .withFile(tempFileFromString("file content with a <% token %>"))
+                .build();
+        assertThat(templateFile.getStaticResponse().isPresent()).isFalse();
+
+        final StubResponse recording = builder.withHttpStatusCode(Code.OK)
+                .withBody("http://someurl.com")
+                .build();
+        assertThat(recording.getStaticResponse().isPresent()).isFalse();
+    }
+
+    @Test
+    public void shouldComputeStaticResponseOfCopy_WhenResourceIdHeaderIsSet() throws Exception {
+
+        final StubResponse stubResponse =
+                builder.withHttpStatusCode(Code.OK).withBody("some body").build();
+        assertThat(stubResponse.getStaticResponse().get().getHeaders()).isEmpty();
+
+        final StubResponse copy = stubResponse.withResourceIDHeader(7);
+
+        assertThat(copy.getStaticResponse().get().getHeaders())
+                .containsExactly(Common.HEADER_X_STUBBY_RESOURCE_ID, "7");
+        assertThat(copy.getBody()).isEqualTo("some body");
+        assertThat(stubResponse.getHeaders()).isEmpty();
+        assertThat(stubResponse.getStaticResponse().get().getHeaders()).isEmpty();
+    }
 }
@@ -0,0 +1,90 @@
+/*
+ * Copyright (c) 2012-2024 Alexander Zagniotov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.github.azagniotov.stubby4j.stubs;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import io.github.azagniotov.stubby4j.utils.StringUtils;
+import java.io.ByteArrayOutputStream;
+import java.util.HashMap;
+import java.util.Map;
+import org.junit.Test;
+
+public class StubTemplateTest {
+
+    @Test
+    public void shouldRenderTemplate_WhenAllTokenValuesPresent() throws Exception {
+        final Map<String, String> tokensAndValues = new HashMap<>();
+        tokensAndValues.put("url.1", "cheburashka");
+        tokensAndValues.put("url.2", "JOHN");
+        tokensAndValues.put("query.1", "KOKO");
+
+        final StubTemplate template = StubTemplate.compile(
+                "This is a response <% url.1 %> content <%url.2%> that going to be <%query.1    %> returned");
+
+        assertThat(template.isTokenized()).isTrue();
+        assertThat(template.render(tokensAndValues))
+                .isEqualTo("This is a response cheburashka content JOHN that going to be KOKO returned");
+    }
+
+    @Test
+    public void shouldRenderTokenAsIs_WhenTokenValueNotPresent() throws Exception {
+        final Map<String, String> tokensAndValues = new HashMap<>();
+        tokensAndValues.put("url.1", "cheburashka");
+
+        final StubTemplate template = StubTemplate.compile("<% url.1 %> and <%  query.1 %>, <% url.1 %>");
+
+        assertThat(template.render(tokensAndValues)).isEqualTo("cheburashka and <%  query.1 %>, cheburashka");
+    }
+
+    @Test
+    public void shouldRenderTokenValuesLiterally() throws Exception {
+        final Map<String, String> tokensAndValues = new HashMap<>();
+        tokensAndValues.put("url.1", "$1 \\ $");
+
+        final StubTemplate template = StubTemplate.compile("price: <% url.1 %>");
+
+        assertThat(template.render(tokensAndValues)).isEqualTo("price: $1 \\ $");
+    }
+
+    @Test
+    public void shouldRenderTemplateAsIs_WhenTemplateNotTokenized() throws Exception {
+        final String source = "This is a response content";
+        final StubTemplate template = StubTemplate.compile(source);
+
+        assertThat(template.isTokenized()).isFalse();
+        assertThat(template.isCompiledFrom(source)).isTrue();
+        assertThat(template.render(new HashMap<>())).isSameInstanceAs(source);
+    }
+
+    @Test
+    public void shouldRenderTemplateToOutputStream_TheSameWayAsToString() throws Exception {
+        final Map<String, String> tokensAndValues = new HashMap<>();
+        tokensAndValues.put("post.1", "\u039E stubby4j");
+        tokensAndValues.put("headers.content-type.0", "application/json");
+
+        final StubTemplate template = StubTemplate.compile(
+                "{\"name\": \"<% post.1 %>\", \"type\": \"<% headers.content-type.0 %>\", \"id\": \"<% url.1 %>\"}");
+        final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        template.renderTo(outputStream, tokensAndValues);
+
+        assertThat(outputStream.toString(StringUtils.UTF_8)).isEqualTo(template.render(tokensAndValues));
+        assertThat(template.render(tokensAndValues))
+                .isEqualTo("{\"name\": \"\u039E stubby4j\", \"type\": \"application/json\", \"id\": \"<% url.1 %>\"}");
+    }
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright (c) 2012-2024 Alexander Zagniotov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.github.azagniotov.stubby4j.stubs;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import org.junit.Test;
+
+public class StubTemplateTokensTest {
+
+    @Test
+    public void shouldCaptureOnlyReferredRegexGroups_WhenResponsesHaveTemplateTokens() throws Exception {
+        final Map<String, String> headers = new HashMap<>();
+        headers.put("location", "/invoice/<%headers.x-tenant-id.1%>");
+        final StubTemplateTokens templateTokens = StubTemplateTokens.of(Arrays.asList(
+                new StubResponse.Builder().withBody("item <% url.2 %>").build(),
+                new StubResponse.Builder().withHeaders(headers).build()));
+
+        assertThat(templateTokens.isCaptured("url")).isTrue();
+        assertThat(templateTokens.isCaptured("url", 2)).isTrue();
+        assertThat(templateTokens.isCaptured("url", 0)).isFalse();
+        assertThat(templateTokens.isCaptured("headers.x-tenant-id", 1)).isTrue();
+        assertThat(templateTokens.isCaptured("query.version")).isFalse();
+    }
+
+    @Test
+    public void shouldNotCaptureAnyRegexGroups_WhenResponsesHaveNoTemplateTokens() throws Exception {
+        final StubTemplateTokens templateTokens = StubTemplateTokens.of(
+                Collections.singletonList(new StubResponse.Builder().withBody("item").build()));
+
+        assertThat(templateTokens.isCaptured("url")).isFalse();
+        assertThat(templateTokens.isCaptured("url", 0)).isFalse();
+    }
+
+    @Test
+    public void shouldCaptureAllRegexGroups_WhenTemplateTokenIsNotRecognized() throws Exception {
+        final StubTemplateTokens templateTokens = StubTemplateTokens.of(
+                Collections.singletonList(new StubResponse.Builder().withBody("item <% url %>").build()));
+
+        assertThat(templateTokens).isSameInstanceAs(StubTemplateTokens.ALL);
+        assertThat(templateTokens.isCaptured("query.version", 3)).isTrue();
+    }
+}
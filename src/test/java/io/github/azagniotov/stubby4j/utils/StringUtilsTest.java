@@ -80,6 +80,14 @@ public class StringUtilsTest {
                         "546865204a6170616e65736520726163636f6f6e20646f67206973206d61696e6c79206e6f637475726e616c2c20627574207468657920617265206b6e6f776e20746f2062652061637469766520647572696e67206461796c696768742e205468657920766f63616c697a652062792067726f776c696e67206f7220776974682067726f616e7320746861742068617665207069746368657320726573656d626c696e672074686f7365206f6620646f6d65737469636174656420636174732e204c696b6520636174732c20746865204a6170616e65736520726163636f6f6e20646f672061726368657320697473206261636b207768656e20697420697320747279696e6720746f20696e74696d6964617465206f7468657220616e696d616c733b20686f77657665722c207468657920617373756d65206120646566656e7369766520706f73747572652073696d696c617220746f2074686174206f66206f746865722063616e6964732c206c6f776572696e6720746865697220626f6469657320616e642073686f77696e672074686569722062656c6c69657320746f207375626d69742e");
     }
 
+    @Test
+    public void sha256Base16() throws Exception {
+        assertThat(StringUtils.sha256Base16(""))
+                .isEqualTo("e3b0c44298fc1c149afbf4c8996fb92427ae41e4649b934ca495991b7852b855");
+        assertThat(StringUtils.sha256Base16("abc"))
+                .isEqualTo("ba7816bf8f01cfea414140de5dae2223b00361a396177a9cb410ff61f20015ad");
+    }
+
     @Test
     public void removeValueFromCsv() throws Exception {
         final String one = StringUtils.removeValueFromCsv(